@@ -0,0 +1,77 @@
+package com.cjbdev.echo.iss;
+
+import java.time.ZoneId;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link PassPredictor} on the bundled {@code orbit/ISS.tle}: one propagation, and the
+ * passes over one random place between the latitudes the station flies over for the given number
+ * of days from the element epoch, which is what a cache miss costs. Built and run only with the
+ * {@code jmh} profile:
+ * <pre>
+ * mvn -Djmh test-compile exec:exec@jmh
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PassPredictorBenchmark {
+
+	@Param({ "1", "10" })
+	public int days;
+
+	private Sgp4 sgp4;
+	private PassPredictor predictor;
+	private double[][] places;
+	private long from;
+	private ZoneId zone;
+
+	private final double[] position = new double[3];
+	private final double[] velocity = new double[3];
+	private double minutes;
+	private int next;
+
+	@Setup
+	public void setUp() {
+		Tle tle = PredictedSightings.bundled();
+		sgp4 = new Sgp4(tle);
+		predictor = new PassPredictor(sgp4, 10, -6);
+
+		Random random = new Random(42);
+		places = new double[256][];
+		for (int i = 0; i < places.length; i++) {
+			places[i] = new double[] { 120 * random.nextDouble() - 60, 360 * random.nextDouble() - 180 };
+		}
+		from = tle.getEpochMillis();
+		zone = ZoneId.of("UTC");
+	}
+
+	@Benchmark
+	public double propagate() {
+		minutes = minutes < 14400 ? minutes + 0.01 : 0;
+		sgp4.propagate(minutes, position, velocity);
+		return position[0];
+	}
+
+	@Benchmark
+	public int predictLocation() {
+		double[] place = places[next++ & (places.length - 1)];
+		return predictor.predict(place[0], place[1], from, from + days * 86400000L, zone).size();
+	}
+}
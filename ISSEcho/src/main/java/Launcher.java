@@ -0,0 +1,15 @@
+import com.cjbdev.echo.iss.SkillServer;
+
+/**
+ * Runs the skill on an embedded Jetty server instead of Lambda, with {@code mvn exec:java} or
+ * {@code java -cp ... Launcher}. See {@link SkillServer} for the settings.
+ */
+public final class Launcher {
+
+	private Launcher() {
+	}
+
+	public static void main(String[] args) throws Exception {
+		SkillServer.main(args);
+	}
+}
@@ -0,0 +1,125 @@
+package com.cjbdev.echo.iss;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Stops calling an upstream that keeps failing. Closed, every call goes through and
+ * {@code breaker.failureThreshold} failures in a row open the breaker. Open, calls are refused
+ * for {@code breaker.openSeconds}; after that the breaker is half open and lets one trial call
+ * through, which closes it again if it succeeds and reopens it if it fails. A trial whose outcome
+ * is not reported within another {@code breaker.openSeconds} counts as lost, and the next call
+ * becomes the trial. Callers are expected to fall back to cached data while calls are refused.
+ */
+class CircuitBreaker {
+
+	private static final Logger log = LoggerFactory.getLogger(CircuitBreaker.class);
+
+	enum State {
+		CLOSED, OPEN, HALF_OPEN
+	}
+
+	private final String name;
+	private final int failureThreshold;
+	private final long openMillis;
+
+	private State state = State.CLOSED;
+	private int consecutiveFailures;
+	private long openedAt;
+	private boolean trialInFlight;
+	private long trialStartedAt;
+
+	private long calls;
+	private long failures;
+	private long rejected;
+	private long opened;
+
+	CircuitBreaker(String name, int failureThreshold, long openMillis) {
+		this.name = name;
+		this.failureThreshold = Math.max(failureThreshold, 1);
+		this.openMillis = openMillis;
+	}
+
+	static CircuitBreaker fromConfig(String name) {
+		return new CircuitBreaker(name, SkillConfig.getInt("breaker.failureThreshold", 5),
+				SkillConfig.getLong("breaker.openSeconds", 30) * 1000L);
+	}
+
+	/*
+	 * Whether a call may go upstream now. A caller that is allowed must report the outcome with
+	 * onSuccess or onFailure.
+	 */
+	synchronized boolean allowRequest(long now) {
+
+		if (state == State.OPEN && now - openedAt >= openMillis) {
+			state = State.HALF_OPEN;
+			trialInFlight = false;
+			log.info(name + " breaker half open");
+		}
+		if (state == State.HALF_OPEN && trialInFlight && now - trialStartedAt >= openMillis) {
+			log.warn(name + " breaker trial call never reported back, trying another");
+			trialInFlight = false;
+		}
+		if (state == State.CLOSED || (state == State.HALF_OPEN && !trialInFlight)) {
+			trialInFlight = state == State.HALF_OPEN;
+			trialStartedAt = now;
+			calls++;
+			return true;
+		}
+		rejected++;
+		return false;
+	}
+
+	synchronized void onSuccess() {
+		if (state != State.CLOSED) {
+			log.info(name + " breaker closed");
+		}
+		state = State.CLOSED;
+		consecutiveFailures = 0;
+		trialInFlight = false;
+	}
+
+	synchronized void onFailure(long now) {
+		failures++;
+		consecutiveFailures++;
+		trialInFlight = false;
+		if (state == State.HALF_OPEN || (state == State.CLOSED && consecutiveFailures >= failureThreshold)) {
+			state = State.OPEN;
+			openedAt = now;
+			opened++;
+			log.warn(name + " breaker open after " + consecutiveFailures + " failures in a row");
+		}
+	}
+
+	synchronized State getState() {
+		return state;
+	}
+
+	synchronized long getCalls() {
+		return calls;
+	}
+
+	synchronized long getFailures() {
+		return failures;
+	}
+
+	/*
+	 * Calls refused while the breaker was open or its trial call was running.
+	 */
+	synchronized long getRejected() {
+		return rejected;
+	}
+
+	/*
+	 * How many times the breaker has opened.
+	 */
+	synchronized long getOpened() {
+		return opened;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "CircuitBreaker[" + name + " " + state + ", calls=" + calls + ", failures=" + failures + ", rejected="
+				+ rejected + ", opened=" + opened + "]";
+	}
+}
@@ -0,0 +1,287 @@
+package com.cjbdev.echo.iss;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.codec.language.DoubleMetaphone;
+
+/**
+ * Finds the location a misrecognized City slot most likely meant, within one state or country.
+ * <p>
+ * Each region gets its own index the first time it is searched. Names are normalized (lower
+ * case, letters and digits only, "st", "ft" and "mt" spelled out as the lists do) and indexed
+ * two ways: by Double Metaphone key, so "Fenix" finds Phoenix, and in a BK-tree by edit distance,
+ * so "Gathersburg" finds Gaithersburg. A location with the same key may be one edit further from
+ * the spoken name than one found by spelling alone, counted after spellings of the same sound
+ * such as "ph" and "f" are made alike. Of all candidates the one with the smallest edit distance
+ * to the spoken name wins, and a name that is neither is left for the gazetteer.
+ */
+class CityMatcher {
+
+	private static final int MAX_CODE_LENGTH = 12;
+
+	private static final Map<String, String> ABBREVIATIONS = new HashMap<String, String>();
+
+	static {
+		ABBREVIATIONS.put("st", "saint");
+		ABBREVIATIONS.put("ft", "fort");
+		ABBREVIATIONS.put("mt", "mount");
+	}
+
+	private static final String[][] RESPELLINGS = { { "ph", "f" }, { "gh", "g" }, { "ck", "k" }, { "c", "k" },
+			{ "z", "s" }, { "y", "i" } };
+
+	private final DoubleMetaphone metaphone;
+	private final Map<String, RegionIndex> regions = new ConcurrentHashMap<String, RegionIndex>();
+
+	CityMatcher() {
+		metaphone = new DoubleMetaphone();
+		metaphone.setMaxCodeLen(MAX_CODE_LENGTH);
+	}
+
+	/*
+	 * The closest location in the region to the spoken name, or null if nothing is close enough.
+	 */
+	KeyValuePair match(LocationIndex.Region region, String spoken) {
+
+		String name = normalize(spoken);
+		if (name.isEmpty()) {
+			return null;
+		}
+
+		RegionIndex index = regions.get(region.getFileName());
+		if (index == null) {
+			// concurrent first requests for a region may both build it, but all use the same one
+			index = new RegionIndex(region.getLocations());
+			RegionIndex raced = regions.putIfAbsent(region.getFileName(), index);
+			if (raced != null) {
+				index = raced;
+			}
+		}
+		return index.match(name);
+	}
+
+	static String normalize(String name) {
+
+		StringBuilder normalized = new StringBuilder(name.length() + 8);
+		StringBuilder word = new StringBuilder();
+		for (int i = 0; i <= name.length(); i++) {
+			char c = i < name.length() ? Character.toLowerCase(name.charAt(i)) : ' ';
+			if (Character.isLetterOrDigit(c)) {
+				word.append(c);
+			}
+			else if (c != '\'' && word.length() > 0) {
+				String expanded = ABBREVIATIONS.get(word.toString());
+				normalized.append(expanded != null ? expanded : word);
+				word.setLength(0);
+			}
+		}
+		return normalized.toString();
+	}
+
+	private String[] codes(String normalized) {
+		String primary = metaphone.doubleMetaphone(normalized, false);
+		String alternate = metaphone.doubleMetaphone(normalized, true);
+		if (primary == null || primary.isEmpty()) {
+			return new String[0];
+		}
+		if (alternate == null || alternate.isEmpty() || alternate.equals(primary)) {
+			return new String[] { primary };
+		}
+		return new String[] { primary, alternate };
+	}
+
+	/*
+	 * Edit distance allowed between a spoken name and a location without a phonetic match.
+	 */
+	static int maxDistance(String name) {
+		return Math.min(3, Math.max(1, name.length() / 4));
+	}
+
+	/*
+	 * The normalized name with letters that spell the same sound replaced by one spelling.
+	 */
+	static String respell(String normalized) {
+		String respelled = normalized;
+		for (String[] respelling : RESPELLINGS) {
+			respelled = respelled.replace(respelling[0], respelling[1]);
+		}
+		return respelled;
+	}
+
+	/*
+	 * Levenshtein distance, or limit + 1 as soon as it is known to exceed limit.
+	 */
+	static int distance(String a, String b, int limit) {
+
+		int m = a.length();
+		int n = b.length();
+		limit = Math.min(limit, Math.max(m, n));
+		if (Math.abs(m - n) > limit) {
+			return limit + 1;
+		}
+
+		int[] previous = new int[n + 1];
+		int[] current = new int[n + 1];
+		for (int j = 0; j <= n; j++) {
+			previous[j] = j;
+		}
+		for (int i = 1; i <= m; i++) {
+			current[0] = i;
+			int rowMin = i;
+			char ca = a.charAt(i - 1);
+			for (int j = 1; j <= n; j++) {
+				int cost = ca == b.charAt(j - 1) ? 0 : 1;
+				int d = Math.min(Math.min(current[j - 1] + 1, previous[j] + 1), previous[j - 1] + cost);
+				current[j] = d;
+				if (d < rowMin) {
+					rowMin = d;
+				}
+			}
+			if (rowMin > limit) {
+				return limit + 1;
+			}
+			int[] swap = previous;
+			previous = current;
+			current = swap;
+		}
+		return Math.min(previous[n], limit + 1);
+	}
+
+	/**
+	 * Phonetic buckets and BK-trees over one region's locations.
+	 */
+	private final class RegionIndex {
+
+		private final Map<String, List<Entry>> byCode = new HashMap<String, List<Entry>>();
+		private final BkTree<Entry> names = new BkTree<Entry>();
+
+		RegionIndex(List<KeyValuePair> locations) {
+			for (KeyValuePair location : locations) {
+				Entry entry = new Entry(location, normalize(location.getKey()));
+				if (entry.name.isEmpty()) {
+					continue;
+				}
+				names.add(entry.name, entry);
+				for (String code : codes(entry.name)) {
+					List<Entry> bucket = byCode.get(code);
+					if (bucket == null) {
+						bucket = new ArrayList<Entry>(1);
+						byCode.put(code, bucket);
+					}
+					bucket.add(entry);
+				}
+			}
+		}
+
+		KeyValuePair match(String name) {
+
+			Entry best = null;
+			int bestDistance = Integer.MAX_VALUE;
+
+			// The same sound: one edit more than by spelling alone, once the spellings are alike
+			int phoneticLimit = maxDistance(name) + 1;
+			String respelled = respell(name);
+			for (String code : codes(name)) {
+				List<Entry> bucket = byCode.get(code);
+				if (bucket == null) {
+					continue;
+				}
+				for (Entry entry : bucket) {
+					int d = distance(respelled, entry.respelled, phoneticLimit);
+					if (d <= phoneticLimit && d < bestDistance) {
+						best = entry;
+						bestDistance = d;
+					}
+				}
+			}
+
+			// Only spellings closer than the best phonetic match can still win
+			List<Entry> close = new ArrayList<Entry>();
+			names.search(name, Math.min(maxDistance(name), bestDistance - 1), close);
+			for (Entry entry : close) {
+				int d = distance(name, entry.name, bestDistance);
+				if (d < bestDistance) {
+					best = entry;
+					bestDistance = d;
+				}
+			}
+
+			return best == null ? null : best.location;
+		}
+	}
+
+	private static final class Entry {
+
+		final KeyValuePair location;
+		final String name;
+		final String respelled;
+
+		Entry(KeyValuePair location, String name) {
+			this.location = location;
+			this.name = name;
+			this.respelled = respell(name);
+		}
+	}
+
+	/**
+	 * Burkhard-Keller tree: children are keyed by their distance to the parent, so a search for
+	 * everything within d of a term only descends into children keyed within d of the distance
+	 * to the current node.
+	 */
+	static final class BkTree<T> {
+
+		private Node<T> root;
+
+		void add(String term, T value) {
+			if (root == null) {
+				root = new Node<T>(term, value);
+				return;
+			}
+			Node<T> node = root;
+			while (true) {
+				int d = distance(term, node.term, Integer.MAX_VALUE);
+				Node<T> child = node.children.get(Integer.valueOf(d));
+				if (child == null) {
+					node.children.put(Integer.valueOf(d), new Node<T>(term, value));
+					return;
+				}
+				node = child;
+			}
+		}
+
+		void search(String term, int limit, List<T> found) {
+			if (root != null) {
+				search(root, term, limit, found);
+			}
+		}
+
+		private void search(Node<T> node, String term, int limit, List<T> found) {
+			int d = distance(term, node.term, Integer.MAX_VALUE);
+			if (d <= limit) {
+				found.add(node.value);
+			}
+			for (Map.Entry<Integer, Node<T>> child : node.children.entrySet()) {
+				int key = child.getKey().intValue();
+				if (key >= d - limit && key <= d + limit) {
+					search(child.getValue(), term, limit, found);
+				}
+			}
+		}
+
+		private static final class Node<T> {
+
+			final String term;
+			final T value;
+			final Map<Integer, Node<T>> children = new HashMap<Integer, Node<T>>(4);
+
+			Node(String term, T value) {
+				this.term = term;
+				this.value = value;
+			}
+		}
+	}
+}
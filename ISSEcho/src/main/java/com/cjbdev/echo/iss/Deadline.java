@@ -0,0 +1,76 @@
+package com.cjbdev.echo.iss;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Point in time by which the current request has to be answered. Alexa gives up on a skill after
+ * about eight seconds, so lookups wait for upstream data only until the deadline and then answer
+ * with what they have.
+ * <p>
+ * The Lambda handler sets a deadline for every invocation from the time the Lambda context has
+ * left, less {@code deadline.marginMillis} for building and sending the response, and no later
+ * than {@code deadline.budgetMillis} from the start. Work outside an invocation, such as the
+ * batch jobs or a background refresh, gets a fresh deadline of the budget.
+ */
+final class Deadline {
+
+	private static final ThreadLocal<Deadline> CURRENT = new ThreadLocal<Deadline>();
+
+	private final long expiresAtNanos;
+
+	private Deadline(long expiresAtNanos) {
+		this.expiresAtNanos = expiresAtNanos;
+	}
+
+	static Deadline after(long millis) {
+		return new Deadline(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Math.max(millis, 0)));
+	}
+
+	static long budgetMillis() {
+		return SkillConfig.getLong("deadline.budgetMillis", 6000);
+	}
+
+	/*
+	 * Deadline for a Lambda invocation with the given time left before Lambda stops it.
+	 */
+	static Deadline forInvocation(long remainingMillis) {
+		return after(Math.min(budgetMillis(), remainingMillis - SkillConfig.getLong("deadline.marginMillis", 500)));
+	}
+
+	/*
+	 * The deadline of the request this thread is answering, or a fresh one of the budget.
+	 */
+	static Deadline current() {
+		Deadline deadline = CURRENT.get();
+		return deadline != null ? deadline : after(budgetMillis());
+	}
+
+	static void set(Deadline deadline) {
+		CURRENT.set(deadline);
+	}
+
+	static void clear() {
+		CURRENT.remove();
+	}
+
+	/*
+	 * This deadline, or the given time from now if that is earlier.
+	 */
+	Deadline atMost(long millis) {
+		Deadline other = after(millis);
+		return other.expiresAtNanos - expiresAtNanos < 0 ? other : this;
+	}
+
+	long remainingMillis() {
+		return Math.max(TimeUnit.NANOSECONDS.toMillis(expiresAtNanos - System.nanoTime()), 0);
+	}
+
+	boolean isExpired() {
+		return expiresAtNanos - System.nanoTime() <= 0;
+	}
+
+	@Override
+	public String toString() {
+		return "Deadline[" + remainingMillis() + " ms left]";
+	}
+}
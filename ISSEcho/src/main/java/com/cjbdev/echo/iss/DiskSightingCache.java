@@ -0,0 +1,327 @@
+package com.cjbdev.echo.iss;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Append-only file of parsed sighting schedules for the self-hosted server, so a restart does not
+ * start with an empty cache and a burst of NASA fetches.
+ * <p>
+ * The file starts with a magic number and version, followed by records of
+ * {@code int length, int CRC32, schedule bytes}. The last record for a location wins. Loading
+ * stops at the first torn or corrupt record and truncates the file there. When the file grows to
+ * more than twice its live data it is compacted into a temporary file that is forced to disk and
+ * then atomically renamed over the original, so a crash at any point leaves a readable file.
+ * <p>
+ * Settings: {@code disk.path} enables the cache, {@code disk.sync} forces every append to disk.
+ */
+class DiskSightingCache implements Closeable {
+
+	private static final Logger log = LoggerFactory.getLogger(DiskSightingCache.class);
+
+	private static final int MAGIC = 0x49535344;
+	private static final int VERSION = 2;
+	private static final int HEADER_BYTES = 8;
+	private static final int RECORD_HEADER_BYTES = 8;
+	private static final int MAX_RECORD_BYTES = 16 * 1024 * 1024;
+	private static final long MIN_COMPACT_BYTES = 1024 * 1024;
+
+	private final File file;
+	private final long ttlMillis;
+	private final boolean sync;
+
+	private RandomAccessFile raf;
+	private FileChannel channel;
+	private final Map<String, Integer> liveRecordBytes = new HashMap<String, Integer>();
+	private long liveBytes;
+
+	DiskSightingCache(File file, long ttlMillis, boolean sync) {
+		this.file = file;
+		this.ttlMillis = ttlMillis;
+		this.sync = sync;
+	}
+
+	/*
+	 * Disk cache as configured, or null when no path is configured.
+	 */
+	static DiskSightingCache fromConfig() {
+
+		String path = SkillConfig.getString("disk.path", null);
+		if (path == null) {
+			return null;
+		}
+		return new DiskSightingCache(new File(path),
+				SkillConfig.getLong("cache.ttlSeconds", SightingCache.DEFAULT_TTL_SECONDS) * 1000L,
+				SkillConfig.getBoolean("disk.sync", false));
+	}
+
+	/*
+	 * Read the file, repairing a torn tail, and open it for appending. Returns the latest
+	 * unexpired schedule of every location.
+	 */
+	synchronized List<SightingSchedule> load() throws IOException {
+
+		File parent = file.getAbsoluteFile().getParentFile();
+		if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+			throw new IOException("Could not create " + parent);
+		}
+
+		// A compaction that did not finish leaves its temporary file behind.
+		File compacting = compactFile();
+		if (compacting.exists() && !compacting.delete()) {
+			log.warn("Could not delete " + compacting);
+		}
+
+		Map<String, byte[]> latest = new LinkedHashMap<String, byte[]>();
+		long validEnd = file.exists() ? scan(file, latest) : 0;
+
+		open();
+		if (validEnd == 0) {
+			writeHeader();
+		}
+		else if (validEnd < channel.size()) {
+			log.warn("Truncating " + (channel.size() - validEnd) + " unreadable bytes from " + file);
+			channel.truncate(validEnd);
+		}
+		channel.position(channel.size());
+
+		List<SightingSchedule> schedules = new ArrayList<SightingSchedule>();
+		liveRecordBytes.clear();
+		liveBytes = 0;
+		long cutoff = System.currentTimeMillis() - ttlMillis;
+		for (Map.Entry<String, byte[]> entry : latest.entrySet()) {
+			SightingSchedule schedule = SightingSchedule.fromBytes(entry.getValue());
+			if (schedule.getFetchedAt() > cutoff) {
+				schedules.add(schedule);
+				track(entry.getKey(), entry.getValue().length);
+			}
+		}
+
+		log.info("Loaded " + schedules.size() + " sighting schedules from " + file);
+		return schedules;
+	}
+
+	synchronized void append(SightingSchedule schedule) {
+
+		if (channel == null) {
+			return;
+		}
+
+		byte[] payload = schedule.toBytes();
+		try {
+			channel.write(record(payload));
+			if (sync) {
+				channel.force(false);
+			}
+			track(schedule.getLocationId(), payload.length);
+		}
+		catch (IOException ioex) {
+			log.warn("Could not append sightings for " + schedule.getLocationId() + " to " + file, ioex);
+			return;
+		}
+
+		try {
+			if (channel.size() > MIN_COMPACT_BYTES && channel.size() > 2 * liveBytes) {
+				compact();
+			}
+		}
+		catch (IOException ioex) {
+			log.warn("Could not compact " + file, ioex);
+		}
+	}
+
+	/*
+	 * Rewrite the file with only the latest unexpired record of each location.
+	 */
+	synchronized void compact() throws IOException {
+
+		channel.force(false);
+
+		Map<String, byte[]> latest = new LinkedHashMap<String, byte[]>();
+		scan(file, latest);
+
+		File compacting = compactFile();
+		RandomAccessFile out = new RandomAccessFile(compacting, "rw");
+		Map<String, byte[]> kept = new LinkedHashMap<String, byte[]>();
+		long cutoff = System.currentTimeMillis() - ttlMillis;
+		try {
+			out.setLength(0);
+			FileChannel outChannel = out.getChannel();
+			outChannel.write(header());
+			for (Map.Entry<String, byte[]> entry : latest.entrySet()) {
+				if (SightingSchedule.fromBytes(entry.getValue()).getFetchedAt() > cutoff) {
+					outChannel.write(record(entry.getValue()));
+					kept.put(entry.getKey(), entry.getValue());
+				}
+			}
+			outChannel.force(true);
+		}
+		finally {
+			out.close();
+		}
+
+		// Whether or not the rename works, appends go on to whichever file is in place.
+		boolean replaced = false;
+		closeChannel();
+		try {
+			replace(compacting, file);
+			replaced = true;
+		}
+		finally {
+			open();
+			channel.position(channel.size());
+			if (!replaced && !compacting.delete()) {
+				log.warn("Could not delete " + compacting);
+			}
+		}
+
+		liveRecordBytes.clear();
+		liveBytes = 0;
+		for (Map.Entry<String, byte[]> entry : kept.entrySet()) {
+			track(entry.getKey(), entry.getValue().length);
+		}
+		log.info("Compacted " + file + " to " + channel.size() + " bytes, " + liveRecordBytes.size() + " locations");
+	}
+
+	public synchronized void close() throws IOException {
+		if (channel != null) {
+			channel.force(false);
+		}
+		closeChannel();
+	}
+
+	/*
+	 * Atomically rename the compacted file over the original.
+	 */
+	void replace(File compacted, File original) throws IOException {
+		Files.move(compacted.toPath(), original.toPath(), StandardCopyOption.ATOMIC_MOVE,
+				StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	private void track(String locationId, int payloadBytes) {
+		int recordBytes = RECORD_HEADER_BYTES + payloadBytes;
+		Integer previous = liveRecordBytes.put(locationId, Integer.valueOf(recordBytes));
+		liveBytes += recordBytes - (previous == null ? 0 : previous.intValue());
+	}
+
+	/*
+	 * Collect the last record of each location and return the offset just past the last valid record.
+	 */
+	private static long scan(File source, Map<String, byte[]> latest) throws IOException {
+
+		InputStream stream = new BufferedInputStream(new FileInputStream(source), 64 * 1024);
+		DataInputStream in = new DataInputStream(stream);
+		try {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+				log.warn("Ignoring " + source + ", not a sighting cache file");
+				return 0;
+			}
+
+			long validEnd = HEADER_BYTES;
+			CRC32 crc = new CRC32();
+			while (true) {
+				int length;
+				int checksum;
+				byte[] payload;
+				try {
+					length = in.readInt();
+					checksum = in.readInt();
+					if (length <= 0 || length > MAX_RECORD_BYTES) {
+						break;
+					}
+					payload = new byte[length];
+					in.readFully(payload);
+				}
+				catch (EOFException eofex) {
+					break;
+				}
+
+				crc.reset();
+				crc.update(payload, 0, payload.length);
+				if ((int) crc.getValue() != checksum) {
+					break;
+				}
+
+				try {
+					latest.put(SightingSchedule.fromBytes(payload).getLocationId(), payload);
+				}
+				catch (IOException ioex) {
+					break;
+				}
+				validEnd += RECORD_HEADER_BYTES + length;
+			}
+			return validEnd;
+		}
+		catch (EOFException eofex) {
+			return 0;
+		}
+		finally {
+			in.close();
+		}
+	}
+
+	/*
+	 * Buffers are filled with absolute puts so they are ready to write without a flip.
+	 */
+	private static ByteBuffer record(byte[] payload) {
+		CRC32 crc = new CRC32();
+		crc.update(payload, 0, payload.length);
+		byte[] bytes = new byte[RECORD_HEADER_BYTES + payload.length];
+		ByteBuffer buffer = ByteBuffer.wrap(bytes);
+		buffer.putInt(0, payload.length);
+		buffer.putInt(4, (int) crc.getValue());
+		System.arraycopy(payload, 0, bytes, RECORD_HEADER_BYTES, payload.length);
+		return buffer;
+	}
+
+	private static ByteBuffer header() {
+		ByteBuffer buffer = ByteBuffer.wrap(new byte[HEADER_BYTES]);
+		buffer.putInt(0, MAGIC);
+		buffer.putInt(4, VERSION);
+		return buffer;
+	}
+
+	private void writeHeader() throws IOException {
+		channel.truncate(0);
+		channel.position(0);
+		channel.write(header());
+		channel.force(true);
+	}
+
+	private void open() throws IOException {
+		raf = new RandomAccessFile(file, "rw");
+		channel = raf.getChannel();
+	}
+
+	private void closeChannel() throws IOException {
+		if (raf != null) {
+			raf.close();
+		}
+		raf = null;
+		channel = null;
+	}
+
+	private File compactFile() {
+		return new File(file.getPath() + ".compact");
+	}
+}
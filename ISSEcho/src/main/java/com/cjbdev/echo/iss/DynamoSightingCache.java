@@ -0,0 +1,298 @@
+package com.cjbdev.echo.iss;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.regions.Region;
+import com.amazonaws.regions.Regions;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDBClient;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.BatchGetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.BatchGetItemResult;
+import com.amazonaws.services.dynamodbv2.model.ConditionalCheckFailedException;
+import com.amazonaws.services.dynamodbv2.model.GetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.GetItemResult;
+import com.amazonaws.services.dynamodbv2.model.KeysAndAttributes;
+import com.amazonaws.services.dynamodbv2.model.PutItemRequest;
+import com.amazonaws.services.dynamodbv2.model.UpdateItemRequest;
+
+/**
+ * Sighting schedules shared between Lambda containers through a DynamoDB table, so a cold
+ * container can answer from data another container already fetched.
+ * <p>
+ * One item per location id holds the serialized schedule, when it was fetched and an
+ * {@code expiresAt} epoch-second attribute. Enable DynamoDB Time To Live on that attribute to have
+ * old items removed; reads also check it since TTL deletion can lag. A container that misses takes
+ * a short refresh lease with a conditional update before going to NASA, and waits for the lease
+ * holder instead when the lease is already taken. Writes are conditional on being newer than what
+ * is stored.
+ * <p>
+ * Settings: {@code dynamo.table} enables the tier, {@code dynamo.region},
+ * {@code dynamo.endpoint} (e.g. {@code http://localhost:8000} for DynamoDB Local),
+ * {@code dynamo.ttlSeconds}, {@code dynamo.leaseMillis} and {@code dynamo.leaseWaitMillis}.
+ * <p>
+ * The AWS SDK encodes the binary schedule attribute with {@code javax.xml.bind}, which the JDK no
+ * longer includes from Java 11, so on those the JAXB API ({@code javax.xml.bind:jaxb-api}) has to
+ * be on the class path; without it the tier stays off.
+ */
+class DynamoSightingCache {
+
+	private static final Logger log = LoggerFactory.getLogger(DynamoSightingCache.class);
+
+	static final String KEY = "locationId";
+	static final String SCHEDULE = "schedule";
+	static final String FETCHED_AT = "fetchedAt";
+	static final String EXPIRES_AT = "expiresAt";
+	static final String LEASE_UNTIL = "leaseUntil";
+
+	private static final int BATCH_LIMIT = 100;
+	private static final long POLL_MILLIS = 100;
+
+	private final AmazonDynamoDB dynamo;
+	private final String tableName;
+	private final long ttlMillis;
+	private final long leaseMillis;
+	private final long leaseWaitMillis;
+
+	DynamoSightingCache(AmazonDynamoDB dynamo, String tableName, long ttlMillis, long leaseMillis, long leaseWaitMillis) {
+		this.dynamo = dynamo;
+		this.tableName = tableName;
+		this.ttlMillis = ttlMillis;
+		this.leaseMillis = leaseMillis;
+		this.leaseWaitMillis = leaseWaitMillis;
+	}
+
+	/*
+	 * Shared tier as configured, or null when no table is configured.
+	 */
+	static DynamoSightingCache fromConfig() {
+
+		String tableName = SkillConfig.getString("dynamo.table", null);
+		if (tableName == null) {
+			return null;
+		}
+		if (!isSupported()) {
+			log.warn("Shared cache off: the AWS SDK needs javax.xml.bind, add the JAXB API to the class path");
+			return null;
+		}
+
+		AmazonDynamoDBClient client;
+		String endpoint = SkillConfig.getString("dynamo.endpoint", null);
+		if (endpoint != null) {
+			// DynamoDB Local accepts any credentials
+			client = new AmazonDynamoDBClient(new BasicAWSCredentials("local", "local"));
+			client.setEndpoint(endpoint);
+		}
+		else {
+			client = new AmazonDynamoDBClient();
+			client.setRegion(Region.getRegion(Regions.fromName(SkillConfig.getString("dynamo.region", "us-east-1"))));
+		}
+
+		return new DynamoSightingCache(client, tableName,
+				SkillConfig.getLong("dynamo.ttlSeconds", SightingCache.DEFAULT_TTL_SECONDS) * 1000L,
+				SkillConfig.getLong("dynamo.leaseMillis", 5000),
+				SkillConfig.getLong("dynamo.leaseWaitMillis", 1000));
+	}
+
+	/*
+	 * Whether the AWS SDK can encode the schedules on this JDK.
+	 */
+	static boolean isSupported() {
+		try {
+			Class.forName("javax.xml.bind.DatatypeConverter");
+			return true;
+		}
+		catch (ClassNotFoundException cnfex) {
+			return false;
+		}
+	}
+
+	/*
+	 * Unexpired schedule for the location, or null. Errors are logged and treated as a miss.
+	 */
+	SightingSchedule get(String locationId) {
+
+		try {
+			GetItemResult result = dynamo.getItem(new GetItemRequest()
+					.withTableName(tableName)
+					.withKey(key(locationId)));
+			return toSchedule(result.getItem());
+		}
+		catch (AmazonClientException acex) {
+			log.warn("Shared cache read failed for " + locationId, acex);
+			return null;
+		}
+	}
+
+	/*
+	 * Unexpired schedules for the given locations, read with as few batch calls as possible.
+	 * Locations without a usable item are left out of the result.
+	 */
+	Map<String, SightingSchedule> getAll(Collection<String> locationIds) {
+
+		Map<String, SightingSchedule> found = new HashMap<String, SightingSchedule>();
+		List<String> ids = new ArrayList<String>(new LinkedHashSet<String>(locationIds));
+
+		try {
+			for (int start = 0; start < ids.size(); start += BATCH_LIMIT) {
+				List<Map<String, AttributeValue>> keys = new ArrayList<Map<String, AttributeValue>>();
+				for (String id : ids.subList(start, Math.min(ids.size(), start + BATCH_LIMIT))) {
+					keys.add(key(id));
+				}
+
+				Map<String, KeysAndAttributes> request = new HashMap<String, KeysAndAttributes>();
+				request.put(tableName, new KeysAndAttributes().withKeys(keys));
+
+				int attempts = 0;
+				while (request != null && !request.isEmpty() && attempts++ < 5) {
+					BatchGetItemResult result = dynamo.batchGetItem(new BatchGetItemRequest().withRequestItems(request));
+					List<Map<String, AttributeValue>> items = result.getResponses().get(tableName);
+					if (items != null) {
+						for (Map<String, AttributeValue> item : items) {
+							SightingSchedule schedule = toSchedule(item);
+							if (schedule != null) {
+								found.put(schedule.getLocationId(), schedule);
+							}
+						}
+					}
+					request = result.getUnprocessedKeys();
+					if (request != null && !request.isEmpty()) {
+						sleep(POLL_MILLIS * attempts);
+					}
+				}
+			}
+		}
+		catch (AmazonClientException acex) {
+			log.warn("Shared cache batch read failed", acex);
+		}
+		return found;
+	}
+
+	/*
+	 * Try to become the one container refreshing this location. Returns false when another
+	 * container holds an unexpired lease. Errors grant the lease so a broken table never blocks
+	 * a fetch.
+	 */
+	boolean tryLease(String locationId) {
+
+		long now = System.currentTimeMillis();
+		Map<String, AttributeValue> values = new HashMap<String, AttributeValue>();
+		values.put(":now", number(now));
+		values.put(":until", number(now + leaseMillis));
+
+		try {
+			dynamo.updateItem(new UpdateItemRequest()
+					.withTableName(tableName)
+					.withKey(key(locationId))
+					.withUpdateExpression("SET " + LEASE_UNTIL + " = :until")
+					.withConditionExpression("attribute_not_exists(" + LEASE_UNTIL + ") OR " + LEASE_UNTIL + " < :now")
+					.withExpressionAttributeValues(values));
+			return true;
+		}
+		catch (ConditionalCheckFailedException ccfex) {
+			return false;
+		}
+		catch (AmazonClientException acex) {
+			log.warn("Shared cache lease failed for " + locationId, acex);
+			return true;
+		}
+	}
+
+	/*
+	 * Poll for a schedule another container is fetching, for at most the lease wait.
+	 */
+	SightingSchedule await(String locationId) {
+
+		long deadline = System.currentTimeMillis() + leaseWaitMillis;
+		while (System.currentTimeMillis() < deadline) {
+			sleep(POLL_MILLIS);
+			SightingSchedule schedule = get(locationId);
+			if (schedule != null) {
+				return schedule;
+			}
+		}
+		return null;
+	}
+
+	/*
+	 * Store a schedule unless a newer one is already there. Replacing the item also drops the lease.
+	 */
+	void put(SightingSchedule schedule) {
+
+		long expiresAt = schedule.getFetchedAt() + ttlMillis;
+
+		Map<String, AttributeValue> item = key(schedule.getLocationId());
+		item.put(SCHEDULE, new AttributeValue().withB(ByteBuffer.wrap(schedule.toBytes())));
+		item.put(FETCHED_AT, number(schedule.getFetchedAt()));
+		item.put(EXPIRES_AT, number(expiresAt / 1000L));
+
+		Map<String, AttributeValue> values = new HashMap<String, AttributeValue>();
+		values.put(":fetched", number(schedule.getFetchedAt()));
+
+		try {
+			dynamo.putItem(new PutItemRequest()
+					.withTableName(tableName)
+					.withItem(item)
+					.withConditionExpression("attribute_not_exists(" + FETCHED_AT + ") OR " + FETCHED_AT + " < :fetched")
+					.withExpressionAttributeValues(values));
+		}
+		catch (ConditionalCheckFailedException ccfex) {
+			log.debug("Newer shared schedule already stored for " + schedule.getLocationId());
+		}
+		catch (AmazonClientException acex) {
+			log.warn("Shared cache write failed for " + schedule.getLocationId(), acex);
+		}
+	}
+
+	private SightingSchedule toSchedule(Map<String, AttributeValue> item) {
+
+		if (item == null || item.get(SCHEDULE) == null || item.get(EXPIRES_AT) == null) {
+			return null;
+		}
+		if (Long.parseLong(item.get(EXPIRES_AT).getN()) * 1000L <= System.currentTimeMillis()) {
+			return null;
+		}
+
+		ByteBuffer buffer = item.get(SCHEDULE).getB();
+		byte[] bytes = new byte[buffer.remaining()];
+		buffer.duplicate().get(bytes);
+		try {
+			return SightingSchedule.fromBytes(bytes);
+		}
+		catch (IOException ioex) {
+			log.warn("Ignoring unreadable shared schedule for " + item.get(KEY).getS(), ioex);
+			return null;
+		}
+	}
+
+	private static Map<String, AttributeValue> key(String locationId) {
+		Map<String, AttributeValue> key = new HashMap<String, AttributeValue>();
+		key.put(KEY, new AttributeValue().withS(locationId));
+		return key;
+	}
+
+	private static AttributeValue number(long value) {
+		return new AttributeValue().withN(Long.toString(value));
+	}
+
+	private static void sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+		}
+		catch (InterruptedException iex) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,538 @@
+package com.cjbdev.echo.iss;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.zip.GZIPInputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * HTTP client for the Spot The Station feeds.
+ * <p>
+ * Every call has explicit connect and read timeouts, so a slow upstream cannot use up the whole
+ * Alexa response budget. Response bodies, error bodies included, are always read to the end and
+ * closed rather than disconnected, which hands the connection back to the JDK keep-alive pool for
+ * reuse (size it with the standard {@code http.maxConnections} property). Failed calls are retried
+ * a bounded number of times with exponential backoff and full jitter. The latency of successful
+ * calls and the outcomes of all of them are recorded for monitoring.
+ * <p>
+ * {@link #getHedged} sends a second, hedged request when the first has not answered within the
+ * {@code hedge.percentile} latency of the successful calls of the last one to two
+ * {@code hedge.windowSeconds} windows (see {@link LatencyWindow}) and takes whichever answers
+ * first, which cuts off the slow tail at the cost of a few percent more requests. Failures are
+ * left out, so timeouts do not stretch the delay. Until {@code hedge.minSamples} calls have been
+ * timed in the window the delay is {@code hedge.delayMillis}. A percentile of 0 turns hedging off.
+ * Hedges are timed and run on the client's own threads, at most {@code hedge.threads} of them at
+ * once, never on the caller's executor: a backup request must not wait behind the slow calls it is
+ * meant to back up, nor take the threads they need. A hedge that finds no free thread is skipped
+ * and counted. {@link #shutdown} stops these threads.
+ * <p>
+ * Requests ask for gzip and a compressed body is inflated as it is read, so a caller that parses
+ * the stream never holds the whole feed. Given the validators of an earlier response, a request
+ * is sent conditionally with {@code If-None-Match} and {@code If-Modified-Since}, and a
+ * {@code 304 Not Modified} comes back as a response without a body. Bytes received on the wire
+ * and the share of 304 answers are counted.
+ * <p>
+ * Settings: {@code http.connectTimeoutMillis}, {@code http.readTimeoutMillis},
+ * {@code http.maxAttempts} and {@code http.retryBaseMillis}.
+ */
+class FeedClient {
+
+	private static final Logger log = LoggerFactory.getLogger(FeedClient.class);
+
+	private static final BodyReader<byte[]> BYTES = new BodyReader<byte[]>() {
+		public byte[] read(InputStream body) throws IOException {
+			ByteArrayOutputStream out = new ByteArrayOutputStream(32 * 1024);
+			byte[] chunk = new byte[8 * 1024];
+			int read;
+			while ((read = body.read(chunk)) != -1) {
+				out.write(chunk, 0, read);
+			}
+			return out.toByteArray();
+		}
+	};
+
+	private final int connectTimeoutMillis;
+	private final int readTimeoutMillis;
+	private final int maxAttempts;
+	private final long retryBaseMillis;
+	private final double hedgePercentile;
+	private final int hedgeMinSamples;
+	private final long hedgeDelayMillis;
+	private final int hedgeThreads;
+
+	private final LatencyRecorder latency = new LatencyRecorder();
+	private final LatencyWindow recent;
+	private final AtomicLong failures = new AtomicLong();
+	private final AtomicLong retries = new AtomicLong();
+	private final AtomicLong hedges = new AtomicLong();
+	private final AtomicLong hedgeWins = new AtomicLong();
+	private final AtomicLong hedgesSkipped = new AtomicLong();
+	private final AtomicLong responses = new AtomicLong();
+	private final AtomicLong notModified = new AtomicLong();
+	private final AtomicLong bytesTransferred = new AtomicLong();
+
+	private ScheduledThreadPoolExecutor hedgeTimer;
+	private ThreadPoolExecutor hedgeRunner;
+	private boolean shutdown;
+
+	FeedClient(int connectTimeoutMillis, int readTimeoutMillis, int maxAttempts, long retryBaseMillis) {
+		this(connectTimeoutMillis, readTimeoutMillis, maxAttempts, retryBaseMillis, 95, 20, 400);
+	}
+
+	FeedClient(int connectTimeoutMillis, int readTimeoutMillis, int maxAttempts, long retryBaseMillis,
+			double hedgePercentile, int hedgeMinSamples, long hedgeDelayMillis) {
+		this(connectTimeoutMillis, readTimeoutMillis, maxAttempts, retryBaseMillis, hedgePercentile, hedgeMinSamples,
+				hedgeDelayMillis, 60000);
+	}
+
+	FeedClient(int connectTimeoutMillis, int readTimeoutMillis, int maxAttempts, long retryBaseMillis,
+			double hedgePercentile, int hedgeMinSamples, long hedgeDelayMillis, long hedgeWindowMillis) {
+		this(connectTimeoutMillis, readTimeoutMillis, maxAttempts, retryBaseMillis, hedgePercentile, hedgeMinSamples,
+				hedgeDelayMillis, hedgeWindowMillis, 2);
+	}
+
+	FeedClient(int connectTimeoutMillis, int readTimeoutMillis, int maxAttempts, long retryBaseMillis,
+			double hedgePercentile, int hedgeMinSamples, long hedgeDelayMillis, long hedgeWindowMillis,
+			int hedgeThreads) {
+		this.connectTimeoutMillis = connectTimeoutMillis;
+		this.readTimeoutMillis = readTimeoutMillis;
+		this.maxAttempts = Math.max(1, maxAttempts);
+		this.retryBaseMillis = retryBaseMillis;
+		this.hedgePercentile = hedgePercentile;
+		this.hedgeMinSamples = hedgeMinSamples;
+		this.hedgeDelayMillis = hedgeDelayMillis;
+		this.hedgeThreads = Math.max(1, hedgeThreads);
+		this.recent = new LatencyWindow(hedgeWindowMillis, System.currentTimeMillis());
+	}
+
+	static FeedClient fromConfig() {
+		return new FeedClient(SkillConfig.getInt("http.connectTimeoutMillis", 1000),
+				SkillConfig.getInt("http.readTimeoutMillis", 2500),
+				SkillConfig.getInt("http.maxAttempts", 2),
+				SkillConfig.getLong("http.retryBaseMillis", 100),
+				SkillConfig.getInt("hedge.percentile", 95),
+				SkillConfig.getInt("hedge.minSamples", 20),
+				SkillConfig.getLong("hedge.delayMillis", 400),
+				SkillConfig.getLong("hedge.windowSeconds", 60) * 1000L,
+				SkillConfig.getInt("hedge.threads", 2));
+	}
+
+	/*
+	 * GET the URL and return the body. Client errors such as 404 are not retried.
+	 */
+	byte[] get(String url) throws IOException {
+		return get(url, null, BYTES).getBody();
+	}
+
+	/*
+	 * GET the URL, conditionally when validators are given, and hand the body to the reader.
+	 */
+	<T> Response<T> get(String url, Validators validators, BodyReader<T> reader) throws IOException {
+
+		IOException last = null;
+		for (int attempt = 1; attempt <= maxAttempts; attempt++) {
+			if (attempt > 1) {
+				retries.incrementAndGet();
+				backoff(attempt);
+			}
+
+			long start = System.nanoTime();
+			try {
+				Response<T> response = getOnce(url, validators, reader);
+				long nanos = System.nanoTime() - start;
+				latency.record(nanos);
+				recent.record(nanos, System.currentTimeMillis());
+				return response;
+			}
+			catch (FileNotFoundException fnfex) {
+				failures.incrementAndGet();
+				throw fnfex;
+			}
+			catch (IOException ioex) {
+				failures.incrementAndGet();
+				last = ioex;
+				log.debug("Attempt " + attempt + " for " + url + " failed: " + ioex.getMessage());
+			}
+		}
+		throw last;
+	}
+
+	/*
+	 * GET the URL on the executor, and again on a hedge thread once the hedge delay passes without
+	 * an answer. The first body wins; the request fails when every attempt has failed, or at once on
+	 * a client error. The losing attempt is not interrupted, it runs into its read timeout at worst.
+	 */
+	<T> CompletableFuture<Response<T>> getHedged(final String url, final Validators validators,
+			final BodyReader<T> reader, final ScheduledExecutorService executor) {
+
+		final CompletableFuture<Response<T>> result = new CompletableFuture<Response<T>>();
+		final AtomicInteger running = new AtomicInteger(1);
+		attempt(url, validators, reader, executor, result, running, false);
+		if (hedgePercentile <= 0) {
+			return result;
+		}
+
+		try {
+			final ThreadPoolExecutor runner = startHedging();
+			final ScheduledFuture<?> hedge = hedgeTimer.schedule(new Runnable() {
+				public void run() {
+					if (!result.isDone()) {
+						running.incrementAndGet();
+						if (attempt(url, validators, reader, runner, result, running, true)) {
+							hedges.incrementAndGet();
+							log.debug("Hedging the request for " + url);
+						}
+						else {
+							hedgesSkipped.incrementAndGet();
+						}
+					}
+				}
+			}, getHedgeDelayMillis(), TimeUnit.MILLISECONDS);
+			result.whenComplete(new BiConsumer<Response<T>, Throwable>() {
+				public void accept(Response<T> response, Throwable failure) {
+					hedge.cancel(false);
+				}
+			});
+		}
+		catch (RejectedExecutionException reex) {
+			log.debug("Not hedging " + url + ", the client is shut down");
+		}
+		return result;
+	}
+
+	/*
+	 * Stop the hedge threads. Running attempts finish, later requests are no longer hedged.
+	 */
+	synchronized void shutdown() {
+		shutdown = true;
+		if (hedgeTimer != null) {
+			hedgeTimer.shutdownNow();
+			hedgeRunner.shutdown();
+		}
+	}
+
+	/*
+	 * The hedge timer and runner, started with the first hedged request.
+	 */
+	private synchronized ThreadPoolExecutor startHedging() {
+		if (shutdown) {
+			throw new RejectedExecutionException("FeedClient is shut down");
+		}
+		if (hedgeTimer == null) {
+			hedgeTimer = new ScheduledThreadPoolExecutor(1,
+					new NearbySightingFinder.DaemonThreadFactory("feed-hedge-timer"));
+			hedgeTimer.setRemoveOnCancelPolicy(true);
+			hedgeRunner = new ThreadPoolExecutor(0, hedgeThreads, 30, TimeUnit.SECONDS,
+					new SynchronousQueue<Runnable>(), new NearbySightingFinder.DaemonThreadFactory("feed-hedge"));
+		}
+		return hedgeRunner;
+	}
+
+	/*
+	 * Start one attempt on the executor, or give up its share of the request when the executor
+	 * refuses it. True when it started.
+	 */
+	private <T> boolean attempt(final String url, final Validators validators, final BodyReader<T> reader,
+			Executor executor, final CompletableFuture<Response<T>> result, final AtomicInteger running,
+			final boolean hedged) {
+		try {
+			executor.execute(new Runnable() {
+				public void run() {
+					try {
+						Response<T> response = get(url, validators, reader);
+						if (result.complete(response) && hedged) {
+							hedgeWins.incrementAndGet();
+						}
+					}
+					catch (FileNotFoundException fnfex) {
+						result.completeExceptionally(fnfex);
+					}
+					catch (IOException ioex) {
+						if (running.decrementAndGet() == 0) {
+							result.completeExceptionally(ioex);
+						}
+					}
+					catch (RuntimeException rex) {
+						result.completeExceptionally(rex);
+					}
+				}
+			});
+			return true;
+		}
+		catch (RejectedExecutionException reex) {
+			if (running.decrementAndGet() == 0) {
+				result.completeExceptionally(new IOException("Could not start the request for " + url, reex));
+			}
+			return false;
+		}
+	}
+
+	/*
+	 * How long to wait for an answer before hedging: the configured percentile of the latency of
+	 * the successful calls in the current and previous window, once enough of them have been timed.
+	 */
+	long getHedgeDelayMillis() {
+		long now = System.currentTimeMillis();
+		if (recent.getCount(now) < hedgeMinSamples) {
+			return hedgeDelayMillis;
+		}
+		return Math.max(1, (long) Math.ceil(recent.getPercentileMillis(hedgePercentile, now)));
+	}
+
+	private <T> Response<T> getOnce(String url, Validators validators, BodyReader<T> reader) throws IOException {
+
+		HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+		connection.setConnectTimeout(connectTimeoutMillis);
+		connection.setReadTimeout(readTimeoutMillis);
+		connection.setRequestProperty("Connection", "keep-alive");
+		connection.setRequestProperty("Accept-Encoding", "gzip");
+		if (validators != null) {
+			if (validators.getEtag() != null) {
+				connection.setRequestProperty("If-None-Match", validators.getEtag());
+			}
+			if (validators.getLastModified() != null) {
+				connection.setRequestProperty("If-Modified-Since", validators.getLastModified());
+			}
+		}
+
+		int status = connection.getResponseCode();
+		if (status == HttpURLConnection.HTTP_OK || status == HttpURLConnection.HTTP_NOT_MODIFIED) {
+			Validators received = new Validators(connection.getHeaderField("ETag"),
+					connection.getHeaderField("Last-Modified"));
+			CountingInputStream wire = new CountingInputStream(connection.getInputStream());
+			try {
+				responses.incrementAndGet();
+				if (status == HttpURLConnection.HTTP_NOT_MODIFIED) {
+					notModified.incrementAndGet();
+					drain(wire);
+					return new Response<T>(null, true,
+							received.isEmpty() && validators != null ? validators : received);
+				}
+				InputStream body = "gzip".equalsIgnoreCase(connection.getContentEncoding())
+						? new GZIPInputStream(wire, 8 * 1024) : wire;
+				// The reader may stop early or close the stream; either way the rest is read here so
+				// the connection can be reused.
+				T value = reader.read(new FilterInputStream(body) {
+					@Override
+					public void close() {
+						// closed below
+					}
+				});
+				drain(body);
+				return new Response<T>(value, false, received);
+			}
+			finally {
+				wire.close();
+				bytesTransferred.addAndGet(wire.count);
+			}
+		}
+
+		// Drain the error body too, otherwise the connection cannot be reused.
+		InputStream error = connection.getErrorStream();
+		if (error != null) {
+			try {
+				drain(error);
+			}
+			finally {
+				error.close();
+			}
+		}
+		if (status >= 400 && status < 500 && status != 429) {
+			throw new FileNotFoundException("HTTP " + status + " from " + url);
+		}
+		throw new IOException("HTTP " + status + " from " + url);
+	}
+
+	private static void drain(InputStream in) throws IOException {
+		byte[] chunk = new byte[8 * 1024];
+		while (in.read(chunk) != -1) {
+			// discard
+		}
+	}
+
+	private void backoff(int attempt) throws IOException {
+		long ceiling = retryBaseMillis << Math.min(attempt - 2, 10);
+		try {
+			Thread.sleep(ThreadLocalRandom.current().nextLong(ceiling + 1));
+		}
+		catch (InterruptedException iex) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while retrying", iex);
+		}
+	}
+
+	LatencyRecorder getLatency() {
+		return latency;
+	}
+
+	long getFailures() {
+		return failures.get();
+	}
+
+	long getRetries() {
+		return retries.get();
+	}
+
+	long getHedges() {
+		return hedges.get();
+	}
+
+	/*
+	 * Hedged requests that answered before the request they were backing up.
+	 */
+	long getHedgeWins() {
+		return hedgeWins.get();
+	}
+
+	/*
+	 * Hedges that were due but found every hedge thread busy.
+	 */
+	long getHedgesSkipped() {
+		return hedgesSkipped.get();
+	}
+
+	/*
+	 * Response bytes received on the wire, compressed where the server compressed them.
+	 */
+	long getBytesTransferred() {
+		return bytesTransferred.get();
+	}
+
+	long getNotModified() {
+		return notModified.get();
+	}
+
+	/*
+	 * Share of successful responses that were 304 Not Modified.
+	 */
+	double getNotModifiedRatio() {
+		long total = responses.get();
+		return total == 0 ? 0 : (double) notModified.get() / total;
+	}
+
+	@Override
+	public String toString() {
+		return "FeedClient[" + latency + ", failures=" + failures.get() + ", retries=" + retries.get() + ", hedges="
+				+ hedges.get() + ", hedgeWins=" + hedgeWins.get() + ", hedgesSkipped=" + hedgesSkipped.get()
+				+ ", responses=" + responses.get() + ", notModified=" + notModified.get() + ", bytes="
+				+ bytesTransferred.get() + "]";
+	}
+
+	/**
+	 * Consumes a response body as it arrives.
+	 */
+	interface BodyReader<T> {
+
+		T read(InputStream body) throws IOException;
+	}
+
+	/**
+	 * The ETag and Last-Modified headers of a response, either of which may be missing, to make a
+	 * later request for the same URL conditional.
+	 */
+	static final class Validators {
+
+		private final String etag;
+		private final String lastModified;
+
+		Validators(String etag, String lastModified) {
+			this.etag = etag;
+			this.lastModified = lastModified;
+		}
+
+		String getEtag() {
+			return etag;
+		}
+
+		String getLastModified() {
+			return lastModified;
+		}
+
+		boolean isEmpty() {
+			return etag == null && lastModified == null;
+		}
+	}
+
+	/**
+	 * A successful response: the body as read, or none when the server answered 304 Not Modified,
+	 * and the validators to send next time.
+	 */
+	static final class Response<T> {
+
+		private final T body;
+		private final boolean notModified;
+		private final Validators validators;
+
+		Response(T body, boolean notModified, Validators validators) {
+			this.body = body;
+			this.notModified = notModified;
+			this.validators = validators;
+		}
+
+		T getBody() {
+			return body;
+		}
+
+		boolean isNotModified() {
+			return notModified;
+		}
+
+		Validators getValidators() {
+			return validators;
+		}
+	}
+
+	private static final class CountingInputStream extends FilterInputStream {
+
+		long count;
+
+		CountingInputStream(InputStream in) {
+			super(in);
+		}
+
+		@Override
+		public int read() throws IOException {
+			int b = super.read();
+			if (b != -1) {
+				count++;
+			}
+			return b;
+		}
+
+		@Override
+		public int read(byte[] buffer, int offset, int length) throws IOException {
+			int read = super.read(buffer, offset, length);
+			if (read > 0) {
+				count += read;
+			}
+			return read;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			long skipped = super.skip(n);
+			count += skipped;
+			return skipped;
+		}
+	}
+}
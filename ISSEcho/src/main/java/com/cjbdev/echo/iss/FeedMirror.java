@@ -0,0 +1,371 @@
+package com.cjbdev.echo.iss;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Local mirror of the Spot The Station feed of every location in the speechAssets lists:
+ * <pre>
+ * java -cp target/classes:... com.cjbdev.echo.iss.FeedMirror mirror-directory
+ * </pre>
+ * Feeds are downloaded from {@code mirror.sourceUrl} (NASA by default) by {@code mirror.concurrency}
+ * workers. Each one is parsed and hashed on its passes rather than its bytes, so a feed that only
+ * differs in formatting or publication date counts as unchanged and is left alone on disk. Pass
+ * times are read as UTC for hashing so the hash does not depend on the host's time zone. The
+ * directory then holds:
+ * <pre>
+ * xml_files/&lt;locationId&gt;.xml   the feeds, laid out like NASA's so the directory can be served
+ *                             as feed.baseUrl
+ * index.tsv                   generation, then locationId, content hash, pass count, last change
+ * manifest-&lt;generation&gt;.tsv   what this run changed: added, changed, removed or failed lines
+ *                             with the location id and new hash
+ * manifest-latest.tsv         a copy of the newest manifest
+ * </pre>
+ * Downstream caches read the latest manifest and only drop the locations it names. A location
+ * whose download fails keeps its previous feed. The last {@code mirror.keepManifests} manifests
+ * are kept.
+ */
+public class FeedMirror {
+
+	private static final Logger log = LoggerFactory.getLogger(FeedMirror.class);
+
+	static final String FEEDS = "xml_files";
+	static final String INDEX = "index.tsv";
+	static final String LATEST = "manifest-latest.tsv";
+
+	private final File directory;
+	private final String sourceUrl;
+	private final FeedClient client;
+	private final SightingFeedParser parser;
+	private final int concurrency;
+	private final int keepManifests;
+
+	FeedMirror(File directory, String sourceUrl, FeedClient client, SightingFeedParser parser, int concurrency,
+			int keepManifests) {
+		this.directory = directory;
+		this.sourceUrl = sourceUrl.endsWith("/") ? sourceUrl : sourceUrl + "/";
+		this.client = client;
+		this.parser = parser;
+		this.concurrency = concurrency;
+		this.keepManifests = keepManifests;
+	}
+
+	static FeedMirror fromConfig(File directory) {
+		return new FeedMirror(directory, SkillConfig.getString("mirror.sourceUrl", SightingFeedReader.FEED_URL),
+				FeedClient.fromConfig(), new SightingFeedParser(ZoneId.of("UTC")),
+				SkillConfig.getInt("mirror.concurrency", 4), SkillConfig.getInt("mirror.keepManifests", 50));
+	}
+
+	public static void main(String[] args) throws IOException {
+
+		if (args.length != 1) {
+			throw new IllegalArgumentException("usage: FeedMirror <mirror directory>");
+		}
+		LocationIndex index = LocationIndex.load(new SpaceStationListLoader());
+		FeedMirror mirror = fromConfig(new File(args[0]));
+
+		long start = System.nanoTime();
+		Delta delta = mirror.refresh(SightingSnapshotBuilder.locationIds(index));
+		System.out.println("Generation " + delta.getGeneration() + " in " + (System.nanoTime() - start) / 1000000
+				+ " ms: " + delta.getAdded().size() + " added, " + delta.getChanged().size() + " changed, "
+				+ delta.getRemoved().size() + " removed, " + delta.getFailed().size() + " failed, "
+				+ delta.getUnchanged() + " unchanged");
+		if (!delta.getFailed().isEmpty() && delta.getAdded().isEmpty() && delta.getChanged().isEmpty()
+				&& delta.getUnchanged() == 0) {
+			System.exit(1);
+		}
+	}
+
+	/*
+	 * Bring the mirror up to date for the locations and write the manifest of what changed.
+	 */
+	Delta refresh(List<String> locationIds) throws IOException {
+
+		File feeds = new File(directory, FEEDS);
+		if (!feeds.isDirectory() && !feeds.mkdirs()) {
+			throw new IOException("Could not create " + feeds);
+		}
+
+		Map<String, Entry> previous = new TreeMap<String, Entry>();
+		int generation = readIndex(previous) + 1;
+		Map<String, Entry> current = new TreeMap<String, Entry>();
+		Delta delta = new Delta(generation);
+
+		ExecutorService executor = Executors.newFixedThreadPool(concurrency,
+				new NearbySightingFinder.DaemonThreadFactory("feed-mirror"));
+		try {
+			List<Future<Entry>> futures = new ArrayList<Future<Entry>>(locationIds.size());
+			for (final String locationId : new TreeSet<String>(locationIds)) {
+				final Entry old = previous.get(locationId);
+				futures.add(executor.submit(new Callable<Entry>() {
+					public Entry call() throws IOException {
+						return mirror(locationId, old);
+					}
+				}));
+			}
+
+			for (Future<Entry> future : futures) {
+				Entry entry;
+				try {
+					entry = future.get();
+				}
+				catch (ExecutionException eex) {
+					throw new IOException("Mirror task failed", eex.getCause());
+				}
+				catch (InterruptedException iex) {
+					Thread.currentThread().interrupt();
+					throw new IOException("Interrupted while mirroring", iex);
+				}
+
+				Entry old = previous.remove(entry.locationId);
+				if (entry.failed) {
+					delta.failed.add(entry.locationId);
+					if (old != null) {
+						current.put(entry.locationId, old);
+					}
+				}
+				else {
+					current.put(entry.locationId, entry);
+					if (old == null) {
+						delta.added.add(entry.locationId);
+					}
+					else if (!old.hash.equals(entry.hash)) {
+						delta.changed.add(entry.locationId);
+					}
+					else {
+						delta.unchanged++;
+					}
+				}
+			}
+		}
+		finally {
+			executor.shutdownNow();
+		}
+
+		for (String locationId : previous.keySet()) {
+			delta.removed.add(locationId);
+			File feed = feedFile(locationId);
+			if (feed.exists() && !feed.delete()) {
+				log.warn("Could not delete " + feed);
+			}
+		}
+
+		writeIndex(generation, current);
+		writeManifest(delta, current);
+		pruneManifests(generation);
+		return delta;
+	}
+
+	/*
+	 * Download one feed and replace the mirrored copy if its passes changed. Returns a failed
+	 * entry, not an exception, when the feed cannot be fetched or parsed.
+	 */
+	Entry mirror(String locationId, Entry old) throws IOException {
+
+		byte[] body;
+		String hash;
+		int passes;
+		try {
+			body = client.get(sourceUrl + locationId + ".xml");
+			SightingSchedule schedule = new SightingSchedule(locationId,
+					parser.parseAll(new ByteArrayInputStream(body)), 0);
+			hash = DigestUtils.sha256Hex(schedule.toBytes());
+			passes = schedule.size();
+		}
+		catch (IOException ioex) {
+			log.warn("Could not mirror " + locationId + ": " + ioex.getMessage());
+			return new Entry(locationId, null, 0, 0, true);
+		}
+
+		if (old != null && old.hash.equals(hash) && feedFile(locationId).exists()) {
+			return old;
+		}
+		writeAtomically(feedFile(locationId), body);
+		return new Entry(locationId, hash, passes, System.currentTimeMillis(), false);
+	}
+
+	private File feedFile(String locationId) {
+		return new File(new File(directory, FEEDS), locationId + ".xml");
+	}
+
+	/*
+	 * Reads the previous index into entries and returns its generation, 0 if there is none.
+	 */
+	private int readIndex(Map<String, Entry> entries) throws IOException {
+
+		File file = new File(directory, INDEX);
+		if (!file.exists()) {
+			return 0;
+		}
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+		try {
+			String header = reader.readLine();
+			if (header == null || !header.startsWith("# generation ")) {
+				throw new IOException("Not a mirror index: " + file);
+			}
+			int generation = Integer.parseInt(header.substring("# generation ".length()).trim());
+			String line;
+			while ((line = reader.readLine()) != null) {
+				String[] fields = line.split("\t");
+				if (fields.length == 4) {
+					entries.put(fields[0], new Entry(fields[0], fields[1], Integer.parseInt(fields[2]),
+							Long.parseLong(fields[3]), false));
+				}
+			}
+			return generation;
+		}
+		catch (NumberFormatException nfex) {
+			throw new IOException("Corrupt mirror index: " + file, nfex);
+		}
+		finally {
+			reader.close();
+		}
+	}
+
+	private void writeIndex(int generation, Map<String, Entry> entries) throws IOException {
+		StringBuilder out = new StringBuilder(entries.size() * 100);
+		out.append("# generation ").append(generation).append('\n');
+		for (Entry entry : entries.values()) {
+			out.append(entry.locationId).append('\t').append(entry.hash).append('\t').append(entry.passes)
+					.append('\t').append(entry.changedAt).append('\n');
+		}
+		writeAtomically(new File(directory, INDEX), out.toString().getBytes("UTF-8"));
+	}
+
+	private void writeManifest(Delta delta, Map<String, Entry> entries) throws IOException {
+		StringBuilder out = new StringBuilder();
+		out.append("# generation ").append(delta.generation).append(" previous ").append(delta.generation - 1)
+				.append(" at ").append(Instant.now()).append('\n');
+		appendLines(out, "added", delta.added, entries);
+		appendLines(out, "changed", delta.changed, entries);
+		appendLines(out, "removed", delta.removed, entries);
+		appendLines(out, "failed", delta.failed, entries);
+
+		byte[] bytes = out.toString().getBytes("UTF-8");
+		writeAtomically(new File(directory, "manifest-" + delta.generation + ".tsv"), bytes);
+		writeAtomically(new File(directory, LATEST), bytes);
+	}
+
+	private static void appendLines(StringBuilder out, String kind, List<String> locationIds,
+			Map<String, Entry> entries) {
+		for (String locationId : locationIds) {
+			Entry entry = entries.get(locationId);
+			out.append(kind).append('\t').append(locationId).append('\t')
+					.append(entry == null ? "-" : entry.hash).append('\n');
+		}
+	}
+
+	private void pruneManifests(int generation) {
+		for (int old = generation - keepManifests; old > 0; old--) {
+			File manifest = new File(directory, "manifest-" + old + ".tsv");
+			if (!manifest.exists()) {
+				break;
+			}
+			if (!manifest.delete()) {
+				log.warn("Could not delete " + manifest);
+			}
+		}
+	}
+
+	/*
+	 * Write next to the target and rename over it, so readers never see a partial file.
+	 */
+	private static void writeAtomically(File target, byte[] bytes) throws IOException {
+		File temp = new File(target.getPath() + ".tmp");
+		OutputStream out = new FileOutputStream(temp);
+		try {
+			out.write(bytes);
+		}
+		finally {
+			out.close();
+		}
+		Files.move(temp.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE,
+				StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	/**
+	 * One mirrored location as recorded in the index.
+	 */
+	static final class Entry {
+
+		final String locationId;
+		final String hash;
+		final int passes;
+		final long changedAt;
+		final boolean failed;
+
+		Entry(String locationId, String hash, int passes, long changedAt, boolean failed) {
+			this.locationId = locationId;
+			this.hash = hash;
+			this.passes = passes;
+			this.changedAt = changedAt;
+			this.failed = failed;
+		}
+	}
+
+	/**
+	 * What one refresh changed, by location id.
+	 */
+	static final class Delta {
+
+		private final int generation;
+		private final List<String> added = new ArrayList<String>();
+		private final List<String> changed = new ArrayList<String>();
+		private final List<String> removed = new ArrayList<String>();
+		private final List<String> failed = new ArrayList<String>();
+		private int unchanged;
+
+		Delta(int generation) {
+			this.generation = generation;
+		}
+
+		int getGeneration() {
+			return generation;
+		}
+
+		List<String> getAdded() {
+			return Collections.unmodifiableList(added);
+		}
+
+		List<String> getChanged() {
+			return Collections.unmodifiableList(changed);
+		}
+
+		List<String> getRemoved() {
+			return Collections.unmodifiableList(removed);
+		}
+
+		List<String> getFailed() {
+			return Collections.unmodifiableList(failed);
+		}
+
+		int getUnchanged() {
+			return unchanged;
+		}
+	}
+}
@@ -0,0 +1,109 @@
+package com.cjbdev.echo.iss;
+
+/**
+ * Count-min sketch of how often keys have been seen recently, for the TinyLFU admission decision
+ * in {@link SightingCache}.
+ * <p>
+ * There are {@value #DEPTH} rows of 4-bit counters, two to a byte, each row at least as wide as
+ * the cache. A key's counter in row i is picked by double hashing, {@code h1 + i * h2}, from one
+ * 64-bit mix of its hash code, and its estimate is the smallest of its counters, so collisions
+ * can only make a key look more popular than it is. After ten times the cache size increments
+ * every counter is halved, which ages out keys that were popular once and keeps the counters
+ * from saturating at 15.
+ * <p>
+ * Not thread safe; the cache calls it under its own lock.
+ */
+final class FrequencySketch {
+
+	static final int DEPTH = 4;
+	static final int MAX_COUNT = 15;
+
+	private final byte[] counters;
+	private final int width;
+	private final int widthMask;
+	private final int sampleSize;
+	private final int[] indexes = new int[DEPTH];
+	private int additions;
+
+	FrequencySketch(int maximumSize) {
+		int size = Math.min(Math.max(maximumSize, 16), 1 << 28);
+		width = Integer.highestOneBit(size - 1) << 1;
+		widthMask = width - 1;
+		counters = new byte[DEPTH * width / 2];
+		sampleSize = 10 * Math.max(maximumSize, 1);
+	}
+
+	/*
+	 * Estimated recent count of the key, 0 to 15.
+	 */
+	int frequency(Object key) {
+		locate(key);
+		return smallest();
+	}
+
+	void increment(Object key) {
+		locate(key);
+		int smallest = smallest();
+		if (smallest == MAX_COUNT) {
+			return;
+		}
+		for (int row = 0; row < DEPTH; row++) {
+			if (count(indexes[row]) < MAX_COUNT) {
+				add(indexes[row]);
+			}
+		}
+		if (++additions >= sampleSize) {
+			halve();
+		}
+	}
+
+	/*
+	 * Halve every counter, both nibbles of a byte at once, and count the additions from half of
+	 * what they were.
+	 */
+	private void halve() {
+		for (int i = 0; i < counters.length; i++) {
+			counters[i] = (byte) ((counters[i] & 0xff) >>> 1 & 0x77);
+		}
+		additions >>>= 1;
+	}
+
+	/*
+	 * Fill indexes with the key's counter in each row.
+	 */
+	private void locate(Object key) {
+		long hash = mix(key.hashCode());
+		int h1 = (int) hash;
+		int h2 = (int) (hash >>> 32) | 1;
+		for (int row = 0; row < DEPTH; row++) {
+			indexes[row] = row * width + ((h1 + row * h2) & widthMask);
+		}
+	}
+
+	private int smallest() {
+		int smallest = MAX_COUNT;
+		for (int row = 0; row < DEPTH; row++) {
+			smallest = Math.min(smallest, count(indexes[row]));
+		}
+		return smallest;
+	}
+
+	private int count(int index) {
+		return (counters[index >>> 1] >>> ((index & 1) << 2)) & 0xf;
+	}
+
+	private void add(int index) {
+		counters[index >>> 1] += (byte) (1 << ((index & 1) << 2));
+	}
+
+	/*
+	 * Spread the hash code over 64 bits, so nearby codes land on unrelated counters.
+	 */
+	private static long mix(int hashCode) {
+		long x = hashCode * 0x9e3779b97f4a7c15L;
+		x ^= x >>> 32;
+		x *= 0xd6e8feb86659fd93L;
+		x ^= x >>> 32;
+		return x;
+	}
+}
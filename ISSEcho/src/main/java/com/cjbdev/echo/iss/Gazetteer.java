@@ -0,0 +1,285 @@
+package com.cjbdev.echo.iss;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Town names and positions from a GeoNames dump (e.g. {@code cities1000.txt} from
+ * download.geonames.org), used to place a town the NASA lists do not have.
+ * <p>
+ * The file is tab separated with the name in column 2, the ASCII name in 3, latitude and longitude
+ * in 5 and 6, the country code in 9, the first-level division code in 11, the population in 15 and
+ * the time zone in 18.
+ * Setting: {@code gazetteer.path}.
+ * <p>
+ * Run as a program it also builds the {@link LocationCoordinates} resource by finding each NASA
+ * location in the dump.
+ */
+class Gazetteer {
+
+	private static final Logger log = LoggerFactory.getLogger(Gazetteer.class);
+
+	private static final Comparator<Town> BY_POPULATION = new Comparator<Town>() {
+		public int compare(Town t1, Town t2) {
+			return Long.compare(t2.getPopulation(), t1.getPopulation());
+		}
+	};
+
+	private final Map<String, List<Town>> byName = new HashMap<String, List<Town>>();
+
+	Gazetteer(List<Town> towns) {
+		for (Town town : towns) {
+			add(CityMatcher.normalize(town.getName()), town);
+			String ascii = CityMatcher.normalize(town.getAsciiName());
+			if (!ascii.equals(CityMatcher.normalize(town.getName()))) {
+				add(ascii, town);
+			}
+		}
+		for (List<Town> sameName : byName.values()) {
+			Collections.sort(sameName, BY_POPULATION);
+		}
+	}
+
+	/*
+	 * Gazetteer as configured, or null when no file is configured or it cannot be read.
+	 */
+	static Gazetteer fromConfig() {
+
+		String path = SkillConfig.getString("gazetteer.path", null);
+		if (path == null) {
+			return null;
+		}
+		try {
+			return load(new File(path));
+		}
+		catch (IOException ioex) {
+			log.warn("Could not read gazetteer " + path, ioex);
+			return null;
+		}
+	}
+
+	static Gazetteer load(File file) throws IOException {
+
+		List<Town> towns = new ArrayList<Town>();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				String[] fields = line.split("\t", -1);
+				if (fields.length < 15) {
+					continue;
+				}
+				try {
+					towns.add(new Town(fields[1], fields[2], Double.parseDouble(fields[4]), Double.parseDouble(fields[5]),
+							fields[8], fields[10], fields[14].isEmpty() ? 0 : Long.parseLong(fields[14]),
+							fields.length > 17 ? fields[17] : ""));
+				}
+				catch (NumberFormatException nfex) {
+					log.debug("Skipping gazetteer line " + fields[0]);
+				}
+			}
+		}
+		finally {
+			reader.close();
+		}
+
+		log.info("Loaded " + towns.size() + " towns from " + file);
+		return new Gazetteer(towns);
+	}
+
+	/*
+	 * Towns with the name, most populous first.
+	 */
+	List<Town> find(String name) {
+		List<Town> towns = byName.get(CityMatcher.normalize(name));
+		if (towns == null) {
+			return Collections.emptyList();
+		}
+		return towns;
+	}
+
+	private void add(String name, Town town) {
+		if (name.isEmpty()) {
+			return;
+		}
+		List<Town> sameName = byName.get(name);
+		if (sameName == null) {
+			sameName = new ArrayList<Town>(1);
+			byName.put(name, sameName);
+		}
+		sameName.add(town);
+	}
+
+	/**
+	 * One gazetteer entry.
+	 */
+	static final class Town {
+
+		private final String name;
+		private final String asciiName;
+		private final double latitude;
+		private final double longitude;
+		private final String countryCode;
+		private final String admin1Code;
+		private final long population;
+		private final String timeZone;
+
+		Town(String name, String asciiName, double latitude, double longitude, String countryCode, String admin1Code,
+				long population, String timeZone) {
+			this.name = name;
+			this.asciiName = asciiName;
+			this.latitude = latitude;
+			this.longitude = longitude;
+			this.countryCode = countryCode;
+			this.admin1Code = admin1Code;
+			this.population = population;
+			this.timeZone = timeZone;
+		}
+
+		String getName() {
+			return name;
+		}
+
+		String getAsciiName() {
+			return asciiName;
+		}
+
+		double getLatitude() {
+			return latitude;
+		}
+
+		double getLongitude() {
+			return longitude;
+		}
+
+		String getCountryCode() {
+			return countryCode;
+		}
+
+		String getAdmin1Code() {
+			return admin1Code;
+		}
+
+		long getPopulation() {
+			return population;
+		}
+
+		/*
+		 * IANA time zone such as "America/New_York", empty if the dump has none.
+		 */
+		String getTimeZone() {
+			return timeZone;
+		}
+	}
+
+	/*
+	 * Build step, run by the coordinates profile in the pom:
+	 * java ... Gazetteer cities1000.txt admin1CodesASCII.txt target/classes/speechAssets/COORDINATES
+	 *
+	 * States and countries are matched to a GeoNames first-level division by name (US states,
+	 * England, Scotland, ...) or else to a country by its English name. Each location then takes
+	 * the most populous town of the same name in that division or country, and its time zone.
+	 */
+	public static void main(String[] args) throws IOException {
+
+		if (args.length != 3) {
+			throw new IllegalArgumentException("usage: Gazetteer <cities file> <admin1 codes file> <output file>");
+		}
+
+		Gazetteer gazetteer = load(new File(args[0]));
+		Map<String, String> divisions = loadDivisions(new File(args[1]));
+		Map<String, String> countries = new HashMap<String, String>();
+		for (String code : Locale.getISOCountries()) {
+			countries.put(CityMatcher.normalize(new Locale("", code).getDisplayCountry(Locale.US)), code);
+		}
+
+		LocationIndex index = LocationIndex.load(new SpaceStationListLoader());
+		List<LocationIndex.Region> regions = new ArrayList<LocationIndex.Region>(index.getStates());
+		regions.addAll(index.getCountries());
+
+		// some lists repeat locations of another, e.g. United Kingdom and England; they get a line in each
+		int matched = 0;
+		int total = 0;
+		Writer out = new OutputStreamWriter(new FileOutputStream(args[2]), "UTF-8");
+		try {
+			for (LocationIndex.Region region : regions) {
+				String regionName = CityMatcher.normalize(region.getName());
+				String division = region.isCountry() ? null : divisions.get("US." + regionName);
+				if (division == null) {
+					division = divisions.get(regionName);
+				}
+				String country = division != null ? division.substring(0, 2) : countries.get(regionName);
+				if (country == null) {
+					log.warn("No GeoNames country or division for " + region.getName());
+					continue;
+				}
+
+				for (KeyValuePair location : region.getLocations()) {
+					total++;
+					for (Town town : gazetteer.find(location.getKey())) {
+						if (town.getCountryCode().equals(country)
+								&& (division == null || division.equals(country + "." + town.getAdmin1Code()))) {
+							out.write(LocationCoordinates.regionKey(region) + "," + location.getValue() + ","
+									+ location.getKey() + "," + town.getLatitude() + "," + town.getLongitude() + ","
+									+ town.getTimeZone() + "\n");
+							matched++;
+							break;
+						}
+					}
+				}
+			}
+		}
+		finally {
+			out.close();
+		}
+
+		System.out.println("Wrote coordinates for " + matched + " of " + total + " locations in matched regions to " + args[2]);
+	}
+
+	/*
+	 * Normalized division name, and "US." + name for US states, to GeoNames code such as "US.MD".
+	 */
+	private static Map<String, String> loadDivisions(File file) throws IOException {
+
+		Map<String, String> divisions = new HashMap<String, String>();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				String[] fields = line.split("\t");
+				if (fields.length < 3) {
+					continue;
+				}
+				String name = CityMatcher.normalize(fields[2]);
+				if (fields[0].startsWith("US.")) {
+					// the lists name Washington, D.C. by its code
+					divisions.put("US." + name, fields[0]);
+					divisions.put("US." + CityMatcher.normalize(fields[0].substring(3)), fields[0]);
+				}
+				else if (!divisions.containsKey(name)) {
+					divisions.put(name, fields[0]);
+				}
+			}
+		}
+		finally {
+			reader.close();
+		}
+		return divisions;
+	}
+}
@@ -0,0 +1,98 @@
+package com.cjbdev.echo.iss;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free latency histogram with logarithmic buckets from one millisecond to about two minutes,
+ * each about 15% wide, which is plenty to read percentiles from.
+ */
+class LatencyRecorder {
+
+	private static final double GROWTH = 1.15;
+	private static final int BUCKETS = 84;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong totalNanos = new AtomicLong();
+	private final AtomicLong maxNanos = new AtomicLong();
+
+	void record(long nanos) {
+
+		counts.incrementAndGet(bucket(nanos));
+		count.incrementAndGet();
+		totalNanos.addAndGet(nanos);
+
+		long max;
+		while (nanos > (max = maxNanos.get()) && !maxNanos.compareAndSet(max, nanos)) {
+			// retry
+		}
+	}
+
+	long getCount() {
+		return count.get();
+	}
+
+	double getMeanMillis() {
+		long n = count.get();
+		return n == 0 ? 0 : totalNanos.get() / 1e6 / n;
+	}
+
+	double getMaxMillis() {
+		return maxNanos.get() / 1e6;
+	}
+
+	/*
+	 * Upper bound in milliseconds of the bucket holding the given percentile (0-100), or 0 with
+	 * no samples.
+	 */
+	double getPercentileMillis(double percentile) {
+		return combinedPercentileMillis(percentile, this);
+	}
+
+	/*
+	 * As getPercentileMillis, over the samples of all the recorders together.
+	 */
+	static double combinedPercentileMillis(double percentile, LatencyRecorder... recorders) {
+
+		long n = 0;
+		double max = 0;
+		for (LatencyRecorder recorder : recorders) {
+			n += recorder.getCount();
+			max = Math.max(max, recorder.getMaxMillis());
+		}
+		if (n == 0) {
+			return 0;
+		}
+		long rank = (long) Math.ceil(n * percentile / 100.0);
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			for (LatencyRecorder recorder : recorders) {
+				seen += recorder.counts.get(i);
+			}
+			if (seen >= rank) {
+				return Math.min(upperBoundMillis(i), max);
+			}
+		}
+		return max;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("count=%d, mean=%.1fms, p50=%.1fms, p95=%.1fms, p99=%.1fms, max=%.1fms", getCount(),
+				getMeanMillis(), getPercentileMillis(50), getPercentileMillis(95), getPercentileMillis(99), getMaxMillis());
+	}
+
+	private static int bucket(long nanos) {
+		double millis = nanos / 1e6;
+		if (millis <= 1) {
+			return 0;
+		}
+		int bucket = (int) Math.ceil(Math.log(millis) / Math.log(GROWTH));
+		return Math.min(bucket, BUCKETS - 1);
+	}
+
+	private static double upperBoundMillis(int bucket) {
+		return Math.pow(GROWTH, bucket);
+	}
+}
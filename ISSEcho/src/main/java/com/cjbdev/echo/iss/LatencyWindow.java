@@ -0,0 +1,62 @@
+package com.cjbdev.echo.iss;
+
+/**
+ * Latency of recent calls: two {@link LatencyRecorder}s, the current one and the one before it,
+ * rotated every window. Percentiles are read over both, so they cover between one and two windows
+ * of calls and follow a change in upstream latency within two windows, instead of being held back
+ * by everything recorded since the process started.
+ */
+class LatencyWindow {
+
+	private final long windowMillis;
+
+	private volatile LatencyRecorder current = new LatencyRecorder();
+	private volatile LatencyRecorder previous = new LatencyRecorder();
+	private volatile long rotatedAt;
+
+	LatencyWindow(long windowMillis, long now) {
+		this.windowMillis = Math.max(1, windowMillis);
+		this.rotatedAt = now;
+	}
+
+	void record(long nanos, long now) {
+		rotate(now);
+		current.record(nanos);
+	}
+
+	/*
+	 * Calls recorded in the current and the previous window.
+	 */
+	long getCount(long now) {
+		rotate(now);
+		return previous.getCount() + current.getCount();
+	}
+
+	/*
+	 * Upper bound in milliseconds of the bucket holding the percentile (0-100) of the calls in the
+	 * current and the previous window, or 0 with none.
+	 */
+	double getPercentileMillis(double percentile, long now) {
+		rotate(now);
+		return LatencyRecorder.combinedPercentileMillis(percentile, previous, current);
+	}
+
+	/*
+	 * Start a new window once the current one is over. After a quiet spell of two windows or more
+	 * nothing recent is left, so both recorders start empty.
+	 */
+	private void rotate(long now) {
+		if (now - rotatedAt < windowMillis) {
+			return;
+		}
+		synchronized (this) {
+			long elapsed = now - rotatedAt;
+			if (elapsed < windowMillis) {
+				return;
+			}
+			previous = elapsed < 2 * windowMillis ? current : new LatencyRecorder();
+			current = new LatencyRecorder();
+			rotatedAt = now;
+		}
+	}
+}
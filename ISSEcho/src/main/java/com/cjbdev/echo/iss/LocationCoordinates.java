@@ -0,0 +1,267 @@
+package com.cjbdev.echo.iss;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.time.DateTimeException;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Latitude, longitude and time zone of the NASA sighting locations, with spatial indexes over all
+ * of them and over each state or country.
+ * <p>
+ * Positions come from the {@code speechAssets/COORDINATES} resource, one
+ * {@code region,locationId,name,latitude,longitude,timeZone} line per location of a state or
+ * country list, where the region is its list, e.g. {@code states/Maryland}, and the time zone may
+ * be empty. A location in two lists has a line for each. The lists themselves carry no
+ * coordinates; a build with {@code -Dcoordinates} generates the resource from a GeoNames dump with
+ * {@link Gazetteer#main} (see the {@code coordinates} profile in the pom). Without it every lookup
+ * finds nothing.
+ * <p>
+ * The lines name their region and location, so loading them does not decode the regions of a
+ * {@link LocationSnapshot}.
+ */
+class LocationCoordinates {
+
+	private static final Logger log = LoggerFactory.getLogger(LocationCoordinates.class);
+
+	static final String RESOURCE = "/speechAssets/COORDINATES";
+
+	private final Map<String, Place> byId;
+	private final SpatialIndex<Place> all;
+	private final Map<String, SpatialIndex<Place>> byRegion;
+
+	LocationCoordinates(List<Place> places) {
+
+		byId = new HashMap<String, Place>(places.size() * 2);
+		List<Place> unique = new ArrayList<Place>(places.size());
+		Map<String, List<Place>> grouped = new HashMap<String, List<Place>>();
+		for (Place place : places) {
+			if (!byId.containsKey(place.getLocationId())) {
+				byId.put(place.getLocationId(), place);
+				unique.add(place);
+			}
+			List<Place> group = grouped.get(regionKey(place.getRegion()));
+			if (group == null) {
+				group = new ArrayList<Place>();
+				grouped.put(regionKey(place.getRegion()), group);
+			}
+			group.add(place);
+		}
+
+		all = index(unique);
+		byRegion = new HashMap<String, SpatialIndex<Place>>(grouped.size() * 2);
+		for (Map.Entry<String, List<Place>> entry : grouped.entrySet()) {
+			byRegion.put(entry.getKey(), index(entry.getValue()));
+		}
+	}
+
+	/*
+	 * Coordinates for the locations in the index, empty if the resource is missing.
+	 */
+	static LocationCoordinates load(LocationIndex index) {
+
+		InputStream in = LocationCoordinates.class.getResourceAsStream(RESOURCE);
+		if (in == null) {
+			log.warn("No " + RESOURCE + " on the classpath, nearby, predicted and gazetteer lookups are disabled;"
+					+ " build with -Dcoordinates");
+			return new LocationCoordinates(Collections.<Place> emptyList());
+		}
+
+		try {
+			return new LocationCoordinates(read(in, index));
+		}
+		catch (IOException ioex) {
+			log.warn("Could not read " + RESOURCE, ioex);
+			return new LocationCoordinates(Collections.<Place> emptyList());
+		}
+		finally {
+			try {
+				in.close();
+			}
+			catch (IOException ioex) {
+				log.debug("Could not close " + RESOURCE, ioex);
+			}
+		}
+	}
+
+	/*
+	 * The lines of regions the index has. Only the regions' names are looked at, not their
+	 * locations.
+	 */
+	static List<Place> read(InputStream in, LocationIndex index) throws IOException {
+
+		Map<String, LocationIndex.Region> regions = new HashMap<String, LocationIndex.Region>();
+		for (LocationIndex.Region region : index.getStates()) {
+			regions.put(regionKey(region), region);
+		}
+		for (LocationIndex.Region region : index.getCountries()) {
+			regions.put(regionKey(region), region);
+		}
+
+		List<Place> places = new ArrayList<Place>();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(in, "UTF-8"));
+		String line;
+		int skipped = 0;
+		while ((line = reader.readLine()) != null) {
+			String[] fields = line.split(",", -1);
+			LocationIndex.Region region = fields.length == 6 ? regions.get(fields[0]) : null;
+			if (region == null) {
+				skipped++;
+				continue;
+			}
+			try {
+				places.add(new Place(region, new KeyValuePair(fields[2], fields[1]), Double.parseDouble(fields[3]),
+						Double.parseDouble(fields[4]), fields[5].isEmpty() ? null : zone(fields[5])));
+			}
+			catch (NumberFormatException nfex) {
+				skipped++;
+			}
+		}
+
+		log.info("Loaded coordinates for " + places.size() + " locations of " + regions.size() + " regions, skipped "
+				+ skipped + " lines");
+		return places;
+	}
+
+	/*
+	 * The region's list under speechAssets, e.g. "states/Georgia" or "countries/Georgia".
+	 */
+	static String regionKey(LocationIndex.Region region) {
+		return (region.isCountry() ? "countries/" : "states/") + region.getFileName();
+	}
+
+	boolean isEmpty() {
+		return all.size() == 0;
+	}
+
+	int size() {
+		return all.size();
+	}
+
+	Place find(String locationId) {
+		return byId.get(locationId);
+	}
+
+	/*
+	 * Time zone the location's feed gives its times in, or the fallback if it is not known.
+	 */
+	ZoneId zoneOf(String locationId, ZoneId fallback) {
+		Place place = byId.get(locationId);
+		return place != null && place.getZone() != null ? place.getZone() : fallback;
+	}
+
+	/*
+	 * The location closest to the position anywhere, or null.
+	 */
+	SpatialIndex.Neighbor<Place> nearest(double latitude, double longitude) {
+		return all.nearest(latitude, longitude);
+	}
+
+	/*
+	 * Up to k locations of the region closest to the position, closest first.
+	 */
+	List<SpatialIndex.Neighbor<Place>> nearest(LocationIndex.Region region, double latitude, double longitude, int k) {
+		SpatialIndex<Place> index = byRegion.get(regionKey(region));
+		if (index == null) {
+			return Collections.emptyList();
+		}
+		return index.nearest(latitude, longitude, k);
+	}
+
+	/*
+	 * The location of the region closest to any of the towns, if within maxKm. Towns are
+	 * gazetteer candidates for one spoken name; the one nearest the region is most likely meant.
+	 */
+	SpatialIndex.Neighbor<Place> nearestTo(LocationIndex.Region region, List<Gazetteer.Town> towns, double maxKm) {
+
+		SpatialIndex.Neighbor<Place> best = null;
+		for (Gazetteer.Town town : towns) {
+			List<SpatialIndex.Neighbor<Place>> found = nearest(region, town.getLatitude(), town.getLongitude(), 1);
+			if (!found.isEmpty() && (best == null || found.get(0).getDistanceKm() < best.getDistanceKm())) {
+				best = found.get(0);
+			}
+		}
+		return best != null && best.getDistanceKm() <= maxKm ? best : null;
+	}
+
+	private static ZoneId zone(String id) {
+		try {
+			return ZoneId.of(id.trim());
+		}
+		catch (DateTimeException dtex) {
+			log.debug("Unknown time zone " + id);
+			return null;
+		}
+	}
+
+	private static SpatialIndex<Place> index(List<Place> places) {
+		double[] latitudes = new double[places.size()];
+		double[] longitudes = new double[places.size()];
+		for (int i = 0; i < places.size(); i++) {
+			latitudes[i] = places.get(i).getLatitude();
+			longitudes[i] = places.get(i).getLongitude();
+		}
+		return new SpatialIndex<Place>(places, latitudes, longitudes);
+	}
+
+	/**
+	 * A NASA location with its region, position and, if known, time zone.
+	 */
+	static final class Place {
+
+		private final LocationIndex.Region region;
+		private final KeyValuePair location;
+		private final double latitude;
+		private final double longitude;
+		private final ZoneId zone;
+
+		Place(LocationIndex.Region region, KeyValuePair location, double latitude, double longitude, ZoneId zone) {
+			this.region = region;
+			this.location = location;
+			this.latitude = latitude;
+			this.longitude = longitude;
+			this.zone = zone;
+		}
+
+		LocationIndex.Region getRegion() {
+			return region;
+		}
+
+		KeyValuePair getLocation() {
+			return location;
+		}
+
+		String getName() {
+			return location.getKey();
+		}
+
+		String getLocationId() {
+			return location.getValue();
+		}
+
+		double getLatitude() {
+			return latitude;
+		}
+
+		double getLongitude() {
+			return longitude;
+		}
+
+		/*
+		 * Null if the resource does not give one.
+		 */
+		ZoneId getZone() {
+			return zone;
+		}
+	}
+}
@@ -0,0 +1,332 @@
+package com.cjbdev.echo.iss;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * In-memory index over the state, country and location lists shipped in speechAssets.
+ * <p>
+ * The index is built once when the speechlet class is loaded so that intent handling never
+ * touches the classpath. Name lookups are case-insensitive, ignore surrounding whitespace and
+ * do not allocate, which keeps them cheap on every request.
+ */
+final class LocationIndex {
+
+	static final String STATE_DIR = "/speechAssets/states/";
+	static final String COUNTRY_DIR = "/speechAssets/countries/";
+
+	private final List<Region> states;
+	private final List<Region> countries;
+	private final NameTable<Region> stateTable;
+	private final NameTable<Region> countryTable;
+	private final Map<Character, List<Region>> statesByLetter;
+	private final Map<Character, List<Region>> countriesByLetter;
+
+	LocationIndex(List<Region> states, List<Region> countries) {
+		this.states = Collections.unmodifiableList(new ArrayList<Region>(states));
+		this.countries = Collections.unmodifiableList(new ArrayList<Region>(countries));
+		this.stateTable = new NameTable<Region>(this.states);
+		this.countryTable = new NameTable<Region>(this.countries);
+		this.statesByLetter = groupByLetter(this.states);
+		this.countriesByLetter = groupByLetter(this.countries);
+	}
+
+	/*
+	 * Build the index from the binary snapshot produced at build time, falling back to the
+	 * text lists when the snapshot is not on the classpath.
+	 */
+	static LocationIndex load(SpaceStationListLoader loader) {
+
+		LocationIndex index = LocationSnapshot.load();
+		if (index != null) {
+			return index;
+		}
+		return loadText(loader);
+	}
+
+	/*
+	 * Build the index by parsing the text lists through the given loader.
+	 */
+	static LocationIndex loadText(SpaceStationListLoader loader) {
+
+		List<Region> states = new ArrayList<Region>();
+		for (KeyValuePair pair : loader.loadStateInfo()) {
+			states.add(new Region(pair.getKey(), pair.getValue(), false,
+					loader.loadLocationInfo(STATE_DIR + pair.getValue())));
+		}
+
+		List<Region> countries = new ArrayList<Region>();
+		for (KeyValuePair pair : loader.loadCountryInfo()) {
+			countries.add(new Region(pair.getKey(), pair.getValue(), true,
+					loader.loadLocationInfo(COUNTRY_DIR + pair.getValue())));
+		}
+
+		return new LocationIndex(states, countries);
+	}
+
+	Region findState(String name) {
+		return stateTable.get(name);
+	}
+
+	Region findCountry(String name) {
+		return countryTable.get(name);
+	}
+
+	List<Region> getStates() {
+		return states;
+	}
+
+	List<Region> getCountries() {
+		return countries;
+	}
+
+	List<Region> getStatesStartingWith(char letter) {
+		return byLetter(statesByLetter, letter);
+	}
+
+	List<Region> getCountriesStartingWith(char letter) {
+		return byLetter(countriesByLetter, letter);
+	}
+
+	int getLocationCount() {
+		int count = 0;
+		for (Region region : states) {
+			count += region.getLocationCount();
+		}
+		for (Region region : countries) {
+			count += region.getLocationCount();
+		}
+		return count;
+	}
+
+	/**
+	 * A state or country together with the locations NASA publishes sightings for.
+	 * <p>
+	 * Regions read from the binary snapshot keep their locations encoded until first use, so a
+	 * cold container only materializes the regions it is actually asked about.
+	 */
+	static final class Region implements Named {
+
+		private final String name;
+		private final String fileName;
+		private final boolean country;
+		private final LocationSnapshot.Block block;
+		private volatile Locations locations;
+
+		Region(String name, String fileName, boolean country, List<KeyValuePair> locations) {
+			this.name = name;
+			this.fileName = fileName;
+			this.country = country;
+			this.block = null;
+			this.locations = new Locations(locations);
+		}
+
+		Region(String name, String fileName, boolean country, LocationSnapshot.Block block) {
+			this.name = name;
+			this.fileName = fileName;
+			this.country = country;
+			this.block = block;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		String getFileName() {
+			return fileName;
+		}
+
+		boolean isCountry() {
+			return country;
+		}
+
+		KeyValuePair findLocation(String locationName) {
+			return locations().table.get(locationName);
+		}
+
+		List<KeyValuePair> getLocations() {
+			return locations().sorted;
+		}
+
+		List<KeyValuePair> getLocationsStartingWith(char letter) {
+			return byLetter(locations().byLetter, letter);
+		}
+
+		int getLocationCount() {
+			if (block != null) {
+				return block.getCount();
+			}
+			return locations.sorted.size();
+		}
+
+		/*
+		 * Whether the locations have been decoded yet; always true for a region built from a list.
+		 */
+		boolean isDecoded() {
+			return locations != null;
+		}
+
+		private Locations locations() {
+			Locations decoded = locations;
+			if (decoded == null) {
+				synchronized (this) {
+					decoded = locations;
+					if (decoded == null) {
+						decoded = new Locations(block.decode());
+						locations = decoded;
+					}
+				}
+			}
+			return decoded;
+		}
+	}
+
+	/**
+	 * Lookup structures over the locations of one region.
+	 */
+	private static final class Locations {
+
+		final List<KeyValuePair> sorted;
+		final NameTable<KeyValuePair> table;
+		final Map<Character, List<KeyValuePair>> byLetter;
+
+		Locations(List<KeyValuePair> locations) {
+
+			// The sort is stable, so a duplicate name still resolves to its last entry in file
+			// order, as the old linear scan did.
+			List<KeyValuePair> ordered = new ArrayList<KeyValuePair>(locations);
+			Collections.sort(ordered, new Comparator<KeyValuePair>() {
+				public int compare(KeyValuePair a, KeyValuePair b) {
+					return a.getKey().compareToIgnoreCase(b.getKey());
+				}
+			});
+			this.sorted = Collections.unmodifiableList(ordered);
+			this.table = new NameTable<KeyValuePair>(this.sorted);
+			this.byLetter = groupByLetter(this.sorted);
+		}
+	}
+
+	/**
+	 * Anything that can be stored in a {@link NameTable}.
+	 */
+	interface Named {
+		String getName();
+	}
+
+	private static <T> Map<Character, List<T>> groupByLetter(List<T> items) {
+
+		Map<Character, List<T>> grouped = new HashMap<Character, List<T>>();
+		for (T item : items) {
+			String name = nameOf(item);
+			if (name.isEmpty()) {
+				continue;
+			}
+			Character letter = Character.valueOf(Character.toLowerCase(name.charAt(0)));
+			List<T> group = grouped.get(letter);
+			if (group == null) {
+				group = new ArrayList<T>();
+				grouped.put(letter, group);
+			}
+			group.add(item);
+		}
+
+		Map<Character, List<T>> result = new HashMap<Character, List<T>>();
+		for (Map.Entry<Character, List<T>> entry : grouped.entrySet()) {
+			result.put(entry.getKey(), Collections.unmodifiableList(entry.getValue()));
+		}
+		return result;
+	}
+
+	private static <T> List<T> byLetter(Map<Character, List<T>> grouped, char letter) {
+		List<T> group = grouped.get(Character.valueOf(Character.toLowerCase(letter)));
+		if (group == null) {
+			return Collections.emptyList();
+		}
+		return group;
+	}
+
+	private static String nameOf(Object item) {
+		if (item instanceof KeyValuePair) {
+			return ((KeyValuePair) item).getKey();
+		}
+		return ((Named) item).getName();
+	}
+
+	/**
+	 * Open addressing hash table keyed by case-folded name. Lookups hash and compare the
+	 * probe string in place, so no lower-cased or trimmed copy is ever created.
+	 */
+	static final class NameTable<T> {
+
+		private final String[] keys;
+		private final Object[] values;
+		private final int mask;
+
+		NameTable(List<T> items) {
+
+			int capacity = 16;
+			while (capacity < items.size() * 2) {
+				capacity <<= 1;
+			}
+			keys = new String[capacity];
+			values = new Object[capacity];
+			mask = capacity - 1;
+
+			for (T item : items) {
+				put(nameOf(item).trim(), item);
+			}
+		}
+
+		private void put(String key, T value) {
+			int slot = hash(key, 0, key.length()) & mask;
+			while (keys[slot] != null) {
+				if (keys[slot].equalsIgnoreCase(key)) {
+					break;
+				}
+				slot = (slot + 1) & mask;
+			}
+			keys[slot] = key;
+			values[slot] = value;
+		}
+
+		@SuppressWarnings("unchecked")
+		T get(String name) {
+
+			if (name == null) {
+				return null;
+			}
+
+			int start = 0;
+			int end = name.length();
+			while (start < end && Character.isWhitespace(name.charAt(start))) {
+				start++;
+			}
+			while (end > start && Character.isWhitespace(name.charAt(end - 1))) {
+				end--;
+			}
+			int length = end - start;
+
+			int slot = hash(name, start, end) & mask;
+			String key;
+			while ((key = keys[slot]) != null) {
+				if (key.length() == length && key.regionMatches(true, 0, name, start, length)) {
+					return (T) values[slot];
+				}
+				slot = (slot + 1) & mask;
+			}
+			return null;
+		}
+
+		private static int hash(String s, int start, int end) {
+			int h = 0;
+			for (int i = start; i < end; i++) {
+				h = 31 * h + Character.toLowerCase(Character.toUpperCase(s.charAt(i)));
+			}
+			return h ^ (h >>> 16);
+		}
+	}
+}
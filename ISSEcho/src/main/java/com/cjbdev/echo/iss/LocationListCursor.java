@@ -0,0 +1,89 @@
+package com.cjbdev.echo.iss;
+
+import com.amazon.speech.speechlet.Session;
+
+/**
+ * Where a paged location listing stopped, kept in the Alexa session so "more" carries on with the
+ * next page: the state or country, the first letter the list was shortened to, if any, and the
+ * offset of the next location in the region's sorted list.
+ */
+final class LocationListCursor {
+
+	static final String REGION = "list.region";
+	static final String COUNTRY = "list.country";
+	static final String LETTER = "list.letter";
+	static final String OFFSET = "list.offset";
+
+	private final String region;
+	private final boolean country;
+	private final Character letter;
+	private final int offset;
+
+	LocationListCursor(String region, boolean country, Character letter, int offset) {
+		this.region = region;
+		this.country = country;
+		this.letter = letter;
+		this.offset = offset;
+	}
+
+	/*
+	 * The session's cursor, or null if no listing is in progress or the attributes are not one.
+	 */
+	static LocationListCursor read(Session session) {
+
+		Object region = session.getAttribute(REGION);
+		Object offset = session.getAttribute(OFFSET);
+		if (!(region instanceof String) || offset == null) {
+			return null;
+		}
+
+		int next;
+		try {
+			next = Integer.parseInt(offset.toString());
+		}
+		catch (NumberFormatException nfex) {
+			return null;
+		}
+		if (next < 0) {
+			return null;
+		}
+
+		Object letter = session.getAttribute(LETTER);
+		return new LocationListCursor((String) region, "true".equals(session.getAttribute(COUNTRY)),
+				letter instanceof String && !((String) letter).isEmpty() ? Character.valueOf(((String) letter).charAt(0))
+						: null, next);
+	}
+
+	void write(Session session) {
+		session.setAttribute(REGION, region);
+		session.setAttribute(COUNTRY, Boolean.toString(country));
+		session.setAttribute(LETTER, letter == null ? "" : letter.toString());
+		session.setAttribute(OFFSET, Integer.toString(offset));
+	}
+
+	static void clear(Session session) {
+		session.removeAttribute(REGION);
+		session.removeAttribute(COUNTRY);
+		session.removeAttribute(LETTER);
+		session.removeAttribute(OFFSET);
+	}
+
+	String getRegion() {
+		return region;
+	}
+
+	boolean isCountry() {
+		return country;
+	}
+
+	/*
+	 * Null for a listing of the whole region.
+	 */
+	Character getLetter() {
+		return letter;
+	}
+
+	int getOffset() {
+		return offset;
+	}
+}
@@ -0,0 +1,375 @@
+package com.cjbdev.echo.iss;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Compact binary form of the speechAssets state and country lists.
+ * <p>
+ * The snapshot is written during the Maven build (see the {@code location-snapshot} execution in
+ * the pom) and read at class load instead of parsing the 200 or so text files. Layout, all
+ * integers big-endian:
+ * <pre>
+ * int    magic "ISSL", int version
+ * int    string count, then per string: unsigned short byte length, UTF-8 bytes
+ * int    state count, int country count
+ *        per region: int name index, int file name index, int location count,
+ *                    int block offset, int block length
+ *        location blocks
+ * </pre>
+ * Each block holds the region's locations sorted by name. Names and location ids are front-coded
+ * against the previous entry: a varint shared-prefix length, a varint suffix length and the suffix
+ * bytes. Blocks are only decoded when a region is first used.
+ */
+final class LocationSnapshot {
+
+	private static final Logger log = LoggerFactory.getLogger(LocationSnapshot.class);
+
+	static final String RESOURCE = "/speechAssets/locations.bin";
+
+	private static final int MAGIC = 0x4953534C;
+	private static final int VERSION = 1;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private LocationSnapshot() {
+	}
+
+	/*
+	 * Load the snapshot from the classpath, or return null if it is missing or unreadable.
+	 */
+	static LocationIndex load() {
+
+		URL url = LocationSnapshot.class.getResource(RESOURCE);
+		if (url == null) {
+			log.info("No location snapshot on the classpath, using text lists");
+			return null;
+		}
+
+		try {
+			return read(open(url));
+		}
+		catch (IOException ioex) {
+			log.warn("Could not read location snapshot " + url, ioex);
+		}
+		catch (RuntimeException rex) {
+			log.warn("Corrupt location snapshot " + url, rex);
+		}
+		return null;
+	}
+
+	/*
+	 * Map the snapshot read-only when it is a plain file, otherwise read it in one go.
+	 */
+	static ByteBuffer open(URL url) throws IOException {
+
+		if ("file".equals(url.getProtocol())) {
+			try {
+				return map(new File(url.toURI()));
+			}
+			catch (URISyntaxException usex) {
+				throw new IOException(usex);
+			}
+		}
+
+		InputStream in = url.openStream();
+		try {
+			return ByteBuffer.wrap(readFully(in));
+		}
+		finally {
+			in.close();
+		}
+	}
+
+	static ByteBuffer map(File file) throws IOException {
+
+		FileInputStream in = new FileInputStream(file);
+		try {
+			FileChannel channel = in.getChannel();
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		finally {
+			in.close();
+		}
+	}
+
+	static LocationIndex read(ByteBuffer buffer) {
+
+		Cursor cursor = new Cursor(buffer, 0);
+		if (cursor.readInt() != MAGIC) {
+			throw new IllegalStateException("Not a location snapshot");
+		}
+		int version = cursor.readInt();
+		if (version != VERSION) {
+			throw new IllegalStateException("Unsupported location snapshot version " + version);
+		}
+
+		String[] strings = new String[cursor.readInt()];
+		for (int i = 0; i < strings.length; i++) {
+			strings[i] = cursor.readString(cursor.readUnsignedShort());
+		}
+
+		int stateCount = cursor.readInt();
+		int countryCount = cursor.readInt();
+
+		List<LocationIndex.Region> states = new ArrayList<LocationIndex.Region>(stateCount);
+		List<LocationIndex.Region> countries = new ArrayList<LocationIndex.Region>(countryCount);
+		for (int i = 0; i < stateCount + countryCount; i++) {
+			String name = strings[cursor.readInt()];
+			String fileName = strings[cursor.readInt()];
+			int count = cursor.readInt();
+			int offset = cursor.readInt();
+			int length = cursor.readInt();
+			if (offset < 0 || length < 0 || offset + length > buffer.limit()) {
+				throw new IllegalStateException("Location block out of range for " + name);
+			}
+
+			Block block = new Block(buffer, offset, count);
+			if (i < stateCount) {
+				states.add(new LocationIndex.Region(name, fileName, false, block));
+			}
+			else {
+				countries.add(new LocationIndex.Region(name, fileName, true, block));
+			}
+		}
+
+		return new LocationIndex(states, countries);
+	}
+
+	static void write(LocationIndex index, OutputStream out) throws IOException {
+
+		List<LocationIndex.Region> regions = new ArrayList<LocationIndex.Region>();
+		regions.addAll(index.getStates());
+		regions.addAll(index.getCountries());
+
+		Map<String, Integer> strings = new LinkedHashMap<String, Integer>();
+		ByteArrayOutputStream blocks = new ByteArrayOutputStream();
+		int[][] regionFields = new int[regions.size()][];
+
+		for (int i = 0; i < regions.size(); i++) {
+			LocationIndex.Region region = regions.get(i);
+			int start = blocks.size();
+			writeBlock(region.getLocations(), blocks);
+			regionFields[i] = new int[] { intern(strings, region.getName()), intern(strings, region.getFileName()),
+					region.getLocations().size(), start, blocks.size() - start };
+		}
+
+		ByteArrayOutputStream header = new ByteArrayOutputStream();
+		DataOutputStream data = new DataOutputStream(header);
+		data.writeInt(MAGIC);
+		data.writeInt(VERSION);
+		data.writeInt(strings.size());
+		for (String s : strings.keySet()) {
+			byte[] bytes = s.getBytes(UTF8);
+			data.writeShort(bytes.length);
+			data.write(bytes);
+		}
+		data.writeInt(index.getStates().size());
+		data.writeInt(index.getCountries().size());
+
+		int blockBase = header.size() + regions.size() * 20;
+		for (int[] fields : regionFields) {
+			data.writeInt(fields[0]);
+			data.writeInt(fields[1]);
+			data.writeInt(fields[2]);
+			data.writeInt(blockBase + fields[3]);
+			data.writeInt(fields[4]);
+		}
+		data.flush();
+
+		header.writeTo(out);
+		blocks.writeTo(out);
+		out.flush();
+	}
+
+	private static int intern(Map<String, Integer> strings, String s) {
+		Integer index = strings.get(s);
+		if (index == null) {
+			index = Integer.valueOf(strings.size());
+			strings.put(s, index);
+		}
+		return index.intValue();
+	}
+
+	private static void writeBlock(List<KeyValuePair> locations, ByteArrayOutputStream out) {
+
+		byte[] prevName = new byte[0];
+		byte[] prevId = new byte[0];
+		for (KeyValuePair location : locations) {
+			byte[] name = location.getKey().getBytes(UTF8);
+			byte[] id = location.getValue().getBytes(UTF8);
+			writeFrontCoded(prevName, name, out);
+			writeFrontCoded(prevId, id, out);
+			prevName = name;
+			prevId = id;
+		}
+	}
+
+	private static void writeFrontCoded(byte[] prev, byte[] current, ByteArrayOutputStream out) {
+		int shared = 0;
+		int max = Math.min(prev.length, current.length);
+		while (shared < max && prev[shared] == current[shared]) {
+			shared++;
+		}
+		writeVarInt(shared, out);
+		writeVarInt(current.length - shared, out);
+		out.write(current, shared, current.length - shared);
+	}
+
+	private static void writeVarInt(int value, ByteArrayOutputStream out) {
+		while ((value & ~0x7F) != 0) {
+			out.write((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.write(value);
+	}
+
+	private static byte[] readFully(InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(64 * 1024);
+		byte[] chunk = new byte[16 * 1024];
+		int read;
+		while ((read = in.read(chunk)) != -1) {
+			out.write(chunk, 0, read);
+		}
+		return out.toByteArray();
+	}
+
+	/**
+	 * The still encoded locations of one region.
+	 */
+	static final class Block {
+
+		private final ByteBuffer buffer;
+		private final int offset;
+		private final int count;
+
+		Block(ByteBuffer buffer, int offset, int count) {
+			this.buffer = buffer;
+			this.offset = offset;
+			this.count = count;
+		}
+
+		int getCount() {
+			return count;
+		}
+
+		List<KeyValuePair> decode() {
+
+			List<KeyValuePair> locations = new ArrayList<KeyValuePair>(count);
+			Cursor cursor = new Cursor(buffer, offset);
+			byte[] name = new byte[0];
+			byte[] id = new byte[0];
+			for (int i = 0; i < count; i++) {
+				name = cursor.readFrontCoded(name);
+				id = cursor.readFrontCoded(id);
+				locations.add(new KeyValuePair(new String(name, UTF8), new String(id, UTF8)));
+			}
+			return locations;
+		}
+	}
+
+	/**
+	 * Reads with absolute indexes so the shared buffer's position is never touched.
+	 */
+	private static final class Cursor {
+
+		private final ByteBuffer buffer;
+		private int pos;
+
+		Cursor(ByteBuffer buffer, int pos) {
+			this.buffer = buffer;
+			this.pos = pos;
+		}
+
+		int readInt() {
+			int value = buffer.getInt(pos);
+			pos += 4;
+			return value;
+		}
+
+		int readUnsignedShort() {
+			int value = buffer.getShort(pos) & 0xFFFF;
+			pos += 2;
+			return value;
+		}
+
+		int readVarInt() {
+			int value = 0;
+			int shift = 0;
+			byte b;
+			do {
+				b = buffer.get(pos++);
+				value |= (b & 0x7F) << shift;
+				shift += 7;
+			} while ((b & 0x80) != 0);
+			return value;
+		}
+
+		String readString(int length) {
+			byte[] bytes = new byte[length];
+			readBytes(bytes, 0, length);
+			return new String(bytes, UTF8);
+		}
+
+		byte[] readFrontCoded(byte[] prev) {
+			int shared = readVarInt();
+			int suffix = readVarInt();
+			byte[] bytes = new byte[shared + suffix];
+			System.arraycopy(prev, 0, bytes, 0, shared);
+			readBytes(bytes, shared, suffix);
+			return bytes;
+		}
+
+		private void readBytes(byte[] dst, int off, int len) {
+			for (int i = 0; i < len; i++) {
+				dst[off + i] = buffer.get(pos++);
+			}
+		}
+	}
+
+	/*
+	 * Build step: parse the text lists from the classpath and write the snapshot to args[0].
+	 */
+	public static void main(String[] args) throws IOException {
+
+		if (args.length != 1) {
+			throw new IllegalArgumentException("usage: LocationSnapshot <output file>");
+		}
+
+		LocationIndex index = LocationIndex.loadText(new SpaceStationListLoader());
+		File target = new File(args[0]);
+		File parent = target.getParentFile();
+		if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+			throw new IOException("Could not create " + parent);
+		}
+
+		OutputStream out = new FileOutputStream(target);
+		try {
+			write(index, out);
+		}
+		finally {
+			out.close();
+		}
+
+		System.out.println("Wrote " + index.getStates().size() + " states, " + index.getCountries().size()
+				+ " countries and " + index.getLocationCount() + " locations to " + target + " ("
+				+ target.length() + " bytes)");
+	}
+}
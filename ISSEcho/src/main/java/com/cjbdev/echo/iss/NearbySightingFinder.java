@@ -0,0 +1,180 @@
+package com.cjbdev.echo.iss;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Answers "where near here can I see the station soonest" by looking up the schedules of the
+ * locations closest to a city at the same time and picking the earliest upcoming pass.
+ * <p>
+ * The schedules come from one {@link SightingService#getSchedules} call, so everything the
+ * in-process cache does not hold is read from the shared tier in one batch, and the rest is
+ * loaded in parallel on the service's fetch pool. The lookups share one deadline,
+ * {@code nearby.timeoutMillis} or the request's own {@link Deadline} if that is sooner; whatever
+ * has not answered by then is left out, so the answer costs about as much as the slowest single
+ * lookup that made the deadline. Without {@link LocationCoordinates} only the city itself is
+ * consulted.
+ * <p>
+ * Settings: {@code nearby.count} locations to consult and {@code nearby.timeoutMillis}.
+ */
+class NearbySightingFinder {
+
+	private static final Logger log = LoggerFactory.getLogger(NearbySightingFinder.class);
+
+	private final SightingService service;
+	private final LocationCoordinates coordinates;
+	private final int count;
+	private final long timeoutMillis;
+
+	NearbySightingFinder(SightingService service, LocationCoordinates coordinates, int count, long timeoutMillis) {
+		this.service = service;
+		this.coordinates = coordinates;
+		this.count = count;
+		this.timeoutMillis = timeoutMillis;
+	}
+
+	static NearbySightingFinder fromConfig(SightingService service, LocationCoordinates coordinates) {
+		return new NearbySightingFinder(service, coordinates, SkillConfig.getInt("nearby.count", 5),
+				SkillConfig.getLong("nearby.timeoutMillis", 3000));
+	}
+
+	/*
+	 * The locations of the region to consult for the origin, closest first, starting with the
+	 * origin itself.
+	 */
+	List<Candidate> candidates(LocationIndex.Region region, KeyValuePair origin) {
+
+		LocationCoordinates.Place place = coordinates.find(origin.getValue());
+		if (place == null) {
+			return Collections.singletonList(new Candidate(origin, 0));
+		}
+
+		List<Candidate> candidates = new ArrayList<Candidate>(count);
+		candidates.add(new Candidate(origin, 0));
+		for (SpatialIndex.Neighbor<LocationCoordinates.Place> neighbor : coordinates.nearest(region,
+				place.getLatitude(), place.getLongitude(), count)) {
+			if (candidates.size() < count && !neighbor.getItem().getLocationId().equals(origin.getValue())) {
+				candidates.add(new Candidate(neighbor.getItem().getLocation(), neighbor.getDistanceKm()));
+			}
+		}
+		return candidates;
+	}
+
+	/*
+	 * The earliest pass after now at any of the candidates that answered before the deadline, or
+	 * null if none did or none has a pass coming up.
+	 */
+	Result findSoonest(LocationIndex.Region region, KeyValuePair origin, long now) {
+
+		Deadline deadline = Deadline.current().atMost(timeoutMillis);
+		List<Candidate> candidates = candidates(region, origin);
+		List<String> ids = new ArrayList<String>(candidates.size());
+		for (Candidate candidate : candidates) {
+			ids.add(candidate.getLocation().getValue());
+		}
+
+		Map<String, SightingSchedule> schedules = service.getSchedules(ids, deadline);
+		if (schedules.size() < ids.size()) {
+			log.info("Nearby lookup deadline passed with " + schedules.size() + " of " + ids.size() + " answers");
+		}
+
+		Result soonest = null;
+		for (Candidate candidate : candidates) {
+			SightingSchedule schedule = schedules.get(candidate.getLocation().getValue());
+			Sighting sighting = schedule == null ? null : schedule.next(now);
+			if (sighting != null && (soonest == null || sighting.getTime() < soonest.getSighting().getTime())) {
+				soonest = new Result(candidate, sighting);
+			}
+		}
+
+		if (soonest != null) {
+			soonest.consulted = candidates.size();
+			soonest.answered = schedules.size();
+		}
+		return soonest;
+	}
+
+	/**
+	 * A location to consult and how far it is from the origin.
+	 */
+	static final class Candidate {
+
+		private final KeyValuePair location;
+		private final double distanceKm;
+
+		Candidate(KeyValuePair location, double distanceKm) {
+			this.location = location;
+			this.distanceKm = distanceKm;
+		}
+
+		KeyValuePair getLocation() {
+			return location;
+		}
+
+		double getDistanceKm() {
+			return distanceKm;
+		}
+	}
+
+	/**
+	 * The next pass at one candidate, and how many candidates were consulted and answered.
+	 */
+	static final class Result {
+
+		private final Candidate candidate;
+		private final Sighting sighting;
+		private int consulted;
+		private int answered;
+
+		Result(Candidate candidate, Sighting sighting) {
+			this.candidate = candidate;
+			this.sighting = sighting;
+		}
+
+		KeyValuePair getLocation() {
+			return candidate.getLocation();
+		}
+
+		double getDistanceKm() {
+			return candidate.getDistanceKm();
+		}
+
+		Sighting getSighting() {
+			return sighting;
+		}
+
+		int getConsulted() {
+			return consulted;
+		}
+
+		int getAnswered() {
+			return answered;
+		}
+	}
+
+	/**
+	 * Named daemon threads, so an idle pool never keeps the JVM alive.
+	 */
+	static final class DaemonThreadFactory implements ThreadFactory {
+
+		private final String prefix;
+		private final AtomicInteger counter = new AtomicInteger();
+
+		DaemonThreadFactory(String prefix) {
+			this.prefix = prefix;
+		}
+
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, prefix + "-" + counter.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
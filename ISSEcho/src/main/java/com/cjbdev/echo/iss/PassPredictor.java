@@ -0,0 +1,354 @@
+package com.cjbdev.echo.iss;
+
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Finds the visible passes of a satellite over a place, the way Spot The Station lists them: the
+ * satellite is at least {@code minElevation} above the horizon, lit by the sun, and the sun is far
+ * enough below the observer's horizon ({@code maxSunElevation}) for the sky to be dark.
+ * <p>
+ * The search looks for the satellite above the horizon at most a minute apart, skipping ahead
+ * while it is far below, then walks each horizon pass that is not in daylight in ten second steps
+ * and bisects every visibility change down to a second. The
+ * result carries the same fields the feed does (start, duration, maximum elevation, and elevation
+ * and compass point at the start and the end of the visible part), so it is interchangeable with
+ * a parsed feed.
+ * <p>
+ * Observers sit on the WGS-84 ellipsoid at sea level. The sun comes from the low-precision
+ * Astronomical Almanac series (good to about a hundredth of a degree) and the earth's shadow is
+ * taken as a cylinder, which only misplaces the entry into or exit from shadow by a few seconds.
+ */
+final class PassPredictor {
+
+	private static final double WGS84_A = 6378.137;
+	private static final double WGS84_F = 1 / 298.257223563;
+
+	private static final long COARSE_STEP_MILLIS = 60000;
+	private static final long FINE_STEP_MILLIS = 10000;
+	private static final long RESOLUTION_MILLIS = 1000;
+
+	/*
+	 * Upper bound on how fast the point below the satellite moves across the ground: one orbit in
+	 * about 92 minutes plus the earth's rotation, with some margin.
+	 */
+	private static final double MAX_RATE_DEGREES_PER_MINUTE = 4.5;
+
+	private final Sgp4 sgp4;
+	private final double minElevation;
+	private final double maxSunElevation;
+
+	PassPredictor(Sgp4 sgp4, double minElevation, double maxSunElevation) {
+		this.sgp4 = sgp4;
+		this.minElevation = minElevation;
+		this.maxSunElevation = maxSunElevation;
+	}
+
+	Sgp4 getSgp4() {
+		return sgp4;
+	}
+
+	/*
+	 * Visible passes starting between from and to (epoch millis) over the position, in time
+	 * order, with local times in the zone.
+	 */
+	List<Sighting> predict(double latitude, double longitude, long from, long to, ZoneId zone) {
+
+		Observer observer = new Observer(latitude, longitude);
+		Look look = new Look();
+		List<Sighting> sightings = new ArrayList<Sighting>();
+
+		boolean wasUp = elevation(observer, from, look) >= 0;
+		long riseFloor = from;
+		long previous = from;
+		long t = from + COARSE_STEP_MILLIS;
+		while (previous <= to || wasUp) {
+			boolean up = elevation(observer, t, look) >= 0;
+			if (up && !wasUp) {
+				riseFloor = bisectHorizon(observer, previous, t, look);
+			}
+			else if (!up && wasUp) {
+				long set = bisectHorizon(observer, previous, t, look);
+				if (mayBeDark(observer, riseFloor, set, look)) {
+					visibleParts(observer, riseFloor, set, from, to, zone, look, sightings);
+				}
+			}
+			wasUp = up;
+			previous = t;
+			t += up ? COARSE_STEP_MILLIS : skip(observer, t, look);
+		}
+		return sightings;
+	}
+
+	/*
+	 * How far ahead it is safe to look next while the satellite is below the horizon: it cannot
+	 * close the angle between it and the observer's horizon faster than MAX_RATE.
+	 */
+	private long skip(Observer observer, long millis, Look look) {
+		double[] r = look.position;
+		double radius = Math.sqrt(r[0] * r[0] + r[1] * r[1] + r[2] * r[2]);
+		double horizon = Math.toDegrees(Math.acos(Math.min(1, observer.radius / radius)));
+		double gap = look.separation - horizon;
+		return Math.max(COARSE_STEP_MILLIS, (long) (gap / MAX_RATE_DEGREES_PER_MINUTE * 60000));
+	}
+
+	/*
+	 * False when the sun stays too high for the whole horizon pass, given it moves at most a
+	 * quarter of a degree a minute.
+	 */
+	private boolean mayBeDark(Observer observer, long rise, long set, Look look) {
+		double julian = Tle.julianDate(rise);
+		sun(julian, look.sun);
+		double margin = 0.25 * (set - rise) / 60000.0 + 0.5;
+		return sunElevation(observer, look.sun, Sgp4.gmst(julian)) <= maxSunElevation + margin;
+	}
+
+	/*
+	 * Adds the visible stretches of one horizon-to-horizon pass.
+	 */
+	private void visibleParts(Observer observer, long rise, long set, long from, long to, ZoneId zone, Look look,
+			List<Sighting> sightings) {
+
+		long start = -1;
+		double peak = -90;
+		long peakTime = rise;
+		boolean wasVisible = false;
+		for (long t = rise; ; t = Math.min(t + FINE_STEP_MILLIS, set)) {
+			boolean visible = visible(observer, t, look);
+			if (visible && !wasVisible) {
+				start = t == rise ? t : bisectVisibility(observer, t - FINE_STEP_MILLIS, t, look);
+				peak = -90;
+			}
+			if (visible && look.elevation > peak) {
+				peak = look.elevation;
+				peakTime = t;
+			}
+			if (wasVisible && (!visible || t == set)) {
+				long end = visible ? t : bisectVisibility(observer, t - FINE_STEP_MILLIS, t, look);
+				if (start >= from && start <= to && end > start) {
+					sightings.add(sighting(observer, start, end, refinePeak(observer, peakTime, start, end, look),
+							zone, look));
+				}
+			}
+			wasVisible = visible;
+			if (t >= set) {
+				break;
+			}
+		}
+	}
+
+	private Sighting sighting(Observer observer, long start, long end, double peak, ZoneId zone, Look look) {
+
+		look(observer, start, look);
+		int approachElevation = (int) Math.round(look.elevation);
+		int approachDirection = direction(look.azimuth);
+		look(observer, end, look);
+		int departureElevation = (int) Math.round(look.elevation);
+		int departureDirection = direction(look.azimuth);
+
+		return new Sighting(start, zone, (int) ((end - start) / 1000), (int) Math.round(peak), approachElevation,
+				approachDirection, departureElevation, departureDirection);
+	}
+
+	/*
+	 * Highest elevation between start and end, by golden-section search around the best sample;
+	 * elevation has a single maximum over a pass.
+	 */
+	private double refinePeak(Observer observer, long around, long start, long end, Look look) {
+
+		double a = Math.max(start, around - FINE_STEP_MILLIS);
+		double b = Math.min(end, around + FINE_STEP_MILLIS);
+		double ratio = (Math.sqrt(5) - 1) / 2;
+		while (b - a > RESOLUTION_MILLIS) {
+			double c = b - ratio * (b - a);
+			double d = a + ratio * (b - a);
+			if (elevation(observer, (long) c, look) > elevation(observer, (long) d, look)) {
+				b = d;
+			}
+			else {
+				a = c;
+			}
+		}
+		return elevation(observer, (long) ((a + b) / 2), look);
+	}
+
+	/*
+	 * The instant in (before, after] at which the satellite crosses the horizon.
+	 */
+	private long bisectHorizon(Observer observer, long before, long after, Look look) {
+		boolean upBefore = elevation(observer, before, look) >= 0;
+		while (after - before > RESOLUTION_MILLIS) {
+			long mid = (before + after) >>> 1;
+			if ((elevation(observer, mid, look) >= 0) == upBefore) {
+				before = mid;
+			}
+			else {
+				after = mid;
+			}
+		}
+		return after;
+	}
+
+	/*
+	 * The instant in (before, after] at which visibility changes.
+	 */
+	private long bisectVisibility(Observer observer, long before, long after, Look look) {
+		boolean visibleBefore = visible(observer, before, look);
+		while (after - before > RESOLUTION_MILLIS) {
+			long mid = (before + after) >>> 1;
+			if (visible(observer, mid, look) == visibleBefore) {
+				before = mid;
+			}
+			else {
+				after = mid;
+			}
+		}
+		return visibleBefore ? before : after;
+	}
+
+	private boolean visible(Observer observer, long millis, Look look) {
+		look(observer, millis, look);
+		if (look.elevation < minElevation) {
+			return false;
+		}
+		sun(Tle.julianDate(millis), look.sun);
+		return sunElevation(observer, look.sun, look.gmst) <= maxSunElevation && sunlit(look.position, look.sun);
+	}
+
+	private double elevation(Observer observer, long millis, Look look) {
+		look(observer, millis, look);
+		return look.elevation;
+	}
+
+	/*
+	 * Satellite elevation and azimuth (degrees) from the observer at the instant.
+	 */
+	private void look(Observer observer, long millis, Look look) {
+
+		double julian = Tle.julianDate(millis);
+		sgp4.propagate(sgp4.minutesSinceEpoch(millis), look.position, null);
+
+		double theta = Sgp4.gmst(julian);
+		double cos = Math.cos(theta);
+		double sin = Math.sin(theta);
+		double[] r = look.position;
+		double dx = cos * r[0] + sin * r[1] - observer.x;
+		double dy = -sin * r[0] + cos * r[1] - observer.y;
+		double dz = r[2] - observer.z;
+
+		double east = -observer.sinLon * dx + observer.cosLon * dy;
+		double north = -observer.sinLat * observer.cosLon * dx - observer.sinLat * observer.sinLon * dy
+				+ observer.cosLat * dz;
+		double up = observer.cosLat * observer.cosLon * dx + observer.cosLat * observer.sinLon * dy
+				+ observer.sinLat * dz;
+
+		double range = Math.sqrt(dx * dx + dy * dy + dz * dz);
+		double sx = dx + observer.x;
+		double sy = dy + observer.y;
+		double sz = dz + observer.z;
+		double cosSeparation = (sx * observer.x + sy * observer.y + sz * observer.z)
+				/ (Math.sqrt(sx * sx + sy * sy + sz * sz) * observer.radius);
+		look.separation = Math.toDegrees(Math.acos(Math.max(-1, Math.min(1, cosSeparation))));
+		look.gmst = theta;
+		look.elevation = Math.toDegrees(Math.asin(up / range));
+		double azimuth = Math.toDegrees(Math.atan2(east, north));
+		look.azimuth = azimuth < 0 ? azimuth + 360 : azimuth;
+	}
+
+	/*
+	 * Unit vector towards the sun in the mean equator frame of date, which is within an arc
+	 * minute of TEME.
+	 */
+	static void sun(double julian, double[] out) {
+
+		double n = julian - 2451545.0;
+		double meanLongitude = Math.toRadians(280.460 + 0.9856474 * n);
+		double meanAnomaly = Math.toRadians(357.528 + 0.9856003 * n);
+		double eclipticLongitude = meanLongitude + Math.toRadians(1.915) * Math.sin(meanAnomaly)
+				+ Math.toRadians(0.020) * Math.sin(2 * meanAnomaly);
+		double obliquity = Math.toRadians(23.439 - 0.0000004 * n);
+
+		double sinLongitude = Math.sin(eclipticLongitude);
+		out[0] = Math.cos(eclipticLongitude);
+		out[1] = Math.cos(obliquity) * sinLongitude;
+		out[2] = Math.sin(obliquity) * sinLongitude;
+	}
+
+	/*
+	 * Elevation of the sun above the observer's horizon, in degrees. The sun is far enough away
+	 * that the observer's offset from the earth's centre does not matter.
+	 */
+	static double sunElevation(Observer observer, double[] sun, double gmst) {
+		double cos = Math.cos(gmst);
+		double sin = Math.sin(gmst);
+		double x = cos * sun[0] + sin * sun[1];
+		double y = -sin * sun[0] + cos * sun[1];
+		double up = observer.cosLat * observer.cosLon * x + observer.cosLat * observer.sinLon * y
+				+ observer.sinLat * sun[2];
+		return Math.toDegrees(Math.asin(up));
+	}
+
+	/*
+	 * Whether a satellite at the TEME position is outside the earth's cylindrical shadow.
+	 */
+	static boolean sunlit(double[] position, double[] sun) {
+		double along = position[0] * sun[0] + position[1] * sun[1] + position[2] * sun[2];
+		if (along > 0) {
+			return true;
+		}
+		double squared = position[0] * position[0] + position[1] * position[1] + position[2] * position[2];
+		return squared - along * along > WGS84_A * WGS84_A;
+	}
+
+	/*
+	 * Nearest of the sixteen compass points, as an index into Sighting.DIRECTIONS.
+	 */
+	static int direction(double azimuth) {
+		return (int) Math.round(azimuth / 22.5) & 15;
+	}
+
+	/**
+	 * A geodetic position with its earth-fixed coordinates, in kilometres.
+	 */
+	static final class Observer {
+
+		final double sinLat;
+		final double cosLat;
+		final double sinLon;
+		final double cosLon;
+		final double x;
+		final double y;
+		final double z;
+		final double radius;
+
+		Observer(double latitude, double longitude) {
+			double lat = Math.toRadians(latitude);
+			double lon = Math.toRadians(longitude);
+			sinLat = Math.sin(lat);
+			cosLat = Math.cos(lat);
+			sinLon = Math.sin(lon);
+			cosLon = Math.cos(lon);
+
+			double e2 = WGS84_F * (2 - WGS84_F);
+			double n = WGS84_A / Math.sqrt(1 - e2 * sinLat * sinLat);
+			x = n * cosLat * cosLon;
+			y = n * cosLat * sinLon;
+			z = n * (1 - e2) * sinLat;
+			radius = Math.sqrt(x * x + y * y + z * z);
+		}
+	}
+
+	/**
+	 * Scratch state for one search, so stepping through a pass allocates nothing.
+	 */
+	private static final class Look {
+
+		final double[] position = new double[3];
+		final double[] sun = new double[3];
+		double gmst;
+		double elevation;
+		double azimuth;
+		double separation;
+	}
+}
@@ -0,0 +1,266 @@
+package com.cjbdev.echo.iss;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.amazon.speech.speechlet.SpeechletResponse;
+import com.amazon.speech.ui.PlainTextOutputSpeech;
+import com.amazon.speech.ui.Reprompt;
+import com.amazon.speech.ui.SimpleCard;
+import com.amazon.speech.ui.SsmlOutputSpeech;
+
+/**
+ * Responses that depend only on the location lists: welcome, help, goodbye, the unknown
+ * state/country prompts and the state and country lists, whole and for every first letter.
+ * <p>
+ * There are only a few hundred of them, so they are all rendered once when the index is loaded
+ * and the intents are answered with a map lookup. The responses are shared between requests and
+ * must not be modified.
+ */
+final class PrecomputedResponses {
+
+	private static final String STATE_HINT = "<p>You can get a list locations with sighting information within a state by saying "
+			+ "list locations in Maryland or the name of some other state.</p>"
+			+ "<p>Shorten the list by saying list locations in Maryland starting with A or another letter.</p>";
+
+	private static final String COUNTRY_HINT = "<p>You can get a list locations with sighting information within a country by saying "
+			+ "list locations in England or the name of some other country.</p>"
+			+ "<p>Shorten the list by saying list locations in England starting with A or another letter.</p>";
+
+	private final SpeechletResponse welcome;
+	private final SpeechletResponse help;
+	private final SpeechletResponse goodbye;
+
+	private final SpeechletResponse stateUnknown;
+	private final SpeechletResponse stateNoMatch;
+	private final SpeechletResponse stateList;
+	private final Map<Character, SpeechletResponse> stateListByLetter = new HashMap<Character, SpeechletResponse>();
+
+	private final SpeechletResponse countryUnknown;
+	private final SpeechletResponse countryNoMatch;
+	private final SpeechletResponse countryList;
+	private final Map<Character, SpeechletResponse> countryListByLetter = new HashMap<Character, SpeechletResponse>();
+
+	PrecomputedResponses(LocationIndex index) {
+
+		welcome = buildWelcome();
+		help = buildHelp();
+		goodbye = buildGoodbye();
+
+		stateUnknown = prompt("<p>The state or region you specified is unknown.</p>"
+				+ "<p>For a full list of states or regions say list states.</p>"
+				+ "<p>Shorten the list by saying list states starting with A or any other letter.</p>",
+				"For a lists of states or regions say list states.");
+		stateNoMatch = prompt("<p>There does not appear to be any regions matching your criteria.</p>"
+				+ "<p>For a full list of states or regions say list states.</p>"
+				+ "<p>Shorten the list by saying list states starting with A or any other letter.</p>",
+				"For a lists of states or regions say list states.");
+		stateList = buildStateList(index.getStates(), null);
+		for (LocationIndex.Region state : index.getStates()) {
+			char letter = Character.toLowerCase(state.getName().charAt(0));
+			if (!stateListByLetter.containsKey(Character.valueOf(letter))) {
+				stateListByLetter.put(Character.valueOf(letter),
+						buildStateList(index.getStatesStartingWith(letter), Character.valueOf(letter)));
+			}
+		}
+
+		countryUnknown = prompt("<p>The country you specified is unknown.</p>"
+				+ "<p>For a full list of countries say list countries.</p>"
+				+ "<p>Shorten the list by saying list countries starting with A or any other letter.</p>",
+				"For a lists of countries say list countries.");
+		countryNoMatch = prompt("<p>There does not appear to be a country matching your criteria.</p>"
+				+ "<p>For a full list of countries say list countries.</p>"
+				+ "<p>Shorten the list by saying list countries starting with A or any other letter.</p>",
+				"For a lists of countries say list countries.");
+		countryList = buildCountryList(index.getCountries(), null);
+		for (LocationIndex.Region country : index.getCountries()) {
+			char letter = Character.toLowerCase(country.getName().charAt(0));
+			if (!countryListByLetter.containsKey(Character.valueOf(letter))) {
+				countryListByLetter.put(Character.valueOf(letter),
+						buildCountryList(index.getCountriesStartingWith(letter), Character.valueOf(letter)));
+			}
+		}
+	}
+
+	SpeechletResponse getWelcome() {
+		return welcome;
+	}
+
+	SpeechletResponse getHelp() {
+		return help;
+	}
+
+	SpeechletResponse getGoodbye() {
+		return goodbye;
+	}
+
+	SpeechletResponse getStateUnknown() {
+		return stateUnknown;
+	}
+
+	SpeechletResponse getCountryUnknown() {
+		return countryUnknown;
+	}
+
+	/*
+	 * All states, or those starting with the first character of the given slot value.
+	 */
+	SpeechletResponse getStateList(String letter) {
+		return list(letter, stateList, stateListByLetter, stateNoMatch);
+	}
+
+	SpeechletResponse getCountryList(String letter) {
+		return list(letter, countryList, countryListByLetter, countryNoMatch);
+	}
+
+	int size() {
+		return 9 + stateListByLetter.size() + countryListByLetter.size();
+	}
+
+	private static SpeechletResponse list(String letter, SpeechletResponse all,
+			Map<Character, SpeechletResponse> byLetter, SpeechletResponse noMatch) {
+
+		if (letter == null || letter.isEmpty()) {
+			return all;
+		}
+		SpeechletResponse response = byLetter.get(Character.valueOf(Character.toLowerCase(letter.charAt(0))));
+		return response == null ? noMatch : response;
+	}
+
+	private static SpeechletResponse buildStateList(List<LocationIndex.Region> states, Character letter) {
+
+		StringBuilder stateStrBldr = new StringBuilder();
+		StringBuilder cardStrBldr = new StringBuilder();
+		SimpleCard card = new SimpleCard();
+
+		stateStrBldr.append("<speak>");
+		if (letter != null) {
+			char upper = Character.toUpperCase(letter.charValue());
+			stateStrBldr.append("<p>States or regions starting with " + upper + " that have sighting information are:</p>");
+			cardStrBldr.append("States or regions starting with \"" + upper + "\" that have sighting information are:\n");
+			card.setTitle("ISS - State/Region starting with \"" + upper + "\"");
+		}
+		else {
+			stateStrBldr.append("<p>States or regions with sighting location information are:</p>");
+			cardStrBldr.append("States or regions with sighting location information are:\n");
+			card.setTitle("ISS - State/Region List");
+		}
+
+		for (LocationIndex.Region item : states) {
+			stateStrBldr.append("<s>" + item.getName() + "</s>");
+			cardStrBldr.append(item.getName() + "\n");
+		}
+
+		stateStrBldr.append(STATE_HINT);
+		stateStrBldr.append("</speak>");
+		cardStrBldr.append(STATE_HINT.replace("<p>", "").replace("</p>", "\n"));
+		card.setContent(cardStrBldr.toString());
+
+		return SpeechletResponse.newAskResponse(ssml(stateStrBldr.toString()), reprompt("<speak>" + STATE_HINT + "</speak>"), card);
+	}
+
+	private static SpeechletResponse buildCountryList(List<LocationIndex.Region> countries, Character letter) {
+
+		StringBuilder countryStrBldr = new StringBuilder();
+		StringBuilder cardStrBldr = new StringBuilder();
+		SimpleCard card = new SimpleCard();
+
+		countryStrBldr.append("<speak>");
+		if (letter != null) {
+			char upper = Character.toUpperCase(letter.charValue());
+			countryStrBldr.append("<p>Countries starting with " + upper + " that have sighting information are:</p>");
+			cardStrBldr.append("Countries starting with \"" + upper + "\" that have sighting information are:\n");
+			card.setTitle("ISS - Countries starting with \"" + upper + "\"");
+		}
+		else {
+			countryStrBldr.append("<p>Countries with sighting location information are:</p>");
+			cardStrBldr.append("Countries with sighting location information are:\n");
+			card.setTitle("ISS - Country List");
+		}
+
+		for (LocationIndex.Region item : countries) {
+			countryStrBldr.append("<s>" + item.getName() + "</s>");
+			cardStrBldr.append(item.getName() + "\n");
+		}
+
+		countryStrBldr.append(COUNTRY_HINT);
+		countryStrBldr.append("</speak>");
+		cardStrBldr.append(COUNTRY_HINT.replace("<p>", "").replace("</p>", "\n"));
+		card.setContent(cardStrBldr.toString());
+
+		return SpeechletResponse.newAskResponse(ssml(countryStrBldr.toString()), reprompt("<speak>" + COUNTRY_HINT + "</speak>"), card);
+	}
+
+	private static SpeechletResponse buildWelcome() {
+
+		StringBuilder welStrBldr = new StringBuilder();
+		welStrBldr.append("<speak>");
+		welStrBldr.append("<p>Welcome to the International Space Station Sighter.</p>");
+		welStrBldr.append("<p>I provide sighting information for the International Space Station from certain locations around the world.</p>");
+		welStrBldr.append("<p>The space station is visible to the naked eye and is the third brightest object in the sky.</p>");
+		welStrBldr.append("<p>It looks like a fast-moving plane and is easy to spot if you know when and where to look up.</p>");
+		welStrBldr.append("<p>You can get sighting information for locations by saying give me visibilty from Gaithersburg Maryland or another location and state combination.</p>");
+		welStrBldr.append("<p>I can list the locations in a state by saying list locations in Maryland or the name of another state.</p>");
+		welStrBldr.append("<p>Shorten the list by saying list locations in Maryland starting with A or another letter.</p>");
+		welStrBldr.append("<p>For locations outside of the United States saying give me visibility from London England or some other location and country combination.</p>");
+		welStrBldr.append("<p>I can list the locations in a country by saying list locations in England or the name of another country.</p>");
+		welStrBldr.append("<p>Shorten the list by saying list locations in England starting with A or another letter.</p>");
+		welStrBldr.append("<p>For a list of countries with sighting locations say list countries starting with A or another letter.</p>");
+		welStrBldr.append("<p>What would you like to do?</p>");
+		welStrBldr.append("</speak>");
+
+		return SpeechletResponse.newAskResponse(ssml(welStrBldr.toString()), reprompt("<speak>"
+				+ "For a listing of locations in a state say list locations in Maryland or the name of another state."
+				+ "<p>Or for outside the United States try saying list locations in England or the name of another country.</p>"
+				+ "</speak>"));
+	}
+
+	private static SpeechletResponse buildHelp() {
+
+		StringBuilder helpStrBldr = new StringBuilder();
+		helpStrBldr.append("<speak>");
+		helpStrBldr.append("<p>I provide sighting information for the International Space Station from specific locations around the world.</p>");
+		helpStrBldr.append("<p>The space station is visible for at least a 50 mile (80 km) radius around available location.</p>");
+		helpStrBldr.append("<p>If your specific location is not available then pick the closest location to you.</p>");
+		helpStrBldr.append("<p>Locations outside of the United States may be more limited.</p>");
+		helpStrBldr.append("<p>You can get sighting information by saying give me visibility from Gaithersburg Maryland or another location and state combination.</p>");
+		helpStrBldr.append("<p>For more than the next sighting say the next three sightings from Gaithersburg Maryland, sightings this weekend from Gaithersburg Maryland, or sightings after 9 PM from Gaithersburg Maryland.</p>");
+		helpStrBldr.append("<p>You can get a list of locations in a state by saying list locations in Maryland or another state.</p>");
+		helpStrBldr.append("<p>Shorten the list by saying list locations in Maryland starting with A or another letter.</p>");
+		helpStrBldr.append("<p>For locations outside of the United States say give me visibility from London England or some other location and country combination.</p>");
+		helpStrBldr.append("<p>List the locations in a country by saying list locations in England or the name of another country.</p>");
+		helpStrBldr.append("<p>Shorten the list by saying list locations in England starting with A or another letter.</p>");
+		helpStrBldr.append("<p>For a list of countries with sighting locations say list countries starting with A or another letter.</p>");
+		helpStrBldr.append("<p>What would you like to do?</p>");
+		helpStrBldr.append("</speak>");
+
+		return SpeechletResponse.newAskResponse(ssml(helpStrBldr.toString()), reprompt("<speak>"
+				+ "<p>For a listing of locations in a state say list locations in Maryland or the name of another state.</p>"
+				+ "<p>Or for outside the United States try saying list locations in England or the name of another country.</p>"
+				+ "</speak>"));
+	}
+
+	private static SpeechletResponse buildGoodbye() {
+		PlainTextOutputSpeech outputSpeech = new PlainTextOutputSpeech();
+		outputSpeech.setText("Goodbye");
+		return SpeechletResponse.newTellResponse(outputSpeech);
+	}
+
+	private static SpeechletResponse prompt(String paragraphs, String repromptText) {
+		return SpeechletResponse.newAskResponse(ssml("<speak>" + paragraphs + "</speak>"),
+				reprompt("<speak>" + repromptText + "</speak>"));
+	}
+
+	private static SsmlOutputSpeech ssml(String text) {
+		SsmlOutputSpeech speech = new SsmlOutputSpeech();
+		speech.setSsml(text);
+		return speech;
+	}
+
+	private static Reprompt reprompt(String text) {
+		Reprompt reprompt = new Reprompt();
+		reprompt.setOutputSpeech(ssml(text));
+		return reprompt;
+	}
+}
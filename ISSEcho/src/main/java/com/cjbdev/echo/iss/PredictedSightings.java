@@ -0,0 +1,367 @@
+package com.cjbdev.echo.iss;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sighting schedules computed locally with {@link PassPredictor} instead of downloaded, for the
+ * locations {@link LocationCoordinates} has a position for.
+ * <p>
+ * The station's elements ship in the jar as {@code orbit/ISS.tle}, so prediction works without
+ * any network; {@code mvn package -Dtle} replaces them with current ones at build time. The
+ * station reboosts often enough that elements older than a few days drift by minutes, so a
+ * refresh thread checks every fifteen minutes and, once the newest elements are
+ * {@code predict.tleRefreshHours} old, downloads current ones from {@code predict.tleUrl}
+ * (CelesTrak by default). Requests never wait for a download. Downloaded elements are kept in
+ * memory, and also written to {@code predict.tlePath} when that is set, so a restart picks them up;
+ * on Lambda that has to be under {@code /tmp}. The file is re-read when it changes. A refresh
+ * interval of 0 turns the thread off and leaves the file to whatever else keeps it current.
+ * <p>
+ * Elements older than {@code predict.maxTleAgeDays} are not used, and {@link #fetch} returns null
+ * so the caller falls back to the feed. Other settings: {@code predict.days} ahead,
+ * {@code predict.minElevation} and {@code predict.maxSunElevation}.
+ */
+class PredictedSightings {
+
+	private static final Logger log = LoggerFactory.getLogger(PredictedSightings.class);
+
+	static final int ISS_CATALOG_NUMBER = 25544;
+
+	static final String BUNDLED_TLE = "/orbit/ISS.tle";
+
+	static final String DEFAULT_TLE_URL = "https://celestrak.org/NORAD/elements/gp.php?CATNR=25544&FORMAT=TLE";
+
+	static final long CHECK_MILLIS = TimeUnit.MINUTES.toMillis(15);
+
+	private final File tleFile;
+	private final LocationCoordinates coordinates;
+	private final ZoneId zone;
+	private final long maxTleAgeMillis;
+	private final long horizonMillis;
+	private final double minElevation;
+	private final double maxSunElevation;
+	private final FeedClient client;
+	private final String tleUrl;
+	private final long refreshMillis;
+	private final ScheduledExecutorService executor;
+
+	private final AtomicBoolean refreshing = new AtomicBoolean();
+	private volatile PassPredictor predictor;
+	private volatile long loadedModified;
+	private volatile long warnedEpoch;
+
+	PredictedSightings(Tle bundled, File tleFile, LocationCoordinates coordinates, ZoneId zone, long maxTleAgeMillis,
+			long horizonMillis, double minElevation, double maxSunElevation) {
+		this(bundled, tleFile, coordinates, zone, maxTleAgeMillis, horizonMillis, minElevation, maxSunElevation, null,
+				null, 0, null);
+	}
+
+	/*
+	 * With a client, refresh() downloads elements from tleUrl once the newest are refreshMillis
+	 * old; start() runs it on the executor. The file may be null.
+	 */
+	PredictedSightings(Tle bundled, File tleFile, LocationCoordinates coordinates, ZoneId zone, long maxTleAgeMillis,
+			long horizonMillis, double minElevation, double maxSunElevation, FeedClient client, String tleUrl,
+			long refreshMillis, ScheduledExecutorService executor) {
+		this.tleFile = tleFile;
+		this.coordinates = coordinates;
+		this.zone = zone;
+		this.maxTleAgeMillis = maxTleAgeMillis;
+		this.horizonMillis = horizonMillis;
+		this.minElevation = minElevation;
+		this.maxSunElevation = maxSunElevation;
+		this.client = client;
+		this.tleUrl = tleUrl;
+		this.refreshMillis = refreshMillis;
+		this.executor = executor;
+		this.predictor = bundled == null ? null : new PassPredictor(new Sgp4(bundled), minElevation, maxSunElevation);
+	}
+
+	/*
+	 * A started instance, or null when there are no coordinates to predict for.
+	 */
+	static PredictedSightings fromConfig(LocationCoordinates coordinates) {
+		PredictedSightings predicted = fromConfig(coordinates, SkillConfig.getLong("predict.days", 10));
+		if (predicted != null) {
+			predicted.start();
+		}
+		return predicted;
+	}
+
+	/*
+	 * Not started, for callers that refresh when they choose to.
+	 */
+	static PredictedSightings fromConfig(LocationCoordinates coordinates, long days) {
+
+		if (coordinates.isEmpty()) {
+			return null;
+		}
+		String path = SkillConfig.getString("predict.tlePath", null);
+		long refreshHours = SkillConfig.getLong("predict.tleRefreshHours", 12);
+		ScheduledThreadPoolExecutor executor = null;
+		if (refreshHours > 0) {
+			executor = new ScheduledThreadPoolExecutor(1, new NearbySightingFinder.DaemonThreadFactory("tle-refresh"));
+		}
+		return new PredictedSightings(bundled(), path == null ? null : new File(path), coordinates,
+				ZoneId.systemDefault(), TimeUnit.DAYS.toMillis(SkillConfig.getLong("predict.maxTleAgeDays", 3)),
+				TimeUnit.DAYS.toMillis(days),
+				SkillConfig.getInt("predict.minElevation", 10), SkillConfig.getInt("predict.maxSunElevation", -6),
+				executor != null ? FeedClient.fromConfig() : null,
+				SkillConfig.getString("predict.tleUrl", DEFAULT_TLE_URL), TimeUnit.HOURS.toMillis(refreshHours),
+				executor);
+	}
+
+	/*
+	 * The elements shipped in the jar, or null when the resource is missing or unreadable.
+	 */
+	static Tle bundled() {
+
+		InputStream in = PredictedSightings.class.getResourceAsStream(BUNDLED_TLE);
+		if (in == null) {
+			log.warn("No " + BUNDLED_TLE + " resource, predicting only from downloaded elements");
+			return null;
+		}
+		try {
+			try {
+				return find(in);
+			}
+			finally {
+				in.close();
+			}
+		}
+		catch (IOException ioex) {
+			log.warn("Could not read " + BUNDLED_TLE, ioex);
+		}
+		catch (IllegalArgumentException iaex) {
+			log.warn("Could not use elements in " + BUNDLED_TLE, iaex);
+		}
+		return null;
+	}
+
+	/*
+	 * Check the elements now and then every CHECK_MILLIS on the executor, if there is one.
+	 */
+	void start() {
+		if (executor == null) {
+			return;
+		}
+		executor.scheduleWithFixedDelay(new Runnable() {
+			public void run() {
+				try {
+					refresh(System.currentTimeMillis());
+				}
+				catch (RuntimeException rex) {
+					log.warn("Element refresh failed", rex);
+				}
+			}
+		}, 0, CHECK_MILLIS, TimeUnit.MILLISECONDS);
+	}
+
+	void shutdown() {
+		if (executor != null) {
+			executor.shutdownNow();
+		}
+	}
+
+	SightingSchedule fetch(String locationId) {
+		return fetch(locationId, System.currentTimeMillis());
+	}
+
+	/*
+	 * The predicted schedule for the location from now on, or null when it has no coordinates or
+	 * there are no usable elements. Never downloads.
+	 */
+	SightingSchedule fetch(String locationId, long now) {
+
+		LocationCoordinates.Place place = coordinates.find(locationId);
+		if (place == null) {
+			return null;
+		}
+		PassPredictor current = predictor(now);
+		if (current == null) {
+			return null;
+		}
+
+		ZoneId local = place.getZone() != null ? place.getZone() : zone;
+		try {
+			long start = System.currentTimeMillis();
+			List<Sighting> sightings = current.predict(place.getLatitude(), place.getLongitude(), now,
+					now + horizonMillis, local);
+			log.debug("Predicted " + sightings.size() + " passes for " + locationId + " in "
+					+ (System.currentTimeMillis() - start) + " ms");
+			return new SightingSchedule(locationId, sightings, now, local);
+		}
+		catch (IllegalStateException isex) {
+			log.warn("Could not predict passes for " + locationId, isex);
+			return null;
+		}
+	}
+
+	private PassPredictor predictor(long now) {
+
+		PassPredictor current = current();
+		if (current == null) {
+			return null;
+		}
+		long epoch = epochOf(current);
+		if (now - epoch > maxTleAgeMillis) {
+			if (warnedEpoch != epoch) {
+				warnedEpoch = epoch;
+				log.warn("Elements of " + Instant.ofEpochMilli(epoch) + " are "
+						+ TimeUnit.MILLISECONDS.toHours(now - epoch) + " hours old, using the feed");
+			}
+			return null;
+		}
+		return current;
+	}
+
+	/*
+	 * The predictor for the newest elements, after reading the file again if it changed.
+	 */
+	private PassPredictor current() {
+
+		if (tleFile != null) {
+			long modified = tleFile.lastModified();
+			if (modified != loadedModified) {
+				synchronized (this) {
+					if (modified != loadedModified) {
+						loadedModified = modified;
+						PassPredictor loaded = modified == 0 ? null : load();
+						if (loaded != null && (predictor == null || epochOf(loaded) > epochOf(predictor))) {
+							predictor = loaded;
+						}
+					}
+				}
+			}
+		}
+		return predictor;
+	}
+
+	/*
+	 * Download current elements if the newest ones are refreshMillis old, and use them if they
+	 * are newer still, writing them over the file when there is one. Runs on the refresh thread,
+	 * or once up front in the batch job; a call while another is downloading does nothing.
+	 */
+	void refresh(long now) {
+
+		if (client == null) {
+			return;
+		}
+		PassPredictor current = current();
+		if (current != null && now - epochOf(current) <= refreshMillis) {
+			return;
+		}
+		if (!refreshing.compareAndSet(false, true)) {
+			return;
+		}
+		try {
+			byte[] body = client.get(tleUrl);
+			Tle tle = find(new ByteArrayInputStream(body));
+			if (tle == null) {
+				log.warn("No elements for " + ISS_CATALOG_NUMBER + " from " + tleUrl);
+				return;
+			}
+			if (current != null && tle.getEpochMillis() <= epochOf(current)) {
+				log.warn("Elements from " + tleUrl + " are no newer than " + Instant.ofEpochMilli(epochOf(current)));
+				return;
+			}
+			PassPredictor downloaded = new PassPredictor(new Sgp4(tle), minElevation, maxSunElevation);
+			if (tleFile != null) {
+				write(body);
+			}
+			synchronized (this) {
+				predictor = downloaded;
+				if (tleFile != null) {
+					loadedModified = tleFile.lastModified();
+				}
+			}
+			log.info("Downloaded elements of " + Instant.ofEpochMilli(tle.getEpochMillis())
+					+ (tleFile != null ? " to " + tleFile : ""));
+		}
+		catch (IOException ioex) {
+			log.warn("Could not refresh elements from " + tleUrl, ioex);
+		}
+		catch (IllegalArgumentException iaex) {
+			log.warn("Could not use elements from " + tleUrl, iaex);
+		}
+		finally {
+			refreshing.set(false);
+		}
+	}
+
+	/*
+	 * Replace the file in one step, so a concurrent load never reads half of it.
+	 */
+	private void write(byte[] body) throws IOException {
+
+		File directory = tleFile.getAbsoluteFile().getParentFile();
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Could not create " + directory);
+		}
+		File temporary = new File(directory, tleFile.getName() + ".tmp");
+		OutputStream out = new FileOutputStream(temporary);
+		try {
+			out.write(body);
+		}
+		finally {
+			out.close();
+		}
+		Files.move(temporary.toPath(), tleFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	private PassPredictor load() {
+
+		try {
+			InputStream in = new FileInputStream(tleFile);
+			try {
+				Tle tle = find(in);
+				if (tle != null) {
+					log.info("Read elements of " + Instant.ofEpochMilli(tle.getEpochMillis()) + " from " + tleFile);
+					return new PassPredictor(new Sgp4(tle), minElevation, maxSunElevation);
+				}
+				log.warn("No elements for " + ISS_CATALOG_NUMBER + " in " + tleFile);
+			}
+			finally {
+				in.close();
+			}
+		}
+		catch (IOException ioex) {
+			log.warn("Could not read " + tleFile, ioex);
+		}
+		catch (IllegalArgumentException iaex) {
+			log.warn("Could not use elements in " + tleFile, iaex);
+		}
+		return null;
+	}
+
+	private static long epochOf(PassPredictor predictor) {
+		return predictor.getSgp4().getTle().getEpochMillis();
+	}
+
+	private static Tle find(InputStream in) throws IOException {
+		for (Tle tle : Tle.read(in)) {
+			if (tle.getCatalogNumber() == ISS_CATALOG_NUMBER) {
+				return tle;
+			}
+		}
+		return null;
+	}
+}
@@ -0,0 +1,226 @@
+package com.cjbdev.echo.iss;
+
+import java.io.IOException;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps the schedules of the most requested locations in the cache by refreshing them in the
+ * background shortly before they expire, so popular cities do not pay for a fetch on a user's
+ * request.
+ * <p>
+ * Requests are counted per location id and the counts halve every {@code refresh.halfLifeSeconds},
+ * so popularity follows recent traffic. Every {@code refresh.intervalSeconds} the
+ * {@code refresh.top} most requested locations whose cache entry is missing or expires within
+ * {@code refresh.aheadSeconds} are scheduled for a refresh at a random point before the entry
+ * expires (and within the interval), which spreads the fetches out instead of sending them
+ * upstream together.
+ * <p>
+ * A request is counted as saved when it finds a schedule this scheduler fetched, at a time when
+ * the entry it replaced would already have expired or when there was none; that request would
+ * otherwise have waited for a fetch. Each refresh saves at most one request.
+ * <p>
+ * Background threads only make progress while the process runs, so this is for the self-hosted
+ * server and off unless {@code refresh.enabled} is set; a Lambda container is frozen between
+ * invocations.
+ */
+class RefreshScheduler {
+
+	private static final Logger log = LoggerFactory.getLogger(RefreshScheduler.class);
+
+	private final SightingService service;
+	private final ScheduledExecutorService executor;
+	private final int top;
+	private final long intervalMillis;
+	private final long aheadMillis;
+	private final long halfLifeMillis;
+
+	private final ConcurrentHashMap<String, AtomicLong> requests = new ConcurrentHashMap<String, AtomicLong>();
+	private final ConcurrentHashMap<String, Boolean> scheduled = new ConcurrentHashMap<String, Boolean>();
+	private final ConcurrentHashMap<String, Long> refreshedAhead = new ConcurrentHashMap<String, Long>();
+	private volatile long lastDecay = System.currentTimeMillis();
+
+	private final AtomicLong refreshes = new AtomicLong();
+	private final AtomicLong failures = new AtomicLong();
+	private final AtomicLong saved = new AtomicLong();
+
+	RefreshScheduler(SightingService service, ScheduledExecutorService executor, int top, long intervalMillis,
+			long aheadMillis, long halfLifeMillis) {
+		this.service = service;
+		this.executor = executor;
+		this.top = top;
+		this.intervalMillis = intervalMillis;
+		this.aheadMillis = aheadMillis;
+		this.halfLifeMillis = halfLifeMillis;
+	}
+
+	/*
+	 * A started scheduler, or null unless refresh.enabled is set.
+	 */
+	static RefreshScheduler fromConfig(SightingService service) {
+
+		if (!SkillConfig.getBoolean("refresh.enabled", false)) {
+			return null;
+		}
+		ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(SkillConfig.getInt("refresh.threads", 2),
+				new NearbySightingFinder.DaemonThreadFactory("sighting-refresh"));
+		executor.setRemoveOnCancelPolicy(true);
+
+		RefreshScheduler scheduler = new RefreshScheduler(service, executor, SkillConfig.getInt("refresh.top", 50),
+				SkillConfig.getLong("refresh.intervalSeconds", 300) * 1000L,
+				SkillConfig.getLong("refresh.aheadSeconds", 900) * 1000L,
+				SkillConfig.getLong("refresh.halfLifeSeconds", 3600) * 1000L);
+		scheduler.start();
+		return scheduler;
+	}
+
+	void start() {
+		executor.scheduleWithFixedDelay(new Runnable() {
+			public void run() {
+				try {
+					tick(System.currentTimeMillis());
+				}
+				catch (RuntimeException rex) {
+					log.warn("Refresh round failed", rex);
+				}
+			}
+		}, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+	}
+
+	void shutdown() {
+		executor.shutdownNow();
+	}
+
+	/*
+	 * Count a user request for the location, before its schedule is looked up.
+	 */
+	void record(String locationId, long now) {
+
+		AtomicLong count = requests.get(locationId);
+		if (count == null) {
+			AtomicLong created = new AtomicLong();
+			count = requests.putIfAbsent(locationId, created);
+			if (count == null) {
+				count = created;
+			}
+		}
+		count.incrementAndGet();
+
+		Long replacedExpiry = refreshedAhead.get(locationId);
+		if (replacedExpiry != null && now >= replacedExpiry.longValue()
+				&& service.getCache().getExpiry(locationId) > now
+				&& refreshedAhead.remove(locationId, replacedExpiry)) {
+			saved.incrementAndGet();
+		}
+	}
+
+	/*
+	 * One scheduling round: age the counts if due and schedule refreshes for the hottest
+	 * locations that are about to expire.
+	 */
+	void tick(long now) {
+
+		if (now - lastDecay >= halfLifeMillis) {
+			lastDecay = now;
+			for (Map.Entry<String, AtomicLong> entry : requests.entrySet()) {
+				long halved = entry.getValue().get() >> 1;
+				entry.getValue().set(halved);
+				if (halved == 0) {
+					requests.remove(entry.getKey(), entry.getValue());
+				}
+			}
+		}
+
+		int queued = 0;
+		for (String locationId : hottest()) {
+			long expiry = service.getCache().getExpiry(locationId);
+			if (expiry - now > aheadMillis || scheduled.putIfAbsent(locationId, Boolean.TRUE) != null) {
+				continue;
+			}
+			long window = expiry > now ? Math.min(intervalMillis, expiry - now) : intervalMillis;
+			schedule(locationId, ThreadLocalRandom.current().nextLong(Math.max(window, 1)));
+			queued++;
+		}
+		log.info("Scheduled " + queued + " refreshes: " + this);
+	}
+
+	/*
+	 * The most requested locations, most requested first.
+	 */
+	List<String> hottest() {
+
+		PriorityQueue<Map.Entry<String, Long>> heap = new PriorityQueue<Map.Entry<String, Long>>(top + 1,
+				new Comparator<Map.Entry<String, Long>>() {
+					public int compare(Map.Entry<String, Long> a, Map.Entry<String, Long> b) {
+						return a.getValue().compareTo(b.getValue());
+					}
+				});
+		for (Map.Entry<String, AtomicLong> entry : requests.entrySet()) {
+			heap.add(new AbstractMap.SimpleImmutableEntry<String, Long>(entry.getKey(),
+					Long.valueOf(entry.getValue().get())));
+			if (heap.size() > top) {
+				heap.poll();
+			}
+		}
+
+		List<String> hottest = new ArrayList<String>(heap.size());
+		while (!heap.isEmpty()) {
+			hottest.add(0, heap.poll().getKey());
+		}
+		return hottest;
+	}
+
+	private void schedule(final String locationId, long delayMillis) {
+		executor.schedule(new Runnable() {
+			public void run() {
+				try {
+					long replacedExpiry = service.getCache().getExpiry(locationId);
+					service.refresh(locationId);
+					refreshedAhead.put(locationId, Long.valueOf(replacedExpiry));
+					refreshes.incrementAndGet();
+				}
+				catch (IOException ioex) {
+					failures.incrementAndGet();
+					log.warn("Background refresh of " + locationId + " failed: " + ioex.getMessage());
+				}
+				finally {
+					scheduled.remove(locationId);
+				}
+			}
+		}, delayMillis, TimeUnit.MILLISECONDS);
+	}
+
+	long getRefreshes() {
+		return refreshes.get();
+	}
+
+	long getFailures() {
+		return failures.get();
+	}
+
+	/*
+	 * User requests that found a schedule refreshed here instead of waiting for a fetch.
+	 */
+	long getSaved() {
+		return saved.get();
+	}
+
+	@Override
+	public String toString() {
+		return "RefreshScheduler[tracked=" + requests.size() + ", pending=" + scheduled.size() + ", refreshes="
+				+ refreshes.get() + ", failures=" + failures.get() + ", saved=" + saved.get() + "]";
+	}
+}
@@ -0,0 +1,151 @@
+package com.cjbdev.echo.iss;
+
+import java.io.IOException;
+import java.util.Base64;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.amazon.speech.speechlet.Session;
+
+/**
+ * The location a conversation is about, and its schedule, kept in the Alexa session so follow-ups
+ * such as "and the one after that?" or "what about tomorrow?" are answered without resolving the
+ * location again or going to the cache tiers or the feed.
+ * <p>
+ * Alexa sends the session attributes back with every request of the session, so they are kept
+ * small: the location id, its spoken name, the time of the last pass spoken, and the passes still
+ * to come in the schedule's binary form, Base64 encoded. A schedule whose encoding is over
+ * {@code session.maxScheduleBytes} is left out and follow-ups read it from the
+ * {@link SightingService} instead. Setting {@code session.followUps} to false turns this off and
+ * every answer ends the session as before.
+ */
+class SessionSightings {
+
+	private static final Logger log = LoggerFactory.getLogger(SessionSightings.class);
+
+	static final String LOCATION = "sightings.location";
+	static final String PLACE = "sightings.place";
+	static final String CURSOR = "sightings.cursor";
+	static final String SCHEDULE = "sightings.schedule";
+
+	private final int maxScheduleBytes;
+
+	SessionSightings(int maxScheduleBytes) {
+		this.maxScheduleBytes = maxScheduleBytes;
+	}
+
+	/*
+	 * Null when follow-ups are turned off.
+	 */
+	static SessionSightings fromConfig() {
+		if (!SkillConfig.getBoolean("session.followUps", true)) {
+			return null;
+		}
+		return new SessionSightings(SkillConfig.getInt("session.maxScheduleBytes", 1024));
+	}
+
+	/*
+	 * Keep the location and its passes after now. The cursor is the start of the last pass spoken,
+	 * or now if none was.
+	 */
+	void remember(Session session, String locationId, String place, SightingSchedule schedule, long now,
+			long cursor) {
+
+		session.setAttribute(LOCATION, locationId);
+		session.setAttribute(PLACE, place);
+		session.setAttribute(CURSOR, Long.toString(cursor));
+
+		byte[] bytes = schedule.after(now).toBytes();
+		if (bytes.length <= maxScheduleBytes) {
+			session.setAttribute(SCHEDULE, Base64.getEncoder().encodeToString(bytes));
+		}
+		else {
+			log.debug("Schedule of " + locationId + " is " + bytes.length + " bytes, not kept in the session");
+			session.removeAttribute(SCHEDULE);
+		}
+	}
+
+	/*
+	 * Move the cursor to the last pass spoken in a follow-up.
+	 */
+	void advance(Session session, long cursor) {
+		session.setAttribute(CURSOR, Long.toString(cursor));
+	}
+
+	/*
+	 * What the session remembers, or null if it is not about a location yet.
+	 */
+	Remembered recall(Session session) {
+
+		Object locationId = session.getAttribute(LOCATION);
+		Object place = session.getAttribute(PLACE);
+		Object cursor = session.getAttribute(CURSOR);
+		if (!(locationId instanceof String) || !(place instanceof String) || cursor == null) {
+			return null;
+		}
+
+		long cursorTime;
+		try {
+			cursorTime = Long.parseLong(cursor.toString());
+		}
+		catch (NumberFormatException nfex) {
+			return null;
+		}
+
+		SightingSchedule schedule = null;
+		Object encoded = session.getAttribute(SCHEDULE);
+		if (encoded instanceof String) {
+			try {
+				schedule = SightingSchedule.fromBytes(Base64.getDecoder().decode((String) encoded));
+			}
+			catch (IllegalArgumentException iaex) {
+				log.debug("Schedule in the session is not Base64", iaex);
+			}
+			catch (IOException ioex) {
+				log.debug("Schedule in the session cannot be read", ioex);
+			}
+		}
+		return new Remembered((String) locationId, (String) place, cursorTime, schedule);
+	}
+
+	/**
+	 * The session's location, and its schedule if the session could hold it.
+	 */
+	static final class Remembered {
+
+		private final String locationId;
+		private final String place;
+		private final long cursor;
+		private final SightingSchedule schedule;
+
+		Remembered(String locationId, String place, long cursor, SightingSchedule schedule) {
+			this.locationId = locationId;
+			this.place = place;
+			this.cursor = cursor;
+			this.schedule = schedule;
+		}
+
+		String getLocationId() {
+			return locationId;
+		}
+
+		String getPlace() {
+			return place;
+		}
+
+		/*
+		 * Start of the last pass spoken.
+		 */
+		long getCursor() {
+			return cursor;
+		}
+
+		/*
+		 * Null when the schedule was too large for the session.
+		 */
+		SightingSchedule getSchedule() {
+			return schedule;
+		}
+	}
+}
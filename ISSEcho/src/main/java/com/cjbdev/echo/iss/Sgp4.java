@@ -0,0 +1,327 @@
+package com.cjbdev.echo.iss;
+
+/**
+ * The SGP4 orbit propagator for near-earth satellites (period under 225 minutes), following
+ * Spacetrack Report #3 as revised by Vallado et al. (2006) with WGS-72 constants.
+ * <p>
+ * Everything that depends only on the element set is computed once in the constructor;
+ * {@link #propagate} is then a handful of trigonometric calls and a short Kepler iteration, with
+ * no allocation, so one instance can be stepped through thousands of instants per location.
+ * Positions are in kilometres in the TEME (true equator, mean equinox) frame; {@link #gmst}
+ * rotates them onto the earth. Deep-space (SDP4) resonance terms are not implemented since the
+ * station's orbit never needs them.
+ */
+final class Sgp4 {
+
+	static final double EARTH_RADIUS_KM = 6378.135;
+	static final double TWO_PI = 2 * Math.PI;
+
+	private static final double MU = 398600.8;
+	private static final double XKE = 60.0 / Math.sqrt(EARTH_RADIUS_KM * EARTH_RADIUS_KM * EARTH_RADIUS_KM / MU);
+	private static final double J2 = 0.001082616;
+	private static final double J3 = -0.00000253881;
+	private static final double J4 = -0.00000165597;
+	private static final double J3OJ2 = J3 / J2;
+	private static final double X2O3 = 2.0 / 3.0;
+	private static final double VKM_PER_SEC = EARTH_RADIUS_KM * XKE / 60.0;
+
+	private final Tle tle;
+	private final double epochJulian;
+
+	private final double ecco;
+	private final double inclo;
+	private final double nodeo;
+	private final double argpo;
+	private final double mo;
+	private final double no;
+	private final double bstar;
+
+	private final boolean simple;
+	private final double con41;
+	private final double x1mth2;
+	private final double x7thm1;
+	private final double cc1;
+	private final double cc4;
+	private final double cc5;
+	private final double d2;
+	private final double d3;
+	private final double d4;
+	private final double delmo;
+	private final double eta;
+	private final double argpdot;
+	private final double omgcof;
+	private final double sinmao;
+	private final double t2cof;
+	private final double t3cof;
+	private final double t4cof;
+	private final double t5cof;
+	private final double xlcof;
+	private final double aycof;
+	private final double xmcof;
+	private final double nodecf;
+	private final double mdot;
+	private final double nodedot;
+
+	Sgp4(Tle tle) {
+
+		this.tle = tle;
+		epochJulian = tle.getEpochJulian();
+
+		double xpdotp = 1440.0 / TWO_PI;
+		ecco = tle.getEccentricity();
+		inclo = Math.toRadians(tle.getInclination());
+		nodeo = Math.toRadians(tle.getRightAscension());
+		argpo = Math.toRadians(tle.getArgumentOfPerigee());
+		mo = Math.toRadians(tle.getMeanAnomaly());
+		bstar = tle.getBstar();
+		double noKozai = tle.getMeanMotion() / xpdotp;
+
+		if (noKozai * xpdotp < 1440.0 / 225.0) {
+			throw new IllegalArgumentException("Deep-space orbits are not supported: " + tle.getCatalogNumber());
+		}
+
+		// Recover the Brouwer mean motion and semi-major axis from the Kozai elements.
+		double eccsq = ecco * ecco;
+		double omeosq = 1 - eccsq;
+		double rteosq = Math.sqrt(omeosq);
+		double cosio = Math.cos(inclo);
+		double cosio2 = cosio * cosio;
+		double ak = Math.pow(XKE / noKozai, X2O3);
+		double d1 = 0.75 * J2 * (3 * cosio2 - 1) / (rteosq * omeosq);
+		double del = d1 / (ak * ak);
+		double adel = ak * (1 - del * del - del * (1.0 / 3.0 + 134 * del * del / 81.0));
+		del = d1 / (adel * adel);
+		no = noKozai / (1 + del);
+
+		double ao = Math.pow(XKE / no, X2O3);
+		double sinio = Math.sin(inclo);
+		double po = ao * omeosq;
+		double con42 = 1 - 5 * cosio2;
+		con41 = -con42 - cosio2 - cosio2;
+		double posq = po * po;
+		double rp = ao * (1 - ecco);
+
+		if (omeosq < 0 || no <= 0) {
+			throw new IllegalArgumentException("Unusable elements for " + tle.getCatalogNumber());
+		}
+
+		simple = rp < 220 / EARTH_RADIUS_KM + 1;
+		double sfour = 78 / EARTH_RADIUS_KM + 1;
+		double qzms24 = Math.pow((120 - 78) / EARTH_RADIUS_KM, 4);
+		double perige = (rp - 1) * EARTH_RADIUS_KM;
+		if (perige < 156) {
+			sfour = perige < 98 ? 20 : perige - 78;
+			qzms24 = Math.pow((120 - sfour) / EARTH_RADIUS_KM, 4);
+			sfour = sfour / EARTH_RADIUS_KM + 1;
+		}
+
+		double pinvsq = 1 / posq;
+		double tsi = 1 / (ao - sfour);
+		eta = ao * ecco * tsi;
+		double etasq = eta * eta;
+		double eeta = ecco * eta;
+		double psisq = Math.abs(1 - etasq);
+		double coef = qzms24 * Math.pow(tsi, 4);
+		double coef1 = coef / Math.pow(psisq, 3.5);
+		double cc2 = coef1 * no * (ao * (1 + 1.5 * etasq + eeta * (4 + etasq))
+				+ 0.375 * J2 * tsi / psisq * con41 * (8 + 3 * etasq * (8 + etasq)));
+		cc1 = bstar * cc2;
+		double cc3 = ecco > 1.0e-4 ? -2 * coef * tsi * J3OJ2 * no * sinio / ecco : 0;
+		x1mth2 = 1 - cosio2;
+		cc4 = 2 * no * coef1 * ao * omeosq * (eta * (2 + 0.5 * etasq) + ecco * (0.5 + 2 * etasq)
+				- J2 * tsi / (ao * psisq) * (-3 * con41 * (1 - 2 * eeta + etasq * (1.5 - 0.5 * eeta))
+						+ 0.75 * x1mth2 * (2 * etasq - eeta * (1 + etasq)) * Math.cos(2 * argpo)));
+		cc5 = 2 * coef1 * ao * omeosq * (1 + 2.75 * (etasq + eeta) + eeta * etasq);
+
+		double cosio4 = cosio2 * cosio2;
+		double temp1 = 1.5 * J2 * pinvsq * no;
+		double temp2 = 0.5 * temp1 * J2 * pinvsq;
+		double temp3 = -0.46875 * J4 * pinvsq * pinvsq * no;
+		mdot = no + 0.5 * temp1 * rteosq * con41 + 0.0625 * temp2 * rteosq * (13 - 78 * cosio2 + 137 * cosio4);
+		argpdot = -0.5 * temp1 * con42 + 0.0625 * temp2 * (7 - 114 * cosio2 + 395 * cosio4)
+				+ temp3 * (3 - 36 * cosio2 + 49 * cosio4);
+		double xhdot1 = -temp1 * cosio;
+		nodedot = xhdot1 + (0.5 * temp2 * (4 - 19 * cosio2) + 2 * temp3 * (3 - 7 * cosio2)) * cosio;
+		omgcof = bstar * cc3 * Math.cos(argpo);
+		xmcof = ecco > 1.0e-4 ? -X2O3 * coef * bstar / eeta : 0;
+		nodecf = 3.5 * omeosq * xhdot1 * cc1;
+		t2cof = 1.5 * cc1;
+		double onePlusCos = Math.abs(cosio + 1) > 1.5e-12 ? 1 + cosio : 1.5e-12;
+		xlcof = -0.25 * J3OJ2 * sinio * (3 + 5 * cosio) / onePlusCos;
+		aycof = -0.5 * J3OJ2 * sinio;
+		double delmotemp = 1 + eta * Math.cos(mo);
+		delmo = delmotemp * delmotemp * delmotemp;
+		sinmao = Math.sin(mo);
+		x7thm1 = 7 * cosio2 - 1;
+
+		if (!simple) {
+			double cc1sq = cc1 * cc1;
+			d2 = 4 * ao * tsi * cc1sq;
+			double temp = d2 * tsi * cc1 / 3;
+			d3 = (17 * ao + sfour) * temp;
+			d4 = 0.5 * temp * ao * tsi * (221 * ao + 31 * sfour) * cc1;
+			t3cof = d2 + 2 * cc1sq;
+			t4cof = 0.25 * (3 * d3 + cc1 * (12 * d2 + 10 * cc1sq));
+			t5cof = 0.2 * (3 * d4 + 12 * cc1 * d3 + 6 * d2 * d2 + 15 * cc1sq * (2 * d2 + cc1sq));
+		}
+		else {
+			d2 = d3 = d4 = t3cof = t4cof = t5cof = 0;
+		}
+	}
+
+	Tle getTle() {
+		return tle;
+	}
+
+	/*
+	 * Minutes from the element set's epoch to the instant.
+	 */
+	double minutesSinceEpoch(long millis) {
+		return (Tle.julianDate(millis) - epochJulian) * 1440.0;
+	}
+
+	/*
+	 * Position (km) and, if velocity is not null, velocity (km/s) in TEME at tsince minutes from
+	 * epoch. Throws IllegalStateException once the elements no longer describe an orbit, which
+	 * for a stale element set means it decayed.
+	 */
+	void propagate(double tsince, double[] position, double[] velocity) {
+
+		double xmdf = mo + mdot * tsince;
+		double argpdf = argpo + argpdot * tsince;
+		double nodedf = nodeo + nodedot * tsince;
+		double argpm = argpdf;
+		double mm = xmdf;
+		double t2 = tsince * tsince;
+		double nodem = nodedf + nodecf * t2;
+		double tempa = 1 - cc1 * tsince;
+		double tempe = bstar * cc4 * tsince;
+		double templ = t2cof * t2;
+
+		if (!simple) {
+			double delomg = omgcof * tsince;
+			double delmtemp = 1 + eta * Math.cos(xmdf);
+			double delm = xmcof * (delmtemp * delmtemp * delmtemp - delmo);
+			double temp = delomg + delm;
+			mm = xmdf + temp;
+			argpm = argpdf - temp;
+			double t3 = t2 * tsince;
+			double t4 = t3 * tsince;
+			tempa = tempa - d2 * t2 - d3 * t3 - d4 * t4;
+			tempe = tempe + bstar * cc5 * (Math.sin(mm) - sinmao);
+			templ = templ + t3cof * t3 + t4 * (t4cof + tsince * t5cof);
+		}
+
+		double am = Math.pow(XKE / no, X2O3) * tempa * tempa;
+		double nm = XKE / Math.pow(am, 1.5);
+		double em = ecco - tempe;
+		if (em >= 1 || em < -0.001 || am < 0.95) {
+			throw new IllegalStateException("Elements for " + tle.getCatalogNumber() + " diverged at " + tsince + " min");
+		}
+		if (em < 1.0e-6) {
+			em = 1.0e-6;
+		}
+		mm = mm + no * templ;
+		double xlm = mm + argpm + nodem;
+		nodem = nodem % TWO_PI;
+		argpm = argpm % TWO_PI;
+		xlm = xlm % TWO_PI;
+		mm = (xlm - argpm - nodem) % TWO_PI;
+
+		double sinim = Math.sin(inclo);
+		double cosim = Math.cos(inclo);
+
+		// Long period periodics.
+		double axnl = em * Math.cos(argpm);
+		double temp = 1 / (am * (1 - em * em));
+		double aynl = em * Math.sin(argpm) + temp * aycof;
+		double xl = mm + argpm + nodem + temp * xlcof * axnl;
+
+		// Kepler's equation.
+		double u = (xl - nodem) % TWO_PI;
+		double eo1 = u;
+		double tem5 = 9999.9;
+		double sineo1 = 0;
+		double coseo1 = 0;
+		for (int ktr = 1; Math.abs(tem5) >= 1.0e-12 && ktr <= 10; ktr++) {
+			sineo1 = Math.sin(eo1);
+			coseo1 = Math.cos(eo1);
+			tem5 = 1 - coseo1 * axnl - sineo1 * aynl;
+			tem5 = (u - aynl * coseo1 + axnl * sineo1 - eo1) / tem5;
+			if (Math.abs(tem5) >= 0.95) {
+				tem5 = tem5 > 0 ? 0.95 : -0.95;
+			}
+			eo1 += tem5;
+		}
+
+		// Short period preliminary quantities.
+		double ecose = axnl * coseo1 + aynl * sineo1;
+		double esine = axnl * sineo1 - aynl * coseo1;
+		double el2 = axnl * axnl + aynl * aynl;
+		double pl = am * (1 - el2);
+		if (pl < 0) {
+			throw new IllegalStateException("Elements for " + tle.getCatalogNumber() + " diverged at " + tsince + " min");
+		}
+		double rl = am * (1 - ecose);
+		double rdotl = Math.sqrt(am) * esine / rl;
+		double rvdotl = Math.sqrt(pl) / rl;
+		double betal = Math.sqrt(1 - el2);
+		temp = esine / (1 + betal);
+		double sinu = am / rl * (sineo1 - aynl - axnl * temp);
+		double cosu = am / rl * (coseo1 - axnl + aynl * temp);
+		double su = Math.atan2(sinu, cosu);
+		double sin2u = (cosu + cosu) * sinu;
+		double cos2u = 1 - 2 * sinu * sinu;
+		temp = 1 / pl;
+		double temp1 = 0.5 * J2 * temp;
+		double temp2 = temp1 * temp;
+
+		// Short period periodics.
+		double mrt = rl * (1 - 1.5 * temp2 * betal * con41) + 0.5 * temp1 * x1mth2 * cos2u;
+		su = su - 0.25 * temp2 * x7thm1 * sin2u;
+		double xnode = nodem + 1.5 * temp2 * cosim * sin2u;
+		double xinc = inclo + 1.5 * temp2 * cosim * sinim * cos2u;
+		double mvt = rdotl - nm * temp1 * x1mth2 * sin2u / XKE;
+		double rvdot = rvdotl + nm * temp1 * (x1mth2 * cos2u + 1.5 * con41) / XKE;
+
+		if (mrt < 1) {
+			throw new IllegalStateException("Satellite " + tle.getCatalogNumber() + " decayed at " + tsince + " min");
+		}
+
+		double sinsu = Math.sin(su);
+		double cossu = Math.cos(su);
+		double snod = Math.sin(xnode);
+		double cnod = Math.cos(xnode);
+		double sini = Math.sin(xinc);
+		double cosi = Math.cos(xinc);
+		double xmx = -snod * cosi;
+		double xmy = cnod * cosi;
+		double ux = xmx * sinsu + cnod * cossu;
+		double uy = xmy * sinsu + snod * cossu;
+		double uz = sini * sinsu;
+
+		position[0] = mrt * ux * EARTH_RADIUS_KM;
+		position[1] = mrt * uy * EARTH_RADIUS_KM;
+		position[2] = mrt * uz * EARTH_RADIUS_KM;
+
+		if (velocity != null) {
+			double vx = xmx * cossu - cnod * sinsu;
+			double vy = xmy * cossu - snod * sinsu;
+			double vz = sini * cossu;
+			velocity[0] = (mvt * ux + rvdot * vx) * VKM_PER_SEC;
+			velocity[1] = (mvt * uy + rvdot * vy) * VKM_PER_SEC;
+			velocity[2] = (mvt * uz + rvdot * vz) * VKM_PER_SEC;
+		}
+	}
+
+	/*
+	 * Greenwich mean sidereal time in radians for a UT1 Julian date (IAU 1982).
+	 */
+	static double gmst(double julian) {
+		double tut1 = (julian - 2451545.0) / 36525.0;
+		double seconds = -6.2e-6 * tut1 * tut1 * tut1 + 0.093104 * tut1 * tut1
+				+ (876600.0 * 3600 + 8640184.812866) * tut1 + 67310.54841;
+		double theta = Math.toRadians(seconds / 240.0) % TWO_PI;
+		return theta < 0 ? theta + TWO_PI : theta;
+	}
+}
@@ -0,0 +1,166 @@
+package com.cjbdev.echo.iss;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+
+/**
+ * One visible pass of the space station over a location.
+ * <p>
+ * Only the numbers are kept: start time, duration, elevations and compass points. The text
+ * getters render them the way the Spot The Station feed spells them.
+ */
+class Sighting {
+
+	static final int UNKNOWN = -1;
+
+	static final String[] DIRECTIONS = { "N", "NNE", "NE", "ENE", "E", "ESE", "SE", "SSE", "S", "SSW", "SW", "WSW",
+			"W", "WNW", "NW", "NNW" };
+
+	private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("EEEE MMM d, yyyy", Locale.US);
+	private static final DateTimeFormatter CLOCK_FORMAT = DateTimeFormatter.ofPattern("h:mm a", Locale.US);
+
+	private final long time;
+	private final ZoneId zone;
+	private final int durationSeconds;
+	private final int maxElevation;
+	private final int approachElevation;
+	private final int approachDirection;
+	private final int departureElevation;
+	private final int departureDirection;
+
+	Sighting(long time, ZoneId zone, int durationSeconds, int maxElevation, int approachElevation,
+			int approachDirection, int departureElevation, int departureDirection) {
+		this.time = time;
+		this.zone = zone;
+		this.durationSeconds = durationSeconds;
+		this.maxElevation = maxElevation;
+		this.approachElevation = approachElevation;
+		this.approachDirection = approachDirection;
+		this.departureElevation = departureElevation;
+		this.departureDirection = departureDirection;
+	}
+
+	/*
+	 * Start of the pass in epoch milliseconds.
+	 */
+	long getTime() {
+		return time;
+	}
+
+	ZoneId getZone() {
+		return zone;
+	}
+
+	/*
+	 * Seconds the station is visible, 0 for "less than 1 minute", UNKNOWN if not published.
+	 */
+	int getDurationSeconds() {
+		return durationSeconds;
+	}
+
+	int getMaxElevation() {
+		return maxElevation;
+	}
+
+	int getApproachElevation() {
+		return approachElevation;
+	}
+
+	/*
+	 * Index into DIRECTIONS, or UNKNOWN.
+	 */
+	int getApproachDirection() {
+		return approachDirection;
+	}
+
+	int getDepartureElevation() {
+		return departureElevation;
+	}
+
+	int getDepartureDirection() {
+		return departureDirection;
+	}
+
+	/*
+	 * Local date of the pass, e.g. "Tuesday Jun 13, 2017".
+	 */
+	String getDate() {
+		return DATE_FORMAT.format(local());
+	}
+
+	/*
+	 * Local start time, e.g. "9:46 PM".
+	 */
+	String getClock() {
+		return CLOCK_FORMAT.format(local());
+	}
+
+	String getDuration() {
+		if (durationSeconds == UNKNOWN) {
+			return null;
+		}
+		int minutes = durationSeconds / 60;
+		if (minutes < 1) {
+			return "less than 1 minute";
+		}
+		return minutes == 1 ? "1 minute" : minutes + " minutes";
+	}
+
+	String getMaximum() {
+		return maxElevation == UNKNOWN ? null : maxElevation + "°";
+	}
+
+	/*
+	 * Elevation and compass point the pass starts at, e.g. "10° above SW".
+	 */
+	String getApproach() {
+		return position(approachElevation, approachDirection);
+	}
+
+	String getDeparture() {
+		return position(departureElevation, departureDirection);
+	}
+
+	/*
+	 * All published fields, one per line, for the card.
+	 */
+	String getDescription() {
+		StringBuilder desc = new StringBuilder();
+		desc.append("Date: ").append(getDate()).append('\n');
+		desc.append("Time: ").append(getClock()).append('\n');
+		appendLine(desc, "Duration: ", getDuration());
+		appendLine(desc, "Maximum Elevation: ", getMaximum());
+		appendLine(desc, "Approach: ", getApproach());
+		appendLine(desc, "Departure: ", getDeparture());
+		return desc.toString();
+	}
+
+	static int direction(String abbreviation) {
+		for (int i = 0; i < DIRECTIONS.length; i++) {
+			if (DIRECTIONS[i].equalsIgnoreCase(abbreviation)) {
+				return i;
+			}
+		}
+		return UNKNOWN;
+	}
+
+	private ZonedDateTime local() {
+		return Instant.ofEpochMilli(time).atZone(zone);
+	}
+
+	private static String position(int elevation, int direction) {
+		if (elevation == UNKNOWN || direction == UNKNOWN) {
+			return null;
+		}
+		return elevation + "° above " + DIRECTIONS[direction];
+	}
+
+	private static void appendLine(StringBuilder desc, String label, String value) {
+		if (value != null) {
+			desc.append(label).append(value).append('\n');
+		}
+	}
+}
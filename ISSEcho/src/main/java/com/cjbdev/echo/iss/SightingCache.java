@@ -0,0 +1,181 @@
+package com.cjbdev.echo.iss;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded, least recently used cache of parsed sighting schedules keyed by location id.
+ * <p>
+ * NASA refreshes the feeds only a few times a week, so a warm container can answer repeat
+ * locations without a network round trip. Entries expire after a configurable time to live and
+ * the least recently used entry is evicted once the cache is full. An expired entry stays until it
+ * is replaced or evicted, so {@link #getStale} can still hand it out when the feed cannot be
+ * reached.
+ * <p>
+ * Unless {@code cache.admission} is turned off, a TinyLFU filter guards the full cache: every
+ * lookup is counted in a {@link FrequencySketch}, and a new location only takes the place of the
+ * least recently used one if it has been asked for more often lately. A burst of one-off cities
+ * then cannot push out the ones that are asked for all day. The CacheSimulator in the tests
+ * compares the two policies on a recorded trace.
+ */
+class SightingCache {
+
+	static final int DEFAULT_MAX_ENTRIES = 1000;
+	static final long DEFAULT_TTL_SECONDS = 6 * 60 * 60;
+
+	private final int maxEntries;
+	private final long ttlMillis;
+	private final LinkedHashMap<String, Entry> entries;
+	private final FrequencySketch sketch;
+
+	private long hits;
+	private long misses;
+	private long expirations;
+	private long evictions;
+	private long rejections;
+
+	SightingCache(int maxEntries, long ttlMillis) {
+		this(maxEntries, ttlMillis, true);
+	}
+
+	SightingCache(int maxEntries, long ttlMillis, boolean admission) {
+		if (maxEntries < 1) {
+			throw new IllegalArgumentException("maxEntries must be positive");
+		}
+		this.maxEntries = maxEntries;
+		this.ttlMillis = ttlMillis;
+		this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+		this.sketch = admission ? new FrequencySketch(maxEntries) : null;
+	}
+
+	static SightingCache fromConfig() {
+		return new SightingCache(SkillConfig.getInt("cache.maxEntries", DEFAULT_MAX_ENTRIES),
+				SkillConfig.getLong("cache.ttlSeconds", DEFAULT_TTL_SECONDS) * 1000L,
+				SkillConfig.getBoolean("cache.admission", true));
+	}
+
+	/*
+	 * Fresh schedule for the location, or null on a miss or when the cached copy has expired.
+	 */
+	synchronized SightingSchedule get(String locationId) {
+
+		if (sketch != null) {
+			sketch.increment(locationId);
+		}
+		Entry entry = entries.get(locationId);
+		if (entry == null) {
+			misses++;
+			return null;
+		}
+		if (entry.expiresAt <= System.currentTimeMillis()) {
+			expirations++;
+			misses++;
+			return null;
+		}
+		hits++;
+		return entry.schedule;
+	}
+
+	/*
+	 * Cache a schedule until its time to live, counted from when it was fetched, runs out. A
+	 * schedule handed over from a shared tier therefore does not live longer than one fetched here.
+	 * A new location is dropped instead when the cache is full and it is asked for less often than
+	 * the entry it would evict.
+	 */
+	synchronized void put(String locationId, SightingSchedule schedule) {
+
+		if (sketch != null && entries.size() >= maxEntries && !entries.containsKey(locationId)) {
+			String victim = entries.keySet().iterator().next();
+			if (sketch.frequency(locationId) <= sketch.frequency(victim)) {
+				rejections++;
+				return;
+			}
+		}
+		entries.put(locationId, new Entry(schedule, schedule.getFetchedAt() + ttlMillis));
+
+		Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+		while (entries.size() > maxEntries && eldest.hasNext()) {
+			eldest.next();
+			eldest.remove();
+			evictions++;
+		}
+	}
+
+	/*
+	 * When the location's entry expires, 0 if there is none. Does not count as a lookup.
+	 */
+	synchronized long getExpiry(String locationId) {
+		Entry entry = entries.get(locationId);
+		return entry == null ? 0 : entry.expiresAt;
+	}
+
+	/*
+	 * The location's schedule whether or not it has expired, unless it expired more than maxStale
+	 * milliseconds ago; null if there is none. Does not count as a lookup.
+	 */
+	synchronized SightingSchedule getStale(String locationId, long maxStaleMillis) {
+		Entry entry = entries.get(locationId);
+		if (entry == null || entry.expiresAt + maxStaleMillis <= System.currentTimeMillis()) {
+			return null;
+		}
+		return entry.schedule;
+	}
+
+	/*
+	 * The location's schedule whether or not it has expired, null if there is none. Does not
+	 * count as a lookup.
+	 */
+	synchronized SightingSchedule peek(String locationId) {
+		Entry entry = entries.get(locationId);
+		return entry == null ? null : entry.schedule;
+	}
+
+	synchronized void invalidate(String locationId) {
+		entries.remove(locationId);
+	}
+
+	synchronized int size() {
+		return entries.size();
+	}
+
+	synchronized long getHits() {
+		return hits;
+	}
+
+	synchronized long getMisses() {
+		return misses;
+	}
+
+	synchronized long getExpirations() {
+		return expirations;
+	}
+
+	synchronized long getEvictions() {
+		return evictions;
+	}
+
+	/*
+	 * Schedules not cached because the admission filter preferred the entry they would evict.
+	 */
+	synchronized long getRejections() {
+		return rejections;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "SightingCache[size=" + entries.size() + "/" + maxEntries + ", hits=" + hits + ", misses=" + misses
+				+ ", expirations=" + expirations + ", evictions=" + evictions + ", rejections=" + rejections + "]";
+	}
+
+	private static final class Entry {
+
+		final SightingSchedule schedule;
+		final long expiresAt;
+
+		Entry(SightingSchedule schedule, long expiresAt) {
+			this.schedule = schedule;
+			this.expiresAt = expiresAt;
+		}
+	}
+}
@@ -0,0 +1,301 @@
+package com.cjbdev.echo.iss;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Streaming parser for the Spot The Station RSS feed.
+ * <p>
+ * Only the {@code <description>} text of each {@code <item>} is pulled from the stream, and its
+ * Date/Time/Duration/Maximum/Approach/Departure fields are located and the pass start time
+ * computed with a hand-written scanner instead of regex splits and a date format per entry.
+ * <p>
+ * The feed gives dates and times in the location's local time without saying which zone that is,
+ * so a parser reads them in the zone it was made for; {@link #forZone} gives one for another
+ * location.
+ */
+class SightingFeedParser {
+
+	private static final Logger log = LoggerFactory.getLogger(SightingFeedParser.class);
+
+	private static final String BREAK = "<br/>";
+	private static final String[] MONTHS = { "jan", "feb", "mar", "apr", "may", "jun", "jul", "aug", "sep", "oct",
+			"nov", "dec" };
+
+	private final XMLInputFactory factory;
+	private final ZoneId zone;
+
+	SightingFeedParser() {
+		this(ZoneId.systemDefault());
+	}
+
+	SightingFeedParser(ZoneId zone) {
+		this(newFactory(), zone);
+	}
+
+	private SightingFeedParser(XMLInputFactory factory, ZoneId zone) {
+		this.factory = factory;
+		this.zone = zone;
+	}
+
+	private static XMLInputFactory newFactory() {
+		XMLInputFactory factory = XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+		factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+		factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+		return factory;
+	}
+
+	ZoneId getZone() {
+		return zone;
+	}
+
+	/*
+	 * A parser reading times in the given zone, sharing this one's configured factory.
+	 */
+	SightingFeedParser forZone(ZoneId other) {
+		return other.equals(zone) ? this : new SightingFeedParser(factory, other);
+	}
+
+	/*
+	 * Every sighting in the feed, in feed order.
+	 */
+	List<Sighting> parseAll(InputStream in) throws IOException {
+
+		List<Sighting> sightings = new ArrayList<Sighting>();
+		XMLStreamReader reader = null;
+		try {
+			reader = factory.createXMLStreamReader(in);
+			boolean inItem = false;
+			while (reader.hasNext()) {
+				int event = reader.next();
+				if (event == XMLStreamConstants.START_ELEMENT) {
+					String name = reader.getLocalName();
+					if ("item".equals(name)) {
+						inItem = true;
+					}
+					else if (inItem && "description".equals(name)) {
+						Sighting sighting = parseDescription(reader.getElementText());
+						if (sighting != null) {
+							sightings.add(sighting);
+						}
+					}
+				}
+				else if (event == XMLStreamConstants.END_ELEMENT && "item".equals(reader.getLocalName())) {
+					inItem = false;
+				}
+			}
+		}
+		catch (XMLStreamException xsex) {
+			throw new IOException("Could not parse sighting feed", xsex);
+		}
+		finally {
+			if (reader != null) {
+				try {
+					reader.close();
+				}
+				catch (XMLStreamException xsex) {
+					log.debug("Could not close feed reader", xsex);
+				}
+			}
+		}
+		return sightings;
+	}
+
+	/*
+	 * Parse one item description, e.g.
+	 * "Date: Tuesday Jun 13, 2017 <br/> Time: 9:46 PM <br/> Duration: 4 minutes <br/> ..."
+	 */
+	Sighting parseDescription(String desc) {
+
+		String date = null;
+		String clock = null;
+		String duration = null;
+		String maximum = null;
+		String approach = null;
+		String departure = null;
+
+		int length = desc.length();
+		int pos = 0;
+		while (pos < length) {
+			int end = desc.indexOf(BREAK, pos);
+			if (end < 0) {
+				end = length;
+			}
+
+			int start = skipSpace(desc, pos, end);
+			if (desc.startsWith("Date:", start)) {
+				date = value(desc, start, end);
+			}
+			else if (desc.startsWith("Time:", start)) {
+				clock = value(desc, start, end);
+			}
+			else if (desc.startsWith("Duration:", start)) {
+				duration = value(desc, start, end);
+			}
+			else if (desc.startsWith("Maximum", start)) {
+				maximum = value(desc, start, end);
+			}
+			else if (desc.startsWith("Approach:", start)) {
+				approach = value(desc, start, end);
+			}
+			else if (desc.startsWith("Departure:", start)) {
+				departure = value(desc, start, end);
+			}
+			pos = end + BREAK.length();
+		}
+
+		if (date == null || clock == null) {
+			log.warn("Skipping sighting without date or time: " + desc);
+			return null;
+		}
+
+		long time = parseTime(date, clock);
+		if (time == Long.MIN_VALUE) {
+			log.warn("Skipping sighting with unparseable date: " + date + " " + clock);
+			return null;
+		}
+		return new Sighting(time, zone, durationSeconds(duration), elevation(maximum), elevation(approach),
+				direction(approach), elevation(departure), direction(departure));
+	}
+
+	/*
+	 * "4 minutes" as 240, "less than 1 minute" as 0.
+	 */
+	static int durationSeconds(String duration) {
+		if (duration == null) {
+			return Sighting.UNKNOWN;
+		}
+		if (duration.regionMatches(true, 0, "less", 0, 4)) {
+			return 0;
+		}
+		int minutes = number(duration, new int[] { 0 });
+		return minutes < 0 ? Sighting.UNKNOWN : minutes * 60;
+	}
+
+	/*
+	 * The leading degrees of "37°" or "10° above SW".
+	 */
+	static int elevation(String position) {
+		if (position == null) {
+			return Sighting.UNKNOWN;
+		}
+		int degrees = number(position, new int[] { 0 });
+		return degrees > 90 ? Sighting.UNKNOWN : degrees;
+	}
+
+	/*
+	 * The compass point at the end of "10° above SW".
+	 */
+	static int direction(String position) {
+		if (position == null) {
+			return Sighting.UNKNOWN;
+		}
+		int end = position.length();
+		int start = end;
+		while (start > 0 && Character.isLetter(position.charAt(start - 1))) {
+			start--;
+		}
+		return Sighting.direction(position.substring(start, end));
+	}
+
+	/*
+	 * Start of the pass from e.g. "Tuesday Jun 13, 2017" and "9:46 PM", or Long.MIN_VALUE.
+	 */
+	long parseTime(String date, String clock) {
+
+		// skip the weekday
+		int pos = date.indexOf(' ');
+		if (pos < 0 || pos + 4 > date.length()) {
+			return Long.MIN_VALUE;
+		}
+		pos++;
+
+		int month = -1;
+		for (int i = 0; i < MONTHS.length; i++) {
+			if (date.regionMatches(true, pos, MONTHS[i], 0, 3)) {
+				month = i + 1;
+				break;
+			}
+		}
+		if (month < 0) {
+			return Long.MIN_VALUE;
+		}
+
+		pos = date.indexOf(' ', pos);
+		int[] cursor = { pos < 0 ? date.length() : pos };
+		int day = number(date, cursor);
+		int year = number(date, cursor);
+
+		cursor[0] = 0;
+		int hour = number(clock, cursor);
+		int minute = number(clock, cursor);
+		if (day < 1 || year < 1 || hour < 1 || hour > 12 || minute < 0 || minute > 59) {
+			return Long.MIN_VALUE;
+		}
+
+		boolean pm = clock.regionMatches(true, skipSpace(clock, cursor[0], clock.length()), "PM", 0, 2);
+		hour = hour % 12 + (pm ? 12 : 0);
+
+		try {
+			return LocalDateTime.of(year, month, day, hour, minute).atZone(zone).toInstant().toEpochMilli();
+		}
+		catch (RuntimeException rex) {
+			return Long.MIN_VALUE;
+		}
+	}
+
+	/*
+	 * Read the next run of digits at or after cursor[0], leaving the cursor just past it.
+	 */
+	private static int number(String s, int[] cursor) {
+		int pos = cursor[0];
+		int length = s.length();
+		while (pos < length && !Character.isDigit(s.charAt(pos))) {
+			pos++;
+		}
+		if (pos == length) {
+			cursor[0] = pos;
+			return -1;
+		}
+		int value = 0;
+		while (pos < length && Character.isDigit(s.charAt(pos))) {
+			value = value * 10 + (s.charAt(pos) - '0');
+			pos++;
+		}
+		cursor[0] = pos;
+		return value;
+	}
+
+	private static String value(String s, int start, int end) {
+		int colon = s.indexOf(':', start);
+		if (colon < 0 || colon >= end) {
+			return null;
+		}
+		int from = skipSpace(s, colon + 1, end);
+		int to = end;
+		while (to > from && Character.isWhitespace(s.charAt(to - 1))) {
+			to--;
+		}
+		return s.substring(from, to);
+	}
+
+	private static int skipSpace(String s, int pos, int end) {
+		while (pos < end && Character.isWhitespace(s.charAt(pos))) {
+			pos++;
+		}
+		return pos;
+	}
+}
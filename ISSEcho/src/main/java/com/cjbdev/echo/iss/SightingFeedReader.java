@@ -0,0 +1,173 @@
+package com.cjbdev.echo.iss;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Fetches the Spot The Station feed for a location through a {@link FeedClient} and parses it
+ * with the streaming {@link SightingFeedParser}.
+ * <p>
+ * Feeds are read from NASA unless {@code feed.baseUrl} points somewhere else, such as a
+ * {@link FeedMirror} directory served over HTTP.
+ * <p>
+ * The ETag and Last-Modified of each location's last download are kept, so fetching it again
+ * while its schedule is still cached costs a conditional request and, when NASA has not
+ * published anything new, a 304 without a body.
+ * <p>
+ * Feed times are read in the location's own time zone when the {@link LocationCoordinates} know
+ * it, and in the parser's zone otherwise.
+ */
+class SightingFeedReader {
+
+	private static final Logger log = LoggerFactory.getLogger(SightingFeedReader.class);
+
+	static final String FEED_URL = "https://spotthestation.nasa.gov/sightings/xml_files/";
+
+	private final FeedClient client;
+	private final SightingFeedParser parser;
+	private final String baseUrl;
+	private final LocationCoordinates coordinates;
+	private final ConcurrentHashMap<String, Validated> validators = new ConcurrentHashMap<String, Validated>();
+
+	SightingFeedReader(FeedClient client) {
+		this(client, new SightingFeedParser());
+	}
+
+	SightingFeedReader(FeedClient client, LocationCoordinates coordinates) {
+		this(client, new SightingFeedParser(), SkillConfig.getString("feed.baseUrl", FEED_URL), coordinates);
+	}
+
+	SightingFeedReader(FeedClient client, SightingFeedParser parser) {
+		this(client, parser, SkillConfig.getString("feed.baseUrl", FEED_URL));
+	}
+
+	SightingFeedReader(FeedClient client, SightingFeedParser parser, String baseUrl) {
+		this(client, parser, baseUrl, null);
+	}
+
+	SightingFeedReader(FeedClient client, SightingFeedParser parser, String baseUrl, LocationCoordinates coordinates) {
+		this.client = client;
+		this.parser = parser;
+		this.baseUrl = baseUrl.endsWith("/") ? baseUrl : baseUrl + "/";
+		this.coordinates = coordinates;
+	}
+
+	/*
+	 * Every sighting of the location, for caching.
+	 */
+	SightingSchedule fetch(String locationId) throws IOException {
+		return fetch(locationId, null);
+	}
+
+	/*
+	 * Every sighting of the location. When the cached copy is the one this reader's last download
+	 * produced, the request is conditional and a 304 answer returns that copy as fetched now.
+	 */
+	SightingSchedule fetch(String locationId, SightingSchedule cached) throws IOException {
+
+		log.info("Retrieving data for: " + locationId);
+		FeedClient.Response<List<Sighting>> response = client.get(url(locationId), conditionsFor(locationId, cached),
+				parseAll(locationId));
+		log.debug("Feed client: " + client);
+		return toSchedule(locationId, cached, response);
+	}
+
+	/*
+	 * As fetch, with a hedged request on the executor.
+	 */
+	CompletableFuture<SightingSchedule> fetchAsync(final String locationId, final SightingSchedule cached,
+			ScheduledExecutorService executor) {
+
+		log.info("Retrieving data for: " + locationId);
+		return client.getHedged(url(locationId), conditionsFor(locationId, cached), parseAll(locationId), executor).thenApply(
+				new Function<FeedClient.Response<List<Sighting>>, SightingSchedule>() {
+					public SightingSchedule apply(FeedClient.Response<List<Sighting>> response) {
+						try {
+							return toSchedule(locationId, cached, response);
+						}
+						catch (IOException ioex) {
+							throw new CompletionException(ioex);
+						}
+					}
+				});
+	}
+
+	private String url(String locationId) {
+		return baseUrl + locationId + ".xml";
+	}
+
+	ZoneId zoneOf(String locationId) {
+		return coordinates == null ? parser.getZone() : coordinates.zoneOf(locationId, parser.getZone());
+	}
+
+	private FeedClient.BodyReader<List<Sighting>> parseAll(String locationId) {
+		final SightingFeedParser local = parser.forZone(zoneOf(locationId));
+		return new FeedClient.BodyReader<List<Sighting>>() {
+			public List<Sighting> read(InputStream body) throws IOException {
+				return local.parseAll(body);
+			}
+		};
+	}
+
+	/*
+	 * The validators to send for the location, or null unless the cached copy came from the
+	 * response they were taken from.
+	 */
+	private FeedClient.Validators conditionsFor(String locationId, SightingSchedule cached) {
+		Validated validated = cached == null ? null : validators.get(locationId);
+		return validated != null && validated.fetchedAt == cached.getFetchedAt() ? validated.validators : null;
+	}
+
+	private SightingSchedule toSchedule(String locationId, SightingSchedule cached,
+			FeedClient.Response<List<Sighting>> response) throws IOException {
+
+		long now = System.currentTimeMillis();
+		SightingSchedule schedule;
+		if (response.isNotModified()) {
+			if (cached == null) {
+				throw new IOException("Feed for " + locationId + " not modified, but there is no cached copy");
+			}
+			schedule = cached.withFetchedAt(now);
+		}
+		else {
+			schedule = new SightingSchedule(locationId, response.getBody(), now, zoneOf(locationId));
+		}
+
+		if (response.getValidators().isEmpty()) {
+			validators.remove(locationId);
+		}
+		else {
+			validators.put(locationId, new Validated(response.getValidators(), now));
+		}
+		return schedule;
+	}
+
+	FeedClient getClient() {
+		return client;
+	}
+
+	/**
+	 * The validators of the last download of a location, with the fetch time of the schedule
+	 * made from it.
+	 */
+	private static final class Validated {
+
+		final FeedClient.Validators validators;
+		final long fetchedAt;
+
+		Validated(FeedClient.Validators validators, long fetchedAt) {
+			this.validators = validators;
+			this.fetchedAt = fetchedAt;
+		}
+	}
+}
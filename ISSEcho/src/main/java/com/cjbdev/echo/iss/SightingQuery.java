@@ -0,0 +1,104 @@
+package com.cjbdev.echo.iss;
+
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Questions about the upcoming passes of one location: the next few, the ones in a time window
+ * such as this weekend, and the ones starting after a time of day. They are all answered from the
+ * location's parsed {@link SightingSchedule}, whichever of them is asked, so one download and
+ * parse of the two-week feed serves every question about it.
+ * <p>
+ * Windows are found by binary search over the schedule's start times. Calendar questions are
+ * asked in the location's time zone, the zone the feed gives its times in, not the server's.
+ */
+class SightingQuery {
+
+	private final SightingSchedule schedule;
+
+	SightingQuery(SightingSchedule schedule) {
+		this.schedule = schedule;
+	}
+
+	SightingSchedule getSchedule() {
+		return schedule;
+	}
+
+	ZoneId getZone() {
+		return schedule.getZone();
+	}
+
+	/*
+	 * Up to count passes that start after the given time, soonest first.
+	 */
+	List<Sighting> next(long now, int count) {
+
+		List<Sighting> sightings = new ArrayList<Sighting>(Math.max(Math.min(count, schedule.size()), 0));
+		for (int i = schedule.indexAfter(now); i < schedule.size() && sightings.size() < count; i++) {
+			sightings.add(schedule.get(i));
+		}
+		return sightings;
+	}
+
+	/*
+	 * Passes that start at or after from and before to.
+	 */
+	List<Sighting> between(long from, long to) {
+
+		List<Sighting> sightings = new ArrayList<Sighting>();
+		// indexAfter is exclusive, start times are whole seconds
+		for (int i = schedule.indexAfter(from - 1); i < schedule.size() && schedule.getTime(i) < to; i++) {
+			sightings.add(schedule.get(i));
+		}
+		return sightings;
+	}
+
+	/*
+	 * Passes still to come this weekend at the location: the rest of it on a Saturday or Sunday,
+	 * the coming one on a weekday.
+	 */
+	List<Sighting> weekend(long now) {
+
+		LocalDate today = Instant.ofEpochMilli(now).atZone(getZone()).toLocalDate();
+		LocalDate saturday = today.getDayOfWeek() == DayOfWeek.SUNDAY ? today.minusDays(1)
+				: today.with(TemporalAdjusters.nextOrSame(DayOfWeek.SATURDAY));
+		long from = Math.max(now + 1, startOf(saturday));
+		return between(from, startOf(saturday.plusDays(2)));
+	}
+
+	/*
+	 * Passes tomorrow at the location.
+	 */
+	List<Sighting> tomorrow(long now) {
+
+		LocalDate today = Instant.ofEpochMilli(now).atZone(getZone()).toLocalDate();
+		return between(startOf(today.plusDays(1)), startOf(today.plusDays(2)));
+	}
+
+	/*
+	 * Up to count passes after the given time that start at or after the time of day at the
+	 * location, and before its midnight, soonest first.
+	 */
+	List<Sighting> afterTimeOfDay(long now, LocalTime time, int count) {
+
+		List<Sighting> sightings = new ArrayList<Sighting>();
+		for (int i = schedule.indexAfter(now); i < schedule.size() && sightings.size() < count; i++) {
+			ZonedDateTime start = Instant.ofEpochMilli(schedule.getTime(i)).atZone(getZone());
+			if (!start.toLocalTime().isBefore(time)) {
+				sightings.add(schedule.get(i));
+			}
+		}
+		return sightings;
+	}
+
+	private long startOf(LocalDate date) {
+		return date.atStartOfDay(getZone()).toInstant().toEpochMilli();
+	}
+}
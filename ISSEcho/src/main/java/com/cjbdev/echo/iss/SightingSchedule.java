@@ -0,0 +1,260 @@
+package com.cjbdev.echo.iss;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.time.ZoneId;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * The parsed sightings of one location, ordered by start time, and when they were fetched.
+ * <p>
+ * Passes are held in parallel primitive arrays rather than as objects: start times as seconds
+ * from the first pass, durations in seconds, and the maximum, approach and departure elevations
+ * and compass points packed into one int. That is about ten bytes a pass, so a cache of
+ * thousands of locations stays small, and {@link #next} is a binary search over the start times.
+ * {@link Sighting} objects are only created for the passes that are actually read.
+ * <p>
+ * Schedules serialize to a small versioned binary form so they can be shared through the
+ * persistent cache tiers.
+ */
+class SightingSchedule {
+
+	private static final int FORMAT_VERSION = 2;
+
+	// position layout, each field stored plus one so Sighting.UNKNOWN is 0
+	private static final int ELEVATION_BITS = 7;
+	private static final int DIRECTION_BITS = 5;
+	private static final int ELEVATION_MASK = (1 << ELEVATION_BITS) - 1;
+	private static final int DIRECTION_MASK = (1 << DIRECTION_BITS) - 1;
+
+	private static final Comparator<Sighting> BY_TIME = new Comparator<Sighting>() {
+		public int compare(Sighting s1, Sighting s2) {
+			return Long.compare(s1.getTime(), s2.getTime());
+		}
+	};
+
+	private final String locationId;
+	private final long fetchedAt;
+	private final ZoneId zone;
+
+	private final long baseSeconds;
+	private final int[] starts;
+	private final short[] durations;
+	private final int[] positions;
+
+	SightingSchedule(String locationId, List<Sighting> sightings, long fetchedAt) {
+		this(locationId, sightings, fetchedAt, sightings.isEmpty() ? ZoneId.systemDefault() : sightings.get(0).getZone());
+	}
+
+	/*
+	 * Schedule in the location's time zone, which the sightings are expected to be in as well.
+	 */
+	SightingSchedule(String locationId, List<Sighting> sightings, long fetchedAt, ZoneId zone) {
+		this.locationId = locationId;
+		this.fetchedAt = fetchedAt;
+		this.zone = zone;
+
+		List<Sighting> sorted = new ArrayList<Sighting>(sightings);
+		Collections.sort(sorted, BY_TIME);
+
+		int count = sorted.size();
+		baseSeconds = count == 0 ? 0 : sorted.get(0).getTime() / 1000L;
+		starts = new int[count];
+		durations = new short[count];
+		positions = new int[count];
+		for (int i = 0; i < count; i++) {
+			Sighting sighting = sorted.get(i);
+			starts[i] = Math.toIntExact(sighting.getTime() / 1000L - baseSeconds);
+			durations[i] = (short) Math.min(sighting.getDurationSeconds(), Short.MAX_VALUE);
+			positions[i] = pack(sighting);
+		}
+	}
+
+	private SightingSchedule(String locationId, long fetchedAt, ZoneId zone, long baseSeconds, int[] starts,
+			short[] durations, int[] positions) {
+		this.locationId = locationId;
+		this.fetchedAt = fetchedAt;
+		this.zone = zone;
+		this.baseSeconds = baseSeconds;
+		this.starts = starts;
+		this.durations = durations;
+		this.positions = positions;
+	}
+
+	String getLocationId() {
+		return locationId;
+	}
+
+	long getFetchedAt() {
+		return fetchedAt;
+	}
+
+	ZoneId getZone() {
+		return zone;
+	}
+
+	int size() {
+		return starts.length;
+	}
+
+	boolean isEmpty() {
+		return starts.length == 0;
+	}
+
+	/*
+	 * Start of the i-th pass in epoch milliseconds.
+	 */
+	long getTime(int i) {
+		return (baseSeconds + starts[i]) * 1000L;
+	}
+
+	Sighting get(int i) {
+		int position = positions[i];
+		return new Sighting(getTime(i), zone, durations[i], field(position, 0, ELEVATION_MASK),
+				field(position, ELEVATION_BITS, ELEVATION_MASK), field(position, 2 * ELEVATION_BITS, DIRECTION_MASK),
+				field(position, 2 * ELEVATION_BITS + DIRECTION_BITS, ELEVATION_MASK),
+				field(position, 3 * ELEVATION_BITS + DIRECTION_BITS, DIRECTION_MASK));
+	}
+
+	/*
+	 * All sightings in start order, created as they are read.
+	 */
+	List<Sighting> getSightings() {
+		return new AbstractList<Sighting>() {
+			public Sighting get(int index) {
+				return SightingSchedule.this.get(index);
+			}
+
+			public int size() {
+				return starts.length;
+			}
+		};
+	}
+
+	/*
+	 * Index of the first pass that starts after the given time, or size() if there is none.
+	 */
+	int indexAfter(long now) {
+		long key = Math.floorDiv(now, 1000L) - baseSeconds;
+		int low = 0;
+		int high = starts.length;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (starts[mid] > key) {
+				high = mid;
+			}
+			else {
+				low = mid + 1;
+			}
+		}
+		return low;
+	}
+
+	/*
+	 * The same passes as fetched at another time, when the feed turned out not to have changed.
+	 */
+	SightingSchedule withFetchedAt(long fetchedAt) {
+		return new SightingSchedule(locationId, fetchedAt, zone, baseSeconds, starts, durations, positions);
+	}
+
+	/*
+	 * This schedule without the passes that start at or before the given time, for serving a
+	 * copy kept past its expiry.
+	 */
+	SightingSchedule after(long now) {
+		int index = indexAfter(now);
+		if (index == 0) {
+			return this;
+		}
+		return new SightingSchedule(locationId, fetchedAt, zone, baseSeconds,
+				Arrays.copyOfRange(starts, index, starts.length), Arrays.copyOfRange(durations, index, durations.length),
+				Arrays.copyOfRange(positions, index, positions.length));
+	}
+
+	/*
+	 * First sighting that starts after the given time, or null if there is none.
+	 */
+	Sighting next(long now) {
+		int index = indexAfter(now);
+		return index < starts.length ? get(index) : null;
+	}
+
+	byte[] toBytes() {
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + starts.length * 10);
+		DataOutputStream out = new DataOutputStream(bytes);
+		try {
+			out.writeByte(FORMAT_VERSION);
+			out.writeUTF(locationId);
+			out.writeLong(fetchedAt);
+			out.writeUTF(zone.getId());
+			out.writeLong(baseSeconds);
+			out.writeInt(starts.length);
+			for (int i = 0; i < starts.length; i++) {
+				out.writeInt(starts[i]);
+				out.writeShort(durations[i]);
+				out.writeInt(positions[i]);
+			}
+			out.flush();
+		}
+		catch (IOException ioex) {
+			// ByteArrayOutputStream does not throw
+			throw new IllegalStateException(ioex);
+		}
+		return bytes.toByteArray();
+	}
+
+	static SightingSchedule fromBytes(byte[] bytes) throws IOException {
+
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+		int version = in.readUnsignedByte();
+		if (version != FORMAT_VERSION) {
+			throw new IOException("Unsupported sighting schedule format " + version);
+		}
+
+		String locationId = in.readUTF();
+		long fetchedAt = in.readLong();
+		ZoneId zone;
+		try {
+			zone = ZoneId.of(in.readUTF());
+		}
+		catch (RuntimeException rex) {
+			throw new IOException("Unknown time zone in sighting schedule", rex);
+		}
+		long baseSeconds = in.readLong();
+		int count = in.readInt();
+		if (count < 0 || count > bytes.length / 10) {
+			throw new IOException("Corrupt sighting schedule, " + count + " passes");
+		}
+
+		int[] starts = new int[count];
+		short[] durations = new short[count];
+		int[] positions = new int[count];
+		for (int i = 0; i < count; i++) {
+			starts[i] = in.readInt();
+			durations[i] = in.readShort();
+			positions[i] = in.readInt();
+		}
+		return new SightingSchedule(locationId, fetchedAt, zone, baseSeconds, starts, durations, positions);
+	}
+
+	private static int pack(Sighting sighting) {
+		return (sighting.getMaxElevation() + 1)
+				| (sighting.getApproachElevation() + 1) << ELEVATION_BITS
+				| (sighting.getApproachDirection() + 1) << (2 * ELEVATION_BITS)
+				| (sighting.getDepartureElevation() + 1) << (2 * ELEVATION_BITS + DIRECTION_BITS)
+				| (sighting.getDepartureDirection() + 1) << (3 * ELEVATION_BITS + DIRECTION_BITS);
+	}
+
+	private static int field(int position, int shift, int mask) {
+		return ((position >>> shift) & mask) - 1;
+	}
+}
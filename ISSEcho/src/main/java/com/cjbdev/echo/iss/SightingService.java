@@ -0,0 +1,608 @@
+package com.cjbdev.echo.iss;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Single entry point for sighting data. Lookups go through the in-process cache, then the shared
+ * DynamoDB tier when one is configured, and only reach the Spot The Station feed when both miss.
+ * When a disk cache is configured every schedule put in the in-process cache is also appended to
+ * it, and it is reloaded into the in-process cache when the service is created.
+ * <p>
+ * When {@link PredictedSightings} is configured, a miss in the caches computes the schedule
+ * locally and the feed is only downloaded for locations it cannot predict.
+ * <p>
+ * A {@link SightingSnapshot} from the batch job, when one is configured, is consulted right after
+ * the in-process cache, so a fresh snapshot answers every location without any fetching. A
+ * schedule in it that is older than {@code snapshot.maxAgeDays} is only kept as the stale copy and
+ * loaded again like a miss.
+ * <p>
+ * Misses are loaded asynchronously on a pool of {@code fetch.threads}, and the caller waits only
+ * until its {@link Deadline}; a load that outlives the deadline still fills the cache for the
+ * next request. Feed downloads are hedged (see {@link FeedClient#getHedged}). Without the pool
+ * (a {@code fetch.threads} of 0) loads run on the calling thread.
+ * <p>
+ * Loads are coalesced per location: while one is running, other requests for the same location
+ * wait for its result instead of starting a fetch and parse of their own.
+ * <p>
+ * A schedule that has expired in the in-process cache is still served for up to
+ * {@code stale.maxAgeSeconds} past its expiry, without the passes already over, while a fresh
+ * one is loaded in the background; without the pool it is served only when the load fails or
+ * misses the deadline. Feed downloads go through a {@link CircuitBreaker}, so while NASA keeps
+ * failing the service answers from what it has instead of waiting on every request for another
+ * timeout.
+ * <p>
+ * {@link #shutdown} stops the threads the service and its parts started and closes the disk
+ * cache, when the server hosting the skill stops.
+ */
+class SightingService {
+
+	private static final Logger log = LoggerFactory.getLogger(SightingService.class);
+
+	private static final Executor CALLER = new Executor() {
+		public void execute(Runnable command) {
+			command.run();
+		}
+	};
+
+	private final SightingCache cache;
+	private final DynamoSightingCache sharedCache;
+	private final DiskSightingCache diskCache;
+	private final SightingFeedReader reader;
+	private final PredictedSightings predicted;
+	private final SightingSnapshot snapshot;
+	private final CircuitBreaker breaker;
+	private final ScheduledExecutorService executor;
+	private final long maxStaleMillis;
+
+	private final ConcurrentHashMap<String, CompletableFuture<SightingSchedule>> inFlight =
+			new ConcurrentHashMap<String, CompletableFuture<SightingSchedule>>();
+	private final AtomicLong coalesced = new AtomicLong();
+	private final AtomicLong staleServed = new AtomicLong();
+	private final AtomicLong deadlineMisses = new AtomicLong();
+
+	SightingService(SightingCache cache, DynamoSightingCache sharedCache, DiskSightingCache diskCache,
+			SightingFeedReader reader) {
+		this(cache, sharedCache, diskCache, reader, null, null);
+	}
+
+	SightingService(SightingCache cache, DynamoSightingCache sharedCache, DiskSightingCache diskCache,
+			SightingFeedReader reader, PredictedSightings predicted, SightingSnapshot snapshot) {
+		this(cache, sharedCache, diskCache, reader, predicted, snapshot, null, null, 0);
+	}
+
+	SightingService(SightingCache cache, DynamoSightingCache sharedCache, DiskSightingCache diskCache,
+			SightingFeedReader reader, PredictedSightings predicted, SightingSnapshot snapshot, CircuitBreaker breaker,
+			ScheduledExecutorService executor, long maxStaleMillis) {
+		this.cache = cache;
+		this.sharedCache = sharedCache;
+		this.diskCache = diskCache;
+		this.reader = reader;
+		this.predicted = predicted;
+		this.snapshot = snapshot;
+		this.breaker = breaker;
+		this.executor = executor;
+		this.maxStaleMillis = maxStaleMillis;
+	}
+
+	static SightingService fromConfig(LocationCoordinates coordinates) {
+
+		SightingCache cache = SightingCache.fromConfig();
+		DiskSightingCache diskCache = DiskSightingCache.fromConfig();
+		if (diskCache != null) {
+			try {
+				for (SightingSchedule schedule : diskCache.load()) {
+					cache.put(schedule.getLocationId(), schedule);
+				}
+			}
+			catch (IOException ioex) {
+				log.warn("Starting without the disk cache", ioex);
+				diskCache = null;
+			}
+		}
+
+		int threads = SkillConfig.getInt("fetch.threads", 8);
+		ScheduledThreadPoolExecutor executor = null;
+		if (threads > 0) {
+			executor = new ScheduledThreadPoolExecutor(threads,
+					new NearbySightingFinder.DaemonThreadFactory("sighting-fetch"));
+			executor.setRemoveOnCancelPolicy(true);
+		}
+		return new SightingService(cache, DynamoSightingCache.fromConfig(), diskCache,
+				new SightingFeedReader(FeedClient.fromConfig(), coordinates), PredictedSightings.fromConfig(coordinates),
+				SightingSnapshot.fromConfig(),
+				SkillConfig.getBoolean("breaker.enabled", true) ? CircuitBreaker.fromConfig("Sighting feed") : null,
+				executor, SkillConfig.getLong("stale.maxAgeSeconds", 3 * 24 * 60 * 60) * 1000L);
+	}
+
+	/*
+	 * The location's schedule, by the deadline of the request this thread is answering.
+	 */
+	SightingSchedule getSchedule(String locationId) throws IOException {
+		return getSchedule(locationId, Deadline.current());
+	}
+
+	/*
+	 * The location's schedule, or a stale copy of it when loading fails or does not finish before
+	 * the deadline. Throws when there is neither.
+	 */
+	SightingSchedule getSchedule(String locationId, Deadline deadline) throws IOException {
+
+		SightingSchedule schedule = cache.get(locationId);
+		if (schedule != null) {
+			log.debug("Cache hit for " + locationId + ": " + cache);
+			return schedule;
+		}
+
+		schedule = fromSnapshot(locationId);
+		if (schedule != null) {
+			return schedule;
+		}
+
+		SightingSchedule stale = staleFor(locationId);
+		if (stale != null && executor != null) {
+			revalidate(locationId);
+			return serveStale(stale);
+		}
+		try {
+			return await(locationId, load(locationId, false, true), deadline);
+		}
+		catch (IOException ioex) {
+			if (stale == null) {
+				throw ioex;
+			}
+			log.warn("Serving stale sightings for " + locationId + ": " + ioex.getMessage());
+			return serveStale(stale);
+		}
+	}
+
+	/*
+	 * Schedules for several locations by the deadline of the request this thread is answering.
+	 */
+	Map<String, SightingSchedule> getSchedules(Collection<String> locationIds) {
+		return getSchedules(locationIds, Deadline.current());
+	}
+
+	/*
+	 * Schedules for several locations, with one batch read of the shared tier for everything
+	 * the in-process cache does not hold and the rest loaded in parallel. Locations that cannot
+	 * be loaded before the deadline are left out; their loads still fill the cache.
+	 */
+	Map<String, SightingSchedule> getSchedules(Collection<String> locationIds, Deadline deadline) {
+
+		Map<String, SightingSchedule> schedules = new LinkedHashMap<String, SightingSchedule>();
+		List<String> missing = new ArrayList<String>();
+		for (String locationId : locationIds) {
+			SightingSchedule schedule = cache.get(locationId);
+			if (schedule == null) {
+				schedule = fromSnapshot(locationId);
+			}
+			if (schedule != null) {
+				schedules.put(locationId, schedule);
+			}
+			else {
+				missing.add(locationId);
+			}
+		}
+
+		if (sharedCache != null && !missing.isEmpty()) {
+			Map<String, SightingSchedule> shared = sharedCache.getAll(missing);
+			for (Map.Entry<String, SightingSchedule> entry : shared.entrySet()) {
+				remember(entry.getValue());
+				schedules.put(entry.getKey(), entry.getValue());
+			}
+			missing.removeAll(shared.keySet());
+		}
+
+		Map<String, CompletableFuture<SightingSchedule>> loads =
+				new LinkedHashMap<String, CompletableFuture<SightingSchedule>>();
+		for (String locationId : missing) {
+			SightingSchedule stale = staleFor(locationId);
+			if (stale != null && executor != null) {
+				revalidate(locationId);
+				schedules.put(locationId, serveStale(stale));
+			}
+			else {
+				loads.put(locationId, load(locationId, false, false));
+			}
+		}
+
+		for (Map.Entry<String, CompletableFuture<SightingSchedule>> entry : loads.entrySet()) {
+			String locationId = entry.getKey();
+			try {
+				schedules.put(locationId, await(locationId, entry.getValue(), deadline));
+			}
+			catch (IOException ioex) {
+				SightingSchedule stale = staleFor(locationId);
+				if (stale != null) {
+					schedules.put(locationId, serveStale(stale));
+				}
+				else {
+					log.warn("Could not fetch sightings for " + locationId, ioex);
+				}
+			}
+		}
+		return schedules;
+	}
+
+	/*
+	 * Fetch the location's schedule again whatever the caches hold, for background refreshes.
+	 * Waits as long as the fetch takes.
+	 */
+	SightingSchedule refresh(String locationId) throws IOException {
+		return await(locationId, load(locationId, true, false), null);
+	}
+
+	/*
+	 * The expired copy of the location's schedule without its past passes, or null when there
+	 * is none recent enough or all of its passes are over.
+	 */
+	private SightingSchedule staleFor(String locationId) {
+
+		if (maxStaleMillis <= 0) {
+			return null;
+		}
+		SightingSchedule stale = cache.getStale(locationId, maxStaleMillis);
+		if (stale == null) {
+			return null;
+		}
+		SightingSchedule upcoming = stale.after(System.currentTimeMillis());
+		return upcoming.isEmpty() && !stale.isEmpty() ? null : upcoming;
+	}
+
+	private SightingSchedule serveStale(SightingSchedule stale) {
+		staleServed.incrementAndGet();
+		return stale;
+	}
+
+	/*
+	 * Load the location again in the background unless that is already under way.
+	 */
+	private void revalidate(final String locationId) {
+
+		if (inFlight.containsKey(locationId)) {
+			return;
+		}
+		load(locationId, false, true).whenComplete(new BiConsumer<SightingSchedule, Throwable>() {
+			public void accept(SightingSchedule schedule, Throwable failure) {
+				if (failure != null) {
+					log.warn("Could not revalidate " + locationId + ": " + unwrap(failure).getMessage());
+				}
+			}
+		});
+	}
+
+	/*
+	 * Wait for a load until the deadline, or for as long as it takes without one.
+	 */
+	private SightingSchedule await(String locationId, CompletableFuture<SightingSchedule> load, Deadline deadline)
+			throws IOException {
+		try {
+			return deadline == null ? load.get() : load.get(deadline.remainingMillis(), TimeUnit.MILLISECONDS);
+		}
+		catch (TimeoutException tex) {
+			deadlineMisses.incrementAndGet();
+			throw new InterruptedIOException("No sightings for " + locationId + " before the deadline");
+		}
+		catch (InterruptedException iex) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for " + locationId);
+		}
+		catch (ExecutionException eex) {
+			Throwable cause = unwrap(eex);
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new IOException("Could not load " + locationId, cause);
+		}
+	}
+
+	/*
+	 * The load of the location, or fetch for a refresh, that is already running, or a new one.
+	 * Every caller of a load shares its schedule or its failure.
+	 */
+	private CompletableFuture<SightingSchedule> load(final String locationId, boolean refresh, final boolean shared) {
+
+		final CompletableFuture<SightingSchedule> result = new CompletableFuture<SightingSchedule>();
+		CompletableFuture<SightingSchedule> running = inFlight.putIfAbsent(locationId, result);
+		if (running != null) {
+			coalesced.incrementAndGet();
+			log.debug("Waiting for the load of " + locationId + " in progress");
+			return running;
+		}
+
+		CompletableFuture<SightingSchedule> work;
+		try {
+			if (refresh) {
+				work = fetch(locationId);
+			}
+			else {
+				work = CompletableFuture.supplyAsync(new Supplier<SightingSchedule>() {
+					public SightingSchedule get() {
+						return fromTiers(locationId, shared);
+					}
+				}, executor()).thenCompose(new Function<SightingSchedule, CompletionStage<SightingSchedule>>() {
+					public CompletionStage<SightingSchedule> apply(SightingSchedule schedule) {
+						return schedule != null ? CompletableFuture.completedFuture(schedule) : fetch(locationId);
+					}
+				});
+			}
+		}
+		catch (RuntimeException rex) {
+			work = failed(rex);
+		}
+
+		work.whenComplete(new BiConsumer<SightingSchedule, Throwable>() {
+			public void accept(SightingSchedule schedule, Throwable failure) {
+				inFlight.remove(locationId, result);
+				if (failure != null) {
+					result.completeExceptionally(unwrap(failure));
+				}
+				else {
+					result.complete(schedule);
+				}
+			}
+		});
+		return result;
+	}
+
+	/*
+	 * The location's schedule after a cache miss, from the shared tier if asked, or null when it
+	 * has to be fetched. A load that finished between the caller's miss and the start of this one
+	 * has already cached it, so the cache is checked once more first, without counting another
+	 * lookup.
+	 */
+	private SightingSchedule fromTiers(String locationId, boolean shared) {
+
+		if (cache.getExpiry(locationId) > System.currentTimeMillis()) {
+			SightingSchedule schedule = cache.peek(locationId);
+			if (schedule != null) {
+				return schedule;
+			}
+		}
+
+		if (shared && sharedCache != null) {
+			SightingSchedule schedule = sharedCache.get(locationId);
+			if (schedule == null && !sharedCache.tryLease(locationId)) {
+				log.debug("Waiting for another container to fetch " + locationId);
+				schedule = sharedCache.await(locationId);
+			}
+			if (schedule != null) {
+				remember(schedule);
+				return schedule;
+			}
+		}
+		return null;
+	}
+
+	/*
+	 * The snapshot's schedule, kept in the in-process cache only; the other tiers and the disk
+	 * file would just hold a second copy. Null when it is older than the snapshot's maximum age;
+	 * it then goes in the cache as the stale copy, if the cache has none, and is loaded again.
+	 */
+	private SightingSchedule fromSnapshot(String locationId) {
+		if (snapshot == null) {
+			return null;
+		}
+		SightingSchedule schedule = snapshot.get(locationId);
+		if (schedule == null) {
+			return null;
+		}
+		if (!snapshot.isFresh(schedule, System.currentTimeMillis())) {
+			log.debug("Snapshot schedule of " + locationId + " has expired");
+			if (cache.peek(locationId) == null) {
+				cache.put(locationId, schedule);
+			}
+			return null;
+		}
+		cache.put(locationId, schedule);
+		return schedule;
+	}
+
+	/*
+	 * Predict the location's schedule, or download it when it cannot be predicted, and cache it.
+	 */
+	private CompletableFuture<SightingSchedule> fetch(final String locationId) {
+
+		return CompletableFuture.supplyAsync(new Supplier<SightingSchedule>() {
+			public SightingSchedule get() {
+				SightingSchedule schedule = predicted == null ? null : predicted.fetch(locationId);
+				if (schedule != null) {
+					remember(schedule);
+				}
+				return schedule;
+			}
+		}, executor()).thenCompose(new Function<SightingSchedule, CompletionStage<SightingSchedule>>() {
+			public CompletionStage<SightingSchedule> apply(SightingSchedule schedule) {
+				if (schedule != null) {
+					return CompletableFuture.completedFuture(schedule);
+				}
+				return download(locationId).thenApply(new Function<SightingSchedule, SightingSchedule>() {
+					public SightingSchedule apply(SightingSchedule downloaded) {
+						remember(downloaded);
+						if (sharedCache != null) {
+							sharedCache.put(downloaded);
+						}
+						log.debug("Fetched " + locationId + ": " + cache);
+						return downloaded;
+					}
+				});
+			}
+		});
+	}
+
+	/*
+	 * The feed download, through the circuit breaker, conditional on the cached copy when there
+	 * is one. A missing feed is an answer from NASA, not a failure of it, and does not count
+	 * against the breaker.
+	 */
+	private CompletableFuture<SightingSchedule> download(final String locationId) {
+
+		if (breaker != null && !breaker.allowRequest(System.currentTimeMillis())) {
+			return failed(new IOException("Not calling the sighting feed, " + breaker));
+		}
+
+		final SightingSchedule cached = cache.peek(locationId);
+		CompletableFuture<SightingSchedule> download;
+		try {
+			if (executor != null) {
+				download = reader.fetchAsync(locationId, cached, executor);
+			}
+			else {
+				download = CompletableFuture.supplyAsync(new Supplier<SightingSchedule>() {
+					public SightingSchedule get() {
+						try {
+							return reader.fetch(locationId, cached);
+						}
+						catch (IOException ioex) {
+							throw new CompletionException(ioex);
+						}
+					}
+				}, CALLER);
+			}
+		}
+		catch (RuntimeException rex) {
+			// allowed through but never started, e.g. a pool that is shutting down; report it,
+			// or a half open breaker would wait for this trial call forever
+			if (breaker != null) {
+				breaker.onFailure(System.currentTimeMillis());
+			}
+			return failed(new IOException("Could not start the download of " + locationId, rex));
+		}
+		if (breaker == null) {
+			return download;
+		}
+		return download.whenComplete(new BiConsumer<SightingSchedule, Throwable>() {
+			public void accept(SightingSchedule schedule, Throwable failure) {
+				Throwable cause = failure == null ? null : unwrap(failure);
+				if (cause instanceof IOException && !(cause instanceof FileNotFoundException)) {
+					breaker.onFailure(System.currentTimeMillis());
+				}
+				else {
+					breaker.onSuccess();
+				}
+			}
+		});
+	}
+
+	private Executor executor() {
+		return executor != null ? executor : CALLER;
+	}
+
+	private static <T> CompletableFuture<T> failed(Throwable failure) {
+		CompletableFuture<T> future = new CompletableFuture<T>();
+		future.completeExceptionally(failure);
+		return future;
+	}
+
+	private static Throwable unwrap(Throwable failure) {
+		while ((failure instanceof CompletionException || failure instanceof ExecutionException)
+				&& failure.getCause() != null) {
+			failure = failure.getCause();
+		}
+		return failure;
+	}
+
+	private void remember(SightingSchedule schedule) {
+		cache.put(schedule.getLocationId(), schedule);
+		if (diskCache != null) {
+			diskCache.append(schedule);
+		}
+	}
+
+	/*
+	 * Stop the download pool, the feed client's hedge threads and the element refresh of the
+	 * predictions, then close the disk cache. Loads still running are interrupted and do not reach
+	 * the disk cache.
+	 */
+	void shutdown() {
+		if (executor != null) {
+			executor.shutdownNow();
+		}
+		if (reader != null && reader.getClient() != null) {
+			reader.getClient().shutdown();
+		}
+		if (predicted != null) {
+			predicted.shutdown();
+		}
+		if (diskCache != null) {
+			try {
+				diskCache.close();
+			}
+			catch (IOException ioex) {
+				log.warn("Could not close the disk cache", ioex);
+			}
+		}
+	}
+
+	SightingCache getCache() {
+		return cache;
+	}
+
+	SightingFeedReader getReader() {
+		return reader;
+	}
+
+	/*
+	 * Lookups that waited for a load of the same location already running.
+	 */
+	long getCoalesced() {
+		return coalesced.get();
+	}
+
+	/*
+	 * Requests answered with a schedule past its expiry.
+	 */
+	long getStaleServed() {
+		return staleServed.get();
+	}
+
+	/*
+	 * Lookups that stopped waiting for a load at their deadline.
+	 */
+	long getDeadlineMisses() {
+		return deadlineMisses.get();
+	}
+
+	/*
+	 * The breaker around the feed, or null when it is turned off.
+	 */
+	CircuitBreaker getBreaker() {
+		return breaker;
+	}
+
+	@Override
+	public String toString() {
+		return "SightingService[coalesced=" + coalesced.get() + ", staleServed=" + staleServed.get()
+				+ ", deadlineMisses=" + deadlineMisses.get() + "]";
+	}
+}
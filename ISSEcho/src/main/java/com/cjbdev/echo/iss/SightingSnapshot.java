@@ -0,0 +1,229 @@
+package com.cjbdev.echo.iss;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Read-only file of the sighting schedules of every location, written by the batch job in
+ * {@link SightingSnapshotBuilder} so the skill can answer without fetching anything per request.
+ * Layout, all integers big-endian:
+ * <pre>
+ * int    magic "ISSS", int version
+ * long   created at (epoch millis)
+ * int    schedule count, int CRC32 of the schedule bytes
+ *        per schedule, sorted by location id: unsigned short byte length, UTF-8 location id,
+ *                                              int offset, int length
+ *        schedule bytes, each in the SightingSchedule.toBytes form
+ * </pre>
+ * Only the directory is read when the file is opened; a schedule is decoded when it is asked for.
+ * <p>
+ * Settings: {@code snapshot.path}, or the {@code snapshot/sightings.bin} resource when it is
+ * packaged, and {@code snapshot.maxAgeDays}, after which the file is ignored and its schedules
+ * are no longer served.
+ */
+final class SightingSnapshot {
+
+	private static final Logger log = LoggerFactory.getLogger(SightingSnapshot.class);
+
+	static final String RESOURCE = "/snapshot/sightings.bin";
+
+	private static final int MAGIC = 0x49535353;
+	private static final int VERSION = 1;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private final ByteBuffer buffer;
+	private final long createdAt;
+	private final Map<String, long[]> directory;
+	private final long maxAgeMillis;
+
+	private SightingSnapshot(ByteBuffer buffer, long createdAt, Map<String, long[]> directory, long maxAgeMillis) {
+		this.buffer = buffer;
+		this.createdAt = createdAt;
+		this.directory = directory;
+		this.maxAgeMillis = maxAgeMillis;
+	}
+
+	/*
+	 * The configured snapshot, or null when there is none or it is unreadable or too old.
+	 */
+	static SightingSnapshot fromConfig() {
+
+		String path = SkillConfig.getString("snapshot.path", null);
+		long maxAgeMillis = TimeUnit.DAYS.toMillis(SkillConfig.getLong("snapshot.maxAgeDays", 7));
+		try {
+			SightingSnapshot snapshot;
+			if (path != null) {
+				snapshot = read(LocationSnapshot.map(new File(path)), maxAgeMillis);
+			}
+			else {
+				URL url = SightingSnapshot.class.getResource(RESOURCE);
+				if (url == null) {
+					return null;
+				}
+				snapshot = read(LocationSnapshot.open(url), maxAgeMillis);
+			}
+
+			long age = System.currentTimeMillis() - snapshot.getCreatedAt();
+			if (age > maxAgeMillis) {
+				log.warn("Ignoring sighting snapshot, it is " + TimeUnit.MILLISECONDS.toHours(age) + " hours old");
+				return null;
+			}
+			log.info("Loaded sighting snapshot of " + snapshot.size() + " locations, "
+					+ TimeUnit.MILLISECONDS.toHours(age) + " hours old");
+			return snapshot;
+		}
+		catch (IOException ioex) {
+			log.warn("Could not read sighting snapshot", ioex);
+		}
+		catch (RuntimeException rex) {
+			log.warn("Corrupt sighting snapshot", rex);
+		}
+		return null;
+	}
+
+	/*
+	 * The snapshot in the buffer, whose schedules are fresh for maxAgeMillis after they were
+	 * collected.
+	 */
+	static SightingSnapshot read(ByteBuffer buffer, long maxAgeMillis) throws IOException {
+
+		if (buffer.getInt(0) != MAGIC) {
+			throw new IOException("Not a sighting snapshot");
+		}
+		int version = buffer.getInt(4);
+		if (version != VERSION) {
+			throw new IOException("Unsupported sighting snapshot version " + version);
+		}
+		long createdAt = buffer.getLong(8);
+		int count = buffer.getInt(16);
+		int checksum = buffer.getInt(20);
+
+		int pos = 24;
+		Map<String, long[]> directory = new HashMap<String, long[]>(count * 2);
+		List<long[]> entries = new ArrayList<long[]>(count);
+		for (int i = 0; i < count; i++) {
+			byte[] id = new byte[buffer.getShort(pos) & 0xFFFF];
+			pos += 2;
+			for (int j = 0; j < id.length; j++) {
+				id[j] = buffer.get(pos++);
+			}
+			long[] entry = { buffer.getInt(pos), buffer.getInt(pos + 4) };
+			pos += 8;
+			directory.put(new String(id, UTF8), entry);
+			entries.add(entry);
+		}
+
+		CRC32 crc = new CRC32();
+		for (int i = pos; i < buffer.limit(); i++) {
+			crc.update(buffer.get(i));
+		}
+		if ((int) crc.getValue() != checksum) {
+			throw new IOException("Sighting snapshot checksum mismatch");
+		}
+		for (long[] entry : entries) {
+			entry[0] += pos;
+			if (entry[0] + entry[1] > buffer.limit()) {
+				throw new IOException("Sighting snapshot entry out of range");
+			}
+		}
+		return new SightingSnapshot(buffer, createdAt, directory, maxAgeMillis);
+	}
+
+	static void write(long createdAt, Collection<SightingSchedule> schedules, OutputStream out) throws IOException {
+
+		List<SightingSchedule> sorted = new ArrayList<SightingSchedule>(schedules);
+		Collections.sort(sorted, new Comparator<SightingSchedule>() {
+			public int compare(SightingSchedule a, SightingSchedule b) {
+				return a.getLocationId().compareTo(b.getLocationId());
+			}
+		});
+
+		ByteArrayOutputStream payload = new ByteArrayOutputStream(sorted.size() * 256);
+		ByteArrayOutputStream header = new ByteArrayOutputStream(sorted.size() * 32);
+		DataOutputStream data = new DataOutputStream(header);
+		for (SightingSchedule schedule : sorted) {
+			byte[] id = schedule.getLocationId().getBytes(UTF8);
+			byte[] bytes = schedule.toBytes();
+			data.writeShort(id.length);
+			data.write(id);
+			data.writeInt(payload.size());
+			data.writeInt(bytes.length);
+			payload.write(bytes);
+		}
+		data.flush();
+
+		CRC32 crc = new CRC32();
+		byte[] payloadBytes = payload.toByteArray();
+		crc.update(payloadBytes, 0, payloadBytes.length);
+
+		DataOutputStream head = new DataOutputStream(out);
+		head.writeInt(MAGIC);
+		head.writeInt(VERSION);
+		head.writeLong(createdAt);
+		head.writeInt(sorted.size());
+		head.writeInt((int) crc.getValue());
+		header.writeTo(head);
+		head.write(payloadBytes);
+		head.flush();
+	}
+
+	long getCreatedAt() {
+		return createdAt;
+	}
+
+	int size() {
+		return directory.size();
+	}
+
+	/*
+	 * Whether a schedule from this snapshot is recent enough to serve as it is.
+	 */
+	boolean isFresh(SightingSchedule schedule, long now) {
+		return schedule.getFetchedAt() + maxAgeMillis > now;
+	}
+
+	boolean contains(String locationId) {
+		return directory.containsKey(locationId);
+	}
+
+	/*
+	 * The location's schedule, or null when the snapshot does not have it.
+	 */
+	SightingSchedule get(String locationId) {
+
+		long[] entry = directory.get(locationId);
+		if (entry == null) {
+			return null;
+		}
+		byte[] bytes = new byte[(int) entry[1]];
+		int offset = (int) entry[0];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = buffer.get(offset + i);
+		}
+		try {
+			return SightingSchedule.fromBytes(bytes);
+		}
+		catch (IOException ioex) {
+			log.warn("Unreadable snapshot entry for " + locationId, ioex);
+			return null;
+		}
+	}
+}
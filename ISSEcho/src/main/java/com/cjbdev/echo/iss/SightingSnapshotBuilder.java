@@ -0,0 +1,220 @@
+package com.cjbdev.echo.iss;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Batch job that collects the sighting schedule of every location in the speechAssets lists and
+ * writes them to one {@link SightingSnapshot} file:
+ * <pre>
+ * java -cp target/classes:... com.cjbdev.echo.iss.SightingSnapshotBuilder sightings.bin [days] [parallelism]
+ * </pre>
+ * Locations are split in halves recursively on a fork/join pool, one worker per core unless told
+ * otherwise. Each location is predicted with {@link PredictedSightings} when current elements and
+ * its coordinates are available and downloaded from the feed otherwise; downloads block their worker,
+ * so the parallelism is also the number of concurrent requests to NASA. Progress and throughput
+ * are printed every few seconds, and the file is written next to the target and renamed over it.
+ */
+public class SightingSnapshotBuilder {
+
+	private static final int LEAF_SIZE = 4;
+
+	private final PredictedSightings predicted;
+	private final SightingFeedReader reader;
+	private final int parallelism;
+
+	private final AtomicInteger done = new AtomicInteger();
+	private final AtomicInteger predictedCount = new AtomicInteger();
+	private final AtomicInteger fetchedCount = new AtomicInteger();
+	private final AtomicInteger failedCount = new AtomicInteger();
+	private final AtomicInteger passCount = new AtomicInteger();
+
+	SightingSnapshotBuilder(PredictedSightings predicted, SightingFeedReader reader, int parallelism) {
+		this.predicted = predicted;
+		this.reader = reader;
+		this.parallelism = parallelism;
+	}
+
+	public static void main(String[] args) throws IOException {
+
+		if (args.length < 1) {
+			throw new IllegalArgumentException("usage: SightingSnapshotBuilder <output file> [days] [parallelism]");
+		}
+		long days = args.length > 1 ? Long.parseLong(args[1]) : 14;
+		int parallelism = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+
+		LocationIndex index = LocationIndex.load(new SpaceStationListLoader());
+		LocationCoordinates coordinates = LocationCoordinates.load(index);
+		PredictedSightings predicted = PredictedSightings.fromConfig(coordinates, days);
+		if (predicted != null) {
+			predicted.refresh(System.currentTimeMillis());
+		}
+		SightingSnapshotBuilder builder = new SightingSnapshotBuilder(predicted,
+				new SightingFeedReader(FeedClient.fromConfig(), coordinates), parallelism);
+
+		long createdAt = System.currentTimeMillis();
+		List<SightingSchedule> schedules = builder.collect(locationIds(index));
+
+		File target = new File(args[0]);
+		File parent = target.getAbsoluteFile().getParentFile();
+		if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+			throw new IOException("Could not create " + parent);
+		}
+		File temp = new File(target.getPath() + ".tmp");
+		OutputStream out = new FileOutputStream(temp);
+		try {
+			SightingSnapshot.write(createdAt, schedules, out);
+		}
+		finally {
+			out.close();
+		}
+		Files.move(temp.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE,
+				StandardCopyOption.REPLACE_EXISTING);
+
+		System.out.println("Wrote " + schedules.size() + " schedules to " + target + " (" + target.length()
+				+ " bytes)");
+		if (schedules.isEmpty()) {
+			System.exit(1);
+		}
+	}
+
+	/*
+	 * Every location id once, in list order; some regions share locations.
+	 */
+	static List<String> locationIds(LocationIndex index) {
+		Set<String> ids = new LinkedHashSet<String>();
+		List<LocationIndex.Region> regions = new ArrayList<LocationIndex.Region>(index.getStates());
+		regions.addAll(index.getCountries());
+		for (LocationIndex.Region region : regions) {
+			for (KeyValuePair location : region.getLocations()) {
+				ids.add(location.getValue());
+			}
+		}
+		return new ArrayList<String>(ids);
+	}
+
+	/*
+	 * Schedules for the locations that could be collected, in the order given.
+	 */
+	List<SightingSchedule> collect(final List<String> locationIds) {
+
+		final AtomicReferenceArray<SightingSchedule> results = new AtomicReferenceArray<SightingSchedule>(
+				locationIds.size());
+		final long start = System.nanoTime();
+
+		ScheduledExecutorService progress = Executors.newSingleThreadScheduledExecutor(
+				new NearbySightingFinder.DaemonThreadFactory("snapshot-progress"));
+		progress.scheduleAtFixedRate(new Runnable() {
+			public void run() {
+				report(locationIds.size(), start, "progress");
+			}
+		}, 5, 5, TimeUnit.SECONDS);
+
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		try {
+			pool.invoke(new CollectTask(locationIds, results, 0, locationIds.size()));
+		}
+		finally {
+			pool.shutdown();
+			progress.shutdownNow();
+		}
+		report(locationIds.size(), start, "done");
+
+		List<SightingSchedule> schedules = new ArrayList<SightingSchedule>(locationIds.size());
+		for (int i = 0; i < results.length(); i++) {
+			if (results.get(i) != null) {
+				schedules.add(results.get(i));
+			}
+		}
+		return schedules;
+	}
+
+	/*
+	 * One location's schedule, predicted if possible and downloaded otherwise; null if neither
+	 * worked.
+	 */
+	SightingSchedule collect(String locationId) {
+
+		if (predicted != null) {
+			SightingSchedule schedule = predicted.fetch(locationId);
+			if (schedule != null) {
+				predictedCount.incrementAndGet();
+				return schedule;
+			}
+		}
+		try {
+			SightingSchedule schedule = reader.fetch(locationId);
+			fetchedCount.incrementAndGet();
+			return schedule;
+		}
+		catch (IOException ioex) {
+			failedCount.incrementAndGet();
+			System.out.println("Could not fetch " + locationId + ": " + ioex.getMessage());
+			return null;
+		}
+	}
+
+	private void report(int total, long start, String label) {
+		int completed = done.get();
+		double seconds = (System.nanoTime() - start) / 1e9;
+		double rate = completed / Math.max(seconds, 1e-9);
+		System.out.println(String.format("%s: %d/%d locations (%.0f%%) in %.1f s, %.1f locations/s, %.0f passes/s, "
+				+ "%d predicted, %d fetched, %d failed, %d workers%s", label, completed, total,
+				100.0 * completed / Math.max(total, 1), seconds, rate, passCount.get() / Math.max(seconds, 1e-9),
+				predictedCount.get(), fetchedCount.get(), failedCount.get(), parallelism,
+				completed < total && rate > 0 ? String.format(", %.0f s left", (total - completed) / rate) : ""));
+	}
+
+	/**
+	 * Collects a range of locations, splitting it in halves down to a few locations per task.
+	 */
+	private final class CollectTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final List<String> locationIds;
+		private final AtomicReferenceArray<SightingSchedule> results;
+		private final int from;
+		private final int to;
+
+		CollectTask(List<String> locationIds, AtomicReferenceArray<SightingSchedule> results, int from, int to) {
+			this.locationIds = locationIds;
+			this.results = results;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+
+			if (to - from <= LEAF_SIZE) {
+				for (int i = from; i < to; i++) {
+					SightingSchedule schedule = collect(locationIds.get(i));
+					if (schedule != null) {
+						results.set(i, schedule);
+						passCount.addAndGet(schedule.size());
+					}
+					done.incrementAndGet();
+				}
+				return;
+			}
+			int mid = (from + to) >>> 1;
+			invokeAll(new CollectTask(locationIds, results, from, mid), new CollectTask(locationIds, results, mid, to));
+		}
+	}
+}
@@ -0,0 +1,57 @@
+package com.cjbdev.echo.iss;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Tuning knobs for the skill. A setting such as {@code cache.ttlSeconds} is read from the system
+ * property {@code iss.cache.ttlSeconds}, then from the environment variable
+ * {@code ISS_CACHE_TTLSECONDS}, which is how Lambda functions are configured.
+ */
+final class SkillConfig {
+
+	private static final Logger log = LoggerFactory.getLogger(SkillConfig.class);
+
+	private SkillConfig() {
+	}
+
+	static String getString(String name, String defaultValue) {
+
+		String value = System.getProperty("iss." + name);
+		if (value == null) {
+			value = System.getenv("ISS_" + name.toUpperCase().replace('.', '_'));
+		}
+		if (value == null || value.trim().isEmpty()) {
+			return defaultValue;
+		}
+		return value.trim();
+	}
+
+	static long getLong(String name, long defaultValue) {
+
+		String value = getString(name, null);
+		if (value == null) {
+			return defaultValue;
+		}
+		try {
+			return Long.parseLong(value);
+		}
+		catch (NumberFormatException nfex) {
+			log.warn("Ignoring invalid setting {}={}", name, value);
+			return defaultValue;
+		}
+	}
+
+	static int getInt(String name, int defaultValue) {
+		return (int) getLong(name, defaultValue);
+	}
+
+	static boolean getBoolean(String name, boolean defaultValue) {
+
+		String value = getString(name, null);
+		if (value == null) {
+			return defaultValue;
+		}
+		return Boolean.parseBoolean(value);
+	}
+}
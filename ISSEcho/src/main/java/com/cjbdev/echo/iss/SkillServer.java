@@ -0,0 +1,215 @@
+package com.cjbdev.echo.iss;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.server.HttpConfiguration;
+import org.eclipse.jetty.server.HttpConnectionFactory;
+import org.eclipse.jetty.server.SecureRequestCustomizer;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.SslConnectionFactory;
+import org.eclipse.jetty.server.handler.StatisticsHandler;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.eclipse.jetty.util.component.AbstractLifeCycle;
+import org.eclipse.jetty.util.component.LifeCycle;
+import org.eclipse.jetty.util.ssl.SslContextFactory;
+import org.eclipse.jetty.util.thread.ExecutorThreadPool;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.eclipse.jetty.util.thread.ThreadPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.amazon.speech.Sdk;
+import com.amazon.speech.speechlet.servlet.SpeechletServlet;
+
+/**
+ * Serves the skill from an embedded Jetty server, for hosting it outside Lambda. The
+ * {@code Launcher} the pom's exec plugin names starts it.
+ * <p>
+ * The skill is served at {@code server.path} on {@code server.port}, over HTTPS with the key
+ * store named by {@code javax.net.ssl.keyStore} as Alexa requires, or over plain HTTP when no key
+ * store is set and a proxy in front terminates TLS. Every request gets a {@link Deadline} of
+ * {@code deadline.budgetMillis}, as a Lambda invocation does.
+ * <p>
+ * {@code server.threads} picks the thread model. {@code bounded}, the default, is a pool of
+ * {@code server.minThreads} to {@code server.maxThreads} threads with at most
+ * {@code server.queueSize} requests waiting for one; requests beyond that are refused instead of
+ * queueing without limit. {@code virtual} runs every request on its own virtual thread, on a JDK
+ * that has them (Java 21 and later), and falls back to the bounded pool on one that does not.
+ * <p>
+ * On SIGTERM the server stops accepting connections and waits up to
+ * {@code server.stopTimeoutSeconds} for the requests in flight. Once it has stopped, the refresh
+ * scheduler, the download, hedge and element refresh threads are stopped and the disk cache is
+ * closed. When {@code server.metricsPath} is set, e.g. to {@code /metrics}, a GET of it shows the
+ * counters of the caches, feed client, breaker and refresh scheduler; it is off by default, as
+ * the counters are not for the public.
+ */
+public final class SkillServer {
+
+	private static final Logger log = LoggerFactory.getLogger(SkillServer.class);
+
+	private SkillServer() {
+	}
+
+	public static void main(String[] args) throws Exception {
+
+		Server server = create(SkillConfig.getInt("server.port", 8888));
+		server.start();
+		log.info("Skill server started on " + server.getURI());
+		server.join();
+	}
+
+	/*
+	 * The server, not started yet. Stopping it stops the skill's own threads.
+	 */
+	static Server create(int port) {
+		return create(port, new Runnable() {
+			public void run() {
+				SpaceStationSpeechlet.shutdown();
+			}
+		});
+	}
+
+	/*
+	 * The server, not started yet, running onStop once it has stopped.
+	 */
+	static Server create(int port, final Runnable onStop) {
+
+		Server server = new Server(threadPool());
+
+		ServerConnector connector;
+		String keyStore = System.getProperty("javax.net.ssl.keyStore");
+		if (keyStore != null && !keyStore.trim().isEmpty()) {
+			SslContextFactory sslContextFactory = new SslContextFactory();
+			sslContextFactory.setKeyStorePath(keyStore);
+			sslContextFactory.setKeyStorePassword(System.getProperty("javax.net.ssl.keyStorePassword"));
+			sslContextFactory.setIncludeCipherSuites(Sdk.SUPPORTED_CIPHER_SUITES);
+
+			HttpConfiguration httpConf = new HttpConfiguration();
+			httpConf.setSecurePort(port);
+			httpConf.setSecureScheme("https");
+			httpConf.addCustomizer(new SecureRequestCustomizer());
+			connector = new ServerConnector(server, new SslConnectionFactory(sslContextFactory, "http/1.1"),
+					new HttpConnectionFactory(httpConf));
+		}
+		else {
+			log.warn("No javax.net.ssl.keyStore set, serving plain HTTP");
+			connector = new ServerConnector(server);
+		}
+		connector.setPort(port);
+		connector.setAcceptQueueSize(SkillConfig.getInt("server.acceptQueueSize", 1024));
+		server.addConnector(connector);
+
+		ServletContextHandler context = new ServletContextHandler();
+		context.setContextPath("/");
+		DeadlineSpeechletServlet servlet = new DeadlineSpeechletServlet();
+		servlet.setSpeechlet(new SpaceStationSpeechlet());
+		context.addServlet(new ServletHolder(servlet), SkillConfig.getString("server.path", "/iss"));
+		String metricsPath = SkillConfig.getString("server.metricsPath", null);
+		if (metricsPath != null) {
+			context.addServlet(new ServletHolder(new MetricsServlet(server)), metricsPath);
+		}
+
+		// counts the requests in flight, so stopping waits for them
+		StatisticsHandler statistics = new StatisticsHandler();
+		statistics.setHandler(context);
+		server.setHandler(statistics);
+		server.setStopTimeout(TimeUnit.SECONDS.toMillis(SkillConfig.getLong("server.stopTimeoutSeconds", 20)));
+		server.setStopAtShutdown(true);
+		server.addLifeCycleListener(new AbstractLifeCycle.AbstractLifeCycleListener() {
+			@Override
+			public void lifeCycleStopped(LifeCycle event) {
+				onStop.run();
+			}
+		});
+		return server;
+	}
+
+	static ThreadPool threadPool() {
+
+		if ("virtual".equalsIgnoreCase(SkillConfig.getString("server.threads", "bounded"))) {
+			ExecutorService executor = virtualThreadExecutor();
+			if (executor != null) {
+				log.info("Serving requests on virtual threads");
+				return new ExecutorThreadPool(executor);
+			}
+			log.warn("Virtual threads are not available on this JDK, using a bounded pool");
+		}
+
+		int maxThreads = SkillConfig.getInt("server.maxThreads", 200);
+		QueuedThreadPool pool = new QueuedThreadPool(maxThreads, Math.min(SkillConfig.getInt("server.minThreads", 8),
+				maxThreads), 60000, new ArrayBlockingQueue<Runnable>(SkillConfig.getInt("server.queueSize", 1024)));
+		pool.setName("skill-http");
+		return pool;
+	}
+
+	/*
+	 * A thread per task executor of virtual threads, or null before Java 21. Looked up
+	 * reflectively so the skill still builds and runs on Java 8.
+	 */
+	static ExecutorService virtualThreadExecutor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		}
+		catch (ReflectiveOperationException roex) {
+			log.debug("No virtual thread executor", roex);
+			return null;
+		}
+	}
+
+	/**
+	 * The SDK's servlet, answering each request by a deadline as the Lambda handler does.
+	 */
+	static final class DeadlineSpeechletServlet extends SpeechletServlet {
+
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
+			Deadline.set(Deadline.after(Deadline.budgetMillis()));
+			try {
+				super.doPost(request, response);
+			}
+			finally {
+				Deadline.clear();
+			}
+		}
+	}
+
+	/**
+	 * Plain text counters of the skill and of the server's thread pool. Virtual threads are not
+	 * pooled, so there is nothing to count of them.
+	 */
+	static final class MetricsServlet extends HttpServlet {
+
+		private static final long serialVersionUID = 1L;
+
+		private final transient Server server;
+
+		MetricsServlet(Server server) {
+			this.server = server;
+		}
+
+		@Override
+		protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+			ThreadPool pool = server.getThreadPool();
+			response.setContentType("text/plain;charset=utf-8");
+			if (pool instanceof QueuedThreadPool) {
+				response.getWriter().print(SpaceStationSpeechlet.metrics() + "ThreadPool[threads=" + pool.getThreads()
+						+ ", idle=" + pool.getIdleThreads() + ", lowOnThreads=" + pool.isLowOnThreads() + "]\n");
+			}
+			else {
+				response.getWriter().print(SpaceStationSpeechlet.metrics() + "ThreadPool[virtual]\n");
+			}
+		}
+	}
+}
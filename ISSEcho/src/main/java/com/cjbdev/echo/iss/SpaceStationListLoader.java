@@ -4,80 +4,71 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.net.MalformedURLException;
 import java.util.ArrayList;
 import java.util.List;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 class SpaceStationListLoader {
 
-	
+	private static final Logger log = LoggerFactory.getLogger(SpaceStationListLoader.class);
+
 	/*
 	 * Load up State list
 	 */
 	List<KeyValuePair> loadStateInfo() {
-		
-		List<KeyValuePair> state_list = new ArrayList<KeyValuePair>();
-		
-		try {
 
-			InputStream in = getClass().getResourceAsStream("/speechAssets/states/STATE_LOOKUP");
-			BufferedReader reader = new BufferedReader(new InputStreamReader(in));
-
-			String sCurrentLine = "";
-			while ((sCurrentLine = reader.readLine()) != null) {
+		return loadLocationInfo("/speechAssets/states/STATE_LOOKUP");
+	}
 
-				String stateArray[] = sCurrentLine.split(",");
-				KeyValuePair pair = new KeyValuePair(stateArray[0], stateArray[1]);
-				state_list.add(pair);
-			}
-			
-			in.close();
-		}
-		catch (MalformedURLException muex) {
-			System.out.println("MalformedURLException" + muex.getMessage());
-		}
-		catch (IOException ioex) {
-			System.out.println("IOException" + ioex.getMessage());
-		}
-		catch (Exception ex) {
-			System.out.println("Exeption" + ex.getMessage());
-		}	
-		
-		return state_list;
-	}	
-	
 	/*
 	 * Load up Country list
 	 */
 	List<KeyValuePair> loadCountryInfo() {
-		
-		List<KeyValuePair> countryList = new ArrayList<KeyValuePair>();
-		
-		try {
 
-			InputStream in = getClass().getResourceAsStream("/speechAssets/countries/COUNTRY_LOOKUP");
+		return loadLocationInfo("/speechAssets/countries/COUNTRY_LOOKUP");
+	}
+
+	/*
+	 * Load up a name,value list such as the locations for a state or country
+	 */
+	List<KeyValuePair> loadLocationInfo(String resource) {
+
+		List<KeyValuePair> locationList = new ArrayList<KeyValuePair>();
+
+		InputStream in = getClass().getResourceAsStream(resource);
+		if (in == null) {
+			log.warn("Missing location list " + resource);
+			return locationList;
+		}
+
+		try {
 			BufferedReader reader = new BufferedReader(new InputStreamReader(in));
 
 			String sCurrentLine = "";
 			while ((sCurrentLine = reader.readLine()) != null) {
 
-				String countryArray[] = sCurrentLine.split(",");
-				KeyValuePair pair = new KeyValuePair(countryArray[0], countryArray[1]);
-				countryList.add(pair);
+				String locationArray[] = sCurrentLine.split(",");
+				if (locationArray.length < 2) {
+					continue;
+				}
+				KeyValuePair pair = new KeyValuePair(locationArray[0], locationArray[1]);
+				locationList.add(pair);
 			}
-			
-			in.close();
-		}
-		catch (MalformedURLException muex) {
-			System.out.println("MalformedURLException" + muex.getMessage());
 		}
 		catch (IOException ioex) {
-			System.out.println("IOException" + ioex.getMessage());
+			log.warn("Could not read location list " + resource, ioex);
+		}
+		finally {
+			try {
+				in.close();
+			}
+			catch (IOException ioex) {
+				log.debug("Could not close " + resource, ioex);
+			}
 		}
-		catch (Exception ex) {
-			System.out.println("Exeption" + ex.getMessage());
-		}	
-		
-		return countryList;
-	}	
+
+		return locationList;
+	}
 }
@@ -22,30 +22,16 @@ import com.amazon.speech.speechlet.SessionStartedRequest;
 import com.amazon.speech.speechlet.Speechlet;
 import com.amazon.speech.speechlet.SpeechletException;
 import com.amazon.speech.speechlet.SpeechletResponse;
-import com.amazon.speech.ui.PlainTextOutputSpeech;
 import com.amazon.speech.ui.Reprompt;
 import com.amazon.speech.ui.SimpleCard;
 import com.amazon.speech.ui.SsmlOutputSpeech;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
-import java.net.MalformedURLException;
-import java.net.URL;
-import java.text.SimpleDateFormat;
-import java.util.ArrayList;
-import java.util.Calendar;
-import java.util.Iterator;
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.List;
-
-import com.rometools.rome.feed.synd.SyndContent;
-import com.rometools.rome.feed.synd.SyndEntry;
-import com.rometools.rome.feed.synd.SyndFeed;
-import com.rometools.rome.io.FeedException;
-import com.rometools.rome.io.SyndFeedInput;
-import com.rometools.rome.io.XmlReader;
+import java.util.Locale;
 
 import org.apache.commons.lang3.text.WordUtils;
 
@@ -81,6 +67,8 @@ private static final String SLOT_CITY = "City";
 private static final String SLOT_STATE = "State";
 private static final String SLOT_COUNTRY = "Country";
 private static final String SLOT_LETTER = "FirstLetter";
+private static final String SLOT_COUNT = "Count";
+private static final String SLOT_TIME = "Time";
 
 private static final String COUNTRY_UNKNOWN = "COUNTRY_UNKNOWN";
 private static final String COUNTRY_LIST = "COUNTRY_LIST";
@@ -89,10 +77,39 @@ private static final String STATE_LIST = "STATE_LIST";
 private static final String CITY_UNKNOWN = "CITY_UNKNOWN";
 private static final String CITY_LIST = "CITY_LIST";
 
-static SpaceStationListLoader ssListLoader = new SpaceStationListLoader();
+private static final SpaceStationListLoader ssListLoader = new SpaceStationListLoader();
+
+private static final LocationIndex LOCATION_INDEX = LocationIndex.load(ssListLoader);
+
+private static final PrecomputedResponses RESPONSES = new PrecomputedResponses(LOCATION_INDEX);
+
+private static final CityMatcher CITY_MATCHER = new CityMatcher();
+
+private static final LocationCoordinates LOCATION_COORDINATES = LocationCoordinates.load(LOCATION_INDEX);
+
+private static final Gazetteer GAZETTEER = Gazetteer.fromConfig();
+
+private static final double NEARBY_MAX_KM = SkillConfig.getLong("nearby.maxKm", 500);
+
+private static final SightingService SIGHTING_SERVICE = SightingService.fromConfig(LOCATION_COORDINATES);
+
+private static final NearbySightingFinder NEARBY_FINDER = NearbySightingFinder.fromConfig(SIGHTING_SERVICE, LOCATION_COORDINATES);
+
+private static final RefreshScheduler REFRESH_SCHEDULER = RefreshScheduler.fromConfig(SIGHTING_SERVICE);
+
+private static final SessionSightings SESSION_SIGHTINGS = SessionSightings.fromConfig();
 
-private static final List<KeyValuePair> STATE_LOOKUP = ssListLoader.loadStateInfo();
-private static final List<KeyValuePair> COUNTRY_LOOKUP = ssListLoader.loadCountryInfo();
+private static final String FOLLOW_UP_PROMPT = "<p>You can ask for the one after that, or about tomorrow.</p>";
+
+private static final int LIST_PAGE_SIZE = SkillConfig.getInt("list.pageSize", 10);
+
+private static final int DEFAULT_LISTED_SIGHTINGS = 3;
+
+private static final int MAX_LISTED_SIGHTINGS = 5;
+
+private static final LocalTime EVENING = LocalTime.of(18, 0);
+
+private static final DateTimeFormatter SPOKEN_TIME = DateTimeFormatter.ofPattern("h:mm a", Locale.US);
 
 //@Override
 public void onSessionStarted(final SessionStartedRequest request, final Session session)
@@ -134,18 +151,23 @@ public SpeechletResponse onIntent(final IntentRequest request, final Session ses
     	return handleCountryLocationListIntentRequest(intent, session);
     } else if ("CityStateIntent".equals(intentName)) {
     	return handleCityStateIntentRequest(intent, session);
+    } else if ("NearbyIntent".equals(intentName)) {
+    	return handleNearbyIntentRequest(intent, session);
+    } else if ("UpcomingSightingsIntent".equals(intentName)
+    		|| "WeekendSightingsIntent".equals(intentName)
+    		|| "EveningSightingsIntent".equals(intentName)) {
+    	return handleSightingQueryIntentRequest(intent, session);
+    } else if ("NextAfterThatIntent".equals(intentName)
+    		|| "TomorrowSightingsIntent".equals(intentName)) {
+    	return handleFollowUpIntentRequest(intent, session);
+    } else if ("AMAZON.MoreIntent".equals(intentName)) {
+    	return handleMoreIntentRequest(intent, session);
     } else if ("AMAZON.HelpIntent".equals(intentName)) {
         return handleHelpRequest();
     } else if ("AMAZON.StopIntent".equals(intentName)) {
-        PlainTextOutputSpeech outputSpeech = new PlainTextOutputSpeech();
-        outputSpeech.setText("Goodbye");
-        
-        return SpeechletResponse.newTellResponse(outputSpeech);
+        return RESPONSES.getGoodbye();
     } else if ("AMAZON.CancelIntent".equals(intentName)) {
-        PlainTextOutputSpeech outputSpeech = new PlainTextOutputSpeech();
-        outputSpeech.setText("Goodbye");
-
-        return SpeechletResponse.newTellResponse(outputSpeech);
+        return RESPONSES.getGoodbye();
     } else {
     	log.info("Throwing invalid Intent");
         throw new SpeechletException("Invalid Intent");
@@ -258,312 +280,24 @@ private SpeechletResponse handleCountryLocationListIntentRequest(final Intent in
 
 
 private SpeechletResponse handleStateList(final Intent intent, final Session session, String option) {
-	
-	StringBuilder stateStrBldr = new StringBuilder();
-	StringBuilder cardStrBldr = new StringBuilder();
 
-	Slot letterSlot = intent.getSlot(SLOT_LETTER);
-	boolean shortList = true;
-	
-	int stateCount = STATE_LOOKUP.size();
-	
-	log.debug("In handleStateList method - stateCount: " + stateCount);
-	
-	if (letterSlot == null || letterSlot.getValue() == null) {
-		shortList = false;
-		log.debug("setting shortList to false");
-	}
-		
 	if (option.equals(STATE_UNKNOWN)) {
-
-		StringBuilder rpStrBldr = new StringBuilder();
-		
-		stateStrBldr.append("<speak>");
-		stateStrBldr.append("<p>The state or region you specified is unknown.</p>");
-		stateStrBldr.append("<p>For a full list of states or regions say list states.</p>");
-		stateStrBldr.append("<p>Shorten the list by saying list states starting with A or any other letter.</p>");
-		stateStrBldr.append("</speak>");
-		
-		rpStrBldr.append("<speak>");
-		rpStrBldr.append("For a lists of states or regions say list states.");
-		rpStrBldr.append("</speak>");
-	    
-	    // Create the plain text output.
-	    SsmlOutputSpeech smlspeech = new  SsmlOutputSpeech();
-	    smlspeech.setSsml(stateStrBldr.toString());
-
-	    SsmlOutputSpeech rpsmlspeech = new  SsmlOutputSpeech();
-	    rpsmlspeech.setSsml(rpStrBldr.toString());
-
-	    // Create reprompt
-	    Reprompt reprompt = new Reprompt();
-	    reprompt.setOutputSpeech(rpsmlspeech);
-
-	    return SpeechletResponse.newAskResponse(smlspeech, reprompt);						
-		
-	}
-	else {
-		stateStrBldr.append("<speak>");
-		if (shortList) {
-			log.debug("speak text for shortList");
-			stateStrBldr.append("<p>States or regions starting with " + letterSlot.getValue().toUpperCase().charAt(0) + " that have sighting information are:</p>");
-			cardStrBldr.append("States or regions starting with \"" + letterSlot.getValue().toUpperCase().charAt(0) +"\" that have sighting information are:\n");					
-		}
-		else {
-			log.debug("speak text for full list");
-			stateStrBldr.append("<p>States or regions with sighting location information are:</p>");
-			cardStrBldr.append("States or regions with sighting location information are:\n");					
-		}
+		return RESPONSES.getStateUnknown();
 	}
-	
-	int counter = 0;
-	log.debug("About to loop through STATE_LOOKUP");
-	for(KeyValuePair item : STATE_LOOKUP) {
-			
-		String key = item.getKey();
-		
-		if (shortList) {
-			
-			if (key.toLowerCase().charAt(0) == letterSlot.getValue().toLowerCase().charAt(0)) {
-				log.debug("shortList hit: " + key);
-				stateStrBldr.append("<s>" + key + "</s>");
-				cardStrBldr.append(key + "\n");
-				counter++;
-			}
-		}
-		else {
-			stateStrBldr.append("<s>" + key + "</s>");
-			cardStrBldr.append(key + "\n");
-			counter++;
-		}
-	}
-
-	if (counter == 0) {
-		
-		StringBuilder noStrBldr = new StringBuilder();
-		StringBuilder rpStrBldr = new StringBuilder();
-		
-		noStrBldr.append("<speak>");
-		noStrBldr.append("<p>There does not appear to be any regions matching your criteria.</p>");
-		noStrBldr.append("<p>For a full list of states or regions say list states.</p>");
-		noStrBldr.append("<p>Shorten the list by saying list states starting with A or any other letter.</p>");
-		noStrBldr.append("</speak>");
-		
-		rpStrBldr.append("<speak>");
-		rpStrBldr.append("For a lists of states or regions say list states.");
-		rpStrBldr.append("</speak>");
-	    
-	    // Create the plain text output.
-	    SsmlOutputSpeech smlspeech = new  SsmlOutputSpeech();
-	    smlspeech.setSsml(noStrBldr.toString());
-	    
-	    // Create reprompt
-	    SsmlOutputSpeech rpsmlspeech = new  SsmlOutputSpeech();
-	    rpsmlspeech.setSsml(rpStrBldr.toString());
-	    Reprompt reprompt = new Reprompt();
-	    reprompt.setOutputSpeech(rpsmlspeech);
 
-	    log.debug("Exiting handleStateList");
-	    return SpeechletResponse.newAskResponse(smlspeech, reprompt);						
-	}
-	
-	
-	
-	stateStrBldr.append("<p>You can get a list locations with sighting information within a state by saying "
-			+ "list locations in Maryland or the name of some other state.</p>");
-	stateStrBldr.append("<p>Shorten the list by saying list locations in Maryland starting with A or another letter.</p>");
-	cardStrBldr.append("You can get a list locations with sighting information within a state by saying "
-			+ "list locations in Maryland or the name of some other state.\n");		
-	cardStrBldr.append("Shorten the list by saying list locations in Maryland starting with A or another letter.\n");
-	
-	stateStrBldr.append("</speak>");
-    String speechText = stateStrBldr.toString();
-        
-    // Create the Simple card content.
-    SimpleCard card = new SimpleCard();
-    if (option.equals(STATE_UNKNOWN)) {
-    	card.setTitle("ISS - Unknown State");	
-    }
-    else {
-    	if (shortList) {
-    		card.setTitle("ISS - State/Region starting with \"" + letterSlot.getValue().toUpperCase().charAt(0) + "\"");
-    	}
-    	else {
-    		card.setTitle("ISS - State/Region List");
-    	}
-    }
-    
-    card.setContent(cardStrBldr.toString());
-
-    // Create the plain text output.
-    PlainTextOutputSpeech speech = new PlainTextOutputSpeech();
-    speech.setText(speechText);
-    SsmlOutputSpeech smlspeech = new  SsmlOutputSpeech();
-    smlspeech.setSsml(speechText);
-  
-    StringBuilder rpStrBldr = new StringBuilder();
-    rpStrBldr.append("<speak>");
-    rpStrBldr.append("<p>You can get a list locations with sighting information within a state by saying "
-			+ "list locations in Maryland or the name of some other state.</p>");
-	rpStrBldr.append("<p>Shorten the list by saying list locations in Maryland starting with A or another letter.</p>");
-	rpStrBldr.append("</speak>");
-	
-    Reprompt reprompt = new Reprompt();
-    SsmlOutputSpeech rpSpeech = new  SsmlOutputSpeech();
-    rpSpeech.setSsml(rpStrBldr.toString());
-
-    reprompt.setOutputSpeech(rpSpeech);
-    
-    return SpeechletResponse.newAskResponse(smlspeech, reprompt, card);
+	Slot letterSlot = intent.getSlot(SLOT_LETTER);
+	return RESPONSES.getStateList(letterSlot == null ? null : letterSlot.getValue());
 }
 
 
 private SpeechletResponse handleCountryList(final Intent intent, final Session session, String option) {
-	
-	StringBuilder countryStrBldr = new StringBuilder();
-	StringBuilder cardStrBldr = new StringBuilder();
-
-	Slot letterSlot = intent.getSlot(SLOT_LETTER);
-	boolean shortList = true;
-	
-	if (letterSlot == null || letterSlot.getValue() == null) {
-		shortList = false;
-	}
-		
-	if (option.equals(STATE_UNKNOWN)) {
-
-		StringBuilder rpStrBldr = new StringBuilder();
-		
-		countryStrBldr.append("<speak>");
-		countryStrBldr.append("<p>The country you specified is unknown.</p>");
-		countryStrBldr.append("<p>For a full list of countries say list countries.</p>");
-		countryStrBldr.append("<p>Shorten the list by saying list countries starting with A or any other letter.</p>");
-		countryStrBldr.append("</speak>");
-		
-		rpStrBldr.append("<speak>");
-		rpStrBldr.append("For a lists of countries say list countries.");
-		rpStrBldr.append("</speak>");
-	    
-	    // Create the plain text output.
-	    SsmlOutputSpeech ssmlspeech = new  SsmlOutputSpeech();
-	    ssmlspeech.setSsml(countryStrBldr.toString());
-
-	    SsmlOutputSpeech rpssmlspeech = new  SsmlOutputSpeech();
-	    rpssmlspeech.setSsml(rpStrBldr.toString());
-
-	    // Create reprompt
-	    Reprompt reprompt = new Reprompt();
-	    reprompt.setOutputSpeech(rpssmlspeech);
 
-	    return SpeechletResponse.newAskResponse(ssmlspeech, reprompt);						
-		
-	}
-	else {
-		countryStrBldr.append("<speak>");
-		if (shortList) {
-			countryStrBldr.append("<p>Countries starting with " + letterSlot.getValue().toUpperCase().charAt(0) + " that have sighting information are:</p>");
-			cardStrBldr.append("Countries starting with \"" + letterSlot.getValue().toUpperCase().charAt(0) + "\" that have sighting information are:\n");		
-		}
-		else {
-			countryStrBldr.append("<p>Countries with sighting location information are:</p>");
-			cardStrBldr.append("Countries with sighting location information are:\n");		
-		}
-	}
-	
-	int counter = 0;
-	for(KeyValuePair item : COUNTRY_LOOKUP) {
-			
-		String key = item.getKey();
-		
-		if (shortList) {
-			
-			if (key.toLowerCase().charAt(0) == letterSlot.getValue().toLowerCase().charAt(0)) {
-				countryStrBldr.append("<s>" + key + "</s>");
-				cardStrBldr.append(key + "\n");
-				counter++;
-			}
-		}
-		else {
-			countryStrBldr.append("<s>" + key + "</s>");
-			cardStrBldr.append(key + "\n");
-			counter++;
-		}
+	if (option.equals(COUNTRY_UNKNOWN)) {
+		return RESPONSES.getCountryUnknown();
 	}
 
-	if (counter == 0) {
-		
-		StringBuilder noStrBldr = new StringBuilder();
-		StringBuilder rpStrBldr = new StringBuilder();
-		
-		noStrBldr.append("<speak>");
-		noStrBldr.append("<p>There does not appear to be a country matching your criteria.</p>");
-		noStrBldr.append("<p>For a full list of countries say list countries.</p>");
-		noStrBldr.append("<p>Shorten the list by saying list countries starting with A or any other letter.</p>");
-		noStrBldr.append("</speak>");
-		
-		rpStrBldr.append("<speak>");
-		rpStrBldr.append("For a lists of countries say list countries.");
-		rpStrBldr.append("</speak>");
-	    
-	    // Create the plain text output.
-	    SsmlOutputSpeech ssmlspeech = new  SsmlOutputSpeech();
-	    ssmlspeech.setSsml(noStrBldr.toString());
-	    
-	    // Create reprompt
-	    SsmlOutputSpeech rpssmlspeech = new  SsmlOutputSpeech();
-	    rpssmlspeech.setSsml(rpStrBldr.toString());
-	    Reprompt reprompt = new Reprompt();
-	    reprompt.setOutputSpeech(rpssmlspeech);
-
-	    return SpeechletResponse.newAskResponse(ssmlspeech, reprompt);						
-	}
-	
-	
-	
-	countryStrBldr.append("<p>You can get a list locations with sighting information within a country by saying "
-			+ "list locations in England or the name of some other country.</p>");
-	countryStrBldr.append("<p>Shorten the list by saying list locations in England starting with A or another letter.</p>");
-	cardStrBldr.append("You can get a list locations with sighting information within a country by saying "
-			+ "list locations in England or the name of some other country.\n");		
-	cardStrBldr.append("Shorten the list by saying list locations in England starting with A or another letter.\n");
-	
-	countryStrBldr.append("</speak>");
-    String speechText = countryStrBldr.toString();
-        
-    // Create the Simple card content.
-    SimpleCard card = new SimpleCard();
-    if (option.equals(COUNTRY_UNKNOWN)) {
-    	card.setTitle("ISS - Unknown Country");	
-    }
-    else {
-    	if (shortList) {
-    		card.setTitle("ISS - Countries starting with \"" + letterSlot.getValue().toUpperCase().charAt(0) + "\"");
-    	}
-    	else {
-    		card.setTitle("ISS - Country List");
-    	}
-    }
-    
-    card.setContent(cardStrBldr.toString());
-
-    // Create the text output.
-    SsmlOutputSpeech ssmlspeech = new  SsmlOutputSpeech();
-    ssmlspeech.setSsml(speechText);
-  
-    StringBuilder rpStrBldr = new StringBuilder();
-    rpStrBldr.append("<speak>");
-    rpStrBldr.append("<p>You can get a list locations with sighting information within a country by saying "
-			+ "list locations in England or the name of some other country.</p>");
-	rpStrBldr.append("<p>Shorten the list by saying list locations in England starting with A or another letter.</p>");
-	rpStrBldr.append("</speak>");
-	
-    Reprompt reprompt = new Reprompt();
-    SsmlOutputSpeech rpSpeech = new  SsmlOutputSpeech();
-    rpSpeech.setSsml(rpStrBldr.toString());
-
-    reprompt.setOutputSpeech(rpSpeech);
-    
-    return SpeechletResponse.newAskResponse(ssmlspeech, reprompt, card);
+	Slot letterSlot = intent.getSlot(SLOT_LETTER);
+	return RESPONSES.getCountryList(letterSlot == null ? null : letterSlot.getValue());
 }
 
 
@@ -573,10 +307,9 @@ private SpeechletResponse handleCityList(final Intent intent, final Session sess
 	boolean shortList = true;
 	Slot stateSlot = null;
 	Slot letterSlot = null;
-	KeyValuePair statePair = null;
+	LocationIndex.Region stateRegion = null;
 	
 	StringBuilder cityStrBldr = new StringBuilder();
-	StringBuilder cardStrBldr = new StringBuilder();
 	
 	try {
 
@@ -601,13 +334,9 @@ private SpeechletResponse handleCityList(final Intent intent, final Session sess
 	    }		
 		
 	    
-	    for (KeyValuePair item : STATE_LOOKUP) {
-	    	if (item.getKey().toLowerCase().equals(stateObject.toLowerCase())) {
-	    		statePair = item;
-	    	}
-	    }
+	    stateRegion = LOCATION_INDEX.findState(stateObject);
 	    
-	    if ((statePair == null) || (statePair.getValue() == null) ) {
+	    if (stateRegion == null) {
 	    
 	    	return handleStateList(intent, session, STATE_UNKNOWN);
 	    }
@@ -618,13 +347,13 @@ private SpeechletResponse handleCityList(final Intent intent, final Session sess
 			
 			cityStrBldr.append("<speak>");
 			cityStrBldr.append("<p>The location you specified does not have sighting information available.</p>");
-			cityStrBldr.append("<p>For a listing of locations in " + statePair.getKey() + " say list locations in " + statePair.getKey() + ".</p>");
-			cityStrBldr.append("<p>Shorten the list by saying list locations in " + statePair.getKey() + " starting with A or another letter.</p>");
+			cityStrBldr.append("<p>For a listing of locations in " + stateRegion.getName() + " say list locations in " + stateRegion.getName() + ".</p>");
+			cityStrBldr.append("<p>Shorten the list by saying list locations in " + stateRegion.getName() + " starting with A or another letter.</p>");
 			cityStrBldr.append("</speak>");
 			
 			rpStrBldr.append("<speak>");
-			rpStrBldr.append("<p>For a listing of locations in " + statePair.getKey() + " say list locations in " + statePair.getKey() + ".</p>");
-			rpStrBldr.append("<p>Shorten the list by saying list locations in " + statePair.getKey() + " starting with A or another letter.</p>");
+			rpStrBldr.append("<p>For a listing of locations in " + stateRegion.getName() + " say list locations in " + stateRegion.getName() + ".</p>");
+			rpStrBldr.append("<p>Shorten the list by saying list locations in " + stateRegion.getName() + " starting with A or another letter.</p>");
 			rpStrBldr.append("</speak>");
 		    
 		    // Create the plain text output.
@@ -640,132 +369,24 @@ private SpeechletResponse handleCityList(final Intent intent, final Session sess
 		    return SpeechletResponse.newAskResponse(smlspeech, reprompt);						
 			
 		}
-		else {
-			cityStrBldr.append("<speak>");
-			
-			if (shortList) {
-				cityStrBldr.append("<p>Locations in " + statePair.getKey() + " starting with " + letterSlot.getValue().toUpperCase().charAt(0) + " that have sighting information are:</p>");
-				cardStrBldr.append("Locations in " + WordUtils.capitalizeFully(statePair.getKey()) + "starting with \"" + letterSlot.getValue().toUpperCase().charAt(0) + "\" that have sighting information are:\n");		
-			}
-			else {
-				cityStrBldr.append("<p>Locations in " + statePair.getKey() + " that have sighting information are:</p>");
-				cardStrBldr.append("Locations in " + WordUtils.capitalizeFully(statePair.getKey()) + " that have sighting information are:\n");						
-			}
-		}		
-		
-		InputStream in = getClass().getResourceAsStream("/speechAssets/states/" + statePair.getValue());
-		BufferedReader reader = new BufferedReader(new InputStreamReader(in));
-		
-		String sCurrentLine = "";
-		int counter = 0;
-		while ((sCurrentLine = reader.readLine()) != null) {
-			String cityArray[] = sCurrentLine.split(",");
-			String city = cityArray[0];
-			
-			if (shortList) {
-				
-				if (city.toLowerCase().charAt(0) == letterSlot.getValue().toLowerCase().charAt(0)) {
-					cityStrBldr.append("<s>" + city + "</s>");
-					cardStrBldr.append(city + "\n");
-					counter++;
-				}
-			}
-			else {
-				cityStrBldr.append("<s>" + city + "</s>");
-				cardStrBldr.append(city + "\n");
-				counter++;
-			}					
-		}
-
-		in.close();
-		
-		// Handle if no locations are returned.
-		if (counter == 0) {
-			
-			StringBuilder noStrBldr = new StringBuilder();
-			StringBuilder rpStrBldr = new StringBuilder();
-			
-			noStrBldr.append("<speak>");
-			noStrBldr.append("<p>There does not appear to be any locations matching your criteria.</p>");
-			noStrBldr.append("<p>For a listing of locations in " + statePair.getKey() + " say list locations in " + statePair.getKey() + ".</p>");
-			noStrBldr.append("<p>Shorten the list by saying list locations in " + statePair.getKey() + " starting with A or another letter.</p>");
-			noStrBldr.append("</speak>");
-			
-			rpStrBldr.append("<speak>");
-			rpStrBldr.append("<p>For a listing of locations in " + statePair.getKey() + " say list locations in " + statePair.getKey() + ".</p>");
-			rpStrBldr.append("<p>Shorten the list by saying list locations in " + statePair.getKey() + " starting with A or another letter.</p>");
-			rpStrBldr.append("</speak>");
-		    
-		    // Create the plain text output.
-		    SsmlOutputSpeech smlspeech = new  SsmlOutputSpeech();
-		    smlspeech.setSsml(noStrBldr.toString());
-		    
-		    // Create reprompt
-		    SsmlOutputSpeech rpsmlspeech = new  SsmlOutputSpeech();
-		    rpsmlspeech.setSsml(rpStrBldr.toString());
-		    Reprompt reprompt = new Reprompt();
-		    reprompt.setOutputSpeech(rpsmlspeech);
-
-		    return SpeechletResponse.newAskResponse(smlspeech, reprompt);						
-		}
 		
-	}
-	catch (MalformedURLException muex) {
-		System.out.println("MalformedURLException" + muex.getMessage());
-	}
-	catch (IOException ioex) {
-		System.out.println("IOException" + ioex.getMessage());
+		return handleLocationPage(session, stateRegion,
+				shortList ? Character.valueOf(letterSlot.getValue().toUpperCase().charAt(0)) : null, 0);
 	}
 	catch (Exception ex) {
-		System.out.println("Exeption" + ex.getMessage());
+		log.error("Could not list locations", ex);
+		return RESPONSES.getHelp();
 	}
-
-	cityStrBldr.append("<p>You can get sighting information for a location by saying "
-			+ "give me visibility for Gaithersburg Maryland or some other location and state combination.</p>");
-	cardStrBldr.append("You can get sighting information for a location by saying "
-			+ "give me visibility for Gaithersburg Maryland or some other location and state combination.\n");			
-	cityStrBldr.append("</speak>");
-        
-    // Create the Simple card content.
-    SimpleCard card = new SimpleCard();
-    if (shortList) {
-    	card.setTitle("ISS - Location Listing: " + WordUtils.capitalizeFully(statePair.getKey()) + " starting with \"" + letterSlot.getValue().toUpperCase().charAt(0) + "\"");
-    }
-    else {
-    	card.setTitle("ISS - Location Listing: " + WordUtils.capitalizeFully(statePair.getKey()));
-    }
-    
-    card.setContent(cardStrBldr.toString());
-
-    // Create the ssmloutput text output.
-    SsmlOutputSpeech smlspeech = new  SsmlOutputSpeech();
-    smlspeech.setSsml(cityStrBldr.toString());
-
-    StringBuilder rpStrBldr = new StringBuilder();
-	rpStrBldr.append("<speak>");
-	rpStrBldr.append("<p>You can get sighting information for a location by saying "
-			+ "give me visibility for Gaithersburg Maryland or some other location and state combination.</p>");
-	rpStrBldr.append("</speak>");
-    
-    SsmlOutputSpeech rpsmlspeech = new  SsmlOutputSpeech();
-    rpsmlspeech.setSsml(rpStrBldr.toString());
-    
-    Reprompt reprompt = new Reprompt();
-    reprompt.setOutputSpeech(rpsmlspeech);
-    
-    return SpeechletResponse.newAskResponse(smlspeech, reprompt, card);
 }
 
-
 private SpeechletResponse handleCountryLocationList(final Intent intent, final Session session, String option) {
 	
 	boolean shortList = true;
     Slot countrySlot = null;
 	Slot letterSlot = null;
-	KeyValuePair countryPair = null;
+	LocationIndex.Region countryRegion = null;
 	
 	StringBuilder locationStrBldr = new StringBuilder();
-	StringBuilder cardStrBldr = new StringBuilder();
 	
 	try {
 
@@ -788,13 +409,9 @@ private SpeechletResponse handleCountryLocationList(final Intent intent, final S
 	    }		
 		
 	    
-	    for (KeyValuePair item : COUNTRY_LOOKUP) {
-	    	if (item.getKey().toLowerCase().equals(countryObject.toLowerCase())) {
-	    		countryPair = item;
-	    	}
-	    }
+	    countryRegion = LOCATION_INDEX.findCountry(countryObject);
 	    
-	    if ((countryPair == null) || (countryPair.getValue() == null) ) {
+	    if (countryRegion == null) {
 	    
 	    	return handleCountryList(intent, session, COUNTRY_UNKNOWN);
 	    }
@@ -805,13 +422,13 @@ private SpeechletResponse handleCountryLocationList(final Intent intent, final S
 			
 			locationStrBldr.append("<speak>");
 			locationStrBldr.append("<p>The location you specified does not have sighting information available.</p>");
-			locationStrBldr.append("<p>For a listing of locations in " + countryPair.getKey() + " say list locations in " + countryPair.getKey() + ".</p>");
-			locationStrBldr.append("<p>Shorten the list by saying list locations in " + countryPair.getKey() + " starting with A or another letter.</p>");
+			locationStrBldr.append("<p>For a listing of locations in " + countryRegion.getName() + " say list locations in " + countryRegion.getName() + ".</p>");
+			locationStrBldr.append("<p>Shorten the list by saying list locations in " + countryRegion.getName() + " starting with A or another letter.</p>");
 			locationStrBldr.append("</speak>");
 			
 			rpStrBldr.append("<speak>");
-			rpStrBldr.append("<p>For a listing of locations in " + countryPair.getKey() + " say list locations in " + countryPair.getKey() + ".</p>");
-			rpStrBldr.append("<p>Shorten the list by saying list locations in " + countryPair.getKey() + " starting with A or another letter.</p>");
+			rpStrBldr.append("<p>For a listing of locations in " + countryRegion.getName() + " say list locations in " + countryRegion.getName() + ".</p>");
+			rpStrBldr.append("<p>Shorten the list by saying list locations in " + countryRegion.getName() + " starting with A or another letter.</p>");
 			rpStrBldr.append("</speak>");
 		    
 		    // Create the plain text output.
@@ -828,121 +445,138 @@ private SpeechletResponse handleCountryLocationList(final Intent intent, final S
 		    return SpeechletResponse.newAskResponse(ssmlspeech, reprompt);						
 			
 		}
-		else {
-			locationStrBldr.append("<speak>");
+		
+		return handleLocationPage(session, countryRegion,
+				shortList ? Character.valueOf(letterSlot.getValue().toUpperCase().charAt(0)) : null, 0);
+	}
+	catch (Exception ex) {
+		log.error("Could not list locations", ex);
+		return RESPONSES.getHelp();
+	}
+}
 
-			if (shortList) {
-				locationStrBldr.append("<p>Locations in " + countryPair.getKey() + " starting with " + letterSlot.getValue().toUpperCase().charAt(0) + " that have sighting information are:</p>");
-				cardStrBldr.append("Locations in " + WordUtils.capitalizeFully(countryPair.getKey()) + "starting with \"" + letterSlot.getValue().toUpperCase().charAt(0) + "\" that have sighting information are:\n");		
-			}
-			else {
-				locationStrBldr.append("<p>Locations in " + countryPair.getKey() + " that have sighting information are:</p>");
-				cardStrBldr.append("Locations in " + WordUtils.capitalizeFully(countryPair.getKey()) + " that have sighting information are:\n");						
-			}
-						
-		}		
+/**
+ * Creates a {@code SpeechletResponse} for the AMAZON.MoreIntent: the next page of the location
+ * listing the session is in, or help if it is not in one.
+ *
+ * @return SpeechletResponse spoken and visual response for the given intent
+ */
+private SpeechletResponse handleMoreIntentRequest(final Intent intent, final Session session) {
+
+	LocationListCursor cursor = LocationListCursor.read(session);
+	LocationIndex.Region region = null;
+	if (cursor != null) {
+		region = cursor.isCountry() ? LOCATION_INDEX.findCountry(cursor.getRegion())
+				: LOCATION_INDEX.findState(cursor.getRegion());
+	}
+	if (region == null) {
+		return RESPONSES.getHelp();
+	}
+	return handleLocationPage(session, region, cursor.getLetter(), cursor.getOffset());
+}
+
+/*
+ * One page of a region's locations, or of those starting with a letter, from the offset into the
+ * region's sorted list. While there are more, a cursor to the next page is kept in the session for
+ * the AMAZON.MoreIntent. Only the page is spoken and put on the card, so the response is the same
+ * size however many locations the region has.
+ */
+private SpeechletResponse handleLocationPage(final Session session, LocationIndex.Region region, Character letter,
+		int offset) {
+
+	List<KeyValuePair> locations = letter == null ? region.getLocations()
+			: region.getLocationsStartingWith(letter.charValue());
+	String name = region.getName();
+	String example = region.isCountry()
+			? "give me visibility for London England or some other location and country combination."
+			: "give me visibility for Gaithersburg Maryland or some other location and state combination.";
+
+	// Handle if no locations are returned.
+	if (offset >= locations.size()) {
 		
-		InputStream in = getClass().getResourceAsStream("/speechAssets/countries/" + countryPair.getValue());
-		BufferedReader reader = new BufferedReader(new InputStreamReader(in));
+		LocationListCursor.clear(session);
 		
-		String sCurrentLine = "";
-		int counter = 0;
-		while ((sCurrentLine = reader.readLine()) != null) {
-			String locationArray[] = sCurrentLine.split(",");
-			String location = locationArray[0];
-			
-			if (shortList) {
-				
-				if (location.toLowerCase().charAt(0) == letterSlot.getValue().toLowerCase().charAt(0)) {
-					locationStrBldr.append("<s>" + location + "</s>");
-					cardStrBldr.append(location + "\n");
-					counter++;
-				}
-			}
-			else {
-				locationStrBldr.append("<s>" + location + "</s>");
-				cardStrBldr.append(location + "\n");
-				counter++;
-			}					
-		}
+		StringBuilder noStrBldr = new StringBuilder();
+		StringBuilder rpStrBldr = new StringBuilder();
 		
-		in.close();
+		noStrBldr.append("<speak>");
+		noStrBldr.append("<p>There does not appear to be any locations matching your criteria.</p>");
+		noStrBldr.append("<p>For a listing of locations in " + name + " say list locations in " + name + ".</p>");
+		noStrBldr.append("<p>Shorten the list by saying list locations in " + name + " starting with A or another letter.</p>");
+		noStrBldr.append("</speak>");
 		
-		// Handle if no locations are returned.
-		if (counter == 0) {
-			
-			StringBuilder noStrBldr = new StringBuilder();
-			StringBuilder rpStrBldr = new StringBuilder();
-			
-			noStrBldr.append("<speak>");
-			noStrBldr.append("<p>There does not appear to be any locations matching your criteria.</p>");
-			noStrBldr.append("<p>For a listing of locations in " + countryPair.getKey() + " say list locations in " + countryPair.getKey() + ".</p>");
-			noStrBldr.append("<p>Shorten the list by saying list locations in " + countryPair.getKey() + " starting with A or another letter.</p>");
-			noStrBldr.append("</speak>");
-			
-			rpStrBldr.append("<speak>");
-			rpStrBldr.append("<p>For a listing of locations in " + countryPair.getKey() + " say list locations in " + countryPair.getKey() + ".</p>");
-			rpStrBldr.append("<p>Shorten the list by saying list locations in " + countryPair.getKey() + " starting with A or another letter.</p>");
-			rpStrBldr.append("</speak>");
-		    
-		    // Create the plain text output.
-		    SsmlOutputSpeech ssmlspeech = new  SsmlOutputSpeech();
-		    ssmlspeech.setSsml(noStrBldr.toString());
-		    
-		    // Create reprompt
-		    SsmlOutputSpeech rpssmlspeech = new  SsmlOutputSpeech();
-		    rpssmlspeech.setSsml(rpStrBldr.toString());
-		    Reprompt reprompt = new Reprompt();
-		    reprompt.setOutputSpeech(rpssmlspeech);
+		rpStrBldr.append("<speak>");
+		rpStrBldr.append("<p>For a listing of locations in " + name + " say list locations in " + name + ".</p>");
+		rpStrBldr.append("<p>Shorten the list by saying list locations in " + name + " starting with A or another letter.</p>");
+		rpStrBldr.append("</speak>");
+	    
+	    SsmlOutputSpeech smlspeech = new  SsmlOutputSpeech();
+	    smlspeech.setSsml(noStrBldr.toString());
+	    
+	    SsmlOutputSpeech rpsmlspeech = new  SsmlOutputSpeech();
+	    rpsmlspeech.setSsml(rpStrBldr.toString());
+	    Reprompt reprompt = new Reprompt();
+	    reprompt.setOutputSpeech(rpsmlspeech);
 
-		    return SpeechletResponse.newAskResponse(ssmlspeech, reprompt);						
-		}	
+	    return SpeechletResponse.newAskResponse(smlspeech, reprompt);						
+	}
+
+	int end = Math.min(offset + LIST_PAGE_SIZE, locations.size());
+	String matching = letter == null ? "" : " starting with " + letter;
+
+	StringBuilder listStrBldr = new StringBuilder();
+	StringBuilder cardStrBldr = new StringBuilder();
+	
+	listStrBldr.append("<speak>");
+	if (offset == 0) {
+		listStrBldr.append("<p>Locations in " + name + matching + " that have sighting information are:</p>");
+		cardStrBldr.append("Locations in " + WordUtils.capitalizeFully(name) + matching + " that have sighting information are:\n");
 	}
-	catch (MalformedURLException muex) {
-		System.out.println("MalformedURLException" + muex.getMessage());
+	else {
+		listStrBldr.append("<p>More locations in " + name + matching + ":</p>");
+		cardStrBldr.append("More locations in " + WordUtils.capitalizeFully(name) + matching + ":\n");
 	}
-	catch (IOException ioex) {
-		System.out.println("IOException" + ioex.getMessage());
+	
+	for (KeyValuePair item : locations.subList(offset, end)) {
+		listStrBldr.append("<s>" + item.getKey() + "</s>");
+		cardStrBldr.append(item.getKey() + "\n");
 	}
-	catch (Exception ex) {
-		System.out.println("Exeption" + ex.getMessage());
+
+	StringBuilder rpStrBldr = new StringBuilder();
+	rpStrBldr.append("<speak>");
+	if (end < locations.size()) {
+		new LocationListCursor(name, region.isCountry(), letter, end).write(session);
+		int remaining = locations.size() - end;
+		listStrBldr.append("<p>There " + (remaining == 1 ? "is 1 more" : "are " + remaining + " more")
+				+ ". Say more to hear " + (remaining == 1 ? "it" : "them") + ".</p>");
+		cardStrBldr.append("(" + remaining + " more, say \"more\")\n");
+		rpStrBldr.append("<p>Say more to hear more locations in " + name + ", or get sighting information by saying "
+				+ example + "</p>");
 	}
+	else {
+		LocationListCursor.clear(session);
+		rpStrBldr.append("<p>You can get sighting information for a location by saying " + example + "</p>");
+	}
+	rpStrBldr.append("</speak>");
 
-	locationStrBldr.append("<p>You can get sighting information for a location by saying "
-			+ "give me visibility for London England or some other location and country combination.</p>");
-	cardStrBldr.append("You can get sighting information for a location by saying "
-			+ "give me visibility for London England or some other location and country combination.\n");			
-	locationStrBldr.append("</speak>");
+	listStrBldr.append("<p>You can get sighting information for a location by saying " + example + "</p>");
+	cardStrBldr.append("You can get sighting information for a location by saying " + example + "\n");
+	listStrBldr.append("</speak>");
         
-    // Create the Simple card content.
     SimpleCard card = new SimpleCard();
-    
-    if (shortList) {
-    	card.setTitle("ISS - Location Listing: " + WordUtils.capitalizeFully(countryPair.getKey()) + " starting with \"" + letterSlot.getValue().toUpperCase().charAt(0) + "\"");
-    }
-    else {
-    	card.setTitle("ISS - Location Listing: " + WordUtils.capitalizeFully(countryPair.getKey()));	
-    }
-        	
+    card.setTitle("ISS - Location Listing: " + WordUtils.capitalizeFully(name) + (letter == null ? "" : " starting with \"" + letter + "\""));
     card.setContent(cardStrBldr.toString());
 
-    // Create the ssmloutput text output.
-    SsmlOutputSpeech ssmlspeech = new  SsmlOutputSpeech();
-    ssmlspeech.setSsml(locationStrBldr.toString());
+    SsmlOutputSpeech smlspeech = new  SsmlOutputSpeech();
+    smlspeech.setSsml(listStrBldr.toString());
 
-    StringBuilder rpStrBldr = new StringBuilder();
-	rpStrBldr.append("<speak>");
-	rpStrBldr.append("<p>You can get sighting information for a location by saying "
-			+ "give me visibility for London or some other location and country combination.</p>");
-	rpStrBldr.append("</speak>");
-    
-    SsmlOutputSpeech rpssmlspeech = new  SsmlOutputSpeech();
-    rpssmlspeech.setSsml(rpStrBldr.toString());
+    SsmlOutputSpeech rpsmlspeech = new  SsmlOutputSpeech();
+    rpsmlspeech.setSsml(rpStrBldr.toString());
     
     Reprompt reprompt = new Reprompt();
-    reprompt.setOutputSpeech(rpssmlspeech);
+    reprompt.setOutputSpeech(rpsmlspeech);
     
-    return SpeechletResponse.newAskResponse(ssmlspeech, reprompt, card);
+    return SpeechletResponse.newAskResponse(smlspeech, reprompt, card);
 }
 
 /**
@@ -957,6 +591,8 @@ private SpeechletResponse handleCityStateIntentRequest(final Intent intent, fina
 	boolean hasCountry = false;
 	log.debug("hasCountry is: " + hasCountry);
 	
+	boolean remembered = false;
+	
     String cityObject = null;
     String stateObject = null;
     String countryObject = null;
@@ -976,7 +612,7 @@ private SpeechletResponse handleCityStateIntentRequest(final Intent intent, fina
 	    
 	    log.debug("Initialized city/state/country Slots");
 	    
-	    KeyValuePair statePair = null;
+	    LocationIndex.Region stateRegion = null;
 	    
 	    log.debug("Checking for a country.");
 	    
@@ -1063,17 +699,10 @@ private SpeechletResponse handleCityStateIntentRequest(final Intent intent, fina
 	    
         if (hasCountry) {
 
-        	log.debug("Getting country lookup pair");
-    	    for (KeyValuePair item : COUNTRY_LOOKUP) {
-
-    	    	if (item.getKey().toLowerCase().equals(countryObject.toLowerCase())) {
-    	    		
-    	    		statePair = item;
-    	    		log.debug("pair is: " + statePair.getKey() + ", " + statePair.getValue());
-    	    	}
-    	    }
+        	log.debug("Getting country region");
+    	    stateRegion = LOCATION_INDEX.findCountry(countryObject);
     	    
-    	    if ((statePair == null) || (statePair.getValue() == null) ) {
+    	    if (stateRegion == null) {
 
     	    	log.debug("Could not find the country in the lookup to get pair");
     	    	return handleCountryList(intent, session, COUNTRY_UNKNOWN);
@@ -1082,25 +711,48 @@ private SpeechletResponse handleCityStateIntentRequest(final Intent intent, fina
         }
         else {
 
-        	log.debug("Getting state lookup pair");
-    	    for (KeyValuePair item : STATE_LOOKUP) {
-
-    	    	if (item.getKey().toLowerCase().equals(stateObject.toLowerCase())) {
-    	    		
-    	    		statePair = item;
-    	    		log.debug("pair is: " + statePair.getKey() + ", " + statePair.getValue());
-    	    	}
-    	    }
+        	log.debug("Getting state region");
+    	    stateRegion = LOCATION_INDEX.findState(stateObject);
     	    
-    	    if ((statePair == null) || (statePair.getValue() == null) ) {
+    	    if (stateRegion == null) {
     		    
     	    	log.debug("Could not find the country in the lookup to get pair");
     	    	return handleStateList(intent, session, STATE_UNKNOWN);
     	    }    
         }
 	    
+		log.debug("Run through " + stateRegion.getName() + " to look for: " + cityObject);
+		
+		KeyValuePair cityPair = stateRegion.findLocation(cityObject);
+		
+		if (cityPair == null) {
+			// speech recognition may have misheard the city, try the closest sounding one
+			cityPair = CITY_MATCHER.match(stateRegion, cityObject);
+			if (cityPair != null) {
+				log.info("Matched city " + cityObject + " to " + cityPair.getKey());
+				cityObject = cityPair.getKey();
+			}
+		}
+		
+		String nearbyNote = null;
+		if (cityPair == null && GAZETTEER != null) {
+			// a town not in the lists, answer for the closest location that is
+			SpatialIndex.Neighbor<LocationCoordinates.Place> nearby = LOCATION_COORDINATES.nearestTo(stateRegion,
+					GAZETTEER.find(cityObject), NEARBY_MAX_KM);
+			if (nearby != null) {
+				nearbyNote = WordUtils.capitalizeFully(cityObject) + " does not have sighting information. The closest location that does is "
+						+ nearby.getItem().getName() + ", about " + Math.round(nearby.getDistanceKm()) + " kilometers away.";
+				cityPair = nearby.getItem().getLocation();
+				cityObject = cityPair.getKey();
+			}
+		}
+		
+	    if (cityPair == null) {
+	    	
+	    	return handleCityList(intent, session, CITY_UNKNOWN);
+	    }
 	    
-		if (statePair.getKey().equals("National Parks")) {
+		if (stateRegion.getName().equals("National Parks")) {
 			log.debug("Dealing with National Parks");
 			issStrBldr.append("<speak>");
 			issStrBldr.append("<p>The International Space Station will next be visible from ");
@@ -1131,67 +783,23 @@ private SpeechletResponse handleCityStateIntentRequest(final Intent intent, fina
 			else {
 				issCrdBldr.append(", " + stateObject + " on: ");	
 			}
-		}	    
-	    
-		log.debug("Preparing inputStream");
-		InputStream in = null;
-		if (hasCountry) {
-			in = getClass().getResourceAsStream("/speechAssets/countries/" + statePair.getValue());
-			log.debug("Got inputStream to: /speechAssets/countries/" + statePair.getValue());
-		}
-		else {
-			
-			in = getClass().getResourceAsStream("/speechAssets/states/" + statePair.getValue());
-			log.debug("Got inputStream to: /speechAssets/states/" + statePair.getValue());
-		}
-
-		BufferedReader reader = new BufferedReader(new InputStreamReader(in));
-
-		log.debug("Created buffered reader");
-		
-		List<KeyValuePair> cityList = new ArrayList<KeyValuePair>();
-				
-		String sCurrentLine = "";
-		while ((sCurrentLine = reader.readLine()) != null) {
-			String cityArray[] = sCurrentLine.split(",");
-			KeyValuePair cityItem = new KeyValuePair(cityArray[0], cityArray[1]);
-			log.debug("Reading in city: " + cityItem.getKey() + ", " + cityItem.getValue());
-			cityList.add(cityItem);
 		}
 		
-		log.debug("cityList created: " + cityList.size());
-		
-		KeyValuePair cityPair = null;
-		
-		log.debug("Run through list to look for: " + cityObject);
-		
-	    for (KeyValuePair item : cityList) {
-	    	log.debug("checking :" + cityObject + " against " + item.getKey());
-	    	if (item.getKey().toLowerCase().equals(cityObject.toLowerCase())) {
-	    		cityPair = item;
-	    		log.debug("*************FOUND IT!! " + cityPair.getKey());
-	    	}
-	    }
+		if (nearbyNote != null) {
+			issStrBldr.insert("<speak>".length(), "<p>" + nearbyNote + "</p>");
+			issCrdBldr.insert(0, nearbyNote + "\n");
+		}	    
 	    
-	    if (cityPair == null) {
-	    	
-	    	return handleCityList(intent, session, CITY_UNKNOWN);
-	    }
 		
-		log.info("Retrieving data for: " + cityPair.getValue());
-	    
-		URL url = new URL("https://spotthestation.nasa.gov/sightings/xml_files/" + cityPair.getValue() + ".xml");
-		HttpURLConnection httpcon = (HttpURLConnection)url.openConnection();
-
-		// Reading the feed
-		SyndFeedInput input = new SyndFeedInput();
-		SyndFeed feed = input.build(new XmlReader(httpcon));
-		List<SyndEntry> entries = feed.getEntries();
+		if (REFRESH_SCHEDULER != null) {
+			REFRESH_SCHEDULER.record(cityPair.getValue(), System.currentTimeMillis());
+		}
+		SightingSchedule schedule = SIGHTING_SERVICE.getSchedule(cityPair.getValue());
+		long now = System.currentTimeMillis();
+		Sighting sighting = schedule.next(now);
 		
 		
-		if (entries.isEmpty()) {
-			
-			in.close();
+		if (sighting == null) {
 
 			StringBuilder ndStrBldr = new StringBuilder();
 			StringBuilder ndCrdBldr = new StringBuilder();
@@ -1241,103 +849,24 @@ private SpeechletResponse handleCityStateIntentRequest(final Intent intent, fina
 		    return SpeechletResponse.newTellResponse(ssmlspeech, card);		    	
 		}
 		
-		Iterator<SyndEntry> itEntries = entries.iterator();
-		
-		boolean first = true;
-		String firstDesc = "";
-		String firstDescMod = "";
-		String firstSightDate = "";
-
-		while (itEntries.hasNext()) {
-			SyndEntry entry = itEntries.next();
-			SyndContent desc = entry.getDescription();
-			String descStr = desc.getValue();
-			String descStrMod = descStr.replaceAll("<br/>", "");
-			
-			String durationSplitArray[] = descStrMod.split("Duration");
-			String dateTimeStr = durationSplitArray[0];
-			String dateTimeSplitArray[] = dateTimeStr.split("Time:");
-			String dateSplitStr = dateTimeSplitArray[0];
-			String dateArray[] = dateSplitStr.split("Date:");
-			String sightDate = dateArray[1].trim() + " " + dateTimeSplitArray[1].trim();
-						
-			SimpleDateFormat formatter = new SimpleDateFormat("EEEE MMM dd, yyyy hh:mm a");
-
-			Calendar cal = Calendar.getInstance();
-			Calendar future = Calendar.getInstance();
-			future.setTime(formatter.parse(sightDate));
-		    			
-			if ((future.compareTo(cal)>0) && first) {
-				firstDesc = descStr;
-				firstDescMod = descStrMod;
-				firstSightDate = sightDate;
-				first = false;
-			}	
-		}	
-		
-		firstDesc = firstDesc.replaceAll("\t", "");
-		firstDesc = firstDesc.replaceAll("\n", "");
-		
-		String descStrArray[] = firstDesc.split("<br/>");
-		
-		StringBuilder sightLine = new StringBuilder();
-
-		for(String dStr : descStrArray) {	
-			String dTkn = dStr;
-			dTkn = dTkn.trim();
-			
-			if (dTkn.startsWith("Date:")) {
-			
-				String sdArray[] = firstSightDate.split(" ");
-				String fullMonth = getFullMonth(sdArray[1]);
-				String newTkn = dTkn.replace(sdArray[1], fullMonth);
-				sightLine.append("<p>" + newTkn + "</p>");
-			}
-			else if (dTkn.startsWith("Time:")) {
-				
-				sightLine.append("<p>" + dTkn + "</p>");
-			}
-			else if (dTkn.startsWith("Duration:")) {
-				
-				sightLine.append("<p>" + dTkn + "</p>");
-			}
-			else if (dTkn.startsWith("Maximum:")) {
-				
-				sightLine.append("<p>" + dTkn + "</p>");
-			}
-			else if (dTkn.startsWith("Approach:")) {
-				
-				String sStr[] = dTkn.split("above");
-				String abrDir = sStr[1].trim();
-				String dirStr = getFullDirection(abrDir);
-				sightLine.append("<p>" + sStr[0] + "above " + dirStr + "</p>");
-			}
-			else if (dTkn.startsWith("Departure:")) {
-				
-				String sStr[] = dTkn.split("above");
-				String abrDir = sStr[1].trim();
-				String dirStr = getFullDirection(abrDir);
-				sightLine.append("<p>" + sStr[0] + "above " + dirStr + "</p>");
-			}
+		if (SESSION_SIGHTINGS != null) {
+			SESSION_SIGHTINGS.remember(session, cityPair.getValue(), WordUtils.capitalizeFully(cityObject) + ", "
+					+ (hasCountry ? countryObject : stateObject), schedule, now, sighting.getTime());
+			remembered = true;
 		}
 		
-		
-		issStrBldr.append(sightLine.toString());
+		appendSightingDetails(issStrBldr, sighting);
 		issStrBldr.append("</speak>");
 				
-		issCrdBldr.append(firstDescMod);	
-	}
-	catch (MalformedURLException muex) {
-		System.out.println("MalformedURLException" + muex.getMessage());
+		issCrdBldr.append(sighting.getDescription());	
 	}
 	catch (IOException ioex) {
-		System.out.println("IOException" + ioex.getMessage());
-	}
-	catch (FeedException fex) {
-		System.out.println("FeedException" + fex.getMessage());
+		log.warn("No sightings available for " + cityObject + ": " + ioex.getMessage());
+		return handleSightingsUnavailable(cityObject, hasCountry ? countryObject : stateObject);
 	}
 	catch (Exception ex) {
-		System.out.println("Exeption" + ex.getMessage());
+		log.error("Could not answer for " + cityObject, ex);
+		return handleSightingsUnavailable(cityObject, hasCountry ? countryObject : stateObject);
 	}
 	
     // Create the Simple card content.
@@ -1352,17 +881,409 @@ private SpeechletResponse handleCityStateIntentRequest(final Intent intent, fina
     
     card.setContent(issCrdBldr.toString());
 
-    // Create the plain text output.
-    PlainTextOutputSpeech speech = new PlainTextOutputSpeech();
-    speech.setText(issStrBldr.toString());
-
-    // Create the ssmloutput text output.
-    SsmlOutputSpeech smlspeech = new  SsmlOutputSpeech();
-    smlspeech.setSsml(issStrBldr.toString());
-    
 	log.debug("Exiting handleCityStateIntentRequest");
     
-    return SpeechletResponse.newTellResponse(smlspeech, card);
+    return sightingResponse(issStrBldr.toString(), card, remembered);
+}
+
+/**
+ * Creates a {@code SpeechletResponse} for when no sightings could be had for the location, neither
+ * fresh nor kept from an earlier fetch, so the user is told to try again instead of getting an
+ * empty answer.
+ *
+ * @return SpeechletResponse spoken and visual response for the given intent
+ */
+private SpeechletResponse handleSightingsUnavailable(String city, String region) {
+
+	String place = city == null ? "your location" : WordUtils.capitalizeFully(city)
+			+ (region == null ? "" : ", " + WordUtils.capitalizeFully(region));
+
+	SsmlOutputSpeech smlspeech = new  SsmlOutputSpeech();
+	smlspeech.setSsml("<speak><p>I could not get the space station sightings for " + place + " right now.</p>"
+			+ "<p>Please try again in a little while.</p></speak>");
+
+	SimpleCard card = new SimpleCard();
+	card.setTitle("ISS - Sighting Information: " + place);
+	card.setContent("The sighting data for " + place + " could not be reached right now. Please try again later.");
+
+	return SpeechletResponse.newTellResponse(smlspeech, card);
+}
+
+/**
+ * Creates a {@code SpeechletResponse} for the NearbyIntent: the soonest pass at the city or the
+ * locations around it. Requests that do not name a known state/country and city are answered as
+ * the CityStateIntent would.
+ *
+ * @return SpeechletResponse spoken and visual response for the given intent
+ */
+private SpeechletResponse handleNearbyIntentRequest(final Intent intent, final Session session) {
+
+	LocationIndex.Region region = findRegion(intent);
+	KeyValuePair origin = findLocation(intent, region);
+	if (origin == null) {
+		return handleCityStateIntentRequest(intent, session);
+	}
+
+	String place = WordUtils.capitalizeFully(origin.getKey()) + ", " + region.getName();
+	NearbySightingFinder.Result soonest = NEARBY_FINDER.findSoonest(region, origin, System.currentTimeMillis());
+	log.info("Nearby lookup for " + origin.getValue() + (soonest == null ? " found nothing"
+			: " answered " + soonest.getAnswered() + " of " + soonest.getConsulted()));
+
+	StringBuilder nearStrBldr = new StringBuilder();
+	StringBuilder cardStrBldr = new StringBuilder();
+	SimpleCard card = new SimpleCard();
+	card.setTitle("ISS - Soonest Sighting Near " + place);
+
+	nearStrBldr.append("<speak>");
+	if (soonest == null) {
+		nearStrBldr.append("<p>I could not find an upcoming sighting near " + place + " right now.</p>");
+		nearStrBldr.append("<p>Please try again in a little while.</p>");
+		cardStrBldr.append("No upcoming sighting near " + place + " could be found right now.");
+	}
+	else {
+		String from = WordUtils.capitalizeFully(soonest.getLocation().getKey());
+		if (soonest.getLocation().getValue().equals(origin.getValue())) {
+			nearStrBldr.append("<p>The soonest the International Space Station will be visible near " + place
+					+ " is from " + from + " itself, on: </p>");
+			cardStrBldr.append("Soonest sighting near " + place + ", from " + from + ":\n");
+		}
+		else {
+			nearStrBldr.append("<p>The soonest the International Space Station will be visible near " + place
+					+ " is from " + from + ", about " + Math.round(soonest.getDistanceKm()) + " kilometers away, on: </p>");
+			cardStrBldr.append("Soonest sighting near " + place + ", from " + from + " ("
+					+ Math.round(soonest.getDistanceKm()) + " km away):\n");
+		}
+		appendSightingDetails(nearStrBldr, soonest.getSighting());
+		cardStrBldr.append(soonest.getSighting().getDescription());
+	}
+	nearStrBldr.append("</speak>");
+	card.setContent(cardStrBldr.toString());
+
+	SsmlOutputSpeech smlspeech = new  SsmlOutputSpeech();
+	smlspeech.setSsml(nearStrBldr.toString());
+
+	return SpeechletResponse.newTellResponse(smlspeech, card);
+}
+
+/**
+ * Creates a {@code SpeechletResponse} for the UpcomingSightingsIntent, WeekendSightingsIntent and
+ * EveningSightingsIntent: several passes from one location's schedule, the next few, the ones this
+ * weekend or the ones after a time of the evening. Requests that do not name a known state/country
+ * and city are answered as the CityStateIntent would.
+ *
+ * @return SpeechletResponse spoken and visual response for the given intent
+ */
+private SpeechletResponse handleSightingQueryIntentRequest(final Intent intent, final Session session) {
+
+	LocationIndex.Region region = findRegion(intent);
+	KeyValuePair location = findLocation(intent, region);
+	if (location == null) {
+		return handleCityStateIntentRequest(intent, session);
+	}
+
+	String place = WordUtils.capitalizeFully(location.getKey()) + ", " + region.getName();
+	long now = System.currentTimeMillis();
+	SightingQuery query;
+	try {
+		if (REFRESH_SCHEDULER != null) {
+			REFRESH_SCHEDULER.record(location.getValue(), now);
+		}
+		query = new SightingQuery(SIGHTING_SERVICE.getSchedule(location.getValue()));
+	}
+	catch (IOException ioex) {
+		log.warn("No sightings available for " + location.getValue() + ": " + ioex.getMessage());
+		return handleSightingsUnavailable(location.getKey(), region.getName());
+	}
+
+	List<Sighting> sightings;
+	String heading;
+	String none;
+	String intentName = intent.getName();
+	if ("WeekendSightingsIntent".equals(intentName)) {
+		sightings = query.weekend(now);
+		heading = "This weekend the International Space Station will be visible from " + place + " on:";
+		none = "There are no sightings from " + place + " this weekend.";
+	}
+	else if ("EveningSightingsIntent".equals(intentName)) {
+		LocalTime after = parseTimeOfDay(intent.getSlot(SLOT_TIME));
+		sightings = query.afterTimeOfDay(now, after, DEFAULT_LISTED_SIGHTINGS);
+		String clock = SPOKEN_TIME.format(after);
+		heading = "The next times the International Space Station will be visible from " + place + " after "
+				+ clock + " are:";
+		none = "There are no sightings from " + place + " after " + clock + " during the current two week period.";
+	}
+	else {
+		sightings = query.next(now, parseCount(intent.getSlot(SLOT_COUNT)));
+		heading = sightings.size() == 1
+				? "The International Space Station will next be visible from " + place + " on:"
+				: "The next " + sightings.size() + " times the International Space Station will be visible from "
+						+ place + " are:";
+		none = "There are no sightings from " + place + " during the current two week period.";
+	}
+	log.info(intentName + " for " + location.getValue() + " found " + sightings.size() + " sightings");
+
+	if (SESSION_SIGHTINGS != null) {
+		SESSION_SIGHTINGS.remember(session, location.getValue(), place, query.getSchedule(), now,
+				sightings.isEmpty() ? now : sightings.get(sightings.size() - 1).getTime());
+	}
+	return sightingListResponse(place, heading, none, sightings, SESSION_SIGHTINGS != null);
+}
+
+/**
+ * Creates a {@code SpeechletResponse} for the NextAfterThatIntent and TomorrowSightingsIntent,
+ * follow-ups about the location the session is already about. They are answered from the schedule
+ * kept in the session, without looking the location up again. Without a location in the session
+ * they are answered as the CityStateIntent would.
+ *
+ * @return SpeechletResponse spoken and visual response for the given intent
+ */
+private SpeechletResponse handleFollowUpIntentRequest(final Intent intent, final Session session) {
+
+	SessionSightings.Remembered remembered = SESSION_SIGHTINGS == null ? null : SESSION_SIGHTINGS.recall(session);
+	if (remembered == null) {
+		return handleCityStateIntentRequest(intent, session);
+	}
+
+	String place = remembered.getPlace();
+	SightingSchedule schedule = remembered.getSchedule();
+	if (schedule == null) {
+		try {
+			schedule = SIGHTING_SERVICE.getSchedule(remembered.getLocationId());
+		}
+		catch (IOException ioex) {
+			log.warn("No sightings available for " + remembered.getLocationId() + ": " + ioex.getMessage());
+			return handleSightingsUnavailable(place, null);
+		}
+	}
+
+	SightingQuery query = new SightingQuery(schedule);
+	long now = System.currentTimeMillis();
+	List<Sighting> sightings;
+	String heading;
+	String none;
+	if ("TomorrowSightingsIntent".equals(intent.getName())) {
+		sightings = query.tomorrow(now);
+		heading = "Tomorrow the International Space Station will be visible from " + place + " on:";
+		none = "There are no sightings from " + place + " tomorrow.";
+	}
+	else {
+		sightings = query.next(Math.max(remembered.getCursor(), now), 1);
+		heading = "After that, the International Space Station will next be visible from " + place + " on:";
+		none = "There are no more sightings from " + place + " during the current two week period.";
+	}
+	log.info(intent.getName() + " for " + remembered.getLocationId() + " found " + sightings.size()
+			+ " sightings from the " + (remembered.getSchedule() != null ? "session" : "service"));
+
+	if (!sightings.isEmpty()) {
+		SESSION_SIGHTINGS.advance(session, sightings.get(sightings.size() - 1).getTime());
+	}
+	return sightingListResponse(place, heading, none, sightings, true);
+}
+
+/*
+ * Speak the heading and the passes, a single one in full, or that there are none.
+ */
+private SpeechletResponse sightingListResponse(String place, String heading, String none, List<Sighting> sightings,
+		boolean followUp) {
+
+	StringBuilder listStrBldr = new StringBuilder();
+	StringBuilder cardStrBldr = new StringBuilder();
+	SimpleCard card = new SimpleCard();
+	card.setTitle("ISS - Sighting Information: " + place);
+
+	listStrBldr.append("<speak>");
+	if (sightings.isEmpty()) {
+		listStrBldr.append("<p>" + none + "</p>");
+		listStrBldr.append("<p>The data lists of space station sightings are updated multiple times a week.</p>");
+		cardStrBldr.append(none);
+	}
+	else if (sightings.size() == 1) {
+		listStrBldr.append("<p>" + heading + "</p>");
+		appendSightingDetails(listStrBldr, sightings.get(0));
+		cardStrBldr.append(heading + "\n" + sightings.get(0).getDescription());
+	}
+	else {
+		listStrBldr.append("<p>" + heading + "</p>");
+		cardStrBldr.append(heading + "\n");
+		for (Sighting sighting : sightings) {
+			appendSightingSummary(listStrBldr, sighting);
+			cardStrBldr.append("\n" + sighting.getDescription());
+		}
+	}
+	listStrBldr.append("</speak>");
+	card.setContent(cardStrBldr.toString());
+
+	return sightingResponse(listStrBldr.toString(), card, followUp);
+}
+
+/*
+ * A tell response, or when the session remembers the location an ask response that keeps the
+ * session open for a follow-up.
+ */
+private SpeechletResponse sightingResponse(String ssml, SimpleCard card, boolean followUp) {
+
+	SsmlOutputSpeech smlspeech = new  SsmlOutputSpeech();
+	if (!followUp) {
+		smlspeech.setSsml(ssml);
+		return SpeechletResponse.newTellResponse(smlspeech, card);
+	}
+	smlspeech.setSsml(ssml.substring(0, ssml.lastIndexOf("</speak>")) + FOLLOW_UP_PROMPT + "</speak>");
+
+	SsmlOutputSpeech rpssmlspeech = new  SsmlOutputSpeech();
+	rpssmlspeech.setSsml("<speak>" + FOLLOW_UP_PROMPT + "</speak>");
+	Reprompt reprompt = new Reprompt();
+	reprompt.setOutputSpeech(rpssmlspeech);
+
+	return SpeechletResponse.newAskResponse(smlspeech, reprompt, card);
+}
+
+/*
+ * The state or country named by the request, or null.
+ */
+private LocationIndex.Region findRegion(final Intent intent) {
+
+	Slot stateSlot = intent.getSlot(SLOT_STATE);
+	Slot countrySlot = intent.getSlot(SLOT_COUNTRY);
+
+	if (countrySlot != null && countrySlot.getValue() != null) {
+		return LOCATION_INDEX.findCountry(countrySlot.getValue().trim());
+	}
+	else if (stateSlot != null && stateSlot.getValue() != null) {
+		return LOCATION_INDEX.findState(stateSlot.getValue().trim());
+	}
+	return null;
+}
+
+/*
+ * The location of the region the city names: the listed one, the closest sounding one, or the
+ * one closest to a gazetteer town of that name. Null if there is none or no region.
+ */
+private KeyValuePair findLocation(final Intent intent, LocationIndex.Region region) {
+
+	Slot citySlot = intent.getSlot(SLOT_CITY);
+	if (region == null || citySlot == null || citySlot.getValue() == null) {
+		return null;
+	}
+
+	String cityName = citySlot.getValue().trim();
+	KeyValuePair location = region.findLocation(cityName);
+	if (location == null) {
+		location = CITY_MATCHER.match(region, cityName);
+	}
+	if (location == null && GAZETTEER != null) {
+		SpatialIndex.Neighbor<LocationCoordinates.Place> nearby = LOCATION_COORDINATES.nearestTo(region,
+				GAZETTEER.find(cityName), NEARBY_MAX_KM);
+		if (nearby != null) {
+			location = nearby.getItem().getLocation();
+		}
+	}
+	return location;
+}
+
+/*
+ * How many sightings to list, from an AMAZON.NUMBER slot.
+ */
+private int parseCount(Slot countSlot) {
+
+	if (countSlot == null || countSlot.getValue() == null) {
+		return DEFAULT_LISTED_SIGHTINGS;
+	}
+	try {
+		return Math.max(1, Math.min(Integer.parseInt(countSlot.getValue().trim()), MAX_LISTED_SIGHTINGS));
+	}
+	catch (NumberFormatException nfex) {
+		return DEFAULT_LISTED_SIGHTINGS;
+	}
+}
+
+/*
+ * Time of day from an AMAZON.TIME slot, such as "21:00", or "EV" and "NI" for evening and night.
+ * Evening when it is missing or cannot be read.
+ */
+private LocalTime parseTimeOfDay(Slot timeSlot) {
+
+	if (timeSlot == null || timeSlot.getValue() == null) {
+		return EVENING;
+	}
+	String value = timeSlot.getValue().trim();
+	if (value.equals("MO")) {
+		return LocalTime.of(5, 0);
+	}
+	else if (value.equals("AF")) {
+		return LocalTime.of(12, 0);
+	}
+	else if (value.equals("EV")) {
+		return EVENING;
+	}
+	else if (value.equals("NI")) {
+		return LocalTime.of(21, 0);
+	}
+	try {
+		return LocalTime.parse(value);
+	}
+	catch (DateTimeParseException dtpex) {
+		log.debug("Unreadable time " + value);
+		return EVENING;
+	}
+}
+
+/*
+ * Speak one pass of a list in a sentence: its date, time and duration.
+ */
+private void appendSightingSummary(StringBuilder speech, Sighting sighting) {
+
+	String sdArray[] = sighting.getDate().split(" ");
+	String sightDate = sighting.getDate();
+	if (sdArray.length > 1) {
+		sightDate = sightDate.replace(sdArray[1], getFullMonth(sdArray[1]));
+	}
+	speech.append("<p>" + sightDate + " at " + sighting.getClock());
+	if (sighting.getDuration() != null) {
+		speech.append(", for " + sighting.getDuration());
+	}
+	if (sighting.getMaximum() != null) {
+		speech.append(", up to " + sighting.getMaximum());
+	}
+	speech.append(".</p>");
+}
+
+/*
+ * Speak the date, time, duration and positions of a pass.
+ */
+private void appendSightingDetails(StringBuilder speech, Sighting sighting) {
+	
+	String sdArray[] = sighting.getDate().split(" ");
+	String sightDate = sighting.getDate();
+	if (sdArray.length > 1) {
+		sightDate = sightDate.replace(sdArray[1], getFullMonth(sdArray[1]));
+	}
+	speech.append("<p>Date: " + sightDate + "</p>");
+	speech.append("<p>Time: " + sighting.getClock() + "</p>");
+	
+	if (sighting.getDuration() != null) {
+		speech.append("<p>Duration: " + sighting.getDuration() + "</p>");
+	}
+	if (sighting.getMaximum() != null) {
+		speech.append("<p>Maximum: " + sighting.getMaximum() + "</p>");
+	}
+	if (sighting.getApproach() != null) {
+		speech.append("<p>Approach: " + expandDirection(sighting.getApproach()) + "</p>");
+	}
+	if (sighting.getDeparture() != null) {
+		speech.append("<p>Departure: " + expandDirection(sighting.getDeparture()) + "</p>");
+	}
+}
+
+/*
+ * Expand the compass point of an approach or departure such as "10° above SW".
+ */
+private String expandDirection(String position) {
+	
+	String sStr[] = position.split("above");
+	if (sStr.length < 2) {
+		return position;
+	}
+	return sStr[0] + "above " + getFullDirection(sStr[1].trim());
 }
 
 private String getFullDirection(String abrStr) {
@@ -1463,6 +1384,37 @@ private String getFullMonth(String abrStr) {
 	return abrStr;
 }
 
+/*
+ * Counters of the sighting service, its cache, feed client and breaker, and the refresh
+ * scheduler, one per line, for the server's metrics page.
+ */
+static String metrics() {
+
+	StringBuilder metrics = new StringBuilder();
+	metrics.append(SIGHTING_SERVICE).append('\n');
+	metrics.append(SIGHTING_SERVICE.getCache()).append('\n');
+	metrics.append(SIGHTING_SERVICE.getReader().getClient()).append('\n');
+	if (SIGHTING_SERVICE.getBreaker() != null) {
+		metrics.append(SIGHTING_SERVICE.getBreaker()).append('\n');
+	}
+	if (REFRESH_SCHEDULER != null) {
+		metrics.append(REFRESH_SCHEDULER).append('\n');
+	}
+	return metrics.toString();
+}
+
+/*
+ * Stop the refresh scheduler and then the sighting service, whose threads the skill started, when
+ * the server hosting it stops.
+ */
+static void shutdown() {
+	if (REFRESH_SCHEDULER != null) {
+		REFRESH_SCHEDULER.shutdown();
+	}
+	SIGHTING_SERVICE.shutdown();
+	log.info("Stopped the refresh scheduler and the sighting service");
+}
+
 /**
  * Creates and returns a {@code SpeechletResponse} with a welcome message.
  *
@@ -1470,41 +1422,7 @@ private String getFullMonth(String abrStr) {
  */
 private SpeechletResponse getWelcomeResponse() {
 
-	StringBuilder welStrBldr = new StringBuilder();
-	StringBuilder rpStrBldr = new StringBuilder();
-	
-	welStrBldr.append("<speak>");
-	welStrBldr.append("<p>Welcome to the International Space Station Sighter.</p>");
-	welStrBldr.append("<p>I provide sighting information for the International Space Station from certain locations around the world.</p>");
-	welStrBldr.append("<p>The space station is visible to the naked eye and is the third brightest object in the sky.</p>");
-	welStrBldr.append("<p>It looks like a fast-moving plane and is easy to spot if you know when and where to look up.</p>");
-	welStrBldr.append("<p>You can get sighting information for locations by saying give me visibilty from Gaithersburg Maryland or another location and state combination.</p>");
-	welStrBldr.append("<p>I can list the locations in a state by saying list locations in Maryland or the name of another state.</p>");
-	welStrBldr.append("<p>Shorten the list by saying list locations in Maryland starting with A or another letter.</p>");
-	welStrBldr.append("<p>For locations outside of the United States saying give me visibility from London England or some other location and country combination.</p>");
-	welStrBldr.append("<p>I can list the locations in a country by saying list locations in England or the name of another country.</p>");
-	welStrBldr.append("<p>Shorten the list by saying list locations in England starting with A or another letter.</p>");
-	welStrBldr.append("<p>For a list of countries with sighting locations say list countries starting with A or another letter.</p>");
-	welStrBldr.append("<p>What would you like to do?</p>");
-    welStrBldr.append("</speak>");
-	
-	rpStrBldr.append("<speak>");	
-	rpStrBldr.append("For a listing of locations in a state say list locations in Maryland or the name of another state.");
-	rpStrBldr.append("<p>Or for outside the United States try saying list locations in England or the name of another country.</p>");
-	rpStrBldr.append("</speak>");
-	
-    // Create the ssmloutput text output.
-    SsmlOutputSpeech smlspeech = new  SsmlOutputSpeech();
-    smlspeech.setSsml(welStrBldr.toString());
-
-    
-    SsmlOutputSpeech rpsmlspeech = new  SsmlOutputSpeech();
-    rpsmlspeech.setSsml(rpStrBldr.toString());
-    
-    Reprompt reprompt = new Reprompt();
-    reprompt.setOutputSpeech(rpsmlspeech);
-    
-    return SpeechletResponse.newAskResponse(smlspeech, reprompt);
+	return RESPONSES.getWelcome();
 }
 
 /**
@@ -1514,41 +1432,7 @@ private SpeechletResponse getWelcomeResponse() {
  */
 private SpeechletResponse handleHelpRequest() {
 
-	StringBuilder helpStrBldr = new StringBuilder();
-	StringBuilder rpStrBldr = new StringBuilder();
-
-	helpStrBldr.append("<speak>");
-	helpStrBldr.append("<p>I provide sighting information for the International Space Station from specific locations around the world.</p>");
-	helpStrBldr.append("<p>The space station is visible for at least a 50 mile (80 km) radius around available location.</p>");
-	helpStrBldr.append("<p>If your specific location is not available then pick the closest location to you.</p>");
-	helpStrBldr.append("<p>Locations outside of the United States may be more limited.</p>");
-	helpStrBldr.append("<p>You can get sighting information by saying give me visibility from Gaithersburg Maryland or another location and state combination.</p>");
-	helpStrBldr.append("<p>You can get a list of locations in a state by saying list locations in Maryland or another state.</p>");
-	helpStrBldr.append("<p>Shorten the list by saying list locations in Maryland starting with A or another letter.</p>");
-	helpStrBldr.append("<p>For locations outside of the United States say give me visibility from London England or some other location and country combination.</p>");
-	helpStrBldr.append("<p>List the locations in a country by saying list locations in England or the name of another country.</p>");
-	helpStrBldr.append("<p>Shorten the list by saying list locations in England starting with A or another letter.</p>");
-	helpStrBldr.append("<p>For a list of countries with sighting locations say list countries starting with A or another letter.</p>");
-	helpStrBldr.append("<p>What would you like to do?</p>");
-	helpStrBldr.append("</speak>");
-	
-	rpStrBldr.append("<speak>");
-	rpStrBldr.append("<p>For a listing of locations in a state say list locations in Maryland or the name of another state.</p>");
-	rpStrBldr.append("<p>Or for outside the United States try saying list locations in England or the name of another country.</p>");
-	rpStrBldr.append("</speak>");
-	
-    // Create the ssmloutput text output.
-    SsmlOutputSpeech smlspeech = new  SsmlOutputSpeech();
-    smlspeech.setSsml(helpStrBldr.toString());
-
-    
-    SsmlOutputSpeech rpsmlspeech = new  SsmlOutputSpeech();
-    rpsmlspeech.setSsml(rpStrBldr.toString());
-    
-    Reprompt reprompt = new Reprompt();
-    reprompt.setOutputSpeech(rpsmlspeech);
-    
-    return SpeechletResponse.newAskResponse(smlspeech, reprompt);
+	return RESPONSES.getHelp();
 }
 
 
@@ -1559,4 +1443,4 @@ public void onSessionEnded(final SessionEndedRequest request, final Session sess
             session.getSessionId());
 }
 
-}
\ No newline at end of file
+}
\ No newline at end of file
@@ -10,11 +10,16 @@ Licensed under the Apache License, Version 2.0 (the "License"). You may not use
 or in the "license" file accompanying this file. This file is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language governing permissions and limitations under the License.
 */
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.HashSet;
 import java.util.Set;
 
 import com.amazon.speech.speechlet.Speechlet;
 import com.amazon.speech.speechlet.lambda.SpeechletRequestStreamHandler;
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestStreamHandler;
 
 /**
 * This class could be the handler for an AWS Lambda function powering an Alexa Skills Kit
@@ -22,8 +27,11 @@ import com.amazon.speech.speechlet.lambda.SpeechletRequestStreamHandler;
 * "com.cjbdev.echo.iss.SpaceStationSpeechletRequestStreamHandler" For this to work, you'll also need to build
 * this project using the {@code lambda-compile} Ant task and upload the resulting zip file to power
 * your function.
+*
+* The SDK handler it delegates to cannot be extended at handleRequest, so this class wraps it to
+* give every invocation a {@link Deadline} from the time the Lambda context has left.
 */
-public class SpaceStationSpeechletRequestStreamHandler extends SpeechletRequestStreamHandler {
+public class SpaceStationSpeechletRequestStreamHandler implements RequestStreamHandler {
 
   private static final Set<String> supportedApplicationIds;
 
@@ -42,13 +50,27 @@ public class SpaceStationSpeechletRequestStreamHandler extends SpeechletRequestS
     
   }
 
+  private final SpeechletRequestStreamHandler delegate;
+
   public SpaceStationSpeechletRequestStreamHandler() {
-    super(new SpaceStationSpeechlet(), supportedApplicationIds);
+    this(new SpaceStationSpeechlet(), supportedApplicationIds);
   }
 
   public SpaceStationSpeechletRequestStreamHandler(Speechlet speechlet,
     Set<String> supportedApplicationIds) {
-    super(speechlet, supportedApplicationIds);
+    delegate = new SpeechletRequestStreamHandler(speechlet, supportedApplicationIds) {
+    };
+  }
+
+  public void handleRequest(InputStream input, OutputStream output, Context context) throws IOException {
+    Deadline.set(context != null ? Deadline.forInvocation(context.getRemainingTimeInMillis())
+        : Deadline.after(Deadline.budgetMillis()));
+    try {
+      delegate.handleRequest(input, output, context);
+    }
+    finally {
+      Deadline.clear();
+    }
   }
 
 }
\ No newline at end of file
@@ -0,0 +1,285 @@
+package com.cjbdev.echo.iss;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Static k-d tree of items at latitude/longitude positions, for nearest-neighbour lookups.
+ * <p>
+ * Positions are stored as points on the unit sphere, so straight-line distance between them
+ * orders the same way as great-circle distance and there is no special case at the poles or the
+ * date line. The tree is laid out implicitly in arrays: each subrange is split at its median on
+ * the axis of greatest spread, and the median sits in the middle of the subrange.
+ */
+final class SpatialIndex<T> {
+
+	static final double EARTH_RADIUS_KM = 6371.0;
+
+	private final Object[] items;
+	private final double[] latitudes;
+	private final double[] longitudes;
+	private final double[] x;
+	private final double[] y;
+	private final double[] z;
+	private final byte[] axes;
+
+	SpatialIndex(List<T> items, double[] latitudes, double[] longitudes) {
+
+		int n = items.size();
+		this.items = items.toArray();
+		this.latitudes = latitudes.clone();
+		this.longitudes = longitudes.clone();
+		x = new double[n];
+		y = new double[n];
+		z = new double[n];
+		axes = new byte[n];
+		for (int i = 0; i < n; i++) {
+			double lat = Math.toRadians(latitudes[i]);
+			double lon = Math.toRadians(longitudes[i]);
+			x[i] = Math.cos(lat) * Math.cos(lon);
+			y[i] = Math.cos(lat) * Math.sin(lon);
+			z[i] = Math.sin(lat);
+		}
+		build(0, n);
+	}
+
+	int size() {
+		return items.length;
+	}
+
+	/*
+	 * The item closest to the position, or null when the index is empty.
+	 */
+	Neighbor<T> nearest(double latitude, double longitude) {
+		List<Neighbor<T>> found = nearest(latitude, longitude, 1);
+		return found.isEmpty() ? null : found.get(0);
+	}
+
+	/*
+	 * Up to k items closest to the position, closest first.
+	 */
+	List<Neighbor<T>> nearest(double latitude, double longitude, int k) {
+
+		if (k <= 0 || items.length == 0) {
+			return Collections.emptyList();
+		}
+
+		double lat = Math.toRadians(latitude);
+		double lon = Math.toRadians(longitude);
+		Search search = new Search(Math.cos(lat) * Math.cos(lon), Math.cos(lat) * Math.sin(lon), Math.sin(lat),
+				Math.min(k, items.length));
+		search(0, items.length, search);
+
+		List<Neighbor<T>> found = new ArrayList<Neighbor<T>>(search.count);
+		for (int i = 0; i < search.count; i++) {
+			int index = search.indexes[i];
+			@SuppressWarnings("unchecked")
+			T item = (T) items[index];
+			found.add(new Neighbor<T>(item, latitudes[index], longitudes[index], chordToKm(search.distances[i])));
+		}
+		return found;
+	}
+
+	/*
+	 * Great-circle distance in kilometres.
+	 */
+	static double distanceKm(double lat1, double lon1, double lat2, double lon2) {
+		double dLat = Math.toRadians(lat2 - lat1);
+		double dLon = Math.toRadians(lon2 - lon1);
+		double a = Math.sin(dLat / 2) * Math.sin(dLat / 2) + Math.cos(Math.toRadians(lat1))
+				* Math.cos(Math.toRadians(lat2)) * Math.sin(dLon / 2) * Math.sin(dLon / 2);
+		return 2 * EARTH_RADIUS_KM * Math.asin(Math.min(1, Math.sqrt(a)));
+	}
+
+	private static double chordToKm(double squaredChord) {
+		return 2 * EARTH_RADIUS_KM * Math.asin(Math.min(1, Math.sqrt(squaredChord) / 2));
+	}
+
+	private void build(int from, int to) {
+
+		if (to - from <= 1) {
+			return;
+		}
+		int axis = widestAxis(from, to);
+		int mid = (from + to) >>> 1;
+		select(from, to - 1, mid, axis);
+		axes[mid] = (byte) axis;
+		build(from, mid);
+		build(mid + 1, to);
+	}
+
+	private int widestAxis(int from, int to) {
+		double[] spread = new double[3];
+		for (int axis = 0; axis < 3; axis++) {
+			double min = Double.MAX_VALUE;
+			double max = -Double.MAX_VALUE;
+			for (int i = from; i < to; i++) {
+				double v = coordinate(i, axis);
+				min = Math.min(min, v);
+				max = Math.max(max, v);
+			}
+			spread[axis] = max - min;
+		}
+		return spread[0] >= spread[1] ? (spread[0] >= spread[2] ? 0 : 2) : (spread[1] >= spread[2] ? 1 : 2);
+	}
+
+	/*
+	 * Quickselect so that position k holds the median on the axis, smaller values before it.
+	 */
+	private void select(int left, int right, int k, int axis) {
+		while (left < right) {
+			double pivot = coordinate((left + right) >>> 1, axis);
+			int i = left;
+			int j = right;
+			while (i <= j) {
+				while (coordinate(i, axis) < pivot) {
+					i++;
+				}
+				while (coordinate(j, axis) > pivot) {
+					j--;
+				}
+				if (i <= j) {
+					swap(i++, j--);
+				}
+			}
+			if (k <= j) {
+				right = j;
+			}
+			else if (k >= i) {
+				left = i;
+			}
+			else {
+				return;
+			}
+		}
+	}
+
+	private void search(int from, int to, Search search) {
+
+		if (from >= to) {
+			return;
+		}
+		int mid = (from + to) >>> 1;
+		double dx = x[mid] - search.x;
+		double dy = y[mid] - search.y;
+		double dz = z[mid] - search.z;
+		search.offer(mid, dx * dx + dy * dy + dz * dz);
+
+		if (to - from == 1) {
+			return;
+		}
+		int axis = axes[mid];
+		double diff = search.coordinate(axis) - coordinate(mid, axis);
+		if (diff < 0) {
+			search(from, mid, search);
+			if (diff * diff < search.worst()) {
+				search(mid + 1, to, search);
+			}
+		}
+		else {
+			search(mid + 1, to, search);
+			if (diff * diff < search.worst()) {
+				search(from, mid, search);
+			}
+		}
+	}
+
+	private double coordinate(int i, int axis) {
+		return axis == 0 ? x[i] : axis == 1 ? y[i] : z[i];
+	}
+
+	private void swap(int i, int j) {
+		Object item = items[i];
+		items[i] = items[j];
+		items[j] = item;
+		swap(latitudes, i, j);
+		swap(longitudes, i, j);
+		swap(x, i, j);
+		swap(y, i, j);
+		swap(z, i, j);
+	}
+
+	private static void swap(double[] a, int i, int j) {
+		double t = a[i];
+		a[i] = a[j];
+		a[j] = t;
+	}
+
+	/**
+	 * The k best candidates so far, kept sorted by squared chord distance.
+	 */
+	private static final class Search {
+
+		final double x;
+		final double y;
+		final double z;
+		final int[] indexes;
+		final double[] distances;
+		int count;
+
+		Search(double x, double y, double z, int k) {
+			this.x = x;
+			this.y = y;
+			this.z = z;
+			indexes = new int[k];
+			distances = new double[k];
+		}
+
+		double coordinate(int axis) {
+			return axis == 0 ? x : axis == 1 ? y : z;
+		}
+
+		double worst() {
+			return count < indexes.length ? Double.MAX_VALUE : distances[count - 1];
+		}
+
+		void offer(int index, double distance) {
+			if (distance >= worst()) {
+				return;
+			}
+			int i = count < indexes.length ? count++ : count - 1;
+			while (i > 0 && distances[i - 1] > distance) {
+				indexes[i] = indexes[i - 1];
+				distances[i] = distances[i - 1];
+				i--;
+			}
+			indexes[i] = index;
+			distances[i] = distance;
+		}
+	}
+
+	/**
+	 * An item found by a search and how far it is from the searched position.
+	 */
+	static final class Neighbor<T> {
+
+		private final T item;
+		private final double latitude;
+		private final double longitude;
+		private final double distanceKm;
+
+		Neighbor(T item, double latitude, double longitude, double distanceKm) {
+			this.item = item;
+			this.latitude = latitude;
+			this.longitude = longitude;
+			this.distanceKm = distanceKm;
+		}
+
+		T getItem() {
+			return item;
+		}
+
+		double getLatitude() {
+			return latitude;
+		}
+
+		double getLongitude() {
+			return longitude;
+		}
+
+		double getDistanceKm() {
+			return distanceKm;
+		}
+	}
+}
@@ -0,0 +1,192 @@
+package com.cjbdev.echo.iss;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A NORAD two-line element set, the orbit description {@link Sgp4} propagates.
+ * <p>
+ * Angles are kept in degrees and mean motion in revolutions per day as written; {@link Sgp4}
+ * converts them. Both lines are checked for length, line number, matching catalog number and
+ * their modulo-10 checksum.
+ */
+final class Tle {
+
+	private final String name;
+	private final String line1;
+	private final String line2;
+
+	private final int catalogNumber;
+	private final double epochJulian;
+	private final double bstar;
+	private final double inclination;
+	private final double rightAscension;
+	private final double eccentricity;
+	private final double argumentOfPerigee;
+	private final double meanAnomaly;
+	private final double meanMotion;
+
+	Tle(String name, String line1, String line2) {
+
+		this.name = name;
+		this.line1 = line1.trim();
+		this.line2 = line2.trim();
+		check(this.line1, '1');
+		check(this.line2, '2');
+
+		try {
+			catalogNumber = Integer.parseInt(this.line1.substring(2, 7).trim());
+			if (catalogNumber != Integer.parseInt(this.line2.substring(2, 7).trim())) {
+				throw new IllegalArgumentException("TLE lines are for different satellites");
+			}
+
+			int year = Integer.parseInt(this.line1.substring(18, 20).trim());
+			year += year < 57 ? 2000 : 1900;
+			double day = Double.parseDouble(this.line1.substring(20, 32).trim());
+			epochJulian = julianDate(year, 1, 1) - 1 + day;
+
+			bstar = exponential(this.line1.substring(53, 61));
+			inclination = Double.parseDouble(this.line2.substring(8, 16).trim());
+			rightAscension = Double.parseDouble(this.line2.substring(17, 25).trim());
+			eccentricity = Double.parseDouble("0." + this.line2.substring(26, 33).trim());
+			argumentOfPerigee = Double.parseDouble(this.line2.substring(34, 42).trim());
+			meanAnomaly = Double.parseDouble(this.line2.substring(43, 51).trim());
+			meanMotion = Double.parseDouble(this.line2.substring(52, 63).trim());
+		}
+		catch (NumberFormatException nfex) {
+			throw new IllegalArgumentException("Unreadable TLE: " + nfex.getMessage(), nfex);
+		}
+	}
+
+	/*
+	 * Every element set in a file of optional name lines followed by line 1 and line 2.
+	 */
+	static List<Tle> read(InputStream in) throws IOException {
+
+		List<Tle> tles = new ArrayList<Tle>();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(in, "US-ASCII"));
+		String name = null;
+		String first = null;
+		String line;
+		while ((line = reader.readLine()) != null) {
+			if (line.trim().isEmpty()) {
+				continue;
+			}
+			if (line.startsWith("1 ") && first == null) {
+				first = line;
+			}
+			else if (line.startsWith("2 ") && first != null) {
+				tles.add(new Tle(name, first, line));
+				name = null;
+				first = null;
+			}
+			else {
+				name = line.trim();
+				first = null;
+			}
+		}
+		return tles;
+	}
+
+	String getName() {
+		return name;
+	}
+
+	int getCatalogNumber() {
+		return catalogNumber;
+	}
+
+	/*
+	 * Epoch as a Julian date (UTC).
+	 */
+	double getEpochJulian() {
+		return epochJulian;
+	}
+
+	long getEpochMillis() {
+		return Math.round((epochJulian - 2440587.5) * 86400000.0);
+	}
+
+	double getBstar() {
+		return bstar;
+	}
+
+	double getInclination() {
+		return inclination;
+	}
+
+	double getRightAscension() {
+		return rightAscension;
+	}
+
+	double getEccentricity() {
+		return eccentricity;
+	}
+
+	double getArgumentOfPerigee() {
+		return argumentOfPerigee;
+	}
+
+	double getMeanAnomaly() {
+		return meanAnomaly;
+	}
+
+	double getMeanMotion() {
+		return meanMotion;
+	}
+
+	@Override
+	public String toString() {
+		return (name == null ? "" : name + "\n") + line1 + "\n" + line2;
+	}
+
+	static double julianDate(int year, int month, double day) {
+		return 367.0 * year - Math.floor(7 * (year + Math.floor((month + 9) / 12.0)) * 0.25)
+				+ Math.floor(275 * month / 9.0) + day + 1721013.5;
+	}
+
+	static double julianDate(long millis) {
+		return millis / 86400000.0 + 2440587.5;
+	}
+
+	/*
+	 * The TLE's implied-decimal exponent format, e.g. " 28098-4" for 0.28098e-4.
+	 */
+	private static double exponential(String field) {
+		String s = field.trim();
+		if (s.isEmpty()) {
+			return 0;
+		}
+		int sign = 1;
+		if (s.charAt(0) == '-' || s.charAt(0) == '+') {
+			sign = s.charAt(0) == '-' ? -1 : 1;
+			s = s.substring(1);
+		}
+		int exp = s.length() - 2;
+		return sign * Double.parseDouble("0." + s.substring(0, exp)) * Math.pow(10, Integer.parseInt(s.substring(exp)));
+	}
+
+	private static void check(String line, char number) {
+
+		if (line.length() != 69 || line.charAt(0) != number) {
+			throw new IllegalArgumentException("Not a TLE line " + number + ": " + line);
+		}
+		int sum = 0;
+		for (int i = 0; i < 68; i++) {
+			char c = line.charAt(i);
+			if (Character.isDigit(c)) {
+				sum += c - '0';
+			}
+			else if (c == '-') {
+				sum++;
+			}
+		}
+		if (sum % 10 != line.charAt(68) - '0') {
+			throw new IllegalArgumentException("Bad checksum on TLE line " + number + ": " + line);
+		}
+	}
+}
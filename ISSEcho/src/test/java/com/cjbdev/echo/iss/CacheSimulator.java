@@ -0,0 +1,134 @@
+package com.cjbdev.echo.iss;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Replays a trace of location lookups through {@link SightingCache} with and without the TinyLFU
+ * admission filter and prints the hit ratio of each at several cache sizes:
+ * <pre>
+ * java -cp target/test-classes:target/classes:... com.cjbdev.echo.iss.CacheSimulator [trace file|-] [size,size,...]
+ * </pre>
+ * A trace has one lookup per line; the location id is the last tab separated field, so a column
+ * cut from a request log works as is. Blank lines and lines starting with {@code #} are skipped.
+ * Without a trace (or with {@code -}) a synthetic one is generated: Zipf distributed lookups over
+ * the speechAssets locations, interleaved with sweeps over unpopular locations like those of a
+ * crawler or a user reading out a list. Entries never expire during a replay, so only the
+ * eviction policy differs between the columns.
+ */
+public class CacheSimulator {
+
+	private static final int SYNTHETIC_LOOKUPS = 500000;
+	private static final double ZIPF_EXPONENT = 0.9;
+
+	public static void main(String[] args) throws IOException {
+
+		List<String> trace;
+		if (args.length > 0 && !"-".equals(args[0])) {
+			trace = readTrace(args[0]);
+			System.out.println("trace " + args[0] + ": " + trace.size() + " lookups");
+		}
+		else {
+			List<String> ids = SightingSnapshotBuilder.locationIds(LocationIndex.load(new SpaceStationListLoader()));
+			trace = syntheticTrace(ids, SYNTHETIC_LOOKUPS, new Random(42));
+			System.out.println("synthetic trace over " + ids.size() + " locations: " + trace.size() + " lookups");
+		}
+
+		int[] sizes = { 50, 100, 250, 500, 1000 };
+		if (args.length > 1) {
+			String[] fields = args[1].split(",");
+			sizes = new int[fields.length];
+			for (int i = 0; i < fields.length; i++) {
+				sizes[i] = Integer.parseInt(fields[i].trim());
+			}
+		}
+
+		System.out.println(String.format("%8s %10s %10s %10s %12s", "size", "LRU", "TinyLFU", "change", "rejections"));
+		for (int size : sizes) {
+			SightingCache lru = replay(trace, new SightingCache(size, Long.MAX_VALUE / 2, false));
+			SightingCache tinyLfu = replay(trace, new SightingCache(size, Long.MAX_VALUE / 2, true));
+			double lruRatio = hitRatio(lru);
+			double tinyLfuRatio = hitRatio(tinyLfu);
+			System.out.println(String.format("%8d %9.2f%% %9.2f%% %+9.2f%% %12d", size, 100 * lruRatio,
+					100 * tinyLfuRatio, 100 * (tinyLfuRatio - lruRatio), tinyLfu.getRejections()));
+		}
+	}
+
+	/*
+	 * Look every id up and cache it on a miss, the way SightingService does.
+	 */
+	static SightingCache replay(List<String> trace, SightingCache cache) {
+		SightingSchedule schedule = new SightingSchedule("trace", Collections.<Sighting> emptyList(), 0);
+		for (String locationId : trace) {
+			if (cache.get(locationId) == null) {
+				cache.put(locationId, schedule);
+			}
+		}
+		return cache;
+	}
+
+	static double hitRatio(SightingCache cache) {
+		long lookups = cache.getHits() + cache.getMisses();
+		return lookups == 0 ? 0 : (double) cache.getHits() / lookups;
+	}
+
+	static List<String> readTrace(String path) throws IOException {
+
+		List<String> trace = new ArrayList<String>();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(path), "UTF-8"));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				line = line.trim();
+				if (line.isEmpty() || line.startsWith("#")) {
+					continue;
+				}
+				trace.add(line.substring(line.lastIndexOf('\t') + 1));
+			}
+		}
+		finally {
+			reader.close();
+		}
+		return trace;
+	}
+
+	/*
+	 * Zipf lookups over a shuffled copy of the ids, with a sweep over 200 ids from the unpopular
+	 * half inserted after every 20000 lookups.
+	 */
+	static List<String> syntheticTrace(List<String> ids, int lookups, Random random) {
+
+		List<String> ranked = new ArrayList<String>(ids);
+		Collections.shuffle(ranked, random);
+
+		double[] cumulative = new double[ranked.size()];
+		double total = 0;
+		for (int i = 0; i < cumulative.length; i++) {
+			total += 1 / Math.pow(i + 1, ZIPF_EXPONENT);
+			cumulative[i] = total;
+		}
+
+		List<String> trace = new ArrayList<String>(lookups);
+		while (trace.size() < lookups) {
+			if (trace.size() % 20000 == 19999) {
+				int tail = ranked.size() / 2;
+				int start = tail + random.nextInt(Math.max(ranked.size() - tail - 200, 1));
+				for (int i = start; i < Math.min(start + 200, ranked.size()) && trace.size() < lookups; i++) {
+					trace.add(ranked.get(i));
+				}
+				continue;
+			}
+			double target = random.nextDouble() * total;
+			int rank = Arrays.binarySearch(cumulative, target);
+			trace.add(ranked.get(rank >= 0 ? rank : Math.min(-rank - 1, ranked.size() - 1)));
+		}
+		return trace;
+	}
+}
@@ -0,0 +1,148 @@
+package com.cjbdev.echo.iss;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import junit.framework.TestCase;
+
+/**
+ * Walks the breaker from closed to open, half open and back, counts what it refuses, and checks
+ * that a download which throws before it starts still reports back to it.
+ */
+public class CircuitBreakerTest extends TestCase {
+
+	private static final String ANNAPOLIS = "United_States_Maryland_Annapolis";
+
+	private static final long OPEN = 30000;
+
+	public void testOpensAfterTheThresholdOfFailuresInARow() {
+		CircuitBreaker breaker = new CircuitBreaker("test", 3, OPEN);
+		long now = 1000;
+
+		failCalls(breaker, now, 2);
+		// a success starts the count again
+		assertTrue(breaker.allowRequest(now));
+		breaker.onSuccess();
+		failCalls(breaker, now, 2);
+		assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+
+		failCalls(breaker, now, 1);
+		assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+		assertEquals(1, breaker.getOpened());
+		assertEquals(5, breaker.getFailures());
+		assertEquals(6, breaker.getCalls());
+	}
+
+	public void testRefusesWhileOpen() {
+		CircuitBreaker breaker = open(1000);
+
+		assertFalse(breaker.allowRequest(1000));
+		assertFalse(breaker.allowRequest(1000 + OPEN - 1));
+		assertEquals(2, breaker.getRejected());
+		assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+	}
+
+	public void testOneTrialWhenHalfOpenAndItsSuccessCloses() {
+		CircuitBreaker breaker = open(1000);
+		long later = 1000 + OPEN;
+
+		assertTrue(breaker.allowRequest(later));
+		assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+		// only the one trial while it runs
+		assertFalse(breaker.allowRequest(later));
+		assertFalse(breaker.allowRequest(later + 1));
+		assertEquals(2, breaker.getRejected());
+
+		breaker.onSuccess();
+		assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+		assertTrue(breaker.allowRequest(later + 2));
+		assertTrue(breaker.allowRequest(later + 2));
+	}
+
+	public void testFailedTrialReopens() {
+		CircuitBreaker breaker = open(1000);
+		long later = 1000 + OPEN;
+
+		assertTrue(breaker.allowRequest(later));
+		breaker.onFailure(later + 10);
+		assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+		assertEquals(2, breaker.getOpened());
+
+		// open for the whole period again, from the failed trial
+		assertFalse(breaker.allowRequest(later + OPEN));
+		assertTrue(breaker.allowRequest(later + 10 + OPEN));
+	}
+
+	public void testLostTrialIsReplaced() {
+		CircuitBreaker breaker = open(1000);
+		long later = 1000 + OPEN;
+
+		assertTrue(breaker.allowRequest(later));
+		assertFalse(breaker.allowRequest(later + OPEN - 1));
+		// never reported back
+		assertTrue(breaker.allowRequest(later + OPEN));
+		assertFalse(breaker.allowRequest(later + OPEN));
+		assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+	}
+
+	public void testDownloadThatThrowsBeforeStartingReportsAFailure() throws Exception {
+		final AtomicBoolean refusing = new AtomicBoolean(true);
+		StubFeedReader reader = new StubFeedReader(0) {
+			@Override
+			CompletableFuture<SightingSchedule> fetchAsync(String locationId, SightingSchedule cached,
+					ScheduledExecutorService executor) {
+				if (refusing.get()) {
+					throw new RejectedExecutionException("shutting down");
+				}
+				return super.fetchAsync(locationId, cached, executor);
+			}
+		};
+		reader.setNextPass(ANNAPOLIS, 60 * 60 * 1000L);
+		ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1,
+				new NearbySightingFinder.DaemonThreadFactory("breaker-test"));
+		// opened long enough ago that the next call is the half open trial
+		CircuitBreaker breaker = new CircuitBreaker("test", 1, 200);
+		failCalls(breaker, System.currentTimeMillis() - 200, 1);
+		SightingService service = new SightingService(new SightingCache(100, 60 * 60 * 1000L), null, null, reader,
+				null, null, breaker, executor, 0);
+		try {
+			try {
+				service.getSchedule(ANNAPOLIS, null);
+				fail("download refused");
+			}
+			catch (IOException ioex) {
+				assertTrue(ioex.getCause() instanceof RejectedExecutionException);
+			}
+			// the trial reported its failure instead of holding the breaker half open
+			assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+			assertEquals(2, breaker.getFailures());
+
+			// so once the open period is over again, the next trial goes through and closes it
+			refusing.set(false);
+			Thread.sleep(250);
+			assertNotNull(service.getSchedule(ANNAPOLIS, null));
+			assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+		}
+		finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private static CircuitBreaker open(long now) {
+		CircuitBreaker breaker = new CircuitBreaker("test", 1, OPEN);
+		failCalls(breaker, now, 1);
+		assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+		return breaker;
+	}
+
+	private static void failCalls(CircuitBreaker breaker, long now, int times) {
+		for (int i = 0; i < times; i++) {
+			assertTrue(breaker.allowRequest(now));
+			breaker.onFailure(now);
+		}
+	}
+}
@@ -0,0 +1,129 @@
+package com.cjbdev.echo.iss;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Measures {@link CityMatcher} over every location in the speechAssets lists. Run after
+ * {@code mvn package} with the build output on the classpath:
+ * <pre>
+ * java -cp target/test-classes:target/classes:... com.cjbdev.echo.iss.CityMatcherBenchmark [rounds]
+ * </pre>
+ * Each location is looked up in its own region under a few typical misrecognitions: a dropped
+ * letter, two letters swapped, a changed vowel and a phonetic respelling. Reports the time to
+ * index every region, lookup latency percentiles in microseconds and how often the intended location came back.
+ */
+public class CityMatcherBenchmark {
+
+	private static final String[][] RESPELLINGS = { { "ph", "f" }, { "ck", "k" }, { "c", "k" }, { "ville", "vill" },
+			{ "burg", "berg" }, { "ey", "y" }, { "ou", "ow" } };
+
+	public static void main(String[] args) {
+
+		int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+
+		LocationIndex index = LocationIndex.load(new SpaceStationListLoader());
+		List<LocationIndex.Region> regions = new ArrayList<LocationIndex.Region>();
+		regions.addAll(index.getStates());
+		regions.addAll(index.getCountries());
+
+		CityMatcher matcher = new CityMatcher();
+		long start = System.nanoTime();
+		for (LocationIndex.Region region : regions) {
+			matcher.match(region, "warm up");
+		}
+		System.out.println("indexed " + index.getLocationCount() + " locations in " + regions.size() + " regions in "
+				+ (System.nanoTime() - start) / 1000000 + " ms");
+
+		Random random = new Random(42);
+		String[] kinds = { "dropped", "swapped", "vowel", "respelled" };
+		for (int round = 0; round <= rounds; round++) {
+			// round 0 warms up the JIT and is not reported
+			long[] nanos = new long[4 * index.getLocationCount()];
+			int lookups = 0;
+			int[] tried = new int[kinds.length];
+			int[] found = new int[kinds.length];
+
+			for (LocationIndex.Region region : regions) {
+				for (KeyValuePair location : region.getLocations()) {
+					for (int kind = 0; kind < kinds.length; kind++) {
+						String spoken = garble(location.getKey(), kind, random);
+						if (spoken == null) {
+							continue;
+						}
+						long t0 = System.nanoTime();
+						KeyValuePair match = matcher.match(region, spoken);
+						nanos[lookups++] = System.nanoTime() - t0;
+						tried[kind]++;
+						if (match != null && match.getKey().equalsIgnoreCase(location.getKey())) {
+							found[kind]++;
+						}
+					}
+				}
+			}
+
+			if (round == 0) {
+				continue;
+			}
+			Arrays.sort(nanos, 0, lookups);
+			StringBuilder line = new StringBuilder("round " + round + ": " + lookups + " lookups, p50 "
+					+ micros(nanos, lookups, 50) + " us, p99 " + micros(nanos, lookups, 99) + " us, max "
+					+ micros(nanos, lookups, 100) + " us");
+			for (int kind = 0; kind < kinds.length; kind++) {
+				line.append(", ").append(kinds[kind]).append(' ').append(found[kind] * 100 / Math.max(1, tried[kind]))
+						.append("% of ").append(tried[kind]);
+			}
+			System.out.println(line);
+		}
+	}
+
+	private static long micros(long[] sorted, int count, int percentile) {
+		int rank = (int) Math.ceil(count * percentile / 100.0) - 1;
+		return sorted[Math.max(0, rank)] / 1000;
+	}
+
+	/*
+	 * A misheard version of the name, or null if this kind of change does not apply to it.
+	 */
+	private static String garble(String name, int kind, Random random) {
+
+		if (name.length() < 5) {
+			return null;
+		}
+		char[] chars = name.toCharArray();
+		switch (kind) {
+		case 0: {
+			int i = 1 + random.nextInt(chars.length - 2);
+			return name.substring(0, i) + name.substring(i + 1);
+		}
+		case 1: {
+			int i = 1 + random.nextInt(chars.length - 2);
+			char c = chars[i];
+			chars[i] = chars[i + 1];
+			chars[i + 1] = c;
+			return new String(chars);
+		}
+		case 2: {
+			for (int i = 1; i < chars.length; i++) {
+				int vowel = "aeiou".indexOf(chars[i]);
+				if (vowel >= 0) {
+					chars[i] = "eiaou".charAt(vowel);
+					return new String(chars);
+				}
+			}
+			return null;
+		}
+		default: {
+			String lower = name.toLowerCase();
+			for (String[] respelling : RESPELLINGS) {
+				if (lower.contains(respelling[0])) {
+					return lower.replace(respelling[0], respelling[1]);
+				}
+			}
+			return null;
+		}
+		}
+	}
+}
@@ -0,0 +1,80 @@
+package com.cjbdev.echo.iss;
+
+import junit.framework.TestCase;
+
+/**
+ * Matches misheard and unlisted city names against the Maryland and Arizona lists.
+ */
+public class CityMatcherTest extends TestCase {
+
+	private LocationIndex index;
+	private CityMatcher matcher;
+
+	@Override
+	protected void setUp() {
+		index = LocationIndex.loadText(new SpaceStationListLoader());
+		matcher = new CityMatcher();
+	}
+
+	public void testListedNamesMatchThemselves() {
+		assertMatch("Maryland", "Gaithersburg", "Gaithersburg");
+		assertMatch("Maryland", "ocean city", "Ocean City");
+		assertMatch("Arizona", "Saint Johns", "St Johns");
+	}
+
+	public void testSameSoundWithADifferentSpelling() {
+		assertMatch("Arizona", "Fenix", "Phoenix");
+		assertMatch("Arizona", "Feenix", "Phoenix");
+		assertMatch("Maryland", "Salisberry", "Salisbury");
+	}
+
+	public void testNearMisses() {
+		assertMatch("Maryland", "Gathersburg", "Gaithersburg");
+		assertMatch("Maryland", "Hagerstwon", "Hagerstown");
+		assertMatch("Maryland", "Anapolis", "Annapolis");
+		assertMatch("Maryland", "Baltamore", "Baltimore");
+		assertMatch("Maryland", "Rockvile", "Rockville");
+	}
+
+	public void testUnlistedTownsAreNotMatched() {
+		// each of these sounds close to a listed location, or differs from it in a few letters
+		assertNoMatch("Maryland", "Parkville");
+		assertNoMatch("Maryland", "Boston");
+		assertNoMatch("Maryland", "Austin");
+		assertNoMatch("Maryland", "Germantown");
+		assertNoMatch("Maryland", "Glen Burnie");
+		assertNoMatch("Arizona", "Chandler");
+		assertNoMatch("Arizona", "Glendale");
+	}
+
+	public void testOtherRegionsAreNotSearched() {
+		assertNoMatch("Arizona", "Baltimore");
+		assertNoMatch("Maryland", "Phoenix");
+	}
+
+	public void testNormalize() {
+		assertEquals("saintjohns", CityMatcher.normalize("St. John's"));
+		assertEquals("mountairy", CityMatcher.normalize("Mt Airy"));
+		assertEquals("fortwashingtonpark", CityMatcher.normalize("Ft. Washington Park"));
+		assertEquals("", CityMatcher.normalize(" - "));
+		assertNull(matcher.match(index.findState("Maryland"), " - "));
+	}
+
+	public void testDistanceStopsPastTheLimit() {
+		assertEquals(1, CityMatcher.distance("gathersburg", "gaithersburg", 3));
+		assertEquals(3, CityMatcher.distance("kitten", "sitting", 3));
+		assertEquals(3, CityMatcher.distance("kitten", "sitting", 2));
+		assertEquals(2, CityMatcher.distance("a", "abcdef", 1));
+	}
+
+	private void assertMatch(String state, String spoken, String expected) {
+		KeyValuePair match = matcher.match(index.findState(state), spoken);
+		assertNotNull(spoken, match);
+		assertEquals(spoken, expected, match.getKey());
+	}
+
+	private void assertNoMatch(String state, String spoken) {
+		KeyValuePair match = matcher.match(index.findState(state), spoken);
+		assertNull(spoken + " matched " + (match == null ? null : match.getKey()), match);
+	}
+}
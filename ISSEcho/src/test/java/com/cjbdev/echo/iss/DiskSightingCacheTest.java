@@ -0,0 +1,238 @@
+package com.cjbdev.echo.iss;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+/**
+ * Reloads the disk cache after clean shutdowns, torn and corrupt tails, an interrupted compaction
+ * and one whose rename fails.
+ */
+public class DiskSightingCacheTest extends TestCase {
+
+	private static final String ANNAPOLIS = "United_States_Maryland_Annapolis";
+	private static final String BALTIMORE = "United_States_Maryland_Baltimore";
+	private static final String COLUMBIA = "United_States_Maryland_Columbia";
+
+	private static final long HOUR = 60 * 60 * 1000L;
+	private static final long TTL = 6 * HOUR;
+	private static final int HEADER_BYTES = 8;
+	private static final int RECORD_HEADER_BYTES = 8;
+
+	private File directory;
+	private File file;
+	private long now;
+
+	@Override
+	protected void setUp() throws IOException {
+		directory = Files.createTempDirectory("disk-cache").toFile();
+		file = new File(directory, "sightings.bin");
+		now = System.currentTimeMillis();
+	}
+
+	@Override
+	protected void tearDown() {
+		File[] children = directory.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				child.delete();
+			}
+		}
+		directory.delete();
+	}
+
+	public void testReloadsTheLatestScheduleOfEachLocation() throws IOException {
+		DiskSightingCache cache = open();
+		assertTrue(cache.load().isEmpty());
+		cache.append(Fixtures.schedule(ANNAPOLIS, now - 2000, now + HOUR));
+		cache.append(Fixtures.schedule(BALTIMORE, now - 1000, now + HOUR));
+		cache.append(Fixtures.schedule(ANNAPOLIS, now, now + HOUR, now + 2 * HOUR));
+		cache.close();
+
+		Map<String, SightingSchedule> loaded = reload();
+		assertEquals(2, loaded.size());
+		assertEquals(now, loaded.get(ANNAPOLIS).getFetchedAt());
+		assertEquals(2, loaded.get(ANNAPOLIS).size());
+		assertEquals(now - 1000, loaded.get(BALTIMORE).getFetchedAt());
+	}
+
+	public void testExpiredSchedulesAreLeftOut() throws IOException {
+		DiskSightingCache cache = open();
+		cache.load();
+		cache.append(Fixtures.schedule(ANNAPOLIS, now - TTL - HOUR, now + HOUR));
+		cache.append(Fixtures.schedule(BALTIMORE, now, now + HOUR));
+		cache.close();
+
+		assertEquals(BALTIMORE, only(reload()));
+	}
+
+	public void testTornTailIsTruncated() throws IOException {
+		SightingSchedule annapolis = Fixtures.schedule(ANNAPOLIS, now, now + HOUR);
+		DiskSightingCache cache = open();
+		cache.load();
+		cache.append(annapolis);
+		cache.append(Fixtures.schedule(BALTIMORE, now, now + HOUR));
+		cache.close();
+
+		// a crash part way through writing the second record
+		long intact = HEADER_BYTES + RECORD_HEADER_BYTES + annapolis.toBytes().length;
+		truncate(intact + RECORD_HEADER_BYTES + 3);
+
+		cache = open();
+		assertEquals(1, cache.load().size());
+		assertEquals(intact, file.length());
+
+		// appends go on after the last good record
+		cache.append(Fixtures.schedule(COLUMBIA, now, now + HOUR));
+		cache.close();
+		Map<String, SightingSchedule> loaded = reload();
+		assertEquals(2, loaded.size());
+		assertTrue(loaded.containsKey(ANNAPOLIS));
+		assertTrue(loaded.containsKey(COLUMBIA));
+	}
+
+	public void testCorruptRecordIsRejected() throws IOException {
+		SightingSchedule annapolis = Fixtures.schedule(ANNAPOLIS, now, now + HOUR);
+		DiskSightingCache cache = open();
+		cache.load();
+		cache.append(annapolis);
+		cache.append(Fixtures.schedule(BALTIMORE, now, now + HOUR));
+		cache.close();
+
+		// flip a byte in the second record's payload, so its CRC no longer matches
+		long intact = HEADER_BYTES + RECORD_HEADER_BYTES + annapolis.toBytes().length;
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			long offset = intact + RECORD_HEADER_BYTES + 5;
+			raf.seek(offset);
+			int value = raf.read();
+			raf.seek(offset);
+			raf.write(value ^ 0xff);
+		}
+		finally {
+			raf.close();
+		}
+
+		assertEquals(ANNAPOLIS, only(reload()));
+		assertEquals(intact, file.length());
+	}
+
+	public void testUnknownFileIsStartedAfresh() throws IOException {
+		Files.write(file.toPath(), "not a sighting cache".getBytes("UTF-8"));
+
+		assertTrue(reload().isEmpty());
+		assertEquals(HEADER_BYTES, file.length());
+	}
+
+	public void testLeftoverCompactFileIsDiscarded() throws IOException {
+		DiskSightingCache cache = open();
+		cache.load();
+		cache.append(Fixtures.schedule(ANNAPOLIS, now, now + HOUR));
+		cache.close();
+
+		// a compaction that crashed before its rename
+		File compacting = new File(file.getPath() + ".compact");
+		Files.write(compacting.toPath(), new byte[] { 0x49, 0x53, 0x53 });
+
+		assertEquals(ANNAPOLIS, only(reload()));
+		assertFalse(compacting.exists());
+	}
+
+	public void testCompactionKeepsOnlyTheLatestRecords() throws IOException {
+		SightingSchedule latest = Fixtures.schedule(ANNAPOLIS, now, now + HOUR, now + 2 * HOUR);
+		SightingSchedule baltimore = Fixtures.schedule(BALTIMORE, now, now + HOUR);
+		DiskSightingCache cache = open();
+		cache.load();
+		for (int i = 3; i > 0; i--) {
+			cache.append(Fixtures.schedule(ANNAPOLIS, now - i * 1000, now + HOUR));
+		}
+		cache.append(Fixtures.schedule(COLUMBIA, now - TTL - HOUR, now + HOUR));
+		cache.append(latest);
+		cache.append(baltimore);
+
+		cache.compact();
+		assertEquals(HEADER_BYTES + 2 * RECORD_HEADER_BYTES + latest.toBytes().length + baltimore.toBytes().length,
+				file.length());
+		assertFalse(new File(file.getPath() + ".compact").exists());
+
+		// and the compacted file takes further appends
+		cache.append(Fixtures.schedule(COLUMBIA, now, now + HOUR));
+		cache.close();
+		Map<String, SightingSchedule> loaded = reload();
+		assertEquals(3, loaded.size());
+		assertEquals(2, loaded.get(ANNAPOLIS).size());
+		assertEquals(now, loaded.get(COLUMBIA).getFetchedAt());
+	}
+
+	public void testFailedRenameKeepsTheOriginalFileWritable() throws IOException {
+		DiskSightingCache cache = new DiskSightingCache(file, TTL, false) {
+			@Override
+			void replace(File compacted, File original) throws IOException {
+				throw new IOException("rename refused");
+			}
+		};
+		cache.load();
+		cache.append(Fixtures.schedule(ANNAPOLIS, now - 1000, now + HOUR));
+		cache.append(Fixtures.schedule(ANNAPOLIS, now, now + HOUR));
+
+		try {
+			cache.compact();
+			fail("rename refused");
+		}
+		catch (IOException ioex) {
+			assertEquals("rename refused", ioex.getMessage());
+		}
+		assertFalse(new File(file.getPath() + ".compact").exists());
+
+		cache.append(Fixtures.schedule(BALTIMORE, now, now + HOUR));
+		cache.close();
+		Map<String, SightingSchedule> loaded = reload();
+		assertEquals(2, loaded.size());
+		assertEquals(now, loaded.get(ANNAPOLIS).getFetchedAt());
+		assertTrue(loaded.containsKey(BALTIMORE));
+	}
+
+	private DiskSightingCache open() {
+		return new DiskSightingCache(file, TTL, false);
+	}
+
+	/*
+	 * Load the file in a new cache, as after a restart, and close it again.
+	 */
+	private Map<String, SightingSchedule> reload() throws IOException {
+		DiskSightingCache cache = open();
+		try {
+			List<SightingSchedule> schedules = cache.load();
+			Map<String, SightingSchedule> loaded = new HashMap<String, SightingSchedule>();
+			for (SightingSchedule schedule : schedules) {
+				loaded.put(schedule.getLocationId(), schedule);
+			}
+			assertEquals(schedules.size(), loaded.size());
+			return loaded;
+		}
+		finally {
+			cache.close();
+		}
+	}
+
+	private static String only(Map<String, SightingSchedule> loaded) {
+		assertEquals(loaded.keySet().toString(), 1, loaded.size());
+		return loaded.keySet().iterator().next();
+	}
+
+	private void truncate(long length) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.setLength(length);
+		}
+		finally {
+			raf.close();
+		}
+	}
+}
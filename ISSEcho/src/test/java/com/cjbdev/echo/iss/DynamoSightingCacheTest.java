@@ -0,0 +1,269 @@
+package com.cjbdev.echo.iss;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDBClient;
+import com.amazonaws.services.dynamodbv2.model.AttributeDefinition;
+import com.amazonaws.services.dynamodbv2.model.CreateTableRequest;
+import com.amazonaws.services.dynamodbv2.model.KeySchemaElement;
+import com.amazonaws.services.dynamodbv2.model.KeyType;
+import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughput;
+import com.amazonaws.services.dynamodbv2.model.ScalarAttributeType;
+
+/**
+ * Runs {@link DynamoSightingCache}, and two services sharing it as two containers would, against
+ * {@link DynamoStub}. To run against DynamoDB Local instead, start it, e.g. with
+ * {@code java -jar DynamoDBLocal.jar -inMemory}, and pass its endpoint:
+ * <pre>
+ * mvn test -Ddynamodb.local.endpoint=http://localhost:8000
+ * </pre>
+ * On Java 11 and later the tests only run with the JAXB API on the class path, as the tier does.
+ */
+public class DynamoSightingCacheTest extends TestCase {
+
+	static final String ENDPOINT = "dynamodb.local.endpoint";
+
+	private static final String ANNAPOLIS = "United_States_Maryland_Annapolis";
+	private static final String BALTIMORE = "United_States_Maryland_Baltimore";
+	private static final String COLUMBIA = "United_States_Maryland_Columbia";
+
+	private static final long HOUR = 60 * 60 * 1000L;
+	private static final long TTL_MILLIS = HOUR;
+
+	private DynamoStub stub;
+	private AmazonDynamoDBClient client;
+	private String tableName;
+	private DynamoSightingCache cache;
+
+	@Override
+	protected void setUp() throws IOException {
+		String endpoint = System.getProperty(ENDPOINT);
+		if (endpoint == null) {
+			stub = new DynamoStub();
+			endpoint = stub.getUrl();
+		}
+		client = new AmazonDynamoDBClient(new BasicAWSCredentials("local", "local"));
+		client.setEndpoint(endpoint);
+		tableName = "sightings_test_" + System.nanoTime();
+		createTable(client, tableName);
+		cache = new DynamoSightingCache(client, tableName, TTL_MILLIS, 500, 300);
+	}
+
+	@Override
+	protected void tearDown() {
+		client.deleteTable(tableName);
+		client.shutdown();
+		if (stub != null) {
+			stub.stop();
+		}
+	}
+
+	@Override
+	protected void runTest() throws Throwable {
+		if (DynamoSightingCache.isSupported()) {
+			super.runTest();
+		}
+	}
+
+	public void testPutThenGet() {
+		long now = System.currentTimeMillis();
+		cache.put(Fixtures.schedule(ANNAPOLIS, now, now + HOUR, now + 2 * HOUR));
+
+		SightingSchedule found = cache.get(ANNAPOLIS);
+		assertNotNull(found);
+		assertEquals(ANNAPOLIS, found.getLocationId());
+		assertEquals(now, found.getFetchedAt());
+		assertEquals(2, found.size());
+		assertEquals((now + HOUR) / 1000L * 1000L, found.getTime(0));
+		assertNull(cache.get(BALTIMORE));
+	}
+
+	public void testOlderScheduleDoesNotReplaceNewer() {
+		long now = System.currentTimeMillis();
+		cache.put(Fixtures.schedule(ANNAPOLIS, now, now + HOUR));
+		cache.put(Fixtures.schedule(ANNAPOLIS, now - 1000L, now + HOUR, now + 2 * HOUR));
+
+		SightingSchedule found = cache.get(ANNAPOLIS);
+		assertEquals(now, found.getFetchedAt());
+		assertEquals(1, found.size());
+
+		cache.put(Fixtures.schedule(ANNAPOLIS, now + 1000L, now + HOUR, now + 2 * HOUR));
+		assertEquals(2, cache.get(ANNAPOLIS).size());
+	}
+
+	public void testExpiredItemIsAMiss() {
+		long fetchedAt = System.currentTimeMillis() - TTL_MILLIS - 1000L;
+		cache.put(Fixtures.schedule(ANNAPOLIS, fetchedAt, fetchedAt + HOUR));
+
+		assertNull(cache.get(ANNAPOLIS));
+	}
+
+	public void testGetAllLeavesOutMissingLocations() {
+		long now = System.currentTimeMillis();
+		cache.put(Fixtures.schedule(ANNAPOLIS, now, now + HOUR));
+		cache.put(Fixtures.schedule(BALTIMORE, now, now + HOUR));
+
+		Map<String, SightingSchedule> found = cache.getAll(Arrays.asList(ANNAPOLIS, BALTIMORE, COLUMBIA, ANNAPOLIS));
+		assertEquals(2, found.size());
+		assertEquals(BALTIMORE, found.get(BALTIMORE).getLocationId());
+		assertTrue(cache.getAll(Collections.<String> emptyList()).isEmpty());
+	}
+
+	public void testGetAllRetriesUnprocessedKeys() {
+		if (stub == null) {
+			// DynamoDB Local decides for itself what it leaves unprocessed
+			return;
+		}
+		long now = System.currentTimeMillis();
+		List<String> ids = new ArrayList<String>();
+		for (int i = 0; i < 4; i++) {
+			ids.add("Location_" + i);
+			cache.put(Fixtures.schedule("Location_" + i, now, now + HOUR));
+		}
+
+		stub.setUnprocessed(2);
+		assertEquals(4, cache.getAll(ids).size());
+		// one key answered by each throttled call, the other two by the third
+		assertEquals(3, stub.getCalls("BatchGetItem"));
+	}
+
+	public void testGetAllReadsMoreThanOneBatch() {
+		long now = System.currentTimeMillis();
+		List<String> ids = new ArrayList<String>();
+		for (int i = 0; i < 150; i++) {
+			ids.add("Location_" + i);
+			if (i % 3 == 0) {
+				cache.put(Fixtures.schedule("Location_" + i, now, now + HOUR));
+			}
+		}
+
+		assertEquals(50, cache.getAll(ids).size());
+		if (stub != null) {
+			assertEquals(2, stub.getCalls("BatchGetItem"));
+		}
+	}
+
+	public void testLeaseIsHeldUntilItExpires() throws InterruptedException {
+		assertTrue(cache.tryLease(ANNAPOLIS));
+		assertFalse(cache.tryLease(ANNAPOLIS));
+		assertTrue(cache.tryLease(BALTIMORE));
+
+		Thread.sleep(600);
+		assertTrue(cache.tryLease(ANNAPOLIS));
+	}
+
+	public void testPutKeepsOutALeaseHolderWithAnOlderSchedule() {
+		long now = System.currentTimeMillis();
+		assertTrue(cache.tryLease(ANNAPOLIS));
+		cache.put(Fixtures.schedule(ANNAPOLIS, now, now + HOUR));
+
+		// a container that started fetching before the stored schedule was fetched loses
+		cache.put(Fixtures.schedule(ANNAPOLIS, now - HOUR / 2, now + HOUR, now + 2 * HOUR));
+		assertEquals(1, cache.get(ANNAPOLIS).size());
+	}
+
+	public void testAwaitSeesTheLeaseHoldersSchedule() {
+		long now = System.currentTimeMillis();
+		assertNull(cache.await(ANNAPOLIS));
+
+		cache.put(Fixtures.schedule(ANNAPOLIS, now, now + HOUR));
+		assertNotNull(cache.await(ANNAPOLIS));
+	}
+
+	public void testSecondContainerAnswersFromTheSharedTier() throws IOException {
+		StubFeedReader first = new StubFeedReader(20);
+		first.setNextPass(ANNAPOLIS, HOUR);
+		StubFeedReader second = new StubFeedReader(20);
+		second.setNextPass(ANNAPOLIS, HOUR);
+
+		SightingSchedule fetched = container(first).getSchedule(ANNAPOLIS, null);
+		assertEquals(1, first.getCalls(ANNAPOLIS));
+
+		SightingSchedule shared = container(second).getSchedule(ANNAPOLIS, null);
+		assertEquals(fetched.getFetchedAt(), shared.getFetchedAt());
+		assertEquals(0, second.getTotal());
+	}
+
+	public void testContainerWaitsForTheLeaseHolder() throws Exception {
+		StubFeedReader reader = new StubFeedReader(20);
+		reader.setNextPass(ANNAPOLIS, HOUR);
+		final long fetchedAt = System.currentTimeMillis();
+
+		// another container holds the lease and stores its schedule a moment later
+		assertTrue(cache.tryLease(ANNAPOLIS));
+		Thread holder = new Thread(new Runnable() {
+			public void run() {
+				try {
+					Thread.sleep(150);
+				}
+				catch (InterruptedException iex) {
+					return;
+				}
+				cache.put(Fixtures.schedule(ANNAPOLIS, fetchedAt, fetchedAt + HOUR));
+			}
+		});
+		holder.start();
+
+		SightingSchedule schedule = container(reader).getSchedule(ANNAPOLIS, null);
+		holder.join();
+		assertEquals(fetchedAt, schedule.getFetchedAt());
+		assertEquals(0, reader.getTotal());
+	}
+
+	public void testContainerFetchesWhenTheLeaseHolderNeverAnswers() throws IOException {
+		StubFeedReader reader = new StubFeedReader(20);
+		reader.setNextPass(ANNAPOLIS, HOUR);
+		assertTrue(cache.tryLease(ANNAPOLIS));
+
+		long start = System.currentTimeMillis();
+		SightingSchedule schedule = container(reader).getSchedule(ANNAPOLIS, null);
+		assertTrue(schedule.getFetchedAt() >= start);
+		assertEquals(1, reader.getCalls(ANNAPOLIS));
+		// and shared it for the next container
+		assertEquals(schedule.getFetchedAt(), cache.get(ANNAPOLIS).getFetchedAt());
+	}
+
+	public void testBatchLookupReadsTheSharedTierOnce() {
+		long now = System.currentTimeMillis();
+		cache.put(Fixtures.schedule(ANNAPOLIS, now, now + HOUR));
+		cache.put(Fixtures.schedule(BALTIMORE, now, now + HOUR));
+		StubFeedReader reader = new StubFeedReader(20);
+		reader.setNextPass(COLUMBIA, HOUR);
+
+		Map<String, SightingSchedule> schedules = container(reader).getSchedules(Arrays.asList(ANNAPOLIS, BALTIMORE,
+				COLUMBIA));
+		assertEquals(3, schedules.size());
+		assertEquals(now, schedules.get(BALTIMORE).getFetchedAt());
+		assertEquals(1, reader.getTotal());
+		if (stub != null) {
+			assertEquals(1, stub.getCalls("BatchGetItem"));
+		}
+	}
+
+	/*
+	 * The table the cache expects, keyed by location id.
+	 */
+	static void createTable(AmazonDynamoDB dynamo, String tableName) {
+		dynamo.createTable(new CreateTableRequest()
+				.withTableName(tableName)
+				.withKeySchema(new KeySchemaElement(DynamoSightingCache.KEY, KeyType.HASH))
+				.withAttributeDefinitions(new AttributeDefinition(DynamoSightingCache.KEY, ScalarAttributeType.S))
+				.withProvisionedThroughput(new ProvisionedThroughput(5L, 5L)));
+	}
+
+	/*
+	 * A service with its own in-process cache in front of the shared table, as in one container.
+	 */
+	private SightingService container(StubFeedReader reader) {
+		return new SightingService(new SightingCache(100, TTL_MILLIS), cache, null, reader);
+	}
+}
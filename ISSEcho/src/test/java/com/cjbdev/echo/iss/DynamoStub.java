@@ -0,0 +1,303 @@
+package com.cjbdev.echo.iss;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Local stand-in for DynamoDB for the tests, speaking its JSON protocol for the calls
+ * {@link DynamoSightingCache} makes: CreateTable, DeleteTable, GetItem, PutItem, UpdateItem with
+ * {@code SET} and BatchGetItem. Condition expressions are the {@code attribute_not_exists(a)} and
+ * {@code a < :value} terms joined by {@code OR} that the cache writes. Items are kept in memory and
+ * every call is applied atomically.
+ * <p>
+ * {@link #setUnprocessed} makes the next batch reads answer only the first key and hand the others
+ * back as unprocessed, as DynamoDB does when it is throttling.
+ */
+class DynamoStub {
+
+	private static final String ERROR_PREFIX = "com.amazonaws.dynamodb.v20120810#";
+
+	private final ObjectMapper mapper = new ObjectMapper();
+	private final HttpServer server;
+	private final ExecutorService executor = Executors.newCachedThreadPool(
+			new NearbySightingFinder.DaemonThreadFactory("dynamo-stub"));
+	private final Map<String, String> hashKeys = new HashMap<String, String>();
+	private final Map<String, Map<String, ObjectNode>> tables = new HashMap<String, Map<String, ObjectNode>>();
+	private final ConcurrentHashMap<String, AtomicInteger> calls = new ConcurrentHashMap<String, AtomicInteger>();
+
+	private int unprocessed;
+
+	DynamoStub() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				answer(exchange);
+			}
+		});
+		server.setExecutor(executor);
+		server.start();
+	}
+
+	String getUrl() {
+		return "http://127.0.0.1:" + server.getAddress().getPort();
+	}
+
+	/*
+	 * Calls of the operation so far, e.g. BatchGetItem.
+	 */
+	int getCalls(String operation) {
+		AtomicInteger count = calls.get(operation);
+		return count == null ? 0 : count.get();
+	}
+
+	/*
+	 * The next this many batch reads leave all but their first key unprocessed.
+	 */
+	synchronized void setUnprocessed(int batches) {
+		unprocessed = batches;
+	}
+
+	void stop() {
+		server.stop(0);
+		executor.shutdownNow();
+	}
+
+	private void answer(HttpExchange exchange) throws IOException {
+
+		String target = exchange.getRequestHeaders().getFirst("X-Amz-Target");
+		String operation = target == null ? "" : target.substring(target.indexOf('.') + 1);
+		AtomicInteger count = calls.get(operation);
+		if (count == null) {
+			calls.putIfAbsent(operation, new AtomicInteger());
+			count = calls.get(operation);
+		}
+		count.incrementAndGet();
+
+		int status = 200;
+		JsonNode response;
+		try {
+			JsonNode request = mapper.readTree(read(exchange.getRequestBody()));
+			synchronized (this) {
+				response = call(operation, request);
+			}
+		}
+		catch (StubException sex) {
+			status = 400;
+			ObjectNode error = mapper.createObjectNode();
+			error.put("__type", ERROR_PREFIX + sex.type);
+			error.put("message", sex.getMessage());
+			response = error;
+		}
+
+		byte[] body = mapper.writeValueAsBytes(response);
+		exchange.getResponseHeaders().set("Content-Type", "application/x-amz-json-1.0");
+		exchange.sendResponseHeaders(status, body.length);
+		OutputStream out = exchange.getResponseBody();
+		try {
+			out.write(body);
+		}
+		finally {
+			out.close();
+			exchange.close();
+		}
+	}
+
+	private JsonNode call(String operation, JsonNode request) throws StubException {
+
+		ObjectNode response = mapper.createObjectNode();
+		String tableName = request.path("TableName").asText();
+
+		if ("CreateTable".equals(operation)) {
+			if (tables.containsKey(tableName)) {
+				throw new StubException("ResourceInUseException", "Table already exists: " + tableName);
+			}
+			for (JsonNode element : request.path("KeySchema")) {
+				if ("HASH".equals(element.path("KeyType").asText())) {
+					hashKeys.put(tableName, element.path("AttributeName").asText());
+				}
+			}
+			tables.put(tableName, new HashMap<String, ObjectNode>());
+			response.putObject("TableDescription").put("TableName", tableName).put("TableStatus", "ACTIVE");
+		}
+		else if ("DeleteTable".equals(operation)) {
+			table(tableName);
+			tables.remove(tableName);
+			hashKeys.remove(tableName);
+			response.putObject("TableDescription").put("TableName", tableName).put("TableStatus", "DELETING");
+		}
+		else if ("GetItem".equals(operation)) {
+			ObjectNode item = table(tableName).get(keyOf(tableName, request.path("Key")));
+			if (item != null) {
+				response.put("Item", item);
+			}
+		}
+		else if ("PutItem".equals(operation)) {
+			JsonNode item = request.path("Item");
+			String key = keyOf(tableName, item);
+			check(request, table(tableName).get(key));
+			table(tableName).put(key, (ObjectNode) item.deepCopy());
+		}
+		else if ("UpdateItem".equals(operation)) {
+			String key = keyOf(tableName, request.path("Key"));
+			ObjectNode item = table(tableName).get(key);
+			check(request, item);
+			if (item == null) {
+				item = (ObjectNode) request.path("Key").deepCopy();
+			}
+			set(item, request.path("UpdateExpression").asText(), request.path("ExpressionAttributeValues"));
+			table(tableName).put(key, item);
+		}
+		else if ("BatchGetItem".equals(operation)) {
+			ObjectNode responses = response.putObject("Responses");
+			ObjectNode left = response.putObject("UnprocessedKeys");
+			boolean throttled = unprocessed > 0;
+			if (throttled) {
+				unprocessed--;
+			}
+			Iterator<Map.Entry<String, JsonNode>> requested = request.path("RequestItems").fields();
+			while (requested.hasNext()) {
+				Map.Entry<String, JsonNode> entry = requested.next();
+				ArrayNode items = responses.putArray(entry.getKey());
+				ArrayNode keys = null;
+				int index = 0;
+				for (JsonNode key : entry.getValue().path("Keys")) {
+					if (throttled && index++ > 0) {
+						if (keys == null) {
+							keys = left.putObject(entry.getKey()).putArray("Keys");
+						}
+						keys.add(key);
+						continue;
+					}
+					ObjectNode item = table(entry.getKey()).get(keyOf(entry.getKey(), key));
+					if (item != null) {
+						items.add(item);
+					}
+				}
+			}
+		}
+		else {
+			throw new StubException("UnknownOperationException", "Not stubbed: " + operation);
+		}
+		return response;
+	}
+
+	private Map<String, ObjectNode> table(String tableName) throws StubException {
+		Map<String, ObjectNode> table = tables.get(tableName);
+		if (table == null) {
+			throw new StubException("ResourceNotFoundException", "No table " + tableName);
+		}
+		return table;
+	}
+
+	private String keyOf(String tableName, JsonNode item) throws StubException {
+		table(tableName);
+		String value = item.path(hashKeys.get(tableName)).path("S").asText();
+		if (value.isEmpty()) {
+			throw new StubException("ValidationException", "Missing key in " + item);
+		}
+		return value;
+	}
+
+	/*
+	 * Fail the call when it has a condition expression that the stored item does not meet.
+	 */
+	private static void check(JsonNode request, JsonNode item) throws StubException {
+
+		String expression = request.path("ConditionExpression").asText();
+		if (expression.isEmpty()) {
+			return;
+		}
+		JsonNode values = request.path("ExpressionAttributeValues");
+		for (String term : expression.split(" OR ")) {
+			term = term.trim();
+			if (term.startsWith("attribute_not_exists(") && term.endsWith(")")) {
+				String name = term.substring("attribute_not_exists(".length(), term.length() - 1).trim();
+				if (item == null || !item.has(name)) {
+					return;
+				}
+			}
+			else if (term.contains(" < ")) {
+				String name = term.substring(0, term.indexOf(" < ")).trim();
+				JsonNode value = values.path(term.substring(term.indexOf(" < ") + 3).trim());
+				if (item != null && item.has(name) && number(item.get(name)).compareTo(number(value)) < 0) {
+					return;
+				}
+			}
+			else {
+				throw new StubException("ValidationException", "Not stubbed: " + term);
+			}
+		}
+		throw new StubException("ConditionalCheckFailedException", "The conditional request failed");
+	}
+
+	private static void set(ObjectNode item, String expression, JsonNode values) throws StubException {
+
+		if (!expression.startsWith("SET ")) {
+			throw new StubException("ValidationException", "Not stubbed: " + expression);
+		}
+		for (String assignment : expression.substring(4).split(",")) {
+			String[] sides = assignment.split("=");
+			JsonNode value = values.path(sides[1].trim());
+			if (sides.length != 2 || value.isMissingNode()) {
+				throw new StubException("ValidationException", "Not stubbed: " + assignment);
+			}
+			item.put(sides[0].trim(), value.deepCopy());
+		}
+	}
+
+	private static BigDecimal number(JsonNode value) throws StubException {
+		if (!value.has("N")) {
+			throw new StubException("ValidationException", "Not a number: " + value);
+		}
+		return new BigDecimal(value.get("N").asText());
+	}
+
+	private static byte[] read(InputStream in) throws IOException {
+		try {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] chunk = new byte[8 * 1024];
+			int read;
+			while ((read = in.read(chunk)) != -1) {
+				out.write(chunk, 0, read);
+			}
+			return out.toByteArray();
+		}
+		finally {
+			in.close();
+		}
+	}
+
+	/*
+	 * An error answer, with the exception name the SDK maps it to.
+	 */
+	private static final class StubException extends Exception {
+
+		private static final long serialVersionUID = 1L;
+
+		private final String type;
+
+		StubException(String type, String message) {
+			super(message);
+			this.type = type;
+		}
+	}
+}
@@ -0,0 +1,182 @@
+package com.cjbdev.echo.iss;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+/**
+ * The hedge delay against a local server whose latency changes, the latency window it is read
+ * from, and the hedge threads, which are the client's own and bounded.
+ */
+public class FeedClientTest extends TestCase {
+
+	private static final String FEED = "/xml_files/United_States_Maryland_Annapolis.xml";
+	private static final long WINDOW_MILLIS = 300;
+	private static final long DEFAULT_DELAY_MILLIS = 400;
+
+	private static final FeedClient.BodyReader<Integer> LENGTH = new FeedClient.BodyReader<Integer>() {
+		public Integer read(InputStream body) throws IOException {
+			int length = 0;
+			while (body.read() != -1) {
+				length++;
+			}
+			return length;
+		}
+	};
+
+	private FixtureServer server;
+	private FeedClient client;
+
+	@Override
+	protected void setUp() throws IOException {
+		server = new FixtureServer("/feeds");
+		client = new FeedClient(1000, 2000, 1, 0, 95, 5, DEFAULT_DELAY_MILLIS, WINDOW_MILLIS);
+	}
+
+	@Override
+	protected void tearDown() {
+		client.shutdown();
+		server.stop();
+	}
+
+	public void testHedgeDelayFollowsLatency() throws Exception {
+		// the first calls load classes and open the connection; let them age out
+		callFor(0, 5);
+		Thread.sleep(2 * WINDOW_MILLIS + 50);
+		assertEquals(DEFAULT_DELAY_MILLIS, client.getHedgeDelayMillis());
+
+		callFor(0, 20);
+		assertTrue("fast server, delay " + client.getHedgeDelayMillis(), client.getHedgeDelayMillis() < 100);
+
+		// after two windows of slow answers nothing fast is left
+		server.setDelay(150);
+		callFor(2 * WINDOW_MILLIS + 50, 5);
+		assertTrue("slow server, delay " + client.getHedgeDelayMillis(), client.getHedgeDelayMillis() >= 150);
+
+		// and after two quiet windows there is nothing recent at all
+		server.setDelay(0);
+		Thread.sleep(2 * WINDOW_MILLIS + 50);
+		assertEquals(DEFAULT_DELAY_MILLIS, client.getHedgeDelayMillis());
+		callFor(0, 20);
+		assertTrue("fast again, delay " + client.getHedgeDelayMillis(), client.getHedgeDelayMillis() < 100);
+	}
+
+	public void testFailuresAreNotTimed() throws IOException {
+		server.setDelay(100);
+		for (int i = 0; i < 8; i++) {
+			try {
+				client.get(server.getUrl() + "/missing.xml");
+				fail("missing feed");
+			}
+			catch (FileNotFoundException fnfex) {
+				// expected
+			}
+		}
+		assertEquals(8, client.getFailures());
+		assertEquals(0, client.getLatency().getCount());
+		assertEquals(DEFAULT_DELAY_MILLIS, client.getHedgeDelayMillis());
+	}
+
+	public void testHedgeDoesNotWaitForTheCallersThreads() throws Exception {
+		client = new FeedClient(1000, 2000, 1, 0, 95, 1000, 50, WINDOW_MILLIS, 2);
+		// the slow first attempt holds the caller's only thread until it answers
+		server.setDelay(300);
+		ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1,
+				new NearbySightingFinder.DaemonThreadFactory("hedge-test"));
+		try {
+			FeedClient.Response<Integer> response = client.getHedged(server.getUrl() + FEED, null, LENGTH, executor)
+					.get(5, TimeUnit.SECONDS);
+			assertTrue(response.getBody() > 0);
+			assertEquals(2, server.getRequests(FEED));
+			assertEquals(1, client.getHedges());
+			assertEquals(0, client.getHedgesSkipped());
+		}
+		finally {
+			executor.shutdownNow();
+		}
+	}
+
+	public void testHedgesAreBoundedByTheHedgeThreads() throws Exception {
+		client = new FeedClient(1000, 2000, 1, 0, 95, 1000, 50, WINDOW_MILLIS, 1);
+		server.setDelay(300);
+		ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(3,
+				new NearbySightingFinder.DaemonThreadFactory("hedge-test"));
+		try {
+			List<CompletableFuture<FeedClient.Response<Integer>>> requests =
+					new ArrayList<CompletableFuture<FeedClient.Response<Integer>>>();
+			for (int i = 0; i < 3; i++) {
+				requests.add(client.getHedged(server.getUrl() + FEED, null, LENGTH, executor));
+			}
+			for (CompletableFuture<FeedClient.Response<Integer>> request : requests) {
+				assertTrue(request.get(5, TimeUnit.SECONDS).getBody() > 0);
+			}
+			// all three were due together and there is one hedge thread
+			assertEquals(1, client.getHedges());
+			assertEquals(2, client.getHedgesSkipped());
+			assertEquals(4, server.getRequests(FEED));
+		}
+		finally {
+			executor.shutdownNow();
+		}
+	}
+
+	public void testNoHedgesAfterShutdown() throws Exception {
+		client = new FeedClient(1000, 2000, 1, 0, 95, 1000, 50, WINDOW_MILLIS, 2);
+		client.shutdown();
+		server.setDelay(150);
+		ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1,
+				new NearbySightingFinder.DaemonThreadFactory("hedge-test"));
+		try {
+			assertTrue(client.getHedged(server.getUrl() + FEED, null, LENGTH, executor).get(5, TimeUnit.SECONDS)
+					.getBody() > 0);
+			assertEquals(1, server.getRequests(FEED));
+			assertEquals(0, client.getHedges());
+		}
+		finally {
+			executor.shutdownNow();
+		}
+	}
+
+	public void testWindowRotation() {
+		long ms = 1000000L;
+		LatencyWindow window = new LatencyWindow(1000, 0);
+		for (int i = 0; i < 20; i++) {
+			window.record(10 * ms, 0);
+		}
+		assertEquals(20, window.getCount(999));
+		assertEquals(10, window.getPercentileMillis(95, 999), 1.5);
+
+		// the first window is still read as the previous one
+		for (int i = 0; i < 20; i++) {
+			window.record(200 * ms, 1000);
+		}
+		assertEquals(40, window.getCount(1000));
+		assertEquals(10, window.getPercentileMillis(25, 1000), 1.5);
+		assertEquals(200, window.getPercentileMillis(95, 1000), 30);
+
+		// one more window and only the slow calls are left
+		assertEquals(20, window.getCount(2000));
+		assertEquals(200, window.getPercentileMillis(5, 2000), 30);
+
+		// two quiet windows and nothing is
+		assertEquals(0, window.getCount(4000));
+		assertEquals(0, window.getPercentileMillis(95, 4000), 0);
+	}
+
+	/*
+	 * Fetch the feed at least count times and for at least the given time.
+	 */
+	private void callFor(long millis, int count) throws IOException {
+		long until = System.currentTimeMillis() + millis;
+		for (int i = 0; i < count || System.currentTimeMillis() < until; i++) {
+			assertTrue(client.get(server.getUrl() + FEED).length > 0);
+		}
+	}
+}
@@ -0,0 +1,190 @@
+package com.cjbdev.echo.iss;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+
+import junit.framework.TestCase;
+
+/**
+ * Mirrors the fixture feeds in {@code feeds/xml_files} from a local server standing in for NASA,
+ * then reads the mirror back over HTTP as {@code feed.baseUrl}.
+ */
+public class FeedMirrorTest extends TestCase {
+
+	private static final String ANNAPOLIS = "United_States_Maryland_Annapolis";
+	private static final String BALTIMORE = "United_States_Maryland_Baltimore";
+	private static final ZoneId UTC = ZoneId.of("UTC");
+
+	private FixtureServer source;
+	private FixtureServer served;
+	private File directory;
+	private FeedMirror mirror;
+
+	@Override
+	protected void setUp() throws IOException {
+		source = new FixtureServer("/feeds");
+		directory = Files.createTempDirectory("mirror").toFile();
+		mirror = new FeedMirror(directory, source.getUrl() + "/" + FeedMirror.FEEDS, new FeedClient(1000, 1000, 1, 0),
+				new SightingFeedParser(UTC), 2, 2);
+	}
+
+	@Override
+	protected void tearDown() {
+		source.stop();
+		if (served != null) {
+			served.stop();
+		}
+		System.clearProperty("iss.feed.baseUrl");
+		delete(directory);
+	}
+
+	public void testFirstRunAddsEveryFeed() throws IOException {
+		FeedMirror.Delta delta = mirror.refresh(Arrays.asList(BALTIMORE, ANNAPOLIS));
+
+		assertEquals(1, delta.getGeneration());
+		assertEquals(Arrays.asList(ANNAPOLIS, BALTIMORE), delta.getAdded());
+		assertTrue(delta.getFailed().isEmpty());
+		assertTrue(Arrays.equals(resource("/feeds/xml_files/" + ANNAPOLIS + ".xml"), feed(ANNAPOLIS)));
+		String manifest = read(new File(directory, FeedMirror.LATEST));
+		assertTrue(manifest, manifest.startsWith("# generation 1 previous 0"));
+		assertTrue(manifest, manifest.contains("added\t" + BALTIMORE + "\t"));
+	}
+
+	public void testReformattedFeedIsUnchanged() throws IOException {
+		mirror.refresh(Arrays.asList(ANNAPOLIS, BALTIMORE));
+		source.setBody(path(ANNAPOLIS), resource("/feeds/reformatted/" + ANNAPOLIS + ".xml"));
+
+		FeedMirror.Delta delta = mirror.refresh(Arrays.asList(ANNAPOLIS, BALTIMORE));
+		assertEquals(2, delta.getGeneration());
+		assertEquals(2, delta.getUnchanged());
+		assertTrue(delta.getChanged().isEmpty());
+		// the copy on disk is left alone
+		assertTrue(Arrays.equals(resource("/feeds/xml_files/" + ANNAPOLIS + ".xml"), feed(ANNAPOLIS)));
+	}
+
+	public void testChangedFeedIsRewritten() throws IOException {
+		mirror.refresh(Arrays.asList(ANNAPOLIS, BALTIMORE));
+		byte[] changed = resource("/feeds/changed/" + ANNAPOLIS + ".xml");
+		source.setBody(path(ANNAPOLIS), changed);
+
+		FeedMirror.Delta delta = mirror.refresh(Arrays.asList(ANNAPOLIS, BALTIMORE));
+		assertEquals(Collections.singletonList(ANNAPOLIS), delta.getChanged());
+		assertEquals(1, delta.getUnchanged());
+		assertTrue(Arrays.equals(changed, feed(ANNAPOLIS)));
+		String manifest = read(new File(directory, FeedMirror.LATEST));
+		assertTrue(manifest, manifest.contains("changed\t" + ANNAPOLIS + "\t"));
+		assertFalse(manifest, manifest.contains(BALTIMORE));
+	}
+
+	public void testFailedDownloadKeepsTheMirroredFeed() throws IOException {
+		mirror.refresh(Arrays.asList(ANNAPOLIS, BALTIMORE));
+		source.stop();
+
+		FeedMirror.Delta delta = mirror.refresh(Arrays.asList(ANNAPOLIS, BALTIMORE));
+		assertEquals(Arrays.asList(ANNAPOLIS, BALTIMORE), delta.getFailed());
+		assertTrue(delta.getRemoved().isEmpty());
+		assertTrue(Arrays.equals(resource("/feeds/xml_files/" + ANNAPOLIS + ".xml"), feed(ANNAPOLIS)));
+		assertTrue(read(new File(directory, FeedMirror.INDEX)).contains(BALTIMORE));
+	}
+
+	public void testUnknownLocationFailsAndDroppedLocationIsRemoved() throws IOException {
+		mirror.refresh(Arrays.asList(ANNAPOLIS, BALTIMORE));
+
+		FeedMirror.Delta delta = mirror.refresh(Arrays.asList(ANNAPOLIS, "United_States_Maryland_Nowhere"));
+		assertEquals(Collections.singletonList("United_States_Maryland_Nowhere"), delta.getFailed());
+		assertEquals(Collections.singletonList(BALTIMORE), delta.getRemoved());
+		assertFalse(new File(new File(directory, FeedMirror.FEEDS), BALTIMORE + ".xml").exists());
+	}
+
+	public void testMirrorServedAsFeedBaseUrl() throws IOException {
+		mirror.refresh(Arrays.asList(ANNAPOLIS, BALTIMORE));
+		served = new FixtureServer(directory);
+		System.setProperty("iss.feed.baseUrl", served.getUrl() + "/" + FeedMirror.FEEDS);
+
+		SightingFeedReader reader = new SightingFeedReader(new FeedClient(1000, 1000, 1, 0), new SightingFeedParser(
+				Fixtures.ZONE));
+		SightingSchedule schedule = reader.fetch(ANNAPOLIS);
+		assertEquals(2, schedule.size());
+		assertEquals(ZonedDateTime.of(2026, 10, 21, 19, 12, 0, 0, Fixtures.ZONE).toInstant().toEpochMilli(),
+				schedule.getTime(0));
+		assertEquals(64, schedule.get(1).getMaxElevation());
+		assertEquals(1, served.getRequests("/" + FeedMirror.FEEDS + "/" + ANNAPOLIS + ".xml"));
+
+		try {
+			reader.fetch("United_States_Maryland_Nowhere");
+			fail("unknown location");
+		}
+		catch (FileNotFoundException fnfex) {
+			assertTrue(fnfex.getMessage(), fnfex.getMessage().startsWith("HTTP 404"));
+		}
+	}
+
+	public void testSlowMirrorTimesOut() throws IOException {
+		mirror.refresh(Collections.singletonList(ANNAPOLIS));
+		served = new FixtureServer(directory);
+		served.setDelay(3000);
+		SightingFeedReader reader = new SightingFeedReader(new FeedClient(1000, 300, 1, 0),
+				new SightingFeedParser(Fixtures.ZONE), served.getUrl() + "/" + FeedMirror.FEEDS);
+
+		long start = System.currentTimeMillis();
+		try {
+			reader.fetch(ANNAPOLIS);
+			fail("answered after the read timeout");
+		}
+		catch (FileNotFoundException fnfex) {
+			fail("timeout reported as a missing feed");
+		}
+		catch (IOException ioex) {
+			assertTrue("took " + (System.currentTimeMillis() - start) + " ms", System.currentTimeMillis() - start < 2000);
+		}
+		assertEquals(1, reader.getClient().getFailures());
+	}
+
+	private static String path(String locationId) {
+		return "/" + FeedMirror.FEEDS + "/" + locationId + ".xml";
+	}
+
+	private byte[] feed(String locationId) throws IOException {
+		return Files.readAllBytes(new File(new File(directory, FeedMirror.FEEDS), locationId + ".xml").toPath());
+	}
+
+	private static String read(File file) throws IOException {
+		return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+	}
+
+	private static byte[] resource(String name) throws IOException {
+		InputStream in = FeedMirrorTest.class.getResourceAsStream(name);
+		assertNotNull(name, in);
+		try {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] chunk = new byte[8 * 1024];
+			int read;
+			while ((read = in.read(chunk)) != -1) {
+				out.write(chunk, 0, read);
+			}
+			return out.toByteArray();
+		}
+		finally {
+			in.close();
+		}
+	}
+
+	private static void delete(File file) {
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+}
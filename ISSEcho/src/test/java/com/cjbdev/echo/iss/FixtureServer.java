@@ -0,0 +1,150 @@
+package com.cjbdev.echo.iss;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Local HTTP server for the tests. A GET of a path answers with the body set for it, or else with
+ * the test resource of that name under the root, or the file of that name in the directory, or
+ * 404. Requests are answered concurrently and counted per path, and every answer can be held back
+ * by a delay to run clients into their read timeout.
+ */
+class FixtureServer {
+
+	private final String root;
+	private final File directory;
+	private final HttpServer server;
+	private final ExecutorService executor = Executors.newCachedThreadPool(
+			new NearbySightingFinder.DaemonThreadFactory("fixture-server"));
+	private final ConcurrentHashMap<String, byte[]> bodies = new ConcurrentHashMap<String, byte[]>();
+	private final ConcurrentHashMap<String, AtomicInteger> requests = new ConcurrentHashMap<String, AtomicInteger>();
+
+	private volatile long delayMillis;
+
+	/*
+	 * Serving test resources, started on a free port of the loopback address.
+	 */
+	FixtureServer(String root) throws IOException {
+		this(root.endsWith("/") ? root.substring(0, root.length() - 1) : root, null);
+	}
+
+	/*
+	 * Serving the files in the directory.
+	 */
+	FixtureServer(File directory) throws IOException {
+		this(null, directory);
+	}
+
+	private FixtureServer(String root, File directory) throws IOException {
+		this.root = root;
+		this.directory = directory;
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				answer(exchange);
+			}
+		});
+		server.setExecutor(executor);
+		server.start();
+	}
+
+	/*
+	 * Base URL without a trailing slash, e.g. http://127.0.0.1:50123.
+	 */
+	String getUrl() {
+		return "http://127.0.0.1:" + server.getAddress().getPort();
+	}
+
+	void setBody(String path, byte[] body) {
+		bodies.put(path, body);
+	}
+
+	void setDelay(long millis) {
+		delayMillis = millis;
+	}
+
+	int getRequests(String path) {
+		AtomicInteger count = requests.get(path);
+		return count == null ? 0 : count.get();
+	}
+
+	void stop() {
+		server.stop(0);
+		executor.shutdownNow();
+	}
+
+	private void answer(HttpExchange exchange) throws IOException {
+
+		String path = exchange.getRequestURI().getPath();
+		AtomicInteger count = requests.get(path);
+		if (count == null) {
+			requests.putIfAbsent(path, new AtomicInteger());
+			count = requests.get(path);
+		}
+		count.incrementAndGet();
+
+		try {
+			if (delayMillis > 0) {
+				Thread.sleep(delayMillis);
+			}
+			byte[] body = bodies.get(path);
+			if (body == null) {
+				body = directory != null ? file(new File(directory, path)) : resource(root + path);
+			}
+			if (body == null) {
+				exchange.sendResponseHeaders(404, -1);
+				return;
+			}
+			exchange.sendResponseHeaders(200, body.length);
+			OutputStream out = exchange.getResponseBody();
+			out.write(body);
+			out.close();
+		}
+		catch (InterruptedException iex) {
+			Thread.currentThread().interrupt();
+		}
+		catch (IOException ioex) {
+			// the client gave up waiting
+		}
+		finally {
+			exchange.close();
+		}
+	}
+
+	private static byte[] file(File file) throws IOException {
+		return file.isFile() ? Files.readAllBytes(file.toPath()) : null;
+	}
+
+	private static byte[] resource(String name) throws IOException {
+
+		InputStream in = FixtureServer.class.getResourceAsStream(name);
+		if (in == null) {
+			return null;
+		}
+		try {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] chunk = new byte[8 * 1024];
+			int read;
+			while ((read = in.read(chunk)) != -1) {
+				out.write(chunk, 0, read);
+			}
+			return out.toByteArray();
+		}
+		finally {
+			in.close();
+		}
+	}
+}
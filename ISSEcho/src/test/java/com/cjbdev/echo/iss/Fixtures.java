@@ -0,0 +1,34 @@
+package com.cjbdev.echo.iss;
+
+import java.time.ZoneId;
+import java.util.Arrays;
+
+/**
+ * Schedules and sightings for the tests.
+ */
+final class Fixtures {
+
+	static final ZoneId ZONE = ZoneId.of("America/New_York");
+
+	private Fixtures() {
+	}
+
+	/*
+	 * A schedule with a four minute pass at each start time, rounded down to the second as the
+	 * schedule stores them.
+	 */
+	static SightingSchedule schedule(String locationId, long fetchedAt, long... starts) {
+		return schedule(locationId, ZONE, fetchedAt, starts);
+	}
+
+	/*
+	 * The same at a location in the given time zone.
+	 */
+	static SightingSchedule schedule(String locationId, ZoneId zone, long fetchedAt, long... starts) {
+		Sighting[] sightings = new Sighting[starts.length];
+		for (int i = 0; i < starts.length; i++) {
+			sightings[i] = new Sighting(starts[i] / 1000L * 1000L, zone, 240, 45, 10, 10, 10, 3);
+		}
+		return new SightingSchedule(locationId, Arrays.asList(sightings), fetchedAt, zone);
+	}
+}
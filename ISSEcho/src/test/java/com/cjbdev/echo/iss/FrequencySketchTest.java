@@ -0,0 +1,56 @@
+package com.cjbdev.echo.iss;
+
+import junit.framework.TestCase;
+
+/**
+ * Counts keys in the admission sketch, never below their true recent count, and halves the
+ * counts once enough increments have been seen.
+ */
+public class FrequencySketchTest extends TestCase {
+
+	public void testCountsUpToFifteen() {
+		FrequencySketch sketch = new FrequencySketch(100);
+		assertEquals(0, sketch.frequency("Annapolis"));
+		for (int i = 1; i <= 20; i++) {
+			sketch.increment("Annapolis");
+			assertEquals(Math.min(i, FrequencySketch.MAX_COUNT), sketch.frequency("Annapolis"));
+		}
+		assertEquals(0, sketch.frequency("Baltimore"));
+	}
+
+	public void testEstimatesAreNeverLow() {
+		FrequencySketch sketch = new FrequencySketch(1000);
+		// 500 keys seen 0 to 4 times each, well under the 10000 increments before a halving
+		for (int round = 0; round < 4; round++) {
+			for (int key = round * 100; key < 500; key++) {
+				sketch.increment("location-" + key);
+			}
+		}
+		int exact = 0;
+		for (int key = 0; key < 500; key++) {
+			int count = Math.min(key / 100 + 1, 4);
+			int estimate = sketch.frequency("location-" + key);
+			assertTrue("location-" + key + ": " + estimate, estimate >= count);
+			if (estimate == count) {
+				exact++;
+			}
+		}
+		// with rows twice as wide as the keys, collisions on every row are rare
+		assertTrue(exact + " exact", exact > 450);
+	}
+
+	public void testCountsHalveAfterTenTimesTheSize() {
+		FrequencySketch sketch = new FrequencySketch(16);
+		for (int i = 0; i < 25; i++) {
+			sketch.increment("Annapolis");
+		}
+		// 15 increments so far, the rest found it saturated; the 160th halves every counter
+		int others = 0;
+		while (sketch.frequency("Annapolis") == 15) {
+			sketch.increment("location-" + others++);
+			assertTrue("not halved", others < 1000);
+		}
+		assertTrue(others + " increments", others >= 145);
+		assertEquals(7, sketch.frequency("Annapolis"));
+	}
+}
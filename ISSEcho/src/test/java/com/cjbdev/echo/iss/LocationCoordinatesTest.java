@@ -0,0 +1,126 @@
+package com.cjbdev.echo.iss;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.time.ZoneId;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * Builds the coordinates resource with {@link Gazetteer#main} from a small GeoNames extract in the
+ * test resources, and reads it back against the real location lists.
+ */
+public class LocationCoordinatesTest extends TestCase {
+
+	private static final String ANNAPOLIS = "United_States_Maryland_Annapolis";
+
+	private static LocationIndex index;
+	private static File built;
+
+	@Override
+	protected void setUp() throws Exception {
+		if (built == null) {
+			index = LocationIndex.loadText(new SpaceStationListLoader());
+			File file = File.createTempFile("COORDINATES", ".txt");
+			file.deleteOnExit();
+			Gazetteer.main(new String[] { resource("/geonames/cities.txt"), resource("/geonames/admin1CodesASCII.txt"),
+					file.getPath() });
+			built = file;
+		}
+	}
+
+	public void testKnownCityResolvesToAPosition() throws IOException {
+		LocationCoordinates coordinates = new LocationCoordinates(read(built, index));
+
+		LocationCoordinates.Place place = coordinates.find(ANNAPOLIS);
+		assertNotNull(place);
+		assertEquals("Annapolis", place.getName());
+		assertEquals("Maryland", place.getRegion().getName());
+		// the Maryland town, not the Missouri one
+		assertEquals(38.97845, place.getLatitude(), 1e-6);
+		assertEquals(-76.49218, place.getLongitude(), 1e-6);
+		assertEquals(ZoneId.of("America/New_York"), place.getZone());
+		assertNull(coordinates.find("United_States_Maryland_Antietam_National_Battlefield"));
+	}
+
+	public void testNearestInRegion() throws IOException {
+		LocationCoordinates coordinates = new LocationCoordinates(read(built, index));
+		LocationCoordinates.Place annapolis = coordinates.find(ANNAPOLIS);
+
+		List<SpatialIndex.Neighbor<LocationCoordinates.Place>> nearest = coordinates.nearest(index.findState("Maryland"),
+				annapolis.getLatitude(), annapolis.getLongitude(), 3);
+		assertEquals(3, nearest.size());
+		assertEquals(ANNAPOLIS, nearest.get(0).getItem().getLocationId());
+		assertEquals("United_States_Maryland_Baltimore", nearest.get(1).getItem().getLocationId());
+		assertEquals(36.2, nearest.get(1).getDistanceKm(), 0.5);
+		assertEquals("United_States_Maryland_Frederick", nearest.get(2).getItem().getLocationId());
+
+		assertTrue(coordinates.nearest(index.findState("Missouri"), annapolis.getLatitude(), annapolis.getLongitude(), 3)
+				.isEmpty());
+	}
+
+	public void testLocationInTwoListsIsInBoth() throws IOException {
+		LocationCoordinates coordinates = new LocationCoordinates(read(built, index));
+
+		assertEquals(5, coordinates.size());
+		for (String country : new String[] { "England", "United Kingdom" }) {
+			List<SpatialIndex.Neighbor<LocationCoordinates.Place>> nearest = coordinates.nearest(
+					index.findCountry(country), 54.4, -2.9, 5);
+			assertEquals(country, 2, nearest.size());
+			assertEquals("United_Kingdom_England_Ambleside", nearest.get(0).getItem().getLocationId());
+		}
+	}
+
+	public void testReadingDoesNotDecodeRegions() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		LocationSnapshot.write(index, out);
+		LocationIndex snapshot = LocationSnapshot.read(ByteBuffer.wrap(out.toByteArray()));
+
+		LocationCoordinates coordinates = new LocationCoordinates(read(built, snapshot));
+		assertNotNull(coordinates.find(ANNAPOLIS));
+		for (LocationIndex.Region region : snapshot.getStates()) {
+			assertFalse(region.getName(), region.isDecoded());
+		}
+		for (LocationIndex.Region region : snapshot.getCountries()) {
+			assertFalse(region.getName(), region.isDecoded());
+		}
+	}
+
+	/*
+	 * The resource the build generated from the full GeoNames dump. Only there when the build ran
+	 * with -Dcoordinates.
+	 */
+	public void testBuiltResourceResolvesAKnownCity() {
+		if (LocationCoordinates.class.getResource(LocationCoordinates.RESOURCE) == null) {
+			return;
+		}
+		LocationCoordinates coordinates = LocationCoordinates.load(index);
+
+		LocationCoordinates.Place place = coordinates.find(ANNAPOLIS);
+		assertNotNull(place);
+		assertEquals(38.98, place.getLatitude(), 0.1);
+		assertEquals(-76.49, place.getLongitude(), 0.1);
+		assertEquals(ZoneId.of("America/New_York"), place.getZone());
+		assertTrue(coordinates.size() > 1000);
+	}
+
+	private static List<LocationCoordinates.Place> read(File file, LocationIndex index) throws IOException {
+		InputStream in = new FileInputStream(file);
+		try {
+			return LocationCoordinates.read(in, index);
+		}
+		finally {
+			in.close();
+		}
+	}
+
+	private static String resource(String name) throws URISyntaxException {
+		return new File(LocationCoordinatesTest.class.getResource(name).toURI()).getPath();
+	}
+}
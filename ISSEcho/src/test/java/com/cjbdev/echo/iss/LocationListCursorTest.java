@@ -0,0 +1,62 @@
+package com.cjbdev.echo.iss;
+
+import java.util.HashMap;
+
+import com.amazon.speech.speechlet.Session;
+
+import junit.framework.TestCase;
+
+/**
+ * Writes a location listing cursor to the session attributes and reads it back, and reads none
+ * from attributes that are missing or malformed.
+ */
+public class LocationListCursorTest extends TestCase {
+
+	private Session session;
+
+	@Override
+	protected void setUp() {
+		session = Session.builder().withSessionId("test").withAttributes(new HashMap<String, Object>()).build();
+	}
+
+	public void testRoundTrip() {
+		new LocationListCursor("Maryland", false, Character.valueOf('B'), 20).write(session);
+		LocationListCursor cursor = LocationListCursor.read(session);
+		assertEquals("Maryland", cursor.getRegion());
+		assertFalse(cursor.isCountry());
+		assertEquals(Character.valueOf('B'), cursor.getLetter());
+		assertEquals(20, cursor.getOffset());
+
+		new LocationListCursor("Canada", true, null, 10).write(session);
+		cursor = LocationListCursor.read(session);
+		assertEquals("Canada", cursor.getRegion());
+		assertTrue(cursor.isCountry());
+		assertNull(cursor.getLetter());
+		assertEquals(10, cursor.getOffset());
+
+		LocationListCursor.clear(session);
+		assertNull(LocationListCursor.read(session));
+		assertTrue(session.getAttributes().isEmpty());
+	}
+
+	public void testMalformedCursorIsNone() {
+		assertNull(LocationListCursor.read(session));
+
+		new LocationListCursor("Maryland", false, null, 10).write(session);
+		session.setAttribute(LocationListCursor.OFFSET, "ten");
+		assertNull(LocationListCursor.read(session));
+
+		session.setAttribute(LocationListCursor.OFFSET, "-10");
+		assertNull(LocationListCursor.read(session));
+
+		session.removeAttribute(LocationListCursor.OFFSET);
+		assertNull(LocationListCursor.read(session));
+
+		// Alexa sends the attributes back as JSON, so an offset may come back as a number
+		session.setAttribute(LocationListCursor.OFFSET, Integer.valueOf(10));
+		assertEquals(10, LocationListCursor.read(session).getOffset());
+
+		session.setAttribute(LocationListCursor.REGION, Integer.valueOf(24));
+		assertNull(LocationListCursor.read(session));
+	}
+}
@@ -0,0 +1,103 @@
+package com.cjbdev.echo.iss;
+
+import java.io.IOException;
+import java.net.URL;
+
+/**
+ * Compares building the {@link LocationIndex} from the text lists against opening the binary
+ * snapshot. Run after {@code mvn package} with the build output on the classpath:
+ * <pre>
+ * java -cp target/test-classes:target/classes:... com.cjbdev.echo.iss.LocationSnapshotBenchmark [iterations]
+ * </pre>
+ * Each iteration reports the time to open the index, the time to open it and resolve every
+ * region's locations, and the heap still reachable from the resulting index.
+ */
+public class LocationSnapshotBenchmark {
+
+	public static void main(String[] args) throws IOException {
+
+		int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+
+		URL url = LocationSnapshotBenchmark.class.getResource(LocationSnapshot.RESOURCE);
+		if (url == null) {
+			throw new IllegalStateException(LocationSnapshot.RESOURCE + " not found, run mvn process-classes first");
+		}
+
+		SpaceStationListLoader loader = new SpaceStationListLoader();
+
+		// The very first run of each path is what a cold Lambda container pays.
+		System.out.println("cold text:     " + millis(timeText(loader, false)) + " ms");
+		System.out.println("cold snapshot: " + millis(timeSnapshot(url, false)) + " ms");
+
+		long textOpen = 0;
+		long textAll = 0;
+		long snapOpen = 0;
+		long snapAll = 0;
+		for (int i = 0; i < iterations; i++) {
+			textOpen += timeText(loader, false);
+			textAll += timeText(loader, true);
+			snapOpen += timeSnapshot(url, false);
+			snapAll += timeSnapshot(url, true);
+		}
+
+		System.out.println("iterations:    " + iterations);
+		System.out.println("text     open " + millis(textOpen / iterations) + " ms, all regions "
+				+ millis(textAll / iterations) + " ms, retained " + retained(loader, null) / 1024 + " KB");
+		System.out.println("snapshot open " + millis(snapOpen / iterations) + " ms, all regions "
+				+ millis(snapAll / iterations) + " ms, retained " + retained(null, url) / 1024 + " KB");
+	}
+
+	private static long timeText(SpaceStationListLoader loader, boolean touchAll) {
+		long start = System.nanoTime();
+		LocationIndex index = LocationIndex.loadText(loader);
+		if (touchAll) {
+			touch(index);
+		}
+		return System.nanoTime() - start;
+	}
+
+	private static long timeSnapshot(URL url, boolean touchAll) throws IOException {
+		long start = System.nanoTime();
+		LocationIndex index = LocationSnapshot.read(LocationSnapshot.open(url));
+		if (touchAll) {
+			touch(index);
+		}
+		return System.nanoTime() - start;
+	}
+
+	private static int touch(LocationIndex index) {
+		int count = 0;
+		for (LocationIndex.Region region : index.getStates()) {
+			count += region.getLocations().size();
+		}
+		for (LocationIndex.Region region : index.getCountries()) {
+			count += region.getLocations().size();
+		}
+		return count;
+	}
+
+	/*
+	 * Rough retained size: heap in use with the index alive minus heap in use after it is gone.
+	 */
+	private static long retained(SpaceStationListLoader loader, URL url) throws IOException {
+		long before = usedAfterGc();
+		LocationIndex index = loader != null ? LocationIndex.loadText(loader) : LocationSnapshot.read(LocationSnapshot.open(url));
+		long after = usedAfterGc();
+		if (index.getStates().isEmpty()) {
+			System.out.println("empty index");
+		}
+		return after - before;
+	}
+
+	private static long usedAfterGc() {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	private static String millis(long nanos) {
+		return String.format("%.2f", nanos / 1e6);
+	}
+}
@@ -0,0 +1,161 @@
+package com.cjbdev.echo.iss;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+
+import junit.framework.TestCase;
+
+import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDBClient;
+
+/**
+ * Fans a nearby lookup out over four Maryland locations against a stub feed, one of which does not
+ * answer before the deadline, and reads the ones another container fetched from the shared tier.
+ */
+public class NearbySightingFinderTest extends TestCase {
+
+	private static final String ANNAPOLIS = "United_States_Maryland_Annapolis";
+	private static final String BALTIMORE = "United_States_Maryland_Baltimore";
+	private static final String COLUMBIA = "United_States_Maryland_Columbia";
+	private static final String FREDERICK = "United_States_Maryland_Frederick";
+
+	private static final long HOUR = 60 * 60 * 1000L;
+
+	private LocationIndex.Region maryland;
+	private LocationCoordinates coordinates;
+	private StubFeedReader reader;
+	private ScheduledThreadPoolExecutor executor;
+
+	@Override
+	protected void setUp() {
+		maryland = LocationIndex.loadText(new SpaceStationListLoader()).findState("Maryland");
+		coordinates = new LocationCoordinates(Arrays.asList(place("Annapolis", 38.97845, -76.49218),
+				place("Baltimore", 39.29038, -76.61219), place("Columbia", 39.24038, -76.83942),
+				place("Frederick", 39.41427, -77.41054)));
+
+		reader = new StubFeedReader(100);
+		reader.setNextPass(ANNAPOLIS, 5 * HOUR);
+		reader.setNextPass(BALTIMORE, 3 * HOUR);
+		reader.setNextPass(COLUMBIA, HOUR);
+		// would be the soonest, but answers long after the deadline
+		reader.setNextPass(FREDERICK, HOUR / 6);
+		reader.setDelay(FREDERICK, 5000);
+
+		executor = new ScheduledThreadPoolExecutor(4, new NearbySightingFinder.DaemonThreadFactory("nearby-test"));
+	}
+
+	@Override
+	protected void tearDown() {
+		executor.shutdownNow();
+		Deadline.clear();
+	}
+
+	public void testCandidatesAreTheOriginThenTheClosest() {
+		NearbySightingFinder finder = finder(4, 1000);
+
+		List<String> ids = new ArrayList<String>();
+		for (NearbySightingFinder.Candidate candidate : finder.candidates(maryland, location("Annapolis"))) {
+			ids.add(candidate.getLocation().getValue());
+		}
+		assertEquals(Arrays.asList(ANNAPOLIS, BALTIMORE, COLUMBIA, FREDERICK), ids);
+		assertEquals(2, finder(2, 1000).candidates(maryland, location("Annapolis")).size());
+	}
+
+	public void testUnknownOriginIsTheOnlyCandidate() {
+		List<NearbySightingFinder.Candidate> candidates = finder(4, 1000).candidates(maryland, location("Bethesda"));
+		assertEquals(1, candidates.size());
+		assertEquals("United_States_Maryland_Bethesda", candidates.get(0).getLocation().getValue());
+	}
+
+	public void testFansOutAndStopsAtTheDeadline() {
+		NearbySightingFinder finder = finder(4, 500);
+
+		long start = System.currentTimeMillis();
+		NearbySightingFinder.Result result = finder.findSoonest(maryland, location("Annapolis"), start);
+		long elapsed = System.currentTimeMillis() - start;
+
+		assertNotNull(result);
+		assertEquals(COLUMBIA, result.getLocation().getValue());
+		assertEquals(4, result.getConsulted());
+		assertEquals(3, result.getAnswered());
+		assertTrue("took " + elapsed + " ms", elapsed >= 450 && elapsed < 2000);
+		// all four lookups were under way at once
+		assertEquals(4, reader.getMaxRunning());
+		assertEquals(1, reader.getCalls(FREDERICK));
+	}
+
+	public void testRequestDeadlineSoonerThanTheTimeoutWins() {
+		NearbySightingFinder finder = finder(4, 10000);
+		reader.setDelay(COLUMBIA, 5000);
+
+		Deadline.set(Deadline.after(400));
+		long start = System.currentTimeMillis();
+		NearbySightingFinder.Result result = finder.findSoonest(maryland, location("Annapolis"), start);
+		long elapsed = System.currentTimeMillis() - start;
+
+		assertEquals(BALTIMORE, result.getLocation().getValue());
+		assertEquals(2, result.getAnswered());
+		assertTrue("took " + elapsed + " ms", elapsed < 2000);
+	}
+
+	public void testNothingBeforeTheDeadline() {
+		reader.setDelay(5000);
+		reader.setDelay(FREDERICK, 5000);
+
+		long start = System.currentTimeMillis();
+		assertNull(finder(4, 300).findSoonest(maryland, location("Annapolis"), start));
+		assertTrue(System.currentTimeMillis() - start < 2000);
+	}
+
+	public void testSharedSchedulesAreReadInOneBatch() throws Exception {
+		if (!DynamoSightingCache.isSupported()) {
+			// no shared tier on this JDK, see DynamoSightingCacheTest
+			return;
+		}
+		DynamoStub stub = new DynamoStub();
+		AmazonDynamoDBClient client = new AmazonDynamoDBClient(new BasicAWSCredentials("local", "local"));
+		try {
+			client.setEndpoint(stub.getUrl());
+			DynamoSightingCacheTest.createTable(client, "sightings");
+			DynamoSightingCache shared = new DynamoSightingCache(client, "sightings", HOUR, 500, 300);
+			long now = System.currentTimeMillis();
+			shared.put(Fixtures.schedule(BALTIMORE, now, now + 2 * HOUR));
+			shared.put(Fixtures.schedule(FREDERICK, now, now + HOUR / 2));
+
+			SightingService service = new SightingService(new SightingCache(100, HOUR), shared, null, reader, null,
+					null, null, executor, 0);
+			NearbySightingFinder.Result result = new NearbySightingFinder(service, coordinates, 4, 1000).findSoonest(
+					maryland, location("Annapolis"), now);
+
+			assertEquals(FREDERICK, result.getLocation().getValue());
+			assertEquals(4, result.getAnswered());
+			assertEquals(1, stub.getCalls("BatchGetItem"));
+			assertEquals(0, stub.getCalls("GetItem"));
+			assertEquals(0, reader.getCalls(BALTIMORE));
+			assertEquals(0, reader.getCalls(FREDERICK));
+			assertEquals(1, reader.getCalls(ANNAPOLIS));
+		}
+		finally {
+			client.shutdown();
+			stub.stop();
+		}
+	}
+
+	private NearbySightingFinder finder(int count, long timeoutMillis) {
+		SightingService service = new SightingService(new SightingCache(100, HOUR), null, null, reader, null, null,
+				null, executor, 0);
+		return new NearbySightingFinder(service, coordinates, count, timeoutMillis);
+	}
+
+	private KeyValuePair location(String name) {
+		KeyValuePair location = maryland.findLocation(name);
+		assertNotNull(name, location);
+		return location;
+	}
+
+	private LocationCoordinates.Place place(String name, double latitude, double longitude) {
+		return new LocationCoordinates.Place(maryland, location(name), latitude, longitude, Fixtures.ZONE);
+	}
+}
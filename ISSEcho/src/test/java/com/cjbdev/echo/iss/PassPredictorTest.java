@@ -0,0 +1,198 @@
+package com.cjbdev.echo.iss;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.Properties;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks {@link Sgp4} against the published Spacetrack Report #3 test case, the sun against known
+ * equinox and solstice positions, every predicted pass against look angles worked out here
+ * independently of {@link PassPredictor}, and, when given some, against recorded NASA feeds.
+ */
+public class PassPredictorTest extends TestCase {
+
+	private static final String[] VERIFICATION_TLE = {
+			"1 00005U 58002B   00179.78495062  .00000023  00000-0  28098-4 0  4753",
+			"2 00005  34.2682 348.7242 1859667 331.7664  19.3264 10.82419157413667" };
+
+	/*
+	 * Minutes from epoch, then TEME position in km, from the report's published results.
+	 */
+	private static final double[][] VERIFICATION_STATES = {
+			{ 0, 7022.46529266, -1400.08296755, 0.03995155 },
+			{ 360, -7154.03120202, -3783.17682504, -3536.19412294 },
+			{ 720, -7134.59340119, 6531.68641334, 3260.27186483 },
+			{ 1440, -938.55923943, -6268.18748831, -4294.02924751 } };
+
+	private static final double ANNAPOLIS_LATITUDE = 38.97845;
+	private static final double ANNAPOLIS_LONGITUDE = -76.49218;
+
+	public void testPropagatorMatchesVerificationStates() {
+		Sgp4 sgp4 = new Sgp4(new Tle("00005", VERIFICATION_TLE[0], VERIFICATION_TLE[1]));
+		double[] position = new double[3];
+		for (double[] state : VERIFICATION_STATES) {
+			sgp4.propagate(state[0], position, null);
+			double dx = position[0] - state[1];
+			double dy = position[1] - state[2];
+			double dz = position[2] - state[3];
+			assertEquals("position at " + state[0] + " minutes", 0, Math.sqrt(dx * dx + dy * dy + dz * dz), 0.001);
+		}
+	}
+
+	public void testSunAtEquinoxAndSolstice() {
+		double[] sun = new double[3];
+
+		// March equinox 2014, 16:57 UTC: on the equator, towards the vernal equinox
+		PassPredictor.sun(Tle.julianDate(Instant.parse("2014-03-20T16:57:00Z").toEpochMilli()), sun);
+		assertEquals(0, Math.toDegrees(Math.asin(sun[2])), 0.02);
+		assertEquals(0, Math.toDegrees(Math.atan2(sun[1], sun[0])), 0.05);
+
+		// June solstice 2014, 10:51 UTC: at the obliquity, right ascension 6h
+		PassPredictor.sun(Tle.julianDate(Instant.parse("2014-06-21T10:51:00Z").toEpochMilli()), sun);
+		assertEquals(23.44, Math.toDegrees(Math.asin(sun[2])), 0.01);
+		assertEquals(90, Math.toDegrees(Math.atan2(sun[1], sun[0])), 0.05);
+	}
+
+	public void testPassesMatchLookAngles() throws IOException {
+		Tle tle = fixture();
+		Sgp4 sgp4 = new Sgp4(tle);
+		long from = tle.getEpochMillis();
+		long to = from + 10 * 86400000L;
+
+		List<Sighting> passes = new PassPredictor(sgp4, 10, -6).predict(ANNAPOLIS_LATITUDE, ANNAPOLIS_LONGITUDE, from,
+				to, ZoneId.of("America/New_York"));
+		assertFalse(passes.isEmpty());
+
+		long previous = 0;
+		for (Sighting pass : passes) {
+			long start = pass.getTime();
+			long end = start + pass.getDurationSeconds() * 1000L;
+			String at = Instant.ofEpochMilli(start).toString();
+			assertTrue(at, start >= from && start <= to);
+			assertTrue(at, start > previous);
+			// the station crosses a whole sky in about ten minutes
+			assertTrue(at, pass.getDurationSeconds() > 0 && pass.getDurationSeconds() <= 12 * 60);
+			assertTrue(at, pass.getApproachElevation() >= 10 && pass.getDepartureElevation() >= 10);
+
+			assertEquals(at, pass.getApproachElevation(), lookElevation(sgp4, start), 1);
+			assertEquals(at, pass.getDepartureElevation(), lookElevation(sgp4, end), 1);
+			double peak = 0;
+			for (long t = start; t <= end; t += 1000) {
+				peak = Math.max(peak, lookElevation(sgp4, t));
+			}
+			assertEquals(at, pass.getMaxElevation(), peak, 1);
+			previous = end;
+		}
+	}
+
+	/*
+	 * Every pass in feeds recorded on the same day as a TLE, each with a .properties file giving
+	 * the latitude, longitude and zone it was recorded for, must be predicted within two minutes
+	 * and three degrees. Runs only with -Dpredict.recordedDir=<directory holding ISS.tle and the
+	 * feeds>, since recording needs the live feed and CelesTrak.
+	 */
+	public void testPassesMatchRecordedFeeds() throws IOException {
+		String directory = System.getProperty("predict.recordedDir");
+		if (directory == null) {
+			return;
+		}
+		File[] feeds = new File(directory).listFiles();
+		assertNotNull(directory, feeds);
+		InputStream in = new FileInputStream(new File(directory, "ISS.tle"));
+		Tle tle;
+		try {
+			tle = Tle.read(in).get(0);
+		}
+		finally {
+			in.close();
+		}
+		PassPredictor predictor = new PassPredictor(new Sgp4(tle), 10, -6);
+
+		int compared = 0;
+		for (File feed : feeds) {
+			if (!feed.getName().endsWith(".xml")) {
+				continue;
+			}
+			Properties place = new Properties();
+			in = new FileInputStream(new File(feed.getPath().replaceFirst("\\.xml$", ".properties")));
+			try {
+				place.load(in);
+			}
+			finally {
+				in.close();
+			}
+			in = new FileInputStream(feed);
+			try {
+				ZoneId zone = ZoneId.of(place.getProperty("zone"));
+				List<Sighting> recorded = new SightingFeedParser(zone).parseAll(in);
+				List<Sighting> predicted = predictor.predict(Double.parseDouble(place.getProperty("latitude")),
+						Double.parseDouble(place.getProperty("longitude")), tle.getEpochMillis() - 2 * 86400000L,
+						tle.getEpochMillis() + 9 * 86400000L, zone);
+				for (Sighting pass : recorded) {
+					// past a week the elements have drifted too far to compare
+					if (Math.abs(pass.getTime() - tle.getEpochMillis()) > 7 * 86400000L) {
+						continue;
+					}
+					String at = feed.getName() + " " + pass.getDate() + " " + pass.getClock();
+					Sighting match = null;
+					for (Sighting candidate : predicted) {
+						if (Math.abs(candidate.getTime() - pass.getTime()) <= 2 * 60 * 1000L) {
+							match = candidate;
+						}
+					}
+					assertNotNull(at + " not predicted", match);
+					assertEquals(at, pass.getMaxElevation(), match.getMaxElevation(), 3);
+					compared++;
+				}
+			}
+			finally {
+				in.close();
+			}
+		}
+		assertTrue("no recorded passes in " + directory, compared > 0);
+	}
+
+	/*
+	 * Elevation of the satellite over Annapolis: earth-fixed position by the GMST rotation, minus
+	 * the observer's position on the ellipsoid, projected on the local vertical.
+	 */
+	private static double lookElevation(Sgp4 sgp4, long millis) {
+		double[] teme = new double[3];
+		sgp4.propagate(sgp4.minutesSinceEpoch(millis), teme, null);
+		double theta = Sgp4.gmst(Tle.julianDate(millis));
+		double x = Math.cos(theta) * teme[0] + Math.sin(theta) * teme[1];
+		double y = -Math.sin(theta) * teme[0] + Math.cos(theta) * teme[1];
+		double z = teme[2];
+
+		double lat = Math.toRadians(ANNAPOLIS_LATITUDE);
+		double lon = Math.toRadians(ANNAPOLIS_LONGITUDE);
+		double a = 6378.137;
+		double e2 = 0.00669437999014;
+		double n = a / Math.sqrt(1 - e2 * Math.sin(lat) * Math.sin(lat));
+		double[] observer = { n * Math.cos(lat) * Math.cos(lon), n * Math.cos(lat) * Math.sin(lon),
+				n * (1 - e2) * Math.sin(lat) };
+		double[] vertical = { Math.cos(lat) * Math.cos(lon), Math.cos(lat) * Math.sin(lon), Math.sin(lat) };
+
+		double[] range = { x - observer[0], y - observer[1], z - observer[2] };
+		double length = Math.sqrt(range[0] * range[0] + range[1] * range[1] + range[2] * range[2]);
+		return Math.toDegrees(Math.asin((range[0] * vertical[0] + range[1] * vertical[1] + range[2] * vertical[2])
+				/ length));
+	}
+
+	static Tle fixture() throws IOException {
+		InputStream in = PassPredictorTest.class.getResourceAsStream("/orbit/ISS.tle");
+		try {
+			return Tle.read(in).get(0);
+		}
+		finally {
+			in.close();
+		}
+	}
+}
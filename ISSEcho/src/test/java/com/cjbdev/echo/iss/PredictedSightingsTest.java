@@ -0,0 +1,209 @@
+package com.cjbdev.echo.iss;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+/**
+ * Predicts offline from the bundled 2014 elements, and refreshes them from a local server standing
+ * in for CelesTrak, on the refresh thread and never inside {@link PredictedSightings#fetch}.
+ */
+public class PredictedSightingsTest extends TestCase {
+
+	private static final String ANNAPOLIS = "United_States_Maryland_Annapolis";
+	private static final String TLE_PATH = "/tle";
+	private static final long DAY = TimeUnit.DAYS.toMillis(1);
+
+	private FixtureServer server;
+	private File directory;
+	private LocationCoordinates coordinates;
+
+	@Override
+	protected void setUp() throws IOException {
+		server = new FixtureServer("/orbit");
+		directory = Files.createTempDirectory("tle").toFile();
+		LocationIndex.Region maryland = LocationIndex.loadText(new SpaceStationListLoader()).findState("Maryland");
+		coordinates = new LocationCoordinates(Collections.singletonList(new LocationCoordinates.Place(maryland,
+				maryland.findLocation("Annapolis"), 38.97845, -76.49218, Fixtures.ZONE)));
+	}
+
+	@Override
+	protected void tearDown() {
+		server.stop();
+		delete(directory);
+	}
+
+	public void testBundledElementsPredictWithoutNetwork() throws IOException {
+		Tle bundled = PredictedSightings.bundled();
+		assertNotNull(bundled);
+		assertEquals(fixture().getEpochMillis(), bundled.getEpochMillis());
+
+		long now = bundled.getEpochMillis() + DAY;
+		PredictedSightings predicted = new PredictedSightings(bundled, null, coordinates, Fixtures.ZONE, 3 * DAY,
+				10 * DAY, 10, -6);
+		SightingSchedule schedule = predicted.fetch(ANNAPOLIS, now);
+		assertNotNull(schedule);
+		assertTrue(schedule.size() > 0);
+		assertTrue(schedule.next(now).getTime() >= now);
+
+		// the same elements are too old to use a week later
+		assertNull(predicted.fetch(ANNAPOLIS, now + 7 * DAY));
+		assertNull(predicted.fetch("United_States_Maryland_Bethesda", now));
+	}
+
+	public void testFetchNeverDownloads() throws IOException {
+		File file = new File(directory, "ISS.tle");
+		Files.write(file.toPath(), fixture().toString().getBytes(StandardCharsets.US_ASCII));
+		server.setBody(TLE_PATH, current(System.currentTimeMillis()).toString().getBytes(StandardCharsets.US_ASCII));
+
+		PredictedSightings predicted = predicted(fixture(), file, true);
+		assertNull(predicted.fetch(ANNAPOLIS));
+		assertNull(predicted.fetch(ANNAPOLIS));
+		assertEquals(0, server.getRequests(TLE_PATH));
+	}
+
+	public void testStaleElementsAreRefreshed() throws IOException {
+		File file = new File(directory, "ISS.tle");
+		Files.write(file.toPath(), fixture().toString().getBytes(StandardCharsets.US_ASCII));
+		long now = System.currentTimeMillis();
+		server.setBody(TLE_PATH, current(now).toString().getBytes(StandardCharsets.US_ASCII));
+
+		PredictedSightings predicted = predicted(fixture(), file, true);
+		predicted.refresh(now);
+		SightingSchedule schedule = predicted.fetch(ANNAPOLIS);
+		assertNotNull(schedule);
+		assertEquals(ANNAPOLIS, schedule.getLocationId());
+		assertEquals(1, server.getRequests(TLE_PATH));
+		assertEquals(now, epochOf(file), 1000);
+		assertFalse(new File(directory, "ISS.tle.tmp").exists());
+
+		// current now, so not downloaded again
+		predicted.refresh(now);
+		assertEquals(1, server.getRequests(TLE_PATH));
+	}
+
+	public void testRefreshRunsOnTheExecutor() throws Exception {
+		long now = System.currentTimeMillis();
+		server.setBody(TLE_PATH, current(now).toString().getBytes(StandardCharsets.US_ASCII));
+		ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1,
+				new NearbySightingFinder.DaemonThreadFactory("tle-test"));
+
+		// no file, so the downloaded elements are only kept in memory
+		PredictedSightings predicted = new PredictedSightings(fixture(), null, coordinates, Fixtures.ZONE, 3 * DAY,
+				DAY, 10, -6, new FeedClient(1000, 1000, 1, 0), server.getUrl() + TLE_PATH, DAY / 2, executor);
+		try {
+			predicted.start();
+			long deadline = System.currentTimeMillis() + 5000;
+			while (predicted.fetch(ANNAPOLIS) == null && System.currentTimeMillis() < deadline) {
+				Thread.sleep(20);
+			}
+			assertNotNull(predicted.fetch(ANNAPOLIS));
+			assertEquals(1, server.getRequests(TLE_PATH));
+		}
+		finally {
+			predicted.shutdown();
+		}
+		assertTrue(executor.isShutdown());
+	}
+
+	public void testNewerFileIsRead() throws IOException {
+		File file = new File(new File(directory, "orbit"), "ISS.tle");
+		PredictedSightings predicted = predicted(fixture(), file, false);
+		assertNull(predicted.fetch(ANNAPOLIS));
+
+		// written by something else keeping the file current
+		file.getParentFile().mkdirs();
+		Files.write(file.toPath(), current(System.currentTimeMillis()).toString().getBytes(StandardCharsets.US_ASCII));
+		assertNotNull(predicted.fetch(ANNAPOLIS));
+	}
+
+	public void testElementsNoNewerAreNotWritten() throws IOException {
+		File file = new File(directory, "ISS.tle");
+		byte[] stale = fixture().toString().getBytes(StandardCharsets.US_ASCII);
+		server.setBody(TLE_PATH, stale);
+
+		PredictedSightings predicted = predicted(fixture(), file, true);
+		predicted.refresh(System.currentTimeMillis());
+		assertEquals(1, server.getRequests(TLE_PATH));
+		assertFalse(file.exists());
+		assertNull(predicted.fetch(ANNAPOLIS));
+	}
+
+	public void testFailedDownloadKeepsTheFile() throws IOException {
+		File file = new File(directory, "ISS.tle");
+		Files.write(file.toPath(), fixture().toString().getBytes(StandardCharsets.US_ASCII));
+
+		// nothing served at the path, so 404
+		PredictedSightings predicted = predicted(null, file, true);
+		predicted.refresh(System.currentTimeMillis());
+		assertNull(predicted.fetch(ANNAPOLIS));
+		assertEquals(1, server.getRequests(TLE_PATH));
+		assertEquals(fixture().getEpochMillis(), epochOf(file));
+	}
+
+	private PredictedSightings predicted(Tle bundled, File file, boolean refresh) {
+		return new PredictedSightings(bundled, file, coordinates, Fixtures.ZONE, 3 * DAY, DAY, 10, -6,
+				refresh ? new FeedClient(1000, 1000, 1, 0) : null, server.getUrl() + TLE_PATH, DAY / 2, null);
+	}
+
+	private static Tle fixture() throws IOException {
+		return PassPredictorTest.fixture();
+	}
+
+	/*
+	 * The fixture's elements with the epoch moved to the given time, checksum recomputed.
+	 */
+	private static Tle current(long epochMillis) throws IOException {
+		Tle fixture = fixture();
+		String[] lines = fixture.toString().split("\n");
+		ZonedDateTime epoch = Instant.ofEpochMilli(epochMillis).atZone(ZoneOffset.UTC);
+		double day = epoch.getDayOfYear() + (epoch.toLocalTime().toNanoOfDay() / 1e6) / 86400000.0;
+		String field = String.format(Locale.ROOT, "%02d%012.8f", epoch.getYear() % 100, day);
+		String line1 = lines[1].substring(0, 18) + field + lines[1].substring(32, 68);
+		return new Tle(lines[0], line1 + checksum(line1), lines[2]);
+	}
+
+	private static int checksum(String line) {
+		int sum = 0;
+		for (char c : line.toCharArray()) {
+			if (Character.isDigit(c)) {
+				sum += c - '0';
+			}
+			else if (c == '-') {
+				sum++;
+			}
+		}
+		return sum % 10;
+	}
+
+	private static long epochOf(File file) throws IOException {
+		InputStream in = Files.newInputStream(file.toPath());
+		try {
+			return Tle.read(in).get(0).getEpochMillis();
+		}
+		finally {
+			in.close();
+		}
+	}
+
+	private static void delete(File file) {
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+}
@@ -0,0 +1,164 @@
+package com.cjbdev.echo.iss;
+
+import java.util.Arrays;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+
+import junit.framework.TestCase;
+
+/**
+ * Ranks requested locations, halves their counts once per half-life, refreshes the hottest ones
+ * about to expire against a stub feed, and counts the requests those refreshes saved.
+ */
+public class RefreshSchedulerTest extends TestCase {
+
+	private static final String ANNAPOLIS = "United_States_Maryland_Annapolis";
+	private static final String BALTIMORE = "United_States_Maryland_Baltimore";
+	private static final String COLUMBIA = "United_States_Maryland_Columbia";
+	private static final String FREDERICK = "United_States_Maryland_Frederick";
+
+	private static final long MINUTE = 60 * 1000L;
+	private static final long HOUR = 60 * MINUTE;
+	private static final long TTL = 6 * HOUR;
+	private static final long INTERVAL = 50;
+	private static final long AHEAD = 15 * MINUTE;
+	private static final long HALF_LIFE = HOUR;
+
+	private StubFeedReader reader;
+	private SightingService service;
+	private ScheduledThreadPoolExecutor executor;
+	private long now;
+
+	@Override
+	protected void setUp() {
+		reader = new StubFeedReader(0);
+		service = new SightingService(new SightingCache(100, TTL), null, null, reader);
+		executor = new ScheduledThreadPoolExecutor(2, new NearbySightingFinder.DaemonThreadFactory("refresh-test"));
+		now = System.currentTimeMillis();
+	}
+
+	@Override
+	protected void tearDown() {
+		executor.shutdownNow();
+	}
+
+	public void testHottestAreTheMostRequestedFirst() {
+		RefreshScheduler scheduler = scheduler(3);
+		record(scheduler, ANNAPOLIS, 5);
+		record(scheduler, BALTIMORE, 3);
+		record(scheduler, COLUMBIA, 1);
+		record(scheduler, FREDERICK, 4);
+
+		assertEquals(Arrays.asList(ANNAPOLIS, FREDERICK, BALTIMORE), scheduler.hottest());
+		assertTrue(scheduler(3).hottest().isEmpty());
+	}
+
+	public void testCountsHalveOncePerHalfLife() {
+		RefreshScheduler scheduler = scheduler(10);
+		long start = System.currentTimeMillis();
+		record(scheduler, ANNAPOLIS, 6);
+		record(scheduler, BALTIMORE, 1);
+
+		// not due yet
+		scheduler.tick(start + HALF_LIFE / 2);
+		assertEquals(Arrays.asList(ANNAPOLIS, BALTIMORE), scheduler.hottest());
+
+		// 6 becomes 3, and 1 becomes 0 and is forgotten
+		long halved = start + HALF_LIFE;
+		scheduler.tick(halved);
+		assertEquals(Arrays.asList(ANNAPOLIS), scheduler.hottest());
+
+		// a round right after does not halve again: 3 against 2, then against 4
+		scheduler.tick(halved + 1);
+		record(scheduler, BALTIMORE, 2);
+		assertEquals(Arrays.asList(ANNAPOLIS, BALTIMORE), scheduler.hottest());
+		record(scheduler, BALTIMORE, 2);
+		assertEquals(Arrays.asList(BALTIMORE, ANNAPOLIS), scheduler.hottest());
+
+		// the next half-life counts from the round that halved
+		record(scheduler, COLUMBIA, 1);
+		scheduler.tick(halved + HALF_LIFE - 1);
+		assertEquals(Arrays.asList(BALTIMORE, ANNAPOLIS, COLUMBIA), scheduler.hottest());
+		scheduler.tick(halved + HALF_LIFE);
+		assertEquals(Arrays.asList(BALTIMORE, ANNAPOLIS), scheduler.hottest());
+	}
+
+	public void testOnlyTheHottestAboutToExpireAreRefreshed() throws InterruptedException {
+		RefreshScheduler scheduler = scheduler(3);
+		// expiring within the look-ahead, expiring later, missing, and not hot enough
+		service.getCache().put(ANNAPOLIS, Fixtures.schedule(ANNAPOLIS, now - TTL + 5 * MINUTE, now + HOUR));
+		service.getCache().put(BALTIMORE, Fixtures.schedule(BALTIMORE, now - TTL + HOUR, now + HOUR));
+		record(scheduler, ANNAPOLIS, 3);
+		record(scheduler, BALTIMORE, 3);
+		record(scheduler, FREDERICK, 2);
+		record(scheduler, COLUMBIA, 1);
+
+		scheduler.tick(now);
+		awaitRefreshes(scheduler, 2);
+		assertEquals(1, reader.getCalls(ANNAPOLIS));
+		assertEquals(0, reader.getCalls(BALTIMORE));
+		assertEquals(1, reader.getCalls(FREDERICK));
+		assertEquals(0, reader.getCalls(COLUMBIA));
+		assertEquals(0, scheduler.getFailures());
+	}
+
+	public void testSavedCountsOneRequestThatWouldHaveMissed() throws InterruptedException {
+		RefreshScheduler scheduler = scheduler(10);
+		long expiry = now + 5 * MINUTE;
+		service.getCache().put(ANNAPOLIS, Fixtures.schedule(ANNAPOLIS, expiry - TTL, now + HOUR));
+		record(scheduler, ANNAPOLIS, 1);
+
+		scheduler.tick(now);
+		awaitRefreshes(scheduler, 1);
+		assertTrue(service.getCache().getExpiry(ANNAPOLIS) > expiry);
+
+		// the replaced entry would still have answered these
+		scheduler.record(ANNAPOLIS, now);
+		scheduler.record(ANNAPOLIS, expiry - 1);
+		assertEquals(0, scheduler.getSaved());
+
+		// this one would have found it expired and waited for a fetch
+		scheduler.record(ANNAPOLIS, expiry);
+		assertEquals(1, scheduler.getSaved());
+
+		// one refresh saves at most one request
+		scheduler.record(ANNAPOLIS, expiry + 1);
+		assertEquals(1, scheduler.getSaved());
+	}
+
+	public void testFailedRefreshIsCountedAndNotSaved() throws InterruptedException {
+		RefreshScheduler scheduler = scheduler(10);
+		reader.setFailing(true);
+		record(scheduler, ANNAPOLIS, 1);
+
+		scheduler.tick(now);
+		long until = System.currentTimeMillis() + 5000;
+		while (scheduler.getFailures() < 1) {
+			assertTrue("no refresh", System.currentTimeMillis() < until);
+			Thread.sleep(5);
+		}
+		assertEquals(0, scheduler.getRefreshes());
+		scheduler.record(ANNAPOLIS, now + TTL);
+		assertEquals(0, scheduler.getSaved());
+	}
+
+	private RefreshScheduler scheduler(int top) {
+		return new RefreshScheduler(service, executor, top, INTERVAL, AHEAD, HALF_LIFE);
+	}
+
+	private static void record(RefreshScheduler scheduler, String locationId, int times) {
+		for (int i = 0; i < times; i++) {
+			scheduler.record(locationId, System.currentTimeMillis());
+		}
+	}
+
+	private static void awaitRefreshes(RefreshScheduler scheduler, long count) throws InterruptedException {
+		long until = System.currentTimeMillis() + 5000;
+		while (scheduler.getRefreshes() < count) {
+			assertTrue("refreshed " + scheduler.getRefreshes(), System.currentTimeMillis() < until);
+			Thread.sleep(5);
+		}
+		// nothing more was scheduled
+		Thread.sleep(2 * INTERVAL);
+		assertEquals(count, scheduler.getRefreshes());
+	}
+}
@@ -0,0 +1,118 @@
+package com.cjbdev.echo.iss;
+
+import java.util.Base64;
+import java.util.HashMap;
+
+import com.amazon.speech.speechlet.Session;
+
+import junit.framework.TestCase;
+
+/**
+ * Keeps a location and its schedule in the session attributes and reads them back: the Base64
+ * round trip, the {@code session.maxScheduleBytes} cap, and attributes that cannot be read.
+ */
+public class SessionSightingsTest extends TestCase {
+
+	private static final String ANNAPOLIS = "United_States_Maryland_Annapolis";
+	private static final String PLACE = "Annapolis, Maryland";
+
+	private static final long HOUR = 60 * 60 * 1000L;
+
+	private long now;
+	private Session session;
+
+	@Override
+	protected void setUp() {
+		now = System.currentTimeMillis();
+		session = Session.builder().withSessionId("test").withAttributes(new HashMap<String, Object>()).build();
+	}
+
+	public void testScheduleRoundTrip() {
+		SightingSchedule schedule = Fixtures.schedule(ANNAPOLIS, now, now - HOUR, now + HOUR, now + 26 * HOUR,
+				now + 50 * HOUR);
+		new SessionSightings(1024).remember(session, ANNAPOLIS, PLACE, schedule, now, schedule.getTime(1));
+		assertTrue(session.getAttribute(SessionSightings.SCHEDULE) instanceof String);
+
+		SessionSightings.Remembered remembered = new SessionSightings(1024).recall(session);
+		assertEquals(ANNAPOLIS, remembered.getLocationId());
+		assertEquals(PLACE, remembered.getPlace());
+		assertEquals(schedule.getTime(1), remembered.getCursor());
+
+		// only the passes still to come are kept, and come back as they went in
+		SightingSchedule recalled = remembered.getSchedule();
+		assertEquals(ANNAPOLIS, recalled.getLocationId());
+		assertEquals(schedule.getFetchedAt(), recalled.getFetchedAt());
+		assertEquals(Fixtures.ZONE, recalled.getZone());
+		assertEquals(3, recalled.size());
+		for (int i = 0; i < recalled.size(); i++) {
+			Sighting expected = schedule.get(i + 1);
+			Sighting actual = recalled.get(i);
+			assertEquals(expected.getTime(), actual.getTime());
+			assertEquals(expected.getDescription(), actual.getDescription());
+		}
+	}
+
+	public void testScheduleOverTheCapIsLeftOut() {
+		SightingSchedule schedule = Fixtures.schedule(ANNAPOLIS, now, now + HOUR, now + 2 * HOUR, now + 3 * HOUR);
+		int bytes = schedule.after(now).toBytes().length;
+
+		// exactly at the cap it is kept
+		new SessionSightings(bytes).remember(session, ANNAPOLIS, PLACE, schedule, now, now);
+		assertNotNull(new SessionSightings(bytes).recall(session).getSchedule());
+
+		// one byte over and it is dropped, the one kept before included
+		new SessionSightings(bytes - 1).remember(session, ANNAPOLIS, PLACE, schedule, now, now);
+		assertNull(session.getAttribute(SessionSightings.SCHEDULE));
+		SessionSightings.Remembered remembered = new SessionSightings(bytes - 1).recall(session);
+		assertEquals(ANNAPOLIS, remembered.getLocationId());
+		assertEquals(now, remembered.getCursor());
+		assertNull(remembered.getSchedule());
+	}
+
+	public void testDefaultCapHoldsTwoWeeksOfPasses() {
+		// the feed lists about five passes a day; a month of hourly ones does not fit
+		long[] twoWeeks = new long[70];
+		for (int i = 0; i < twoWeeks.length; i++) {
+			twoWeeks[i] = now + (i + 1) * 4 * HOUR;
+		}
+		SessionSightings sightings = new SessionSightings(1024);
+		sightings.remember(session, ANNAPOLIS, PLACE, Fixtures.schedule(ANNAPOLIS, now, twoWeeks), now, now);
+		assertEquals(70, sightings.recall(session).getSchedule().size());
+
+		long[] hourly = new long[720];
+		for (int i = 0; i < hourly.length; i++) {
+			hourly[i] = now + (i + 1) * HOUR;
+		}
+		sightings.remember(session, ANNAPOLIS, PLACE, Fixtures.schedule(ANNAPOLIS, now, hourly), now, now);
+		assertNull(sightings.recall(session).getSchedule());
+	}
+
+	public void testUnreadableScheduleIsLeftOut() {
+		SessionSightings sightings = new SessionSightings(1024);
+		sightings.remember(session, ANNAPOLIS, PLACE, Fixtures.schedule(ANNAPOLIS, now, now + HOUR), now, now);
+
+		session.setAttribute(SessionSightings.SCHEDULE, "not base64!");
+		assertNull(sightings.recall(session).getSchedule());
+		assertEquals(ANNAPOLIS, sightings.recall(session).getLocationId());
+
+		session.setAttribute(SessionSightings.SCHEDULE, Base64.getEncoder().encodeToString(new byte[] { 1, 2, 3 }));
+		assertNull(sightings.recall(session).getSchedule());
+		assertEquals(ANNAPOLIS, sightings.recall(session).getLocationId());
+	}
+
+	public void testNothingRecalledWithoutALocationOrCursor() {
+		SessionSightings sightings = new SessionSightings(1024);
+		assertNull(sightings.recall(session));
+
+		sightings.remember(session, ANNAPOLIS, PLACE, Fixtures.schedule(ANNAPOLIS, now, now + HOUR), now, now);
+		session.setAttribute(SessionSightings.CURSOR, "yesterday");
+		assertNull(sightings.recall(session));
+
+		// Alexa sends the attributes back as JSON, so a cursor may come back as a number
+		session.setAttribute(SessionSightings.CURSOR, Long.valueOf(now));
+		assertEquals(now, sightings.recall(session).getCursor());
+
+		sightings.advance(session, now + HOUR);
+		assertEquals(now + HOUR, sightings.recall(session).getCursor());
+	}
+}
@@ -0,0 +1,141 @@
+package com.cjbdev.echo.iss;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+
+import com.rometools.rome.feed.synd.SyndEntry;
+import com.rometools.rome.feed.synd.SyndFeed;
+import com.rometools.rome.io.SyndFeedInput;
+import com.rometools.rome.io.XmlReader;
+
+/**
+ * Compares the Rome based feed handling that used to run on every CityStateIntent against the
+ * streaming {@link SightingFeedParser}. Pass a saved feed file, or run without arguments to use a
+ * generated two-week feed:
+ * <pre>
+ * java -cp target/test-classes:target/classes:... com.cjbdev.echo.iss.SightingParserBenchmark [feed.xml] [iterations]
+ * </pre>
+ */
+public class SightingParserBenchmark {
+
+	public static void main(String[] args) throws Exception {
+
+		byte[] feed = args.length > 0 ? Files.readAllBytes(new File(args[0]).toPath()) : sampleFeed(30);
+		int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 20000;
+		final SightingFeedParser parser = new SightingFeedParser();
+
+		System.out.println("feed bytes: " + feed.length + ", iterations: " + iterations);
+
+		run("rome (old path)", feed, iterations, new Parse() {
+			public int parse(byte[] bytes) throws Exception {
+				return romeFirstFuture(bytes).length();
+			}
+		});
+		run("stax all", feed, iterations, new Parse() {
+			public int parse(byte[] bytes) throws Exception {
+				return parser.parseAll(new ByteArrayInputStream(bytes)).size();
+			}
+		});
+	}
+
+	private interface Parse {
+		int parse(byte[] bytes) throws Exception;
+	}
+
+	private static void run(String name, byte[] feed, int iterations, Parse parse) throws Exception {
+
+		// warm up
+		for (int i = 0; i < iterations / 4; i++) {
+			parse.parse(feed);
+		}
+
+		long allocatedBefore = allocatedBytes();
+		long start = System.nanoTime();
+		int sink = 0;
+		for (int i = 0; i < iterations; i++) {
+			sink += parse.parse(feed);
+		}
+		long elapsed = System.nanoTime() - start;
+		long allocated = allocatedBytes() - allocatedBefore;
+
+		System.out.println(String.format("%-18s %8.1f us/feed %10s bytes/feed  (%d)", name,
+				elapsed / 1e3 / iterations, allocated < 0 ? "n/a" : Long.toString(allocated / iterations), sink));
+	}
+
+	/*
+	 * Same work the speechlet did per request before: a full SyndFeed, string surgery and a new
+	 * SimpleDateFormat for every entry, keeping the first future description.
+	 */
+	private static String romeFirstFuture(byte[] bytes) throws Exception {
+
+		SyndFeed feed = new SyndFeedInput().build(new XmlReader(new ByteArrayInputStream(bytes)));
+		List<SyndEntry> entries = feed.getEntries();
+		Iterator<SyndEntry> itEntries = entries.iterator();
+
+		boolean first = true;
+		String firstDesc = "";
+		while (itEntries.hasNext()) {
+			String descStr = itEntries.next().getDescription().getValue();
+			String descStrMod = descStr.replaceAll("<br/>", "");
+			String durationSplitArray[] = descStrMod.split("Duration");
+			String dateTimeSplitArray[] = durationSplitArray[0].split("Time:");
+			String dateArray[] = dateTimeSplitArray[0].split("Date:");
+			String sightDate = dateArray[1].trim() + " " + dateTimeSplitArray[1].trim();
+
+			SimpleDateFormat formatter = new SimpleDateFormat("EEEE MMM dd, yyyy hh:mm a", Locale.US);
+			Calendar cal = Calendar.getInstance();
+			Calendar future = Calendar.getInstance();
+			future.setTime(formatter.parse(sightDate));
+			if ((future.compareTo(cal) > 0) && first) {
+				firstDesc = descStr;
+				first = false;
+			}
+		}
+		return firstDesc.replaceAll("\t", "").replaceAll("\n", "");
+	}
+
+	/*
+	 * A feed shaped like Spot The Station's, with passes every half day from yesterday on.
+	 */
+	static byte[] sampleFeed(int items) throws IOException {
+
+		SimpleDateFormat dateFormat = new SimpleDateFormat("EEEE MMM dd, yyyy", Locale.US);
+		SimpleDateFormat timeFormat = new SimpleDateFormat("h:mm a", Locale.US);
+		long start = System.currentTimeMillis() - 24L * 60 * 60 * 1000;
+
+		StringBuilder xml = new StringBuilder();
+		xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<rss version=\"2.0\"><channel>");
+		xml.append("<title>SpotTheStation</title><link>https://spotthestation.nasa.gov</link>");
+		xml.append("<description>Sighting opportunities</description>");
+		for (int i = 0; i < items; i++) {
+			java.util.Date date = new java.util.Date(start + i * 12L * 60 * 60 * 1000);
+			String d = dateFormat.format(date);
+			xml.append("<item><title>").append(d).append(" Visible: 4 min Max Height: 37 degrees</title>");
+			xml.append("<description>\n\t\t\t\tDate: ").append(d).append(" &lt;br/&gt;\n\t\t\t\tTime: ")
+					.append(timeFormat.format(date)).append(" &lt;br/&gt;\n\t\t\t\tDuration: 4 minutes &lt;br/&gt;")
+					.append("\n\t\t\t\tMaximum Elevation: 37° &lt;br/&gt;\n\t\t\t\tApproach: 10° above SW &lt;br/&gt;")
+					.append("\n\t\t\t\tDeparture: 10° above ENE &lt;br/&gt;\n\t\t\t\t</description>");
+			xml.append("<guid isPermaLink=\"false\">").append(i).append("</guid></item>");
+		}
+		xml.append("</channel></rss>");
+		return xml.toString().getBytes("UTF-8");
+	}
+
+	/*
+	 * Bytes allocated by this thread so far, where the JVM exposes it.
+	 */
+	private static long allocatedBytes() {
+		java.lang.management.ThreadMXBean bean = java.lang.management.ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return -1;
+	}
+}
@@ -0,0 +1,126 @@
+package com.cjbdev.echo.iss;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TimeZone;
+
+import junit.framework.TestCase;
+
+/**
+ * Finds this weekend's and tomorrow's passes on the location's calendar: from a weekday, from a
+ * Saturday and from a Sunday, over the nights the clocks change, and for a location whose date is
+ * not the server's.
+ */
+public class SightingQueryTest extends TestCase {
+
+	private static final String ANNAPOLIS = "United_States_Maryland_Annapolis";
+	private static final String TOKYO = "Japan_None_Tokyo";
+
+	private static final ZoneId TOKYO_ZONE = ZoneId.of("Asia/Tokyo");
+
+	public void testWeekendFromAWeekdayIsTheComingOne() {
+		// Wednesday 12 June 2024
+		long now = at(Fixtures.ZONE, "2024-06-12T12:00");
+		SightingQuery query = query(Fixtures.ZONE, "2024-06-12T21:00", "2024-06-14T23:59", "2024-06-15T00:00",
+				"2024-06-16T23:59", "2024-06-17T00:00");
+
+		assertEquals(starts(Fixtures.ZONE, "2024-06-15T00:00", "2024-06-16T23:59"), starts(query.weekend(now)));
+	}
+
+	public void testWeekendFromSaturdayIsTheRestOfIt() {
+		long now = at(Fixtures.ZONE, "2024-06-15T08:00");
+		SightingQuery query = query(Fixtures.ZONE, "2024-06-15T07:00", "2024-06-15T21:00", "2024-06-16T05:00",
+				"2024-06-22T21:00");
+
+		assertEquals(starts(Fixtures.ZONE, "2024-06-15T21:00", "2024-06-16T05:00"), starts(query.weekend(now)));
+	}
+
+	public void testWeekendFromSundayIsTheRestOfToday() {
+		// not next Saturday's: Sunday still belongs to the weekend that started yesterday
+		long now = at(Fixtures.ZONE, "2024-06-16T12:00");
+		SightingQuery query = query(Fixtures.ZONE, "2024-06-15T20:00", "2024-06-16T11:00", "2024-06-16T20:00",
+				"2024-06-22T20:00");
+
+		assertEquals(starts(Fixtures.ZONE, "2024-06-16T20:00"), starts(query.weekend(now)));
+		// and once it is over, nothing is left of it
+		assertTrue(query.weekend(at(Fixtures.ZONE, "2024-06-16T23:00")).isEmpty());
+	}
+
+	public void testWeekendWhenTheClocksGoBack() {
+		// New York leaves daylight saving time at 2:00 on Sunday 3 November 2024, a 49 hour weekend;
+		// 48 hours from Saturday's midnight would stop at 23:00 on Sunday
+		long now = at(Fixtures.ZONE, "2024-10-30T12:00");
+		SightingQuery query = query(Fixtures.ZONE, "2024-11-01T23:30", "2024-11-02T00:30", "2024-11-03T23:30",
+				"2024-11-04T00:30");
+
+		assertEquals(starts(Fixtures.ZONE, "2024-11-02T00:30", "2024-11-03T23:30"), starts(query.weekend(now)));
+	}
+
+	public void testTomorrowWhenTheClocksGoBack() {
+		long now = at(Fixtures.ZONE, "2024-11-02T10:00");
+		SightingQuery query = query(Fixtures.ZONE, "2024-11-02T23:30", "2024-11-03T00:30", "2024-11-03T23:30",
+				"2024-11-04T00:30");
+
+		assertEquals(starts(Fixtures.ZONE, "2024-11-03T00:30", "2024-11-03T23:30"), starts(query.tomorrow(now)));
+	}
+
+	public void testTomorrowWhenTheClocksGoForward() {
+		// Sunday 10 March 2024 is 23 hours long in New York
+		long now = at(Fixtures.ZONE, "2024-03-09T10:00");
+		SightingQuery query = query(Fixtures.ZONE, "2024-03-09T23:30", "2024-03-10T00:30", "2024-03-10T23:30",
+				"2024-03-11T00:30");
+
+		assertEquals(starts(Fixtures.ZONE, "2024-03-10T00:30", "2024-03-10T23:30"), starts(query.tomorrow(now)));
+	}
+
+	public void testCalendarIsTheLocationsNotTheServers() {
+		TimeZone server = TimeZone.getDefault();
+		TimeZone.setDefault(TimeZone.getTimeZone("America/Los_Angeles"));
+		try {
+			// Friday evening on the server is already Saturday noon in Tokyo
+			long now = at(ZoneId.of("America/Los_Angeles"), "2024-06-14T20:00");
+			assertEquals(now, at(TOKYO_ZONE, "2024-06-15T12:00"));
+			SightingQuery query = new SightingQuery(Fixtures.schedule(TOKYO, TOKYO_ZONE, now,
+					at(TOKYO_ZONE, "2024-06-15T20:00"), at(TOKYO_ZONE, "2024-06-16T08:00"),
+					at(TOKYO_ZONE, "2024-06-17T10:00")));
+
+			// Monday morning in Tokyo is still Sunday on the server, and not part of the weekend
+			assertEquals(starts(TOKYO_ZONE, "2024-06-15T20:00", "2024-06-16T08:00"), starts(query.weekend(now)));
+			// tomorrow is Sunday in Tokyo, not the server's Saturday
+			assertEquals(starts(TOKYO_ZONE, "2024-06-16T08:00"), starts(query.tomorrow(now)));
+		}
+		finally {
+			TimeZone.setDefault(server);
+		}
+	}
+
+	private static SightingQuery query(ZoneId zone, String... times) {
+		long[] starts = new long[times.length];
+		for (int i = 0; i < times.length; i++) {
+			starts[i] = at(zone, times[i]);
+		}
+		return new SightingQuery(Fixtures.schedule(ANNAPOLIS, zone, starts[0], starts));
+	}
+
+	private static long at(ZoneId zone, String localTime) {
+		return LocalDateTime.parse(localTime).atZone(zone).toInstant().toEpochMilli();
+	}
+
+	private static List<Long> starts(ZoneId zone, String... times) {
+		List<Long> starts = new ArrayList<Long>();
+		for (String time : times) {
+			starts.add(at(zone, time));
+		}
+		return starts;
+	}
+
+	private static List<Long> starts(List<Sighting> sightings) {
+		List<Long> starts = new ArrayList<Long>();
+		for (Sighting sighting : sightings) {
+			starts.add(sighting.getTime());
+		}
+		return starts;
+	}
+}
@@ -0,0 +1,156 @@
+package com.cjbdev.echo.iss;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+
+import junit.framework.TestCase;
+
+/**
+ * Serves schedules against a stub feed: from a batch snapshot, with entries younger and older than
+ * the snapshot's maximum age, and from a load that another request finished in the meantime. And
+ * stops its threads and closes its disk cache when shut down.
+ */
+public class SightingServiceTest extends TestCase {
+
+	private static final String ANNAPOLIS = "United_States_Maryland_Annapolis";
+	private static final String BALTIMORE = "United_States_Maryland_Baltimore";
+
+	private static final long HOUR = 60 * 60 * 1000L;
+	private static final long TTL = 6 * HOUR;
+	private static final long SNAPSHOT_AGE = 12 * HOUR;
+
+	private StubFeedReader reader;
+	private ScheduledThreadPoolExecutor executor;
+	private long now;
+
+	@Override
+	protected void setUp() {
+		reader = new StubFeedReader(20);
+		reader.setNextPass(ANNAPOLIS, HOUR);
+		reader.setNextPass(BALTIMORE, HOUR);
+		executor = new ScheduledThreadPoolExecutor(2, new NearbySightingFinder.DaemonThreadFactory("service-test"));
+		now = System.currentTimeMillis();
+	}
+
+	@Override
+	protected void tearDown() {
+		executor.shutdownNow();
+	}
+
+	public void testFreshSnapshotEntryIsServed() throws IOException {
+		// past the cache's time to live, but within the snapshot's maximum age
+		SightingSchedule snapshotted = Fixtures.schedule(ANNAPOLIS, now - TTL - HOUR, now + 2 * HOUR);
+		SightingService service = service(snapshot(snapshotted), null);
+
+		SightingSchedule schedule = service.getSchedule(ANNAPOLIS, null);
+		assertEquals(snapshotted.getFetchedAt(), schedule.getFetchedAt());
+		assertEquals(0, reader.getTotal());
+	}
+
+	public void testExpiredSnapshotEntryIsFetchedAgain() throws IOException {
+		SightingSchedule snapshotted = Fixtures.schedule(ANNAPOLIS, now - SNAPSHOT_AGE - HOUR, now + 2 * HOUR);
+		SightingService service = service(snapshot(snapshotted), null);
+
+		SightingSchedule schedule = service.getSchedule(ANNAPOLIS, null);
+		assertTrue(schedule.getFetchedAt() >= now);
+		assertEquals(1, reader.getCalls(ANNAPOLIS));
+
+		// the fetched schedule is cached now
+		assertSame(schedule, service.getSchedule(ANNAPOLIS, null));
+		assertEquals(1, reader.getCalls(ANNAPOLIS));
+	}
+
+	public void testExpiredSnapshotEntryIsServedStaleWhileRevalidating() throws Exception {
+		SightingSchedule snapshotted = Fixtures.schedule(ANNAPOLIS, now - SNAPSHOT_AGE - HOUR, now + 2 * HOUR);
+		SightingService service = service(snapshot(snapshotted), executor);
+
+		SightingSchedule schedule = service.getSchedule(ANNAPOLIS, null);
+		assertEquals(snapshotted.getFetchedAt(), schedule.getFetchedAt());
+		assertEquals(1, service.getStaleServed());
+
+		long until = System.currentTimeMillis() + 5000;
+		while (service.getSchedule(ANNAPOLIS, null).getFetchedAt() < now) {
+			assertTrue("not revalidated", System.currentTimeMillis() < until);
+			Thread.sleep(10);
+		}
+		assertEquals(1, reader.getCalls(ANNAPOLIS));
+	}
+
+	public void testBatchSkipsExpiredSnapshotEntries() {
+		SightingSchedule fresh = Fixtures.schedule(ANNAPOLIS, now - HOUR, now + 2 * HOUR);
+		SightingSchedule expired = Fixtures.schedule(BALTIMORE, now - SNAPSHOT_AGE - HOUR, now + 2 * HOUR);
+		SightingService service = service(snapshot(fresh, expired), null);
+
+		Map<String, SightingSchedule> schedules = service.getSchedules(Arrays.asList(ANNAPOLIS, BALTIMORE));
+		assertEquals(fresh.getFetchedAt(), schedules.get(ANNAPOLIS).getFetchedAt());
+		assertTrue(schedules.get(BALTIMORE).getFetchedAt() >= now);
+		assertEquals(0, reader.getCalls(ANNAPOLIS));
+		assertEquals(1, reader.getCalls(BALTIMORE));
+	}
+
+	public void testRecheckAfterAMissIsNotCountedAsALookup() throws IOException {
+		final SightingSchedule loaded = Fixtures.schedule(ANNAPOLIS, now, now + HOUR);
+		// another request's load caches the schedule right after this one misses
+		SightingCache cache = new SightingCache(100, TTL) {
+			@Override
+			synchronized SightingSchedule get(String locationId) {
+				SightingSchedule schedule = super.get(locationId);
+				if (schedule == null) {
+					put(locationId, loaded);
+				}
+				return schedule;
+			}
+		};
+		SightingService service = new SightingService(cache, null, null, reader);
+
+		assertSame(loaded, service.getSchedule(ANNAPOLIS, null));
+		assertEquals(0, reader.getTotal());
+		assertEquals(0, cache.getHits());
+		assertEquals(1, cache.getMisses());
+	}
+
+	public void testShutdownStopsTheThreadsAndClosesTheDiskCache() throws IOException {
+		File file = File.createTempFile("sightings", ".log");
+		file.deleteOnExit();
+		DiskSightingCache diskCache = new DiskSightingCache(file, TTL, false);
+		diskCache.load();
+		SightingService service = new SightingService(new SightingCache(100, TTL), null, diskCache, reader, null, null,
+				null, executor, 0);
+		assertNotNull(service.getSchedule(ANNAPOLIS, null));
+		long written = file.length();
+
+		service.shutdown();
+		assertTrue(executor.isShutdown());
+		// the closed file takes no more schedules, and what it has is there after a restart
+		diskCache.append(Fixtures.schedule(BALTIMORE, now, now + HOUR));
+		assertEquals(written, file.length());
+		DiskSightingCache restarted = new DiskSightingCache(file, TTL, false);
+		try {
+			assertEquals(1, restarted.load().size());
+		}
+		finally {
+			restarted.close();
+		}
+	}
+
+	private SightingService service(SightingSnapshot snapshot, ScheduledThreadPoolExecutor executor) {
+		return new SightingService(new SightingCache(100, TTL), null, null, reader, null, snapshot, null, executor,
+				24 * HOUR);
+	}
+
+	private SightingSnapshot snapshot(SightingSchedule... schedules) {
+		try {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			SightingSnapshot.write(now, Arrays.asList(schedules), out);
+			return SightingSnapshot.read(ByteBuffer.wrap(out.toByteArray()), SNAPSHOT_AGE);
+		}
+		catch (IOException ioex) {
+			throw new AssertionError(ioex);
+		}
+	}
+}
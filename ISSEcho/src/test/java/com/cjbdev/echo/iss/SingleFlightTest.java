@@ -0,0 +1,160 @@
+package com.cjbdev.echo.iss;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks that {@link SightingService} coalesces concurrent misses for the same location into one
+ * upstream fetch. In every round the cache is emptied and all threads are released together, each
+ * asking for the locations in its own rotation. Runs on the calling thread, on the service's
+ * executor through {@link SightingFeedReader#fetchAsync}, and with real hedged downloads from a
+ * local server.
+ */
+public class SingleFlightTest extends TestCase {
+
+	private static final int THREADS = 16;
+	private static final int LOCATIONS = 8;
+	private static final int ROUNDS = 10;
+	private static final long HOUR = 60 * 60 * 1000L;
+
+	private final List<String> ids = new ArrayList<String>();
+	private ExecutorService callers;
+	private ScheduledThreadPoolExecutor executor;
+	private SightingCache cache;
+	private StubFeedReader reader;
+
+	@Override
+	protected void setUp() {
+		for (int i = 0; i < LOCATIONS; i++) {
+			ids.add("Stress_City_" + i);
+		}
+		callers = Executors.newFixedThreadPool(THREADS, new NearbySightingFinder.DaemonThreadFactory("single-flight"));
+		executor = new ScheduledThreadPoolExecutor(8, new NearbySightingFinder.DaemonThreadFactory("single-flight-fetch"));
+		cache = new SightingCache(LOCATIONS * 2, HOUR, false);
+		reader = new StubFeedReader(5);
+	}
+
+	@Override
+	protected void tearDown() {
+		callers.shutdownNow();
+		executor.shutdownNow();
+	}
+
+	public void testConcurrentMissesFetchOnce() throws Exception {
+		SightingService service = new SightingService(cache, null, null, reader);
+
+		assertEachRoundFetchesOnce(service);
+		assertEquals(0, reader.getAsyncCalls());
+		assertTrue(service.getCoalesced() > 0);
+	}
+
+	public void testConcurrentMissesFetchOnceOnTheExecutor() throws Exception {
+		SightingService service = new SightingService(cache, null, null, reader, null, null, null, executor, 0);
+
+		assertEachRoundFetchesOnce(service);
+		assertEquals(reader.getTotal(), reader.getAsyncCalls());
+		assertTrue(service.getCoalesced() > 0);
+	}
+
+	public void testFailureReachesEveryWaiter() throws Exception {
+		reader.setFailing(true);
+		SightingService service = new SightingService(cache, null, null, reader);
+		assertEquals(THREADS * LOCATIONS, round(service));
+		// a failed fetch is not cached, so a thread that comes after it has finished starts another
+		assertTrue(reader.getTotal() < THREADS * LOCATIONS);
+	}
+
+	public void testFailureReachesEveryWaiterOnTheExecutor() throws Exception {
+		reader.setFailing(true);
+		SightingService service = new SightingService(cache, null, null, reader, null, null, null, executor, 0);
+		assertEquals(THREADS * LOCATIONS, round(service));
+		assertTrue(reader.getAsyncCalls() < THREADS * LOCATIONS);
+	}
+
+	public void testHedgedDownloadsCoalesce() throws Exception {
+		String annapolis = "United_States_Maryland_Annapolis";
+		String baltimore = "United_States_Maryland_Baltimore";
+		FixtureServer server = new FixtureServer("/feeds");
+		try {
+			server.setDelay(300);
+			// a 50 ms hedge delay until a thousand calls are timed, so every download is hedged once
+			FeedClient client = new FeedClient(1000, 2000, 1, 0, 95, 1000, 50);
+			SightingService service = new SightingService(cache, null, null,
+					new SightingFeedReader(client, new SightingFeedParser(Fixtures.ZONE), server.getUrl() + "/xml_files"),
+					null, null, null, executor, 0);
+			ids.clear();
+			ids.add(annapolis);
+			ids.add(baltimore);
+
+			assertEquals(0, round(service));
+			assertEquals(2, server.getRequests("/xml_files/" + annapolis + ".xml"));
+			assertEquals(2, server.getRequests("/xml_files/" + baltimore + ".xml"));
+			assertEquals(2, client.getHedges());
+			assertTrue(service.getCoalesced() > 0);
+			assertEquals(2, service.getSchedule(annapolis).size());
+		}
+		finally {
+			server.stop();
+		}
+	}
+
+	private void assertEachRoundFetchesOnce(SightingService service) throws Exception {
+		for (int round = 0; round < ROUNDS; round++) {
+			for (String id : ids) {
+				cache.invalidate(id);
+			}
+			reader.reset();
+
+			assertEquals("wrong results in round " + round, 0, round(service));
+			for (String id : ids) {
+				assertEquals(id + " in round " + round, 1, reader.getCalls(id));
+			}
+		}
+	}
+
+	/*
+	 * Every thread looks up every location once, all starting together. Returns the number of
+	 * lookups that failed, or got another location's schedule.
+	 */
+	private int round(final SightingService service) throws Exception {
+
+		final CyclicBarrier barrier = new CyclicBarrier(THREADS);
+		List<Future<Integer>> futures = new ArrayList<Future<Integer>>(THREADS);
+		for (int t = 0; t < THREADS; t++) {
+			final int offset = t;
+			futures.add(callers.submit(new Callable<Integer>() {
+				public Integer call() throws Exception {
+					barrier.await();
+					int wrong = 0;
+					for (int i = 0; i < ids.size(); i++) {
+						String id = ids.get((offset + i) % ids.size());
+						try {
+							if (!id.equals(service.getSchedule(id, null).getLocationId())) {
+								wrong++;
+							}
+						}
+						catch (IOException ioex) {
+							wrong++;
+						}
+					}
+					return Integer.valueOf(wrong);
+				}
+			}));
+		}
+
+		int wrong = 0;
+		for (Future<Integer> future : futures) {
+			wrong += future.get().intValue();
+		}
+		return wrong;
+	}
+}
@@ -0,0 +1,144 @@
+package com.cjbdev.echo.iss;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.handler.StatisticsHandler;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+
+import junit.framework.TestCase;
+
+/**
+ * Starts the embedded server on a free port: the metrics page only when a path is set, the stop
+ * action once the server has stopped, and requests on virtual threads. The virtual thread test
+ * only checks the fallback to the bounded pool unless it runs on Java 21 or later, e.g. with
+ * {@code JAVA_HOME} pointing at one for {@code mvn test}.
+ */
+public class SkillServerTest extends TestCase {
+
+	private static final String METRICS_PATH = "iss.server.metricsPath";
+	private static final String THREADS = "iss.server.threads";
+
+	private final AtomicInteger stopped = new AtomicInteger();
+	private final Runnable onStop = new Runnable() {
+		public void run() {
+			stopped.incrementAndGet();
+		}
+	};
+
+	private Server server;
+
+	@Override
+	protected void tearDown() throws Exception {
+		System.clearProperty(METRICS_PATH);
+		System.clearProperty(THREADS);
+		if (server != null) {
+			server.stop();
+		}
+	}
+
+	public void testMetricsAreOffByDefault() throws Exception {
+		server = SkillServer.create(0, onStop);
+		server.start();
+		assertEquals(404, get("/metrics").getResponseCode());
+	}
+
+	public void testMetricsAtTheConfiguredPath() throws Exception {
+		System.setProperty(METRICS_PATH, "/status/metrics");
+		server = SkillServer.create(0, onStop);
+		server.start();
+
+		String metrics = body(get("/status/metrics"));
+		assertTrue(metrics, metrics.contains("SightingService["));
+		assertTrue(metrics, metrics.contains("ThreadPool[threads="));
+		assertEquals(404, get("/metrics").getResponseCode());
+	}
+
+	public void testStopActionRunsOnceStopped() throws Exception {
+		server = SkillServer.create(0, onStop);
+		server.start();
+		assertEquals(0, stopped.get());
+
+		server.stop();
+		assertEquals(1, stopped.get());
+		server = null;
+	}
+
+	public void testBoundedPoolByDefault() {
+		QueuedThreadPool pool = (QueuedThreadPool) SkillServer.threadPool();
+		assertEquals(200, pool.getMaxThreads());
+		assertEquals(8, pool.getMinThreads());
+	}
+
+	public void testRequestsOnVirtualThreads() throws Exception {
+		System.setProperty(THREADS, "virtual");
+		ExecutorService virtual = SkillServer.virtualThreadExecutor();
+		if (virtual == null) {
+			// before Java 21
+			assertTrue(SkillServer.threadPool() instanceof QueuedThreadPool);
+			return;
+		}
+		virtual.shutdown();
+
+		System.setProperty(METRICS_PATH, "/metrics");
+		server = SkillServer.create(0, onStop);
+		ServletContextHandler context = (ServletContextHandler) ((StatisticsHandler) server.getHandler()).getHandler();
+		context.addServlet(new ServletHolder(new HttpServlet() {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+				try {
+					response.getWriter().print(Thread.class.getMethod("isVirtual").invoke(Thread.currentThread()));
+				}
+				catch (ReflectiveOperationException roex) {
+					throw new IOException(roex);
+				}
+			}
+		}), "/thread");
+		server.start();
+
+		assertEquals("true", body(get("/thread")));
+		assertTrue(body(get("/metrics")).contains("ThreadPool[virtual]"));
+
+		// Jetty stops the executor with the server, and the stop action still runs
+		server.stop();
+		server = null;
+		assertEquals(1, stopped.get());
+	}
+
+	private HttpURLConnection get(String path) throws IOException {
+		int port = ((ServerConnector) server.getConnectors()[0]).getLocalPort();
+		return (HttpURLConnection) new URL("http://127.0.0.1:" + port + path).openConnection();
+	}
+
+	private static String body(HttpURLConnection connection) throws IOException {
+		assertEquals(200, connection.getResponseCode());
+		InputStream in = connection.getInputStream();
+		try {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] chunk = new byte[4096];
+			int read;
+			while ((read = in.read(chunk)) != -1) {
+				out.write(chunk, 0, read);
+			}
+			return out.toString("UTF-8");
+		}
+		finally {
+			in.close();
+		}
+	}
+}
@@ -0,0 +1,170 @@
+package com.cjbdev.echo.iss;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import com.amazon.speech.slu.Intent;
+import com.amazon.speech.slu.Slot;
+import com.amazon.speech.speechlet.IntentRequest;
+import com.amazon.speech.speechlet.Session;
+import com.amazon.speech.speechlet.SpeechletException;
+import com.amazon.speech.speechlet.SpeechletResponse;
+import com.amazon.speech.ui.SimpleCard;
+import com.amazon.speech.ui.SsmlOutputSpeech;
+
+import junit.framework.TestCase;
+
+/**
+ * Conversations with the skill through {@link SpaceStationSpeechlet#onIntent}: follow-ups answered
+ * from what the session remembers, so nothing is downloaded, and location listings read a page at
+ * a time.
+ */
+public class SpaceStationSpeechletTest extends TestCase {
+
+	private static final String ANNAPOLIS = "United_States_Maryland_Annapolis";
+	private static final String PLACE = "Annapolis, Maryland";
+
+	private static final long HOUR = 60 * 60 * 1000L;
+
+	private static final int PAGE_SIZE = 10;
+
+	private static final LocationIndex LOCATIONS = LocationIndex.load(new SpaceStationListLoader());
+
+	private SpaceStationSpeechlet speechlet;
+	private Session session;
+
+	@Override
+	protected void setUp() {
+		speechlet = new SpaceStationSpeechlet();
+		session = Session.builder().withSessionId("test").withAttributes(new HashMap<String, Object>()).build();
+	}
+
+	public void testNextAfterThatMovesStrictlyPastTheCursor() throws SpeechletException {
+		long now = System.currentTimeMillis();
+		SightingSchedule schedule = Fixtures.schedule(ANNAPOLIS, now, now + HOUR, now + 2 * HOUR, now + 3 * HOUR);
+		// the first pass was just spoken, and the cursor is its start to the millisecond
+		new SessionSightings(1024).remember(session, ANNAPOLIS, PLACE, schedule, now, schedule.getTime(0));
+
+		SpeechletResponse response = ask("NextAfterThatIntent");
+		assertFalse(response.getShouldEndSession());
+		assertEquals(Long.toString(schedule.getTime(1)), session.getAttribute(SessionSightings.CURSOR));
+		assertTrue(card(response).contains(schedule.get(1).getDescription()));
+		assertFalse(card(response).contains(schedule.get(0).getDescription()));
+
+		ask("NextAfterThatIntent");
+		assertEquals(Long.toString(schedule.getTime(2)), session.getAttribute(SessionSightings.CURSOR));
+
+		// past the last pass there is nothing more, and the cursor stays on it
+		response = ask("NextAfterThatIntent");
+		assertTrue(card(response).startsWith("There are no more sightings from " + PLACE));
+		assertEquals(Long.toString(schedule.getTime(2)), session.getAttribute(SessionSightings.CURSOR));
+	}
+
+	public void testLocationsArePagedToTheLastPage() throws SpeechletException {
+		// 60 locations, so the last page is a full one
+		List<String> expected = keys(LOCATIONS.findState("Maryland").getLocations());
+		assertEquals(6 * PAGE_SIZE, expected.size());
+
+		SpeechletResponse response = ask("CityListIntent", "State", "Maryland");
+		List<String> listed = new ArrayList<String>(page(response));
+		assertEquals(expected.subList(0, PAGE_SIZE), listed);
+		assertTrue(card(response).contains("(50 more, say \"more\")"));
+		assertEquals(Integer.toString(PAGE_SIZE), session.getAttribute(LocationListCursor.OFFSET));
+
+		for (int page = 2; page <= 6; page++) {
+			response = ask("AMAZON.MoreIntent");
+			assertTrue(card(response).startsWith("More locations in Maryland:"));
+			listed.addAll(page(response));
+		}
+		assertEquals(expected, listed);
+
+		// the last page ends the listing, and "more" after it is answered with help
+		assertFalse(card(response).contains("say \"more\""));
+		assertNull(LocationListCursor.read(session));
+		assertSame(ask("AMAZON.HelpIntent"), ask("AMAZON.MoreIntent"));
+	}
+
+	public void testLastPageOfOne() throws SpeechletException {
+		List<String> expected = keys(LOCATIONS.findState("Rhode Island").getLocations());
+		assertEquals(PAGE_SIZE + 1, expected.size());
+
+		SpeechletResponse response = ask("CityListIntent", "State", "Rhode Island");
+		assertTrue(ssml(response).contains("There is 1 more. Say more to hear it."));
+		response = ask("AMAZON.MoreIntent");
+		assertEquals(expected.subList(PAGE_SIZE, PAGE_SIZE + 1), page(response));
+		assertNull(LocationListCursor.read(session));
+	}
+
+	public void testLetterIsKeptAcrossPages() throws SpeechletException {
+		new LocationListCursor("Maryland", false, Character.valueOf('A'), 1).write(session);
+
+		SpeechletResponse response = ask("AMAZON.MoreIntent");
+		assertEquals(keys(LOCATIONS.findState("Maryland").getLocationsStartingWith('A')).subList(1, 3),
+				page(response));
+		assertTrue(card(response).startsWith("More locations in Maryland starting with A:"));
+		assertNull(LocationListCursor.read(session));
+	}
+
+	public void testMalformedCursorInTheSession() throws SpeechletException {
+		SpeechletResponse help = ask("AMAZON.HelpIntent");
+
+		// no listing, a region the index does not know, and an offset that is not one
+		assertSame(help, ask("AMAZON.MoreIntent"));
+		new LocationListCursor("Atlantis", false, null, PAGE_SIZE).write(session);
+		assertSame(help, ask("AMAZON.MoreIntent"));
+		new LocationListCursor("Maryland", false, null, PAGE_SIZE).write(session);
+		session.setAttribute(LocationListCursor.OFFSET, "-10");
+		assertSame(help, ask("AMAZON.MoreIntent"));
+		session.setAttribute(LocationListCursor.OFFSET, "ten");
+		assertSame(help, ask("AMAZON.MoreIntent"));
+
+		// an offset past the end of the list says there is nothing, and ends the listing
+		new LocationListCursor("Maryland", false, null, 1000).write(session);
+		assertTrue(ssml(ask("AMAZON.MoreIntent")).contains("There does not appear to be any locations"));
+		assertNull(LocationListCursor.read(session));
+	}
+
+	private SpeechletResponse ask(String intentName) throws SpeechletException {
+		return ask(intentName, new HashMap<String, Slot>());
+	}
+
+	private SpeechletResponse ask(String intentName, String slotName, String value) throws SpeechletException {
+		HashMap<String, Slot> slots = new HashMap<String, Slot>();
+		slots.put(slotName, Slot.builder().withName(slotName).withValue(value).build());
+		return ask(intentName, slots);
+	}
+
+	private SpeechletResponse ask(String intentName, HashMap<String, Slot> slots) throws SpeechletException {
+		Intent intent = Intent.builder().withName(intentName).withSlots(slots).build();
+		return speechlet.onIntent(IntentRequest.builder().withRequestId("test").withIntent(intent).build(), session);
+	}
+
+	private static String ssml(SpeechletResponse response) {
+		return ((SsmlOutputSpeech) response.getOutputSpeech()).getSsml();
+	}
+
+	/*
+	 * The locations on a listing's card: the lines between its heading and what follows them.
+	 */
+	private static List<String> page(SpeechletResponse response) {
+		List<String> locations = new ArrayList<String>();
+		String[] lines = card(response).split("\n");
+		for (int i = 1; i < lines.length && !lines[i].startsWith("(") && !lines[i].startsWith("You can"); i++) {
+			locations.add(lines[i]);
+		}
+		return locations;
+	}
+
+	private static List<String> keys(List<KeyValuePair> locations) {
+		List<String> keys = new ArrayList<String>();
+		for (KeyValuePair location : locations) {
+			keys.add(location.getKey());
+		}
+		return keys;
+	}
+
+	private static String card(SpeechletResponse response) {
+		return ((SimpleCard) response.getCard()).getContent();
+	}
+}
@@ -0,0 +1,113 @@
+package com.cjbdev.echo.iss;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compares {@link SpatialIndex} nearest-neighbour lookups against a linear scan over the full
+ * location set. Run after {@code mvn package} with the build output on the classpath:
+ * <pre>
+ * java -cp target/test-classes:target/classes:... com.cjbdev.echo.iss.SpatialIndexBenchmark [queries]
+ * </pre>
+ * Uses the positions from {@link LocationCoordinates} when the resource is present, otherwise one
+ * uniformly random position per location so the tree has the real size. Every answer is checked
+ * against the scan.
+ */
+public class SpatialIndexBenchmark {
+
+	public static void main(String[] args) {
+
+		int queries = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+		Random random = new Random(42);
+
+		LocationIndex index = LocationIndex.load(new SpaceStationListLoader());
+		LocationCoordinates coordinates = LocationCoordinates.load(index);
+
+		List<String> ids = new ArrayList<String>();
+		List<double[]> positions = new ArrayList<double[]>();
+		List<LocationIndex.Region> regions = new ArrayList<LocationIndex.Region>(index.getStates());
+		regions.addAll(index.getCountries());
+		for (LocationIndex.Region region : regions) {
+			for (KeyValuePair location : region.getLocations()) {
+				LocationCoordinates.Place place = coordinates.find(location.getValue());
+				if (place != null) {
+					positions.add(new double[] { place.getLatitude(), place.getLongitude() });
+				}
+				else if (coordinates.isEmpty()) {
+					positions.add(randomPosition(random));
+				}
+				else {
+					continue;
+				}
+				ids.add(location.getValue());
+			}
+		}
+		System.out.println((coordinates.isEmpty() ? "random" : "real") + " positions for " + ids.size() + " locations");
+
+		double[] latitudes = new double[ids.size()];
+		double[] longitudes = new double[ids.size()];
+		for (int i = 0; i < ids.size(); i++) {
+			latitudes[i] = positions.get(i)[0];
+			longitudes[i] = positions.get(i)[1];
+		}
+
+		long start = System.nanoTime();
+		SpatialIndex<String> tree = new SpatialIndex<String>(ids, latitudes, longitudes);
+		System.out.println("built tree in " + (System.nanoTime() - start) / 1000 + " us");
+
+		double[][] targets = new double[queries][];
+		for (int i = 0; i < queries; i++) {
+			targets[i] = randomPosition(random);
+		}
+
+		for (int round = 0; round < 3; round++) {
+			long treeNanos = 0;
+			long treeFiveNanos = 0;
+			long scanNanos = 0;
+			int mismatches = 0;
+			for (double[] target : targets) {
+				long t0 = System.nanoTime();
+				SpatialIndex.Neighbor<String> nearest = tree.nearest(target[0], target[1]);
+				long t1 = System.nanoTime();
+				tree.nearest(target[0], target[1], 5);
+				long t2 = System.nanoTime();
+				int scanned = scan(latitudes, longitudes, target);
+				long t3 = System.nanoTime();
+
+				treeNanos += t1 - t0;
+				treeFiveNanos += t2 - t1;
+				scanNanos += t3 - t2;
+				double scannedKm = SpatialIndex.distanceKm(target[0], target[1], latitudes[scanned], longitudes[scanned]);
+				if (Math.abs(scannedKm - nearest.getDistanceKm()) > 0.001) {
+					mismatches++;
+				}
+			}
+			System.out.println("round " + (round + 1) + ": nearest " + treeNanos / queries + " ns, 5 nearest "
+					+ treeFiveNanos / queries + " ns, linear scan " + scanNanos / queries + " ns, mismatches "
+					+ mismatches);
+		}
+	}
+
+	private static int scan(double[] latitudes, double[] longitudes, double[] target) {
+		int best = -1;
+		double bestKm = Double.MAX_VALUE;
+		for (int i = 0; i < latitudes.length; i++) {
+			double km = SpatialIndex.distanceKm(target[0], target[1], latitudes[i], longitudes[i]);
+			if (km < bestKm) {
+				bestKm = km;
+				best = i;
+			}
+		}
+		return best;
+	}
+
+	/*
+	 * Uniform over the sphere, not over the latitude range.
+	 */
+	private static double[] randomPosition(Random random) {
+		double latitude = Math.toDegrees(Math.asin(2 * random.nextDouble() - 1));
+		double longitude = 360 * random.nextDouble() - 180;
+		return new double[] { latitude, longitude };
+	}
+}
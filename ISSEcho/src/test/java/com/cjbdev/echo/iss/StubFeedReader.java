@@ -0,0 +1,143 @@
+package com.cjbdev.echo.iss;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Feed reader for the tests that sleeps instead of downloading, and counts its calls per location
+ * and how many run at once. A location answers with one pass at the offset set for it, or with no
+ * passes.
+ */
+class StubFeedReader extends SightingFeedReader {
+
+	private final ConcurrentHashMap<String, AtomicInteger> calls = new ConcurrentHashMap<String, AtomicInteger>();
+	private final ConcurrentHashMap<String, Long> delays = new ConcurrentHashMap<String, Long>();
+	private final ConcurrentHashMap<String, Long> passes = new ConcurrentHashMap<String, Long>();
+	private final AtomicInteger total = new AtomicInteger();
+	private final AtomicInteger asyncCalls = new AtomicInteger();
+	private final AtomicInteger running = new AtomicInteger();
+	private final AtomicInteger maxRunning = new AtomicInteger();
+
+	private volatile long delayMillis;
+	private volatile boolean failing;
+
+	StubFeedReader(long delayMillis) {
+		super(null, null, SightingFeedReader.FEED_URL);
+		this.delayMillis = delayMillis;
+	}
+
+	void setDelay(String locationId, long millis) {
+		delays.put(locationId, Long.valueOf(millis));
+	}
+
+	void setDelay(long millis) {
+		delayMillis = millis;
+	}
+
+	/*
+	 * The location's feed has one pass this many milliseconds after it is fetched.
+	 */
+	void setNextPass(String locationId, long millis) {
+		passes.put(locationId, Long.valueOf(millis));
+	}
+
+	void setFailing(boolean failing) {
+		this.failing = failing;
+	}
+
+	boolean isFailing() {
+		return failing;
+	}
+
+	int getCalls(String locationId) {
+		AtomicInteger count = calls.get(locationId);
+		return count == null ? 0 : count.get();
+	}
+
+	int getTotal() {
+		return total.get();
+	}
+
+	/*
+	 * Calls that came through fetchAsync, as the service's executor makes them.
+	 */
+	int getAsyncCalls() {
+		return asyncCalls.get();
+	}
+
+	int getMaxRunning() {
+		return maxRunning.get();
+	}
+
+	void reset() {
+		calls.clear();
+		total.set(0);
+		asyncCalls.set(0);
+		maxRunning.set(0);
+	}
+
+	@Override
+	SightingSchedule fetch(String locationId, SightingSchedule cached) throws IOException {
+
+		AtomicInteger count = calls.get(locationId);
+		if (count == null) {
+			AtomicInteger created = new AtomicInteger();
+			count = calls.putIfAbsent(locationId, created);
+			if (count == null) {
+				count = created;
+			}
+		}
+		count.incrementAndGet();
+		total.incrementAndGet();
+
+		int now = running.incrementAndGet();
+		int max;
+		while (now > (max = maxRunning.get()) && !maxRunning.compareAndSet(max, now)) {
+			// retry
+		}
+		try {
+			Long delay = delays.get(locationId);
+			Thread.sleep(delay != null ? delay.longValue() : delayMillis);
+		}
+		catch (InterruptedException iex) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted fetching " + locationId, iex);
+		}
+		finally {
+			running.decrementAndGet();
+		}
+
+		if (failing) {
+			throw new IOException("Feed unavailable for " + locationId);
+		}
+		long fetchedAt = System.currentTimeMillis();
+		Long pass = passes.get(locationId);
+		if (pass == null) {
+			return new SightingSchedule(locationId, Collections.<Sighting> emptyList(), fetchedAt, Fixtures.ZONE);
+		}
+		return Fixtures.schedule(locationId, fetchedAt, fetchedAt + pass.longValue());
+	}
+
+	@Override
+	CompletableFuture<SightingSchedule> fetchAsync(final String locationId, final SightingSchedule cached,
+			ScheduledExecutorService executor) {
+
+		asyncCalls.incrementAndGet();
+		return CompletableFuture.supplyAsync(new Supplier<SightingSchedule>() {
+			public SightingSchedule get() {
+				try {
+					return fetch(locationId, cached);
+				}
+				catch (IOException ioex) {
+					throw new CompletionException(ioex);
+				}
+			}
+		}, executor);
+	}
+}